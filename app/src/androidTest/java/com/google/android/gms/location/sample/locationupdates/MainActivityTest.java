@@ -16,30 +16,32 @@
 
 package com.google.android.gms.location.sample.locationupdates;
 
-import android.location.Location;
-import android.os.Build;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
 import android.os.SystemClock;
 import android.test.ActivityInstrumentationTestCase2;
 import android.util.Log;
+import android.widget.TextView;
 
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.common.api.Status;
-import com.google.android.gms.location.LocationServices;
-
+import java.util.Locale;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 
 /**
- * Test showing use of mock location data to test code using the Google Play Location APIs. To
- * run this test, you must first check the "Allow mock locations" setting within
- * Settings -> Developer options.
+ * Test showing how the activity follows the location service. Instead of mocking a location
+ * provider, it binds to {@link MyService} itself and hands a fix for the North Pole to the
+ * service's {@link LocationPipeline}, the way the service's own provider listeners do, then
+ * checks that the activity shows it.
  */
 public class MainActivityTest extends ActivityInstrumentationTestCase2<MainActivity> {
     public static final String TAG = "MainActivityTest";
 
     /**
-     * The name of the mock location.
+     * The provider name the mock fix is reported under.
      */
     public static final String NORTH_POLE =
             "com.google.android.gms.location.sample.locationupdates" + ".NORTH_POLE";
@@ -48,158 +50,112 @@ public class MainActivityTest extends ActivityInstrumentationTestCase2<MainActiv
 
     public static final float NORTH_POLE_LONGITUDE = 0.0f;
 
-    public static final float ACCURACY_IN_METERS = 10.0f;
+    /**
+     * More accurate than any real fix, so fusion never drops the mock one in favour of a fix the
+     * device took just before.
+     */
+    public static final float ACCURACY_IN_METERS = 1.0f;
 
-    public static final int AWAIT_TIMEOUT_IN_MILLISECONDS = 2000;
+    public static final int AWAIT_TIMEOUT_IN_MILLISECONDS = 5000;
 
     /**
      * The activity under test.
      */
     private MainActivity mMainActivity;
 
+    /**
+     * The service's pipeline, from this test's own binding to it.
+     */
+    private LocationPipeline mPipeline;
+
+    private final ServiceConnection mConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            mPipeline = ((MyService.LocalBinder) binder).getPipeline();
+            mConnected.countDown();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mPipeline = null;
+        }
+    };
+    private final CountDownLatch mConnected = new CountDownLatch(1);
+
     public MainActivityTest() {
         super(MainActivity.class);
     }
 
     /**
-     * Gets the activity under test, obtains a connection to GoogleApiClient if necessary, and
-     * sets mock location.
+     * Gets the activity under test and binds to the location service it runs.
      */
     @Override
     protected void setUp() throws Exception {
         super.setUp();
         mMainActivity = getActivity();
-        ensureGoogleApiClientConnection();
-    }
-
-    /**
-     * Tests location using a mock location object.
-     */
-    public void testUsingMockLocation() {
-        Log.v(TAG, "Testing current location");
-
-        // Use a Location object set to the coordinates of the North Pole to set the mock location.
-        setMockLocation(createNorthPoleLocation());
-
-        // Make sure that the activity under test exists and GoogleApiClient is connected.
-        confirmPreconditions();
-
-        // Simulate a Start Updates button click.
-        clickStartUpdatesButton();
-
-        final Location testLocation = createNorthPoleLocation();
-
-        assertEquals(testLocation.getLatitude(), mMainActivity.mCurrentLocation.getLatitude(),
-                0.000001f);
-        assertEquals(testLocation.getLongitude(), mMainActivity.mCurrentLocation.getLongitude(),
-                 0.000001f);
-        assertEquals(String.valueOf(testLocation.getLatitude()),
-                mMainActivity.mLatitudeTextView.getText().toString());
-        assertEquals(String.valueOf(testLocation.getLongitude()),
-                mMainActivity.mLongitudeTextView.getText().toString());
+        Context context = getInstrumentation().getTargetContext();
+        assertTrue("Cannot bind to MyService", context.bindService(
+                new Intent(context, MyService.class), mConnection, Context.BIND_AUTO_CREATE));
+        assertTrue("MyService did not connect",
+                mConnected.await(AWAIT_TIMEOUT_IN_MILLISECONDS, TimeUnit.MILLISECONDS));
     }
 
-    /**
-     * If a connection to GoogleApiClient is lost, attempts to reconnect.
-     */
-    private void ensureGoogleApiClientConnection() {
-        if (!mMainActivity.mGoogleApiClient.isConnected()) {
-            mMainActivity.mGoogleApiClient.blockingConnect();
-        }
+    @Override
+    protected void tearDown() throws Exception {
+        getInstrumentation().getTargetContext().unbindService(mConnection);
+        super.tearDown();
     }
 
     /**
-     * Confirms that the activity under test exists and has a connected GoogleApiClient.
+     * Tests that a fix published by the service's pipeline reaches the activity's UI.
      */
-    private void confirmPreconditions() {
+    public void testUsingMockLocation() {
+        Log.v(TAG, "Testing current location");
         assertNotNull("mMainActivity is null", mMainActivity);
-        assertTrue("GoogleApiClient is not connected", mMainActivity.mGoogleApiClient.isConnected());
-    }
 
-    /**
-     * Simulates a Start Updates button click.
-     */
-    private void clickStartUpdatesButton() {
-        mMainActivity.runOnUiThread(new Runnable() {
+        final LocationFix testFix = createNorthPoleFix();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
             public void run() {
-                mMainActivity.mStartUpdatesButton.performClick();
+                // Provider fixes arrive on the main thread, so the mock one does too.
+                assertTrue("Pipeline dropped the mock fix",
+                        mPipeline.onProviderFix(NORTH_POLE, testFix));
             }
         });
+
+        String expectedLatitude = String.format(Locale.US, "%s: %f",
+                mMainActivity.mLatitudeLabel, testFix.getLatitude());
+        String expectedLongitude = String.format(Locale.US, "%s: %f",
+                mMainActivity.mLongitudeLabel, testFix.getLongitude());
+        awaitText(mMainActivity.mLatitudeTextView, expectedLatitude);
+
+        assertEquals(testFix.getLatitude(), mMainActivity.mCurrentLocation.getLatitude(),
+                0.000001f);
+        assertEquals(testFix.getLongitude(), mMainActivity.mCurrentLocation.getLongitude(),
+                0.000001f);
+        assertEquals(expectedLatitude, mMainActivity.mLatitudeTextView.getText().toString());
+        assertEquals(expectedLongitude, mMainActivity.mLongitudeTextView.getText().toString());
     }
 
     /**
-     * Calls the asynchronous methods
-     * {@link com.google.android.gms.location.FusedLocationProviderApi#setMockMode} and
-     * {@link com.google.android.gms.location.FusedLocationProviderApi#setMockLocation} to set the
-     * mock location. Uses nested callbacks when calling setMockMode() and setMockLocation().
-     * Each method returns a {@link Status} through a
-     * {@link com.google.android.gms.common.api.PendingResult<>}, and setMockLocation() is called
-     * only if setMockMode() is successful. Maintains a
-     * {@link CountDownLatch} with a count of 1, which makes the current thread wait. Decrements
-     * the CountDownLatch count only if the mock location is successfully set, allowing the set up
-     * to complete.
+     * Waits for the activity, which subscribes once its own binding connects, to show
+     * {@code expected} in {@code view}.
      */
-    private void setMockLocation(final Location mockLocation) {
-        // We use a CountDownLatch to ensure that all asynchronous tasks complete within setUp. We
-        // set the CountDownLatch count to 1 and decrement this count only when we are certain that
-        // mock location has been set.
-        final CountDownLatch lock = new CountDownLatch(1);
-
-        // First, ensure that the location provider is in mock mode. Using setMockMode() ensures
-        // that only locations specified in setMockLocation(GoogleApiClient, Location) are used.
-        LocationServices.FusedLocationApi.setMockMode(mMainActivity.mGoogleApiClient, true)
-                .setResultCallback(new ResultCallback<Status>() {
-                    @Override
-                    public void onResult(Status status) {
-                        if (status.isSuccess()) {
-                            Log.v(TAG, "Mock mode set");
-                            // Set the mock location to be used for the location provider. This
-                            // location is used in place of any actual locations from the underlying
-                            // providers (network or gps).
-                            LocationServices.FusedLocationApi.setMockLocation(
-                                    mMainActivity.mGoogleApiClient,
-                                    mockLocation
-                            ).setResultCallback(new ResultCallback<Status>() {
-                                @Override
-                                public void onResult(Status status) {
-                                    if (status.isSuccess()) {
-                                        Log.v(TAG, "Mock location set");
-                                        // Decrement the count of the latch, releasing the waiting
-                                        // thread. This permits lock.await() to return.
-                                        Log.v(TAG, "Decrementing latch count");
-                                        lock.countDown();
-                                    } else {
-                                        Log.e(TAG, "Mock location not set");
-                                    }
-                                }
-                            });
-                        } else {
-                            Log.e(TAG, "Mock mode not set");
-                        }
-                    }
-                });
-
-        try {
-            // Make the current thread wait until the latch has counted down to zero.
-            Log.v(TAG, "Waiting until the latch has counted down to zero");
-            lock.await(AWAIT_TIMEOUT_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException exception) {
-            Log.i(TAG, "Waiting thread awakened prematurely", exception);
+    private void awaitText(TextView view, String expected) {
+        long deadline = SystemClock.uptimeMillis() + AWAIT_TIMEOUT_IN_MILLISECONDS;
+        while (!expected.equals(view.getText().toString())
+                && SystemClock.uptimeMillis() < deadline) {
+            getInstrumentation().waitForIdleSync();
+            SystemClock.sleep(50);
         }
     }
 
     /**
-     * Creates and returns a Location object set to the coordinates of the North Pole.
+     * Creates a fix at the coordinates of the North Pole, dated past the fusion merge window so
+     * it is not taken for the same moment as the device's last real fix.
      */
-    private Location createNorthPoleLocation() {
-        Location mockLocation = new Location(NORTH_POLE);
-        mockLocation.setLatitude(NORTH_POLE_LATITUDE);
-        mockLocation.setLongitude(NORTH_POLE_LONGITUDE);
-        mockLocation.setAccuracy(ACCURACY_IN_METERS);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            mockLocation.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
-        }
-        mockLocation.setTime(System.currentTimeMillis());
-        return mockLocation;
+    private LocationFix createNorthPoleFix() {
+        return new LocationFix(NORTH_POLE_LATITUDE, NORTH_POLE_LONGITUDE, 0, ACCURACY_IN_METERS,
+                System.currentTimeMillis() + FixFusion.MERGE_WINDOW_MILLIS + 1);
     }
 }
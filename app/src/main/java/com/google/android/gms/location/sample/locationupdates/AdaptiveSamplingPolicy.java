@@ -0,0 +1,43 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+/**
+ * Samples fast only where it matters for contact tracing.
+ *
+ * In order of precedence:
+ * <ul>
+ *   <li>near a known infected bump, every few seconds with GPS, so a bump is not missed;</li>
+ *   <li>once settled in one place, every few minutes from Wi-Fi and cell, waking up again after
+ *   a short displacement;</li>
+ *   <li>at vehicle speed, where nobody bumps into anybody, every half minute on Wi-Fi and
+ *   cell;</li>
+ *   <li>otherwise, on foot or before anything is known, every ten seconds with GPS.</li>
+ * </ul>
+ */
+public final class AdaptiveSamplingPolicy implements SamplingPolicy {
+    public static final double NEAR_INFECTED_METERS = 200;
+    public static final long SETTLED_AFTER_MILLIS = 3 * 60 * 1000;
+    public static final float VEHICLE_SPEED_METERS_PER_SECOND = 8;
+
+    static final SamplingRequest NEAR_INFECTED = new SamplingRequest(
+            5000, 2000, 5, SamplingRequest.Priority.HIGH_ACCURACY);
+    static final SamplingRequest SETTLED = new SamplingRequest(
+            120000, 60000, 50, SamplingRequest.Priority.BALANCED_POWER);
+    static final SamplingRequest VEHICLE = new SamplingRequest(
+            30000, 15000, 100, SamplingRequest.Priority.BALANCED_POWER);
+    static final SamplingRequest ON_FOOT = new SamplingRequest(
+            10000, 5000, 10, SamplingRequest.Priority.HIGH_ACCURACY);
+
+    @Override
+    public SamplingRequest choose(MotionState motion) {
+        if (motion.getNearestInfectedMeters() <= NEAR_INFECTED_METERS) {
+            return NEAR_INFECTED;
+        }
+        if (motion.getStationaryMillis() >= SETTLED_AFTER_MILLIS) {
+            return SETTLED;
+        }
+        if (motion.getSpeedMetersPerSecond() >= VEHICLE_SPEED_METERS_PER_SECOND) {
+            return VEHICLE;
+        }
+        return ON_FOOT;
+    }
+}
@@ -0,0 +1,164 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link Logger.Sink} that hands lines to another sink on a background executor, so the
+ * thread that logs never waits on the slow one.
+ *
+ * Lines go through a bounded ring that any number of threads may write to without a lock: a
+ * writer claims a slot by advancing the tail with compare-and-set, and each slot's sequence
+ * number tells the drain when it is filled and writers when it is free again. When the ring is
+ * full a new line is dropped and counted, and the drain reports how many were lost after the
+ * lines that were kept. As in {@link FanOutChannel}, at most one drain task is scheduled at a
+ * time, and it hands the executor back after {@link #DRAIN_BATCH} lines.
+ */
+public final class AsyncLogAppender implements Logger.Sink {
+    public static final int DEFAULT_CAPACITY = 1024;
+    static final int DRAIN_BATCH = 64;
+
+    private static final String TAG = "AsyncLogAppender";
+
+    private static final class Line {
+        final int mLevel;
+        final String mTag;
+        final String mMessage;
+        final Throwable mError;
+
+        Line(int level, String tag, String message, Throwable error) {
+            mLevel = level;
+            mTag = tag;
+            mMessage = message;
+            mError = error;
+        }
+    }
+
+    private final Logger.Sink mTarget;
+    private final Executor mExecutor;
+    private final int mMask;
+    private final AtomicReferenceArray<Line> mSlots;
+    private final AtomicLongArray mSequences;
+    private final AtomicLong mTail = new AtomicLong();
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mWritten = new AtomicLong();
+
+    // Only touched by the drain, which never runs twice at once.
+    private long mHead;
+    private long mDroppedReported;
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param capacity lines held before new ones are dropped; rounded up to a power of two.
+     */
+    public AsyncLogAppender(Logger.Sink target, Executor executor, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mTarget = target;
+        mExecutor = executor;
+        mMask = size - 1;
+        mSlots = new AtomicReferenceArray<Line>(size);
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, i);
+        }
+    }
+
+    @Override
+    public void write(int level, String tag, String message, Throwable error) {
+        while (true) {
+            long tail = mTail.get();
+            int index = (int) tail & mMask;
+            long sequence = mSequences.get(index);
+            if (sequence < tail) {
+                // The slot still holds a line from one lap ago: the ring is full.
+                mDropped.incrementAndGet();
+                return;
+            }
+            if (sequence == tail && mTail.compareAndSet(tail, tail + 1)) {
+                mSlots.set(index, new Line(level, tag, message, error));
+                mSequences.set(index, tail + 1);
+                break;
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * Number of lines lost because the ring was full.
+     */
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    /**
+     * Number of lines handed to the target sink.
+     */
+    public long getWrittenCount() {
+        return mWritten.get();
+    }
+
+    /**
+     * Number of lines accepted and not yet handed to the target sink.
+     */
+    public int getPendingCount() {
+        return (int) (mTail.get() - mWritten.get());
+    }
+
+    private void schedule() {
+        if (mScheduled.compareAndSet(false, true)) {
+            try {
+                mExecutor.execute(mDrainTask);
+            } catch (RejectedExecutionException e) {
+                mScheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < DRAIN_BATCH; i++) {
+            int index = (int) mHead & mMask;
+            if (mSequences.get(index) != mHead + 1) {
+                break;
+            }
+            Line line = mSlots.get(index);
+            mSlots.set(index, null);
+            mSequences.set(index, mHead + mMask + 1);
+            mHead++;
+            mTarget.write(line.mLevel, line.mTag, line.mMessage, line.mError);
+            mWritten.incrementAndGet();
+        }
+        reportDropped();
+        mScheduled.set(false);
+        // A line written after the last check found nothing would otherwise wait for the next
+        // write.
+        if (mSequences.get((int) mHead & mMask) == mHead + 1) {
+            schedule();
+        }
+    }
+
+    private void reportDropped() {
+        long dropped = mDropped.get();
+        if (dropped != mDroppedReported) {
+            mTarget.write(Logger.WARN, TAG, (dropped - mDroppedReported)
+                    + " log lines dropped; the log ring was full", null);
+            mDroppedReported = dropped;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The binary body of a batch upload, and its decoder.
+ *
+ * <pre>
+ *   byte[2] magic "ZF"
+ *   byte    version, {@link #VERSION}
+ *   byte    flags: bit 0 set if the uid is not a UUID
+ *   byte[16] uid as a UUID, most significant half first
+ *            (or, with bit 0 set: varint length, then the uid in UTF-8)
+ *   varint  number of fixes
+ *   per fix, each field a delta from the previous fix (the first from zero):
+ *     svarint time in seconds
+ *     svarint latitude  in 1e-7 degrees
+ *     svarint longitude in 1e-7 degrees
+ *     svarint altitude in whole metres
+ *     varint  accuracy in whole metres, rounded up
+ * </pre>
+ * Varints are unsigned LEB128; svarints are zigzag-encoded first, so small deltas of either
+ * sign take one byte. A fix a second after the previous one, a few metres away, costs six to
+ * eight bytes. Time is sent in seconds and altitude and accuracy in metres because that is what
+ * the webservice has always stored; positions keep the same 1e-7 degree resolution as
+ * {@link LocationHistoryStore}.
+ *
+ * An encoder reuses its buffer between batches and is not thread safe.
+ */
+public final class BinaryFixCodec {
+    public static final int VERSION = 1;
+    public static final String CONTENT_TYPE = "application/vnd.zombieapp.fixes";
+
+    static final int FLAG_STRING_UID = 1;
+
+    private static final byte MAGIC_0 = 'Z';
+    private static final byte MAGIC_1 = 'F';
+    private static final int HEADER_BYTES = 4;
+    /** Upper bound of one fix: three 64-bit and two 32-bit varints. */
+    private static final int MAX_FIX_BYTES = 3 * 10 + 2 * 5;
+
+    /**
+     * A decoded batch.
+     */
+    public static final class Batch {
+        private final String mUid;
+        private final List<LocationFix> mFixes;
+
+        Batch(String uid, List<LocationFix> fixes) {
+            mUid = uid;
+            mFixes = Collections.unmodifiableList(fixes);
+        }
+
+        public String getUid() {
+            return mUid;
+        }
+
+        public List<LocationFix> getFixes() {
+            return mFixes;
+        }
+    }
+
+    private final byte[] mUidBytes;
+    private final boolean mUuid;
+    private byte[] mBuffer = new byte[256];
+    private int mLength;
+
+    public BinaryFixCodec(String uid) {
+        byte[] uuid = uuidBytes(uid);
+        mUuid = uuid != null;
+        mUidBytes = mUuid ? uuid : utf8(uid);
+    }
+
+    /**
+     * Encodes {@code batch} into this codec's buffer and returns the number of bytes written,
+     * which are valid in {@link #getBuffer()} until the next call.
+     */
+    public int encode(List<LocationFix> batch) {
+        int size = batch.size();
+        mLength = 0;
+        ensure(HEADER_BYTES + 5 + mUidBytes.length + 5 + size * MAX_FIX_BYTES);
+        byte[] buf = mBuffer;
+        int pos = 0;
+        buf[pos++] = MAGIC_0;
+        buf[pos++] = MAGIC_1;
+        buf[pos++] = (byte) VERSION;
+        buf[pos++] = (byte) (mUuid ? 0 : FLAG_STRING_UID);
+        if (!mUuid) {
+            pos = writeVarint(buf, pos, mUidBytes.length);
+        }
+        System.arraycopy(mUidBytes, 0, buf, pos, mUidBytes.length);
+        pos += mUidBytes.length;
+        pos = writeVarint(buf, pos, size);
+
+        long lastSeconds = 0;
+        long lastLat = 0;
+        long lastLng = 0;
+        long lastAlt = 0;
+        for (int i = 0; i < size; i++) {
+            LocationFix fix = batch.get(i);
+            long seconds = fix.getTime() / 1000L;
+            long lat = Math.round(fix.getLatitude() * 1e7);
+            long lng = Math.round(fix.getLongitude() * 1e7);
+            long alt = Math.round(fix.getAltitude());
+            pos = writeVarint(buf, pos, zigzag(seconds - lastSeconds));
+            pos = writeVarint(buf, pos, zigzag(lat - lastLat));
+            pos = writeVarint(buf, pos, zigzag(lng - lastLng));
+            pos = writeVarint(buf, pos, zigzag(alt - lastAlt));
+            pos = writeVarint(buf, pos, quantizeAccuracy(fix.getAccuracy()));
+            lastSeconds = seconds;
+            lastLat = lat;
+            lastLng = lng;
+            lastAlt = alt;
+        }
+        mLength = pos;
+        return pos;
+    }
+
+    /**
+     * The buffer the last {@link #encode(List)} wrote to.
+     */
+    public byte[] getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Number of bytes the last {@link #encode(List)} wrote.
+     */
+    public int getLength() {
+        return mLength;
+    }
+
+    /**
+     * Decodes a body written by {@link #encode(List)}; the backend's reading, for tests and
+     * tools. Fixes come back at the transmitted precision.
+     *
+     * @throws IOException if the body is truncated, malformed or of another version.
+     */
+    public static Batch decode(byte[] body, int offset, int length) throws IOException {
+        Reader in = new Reader(body, offset, offset + length);
+        if (in.readByte() != MAGIC_0 || in.readByte() != MAGIC_1) {
+            throw new IOException("Not a fix batch");
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported fix batch version " + version);
+        }
+        int flags = in.readByte();
+        String uid;
+        if ((flags & FLAG_STRING_UID) != 0) {
+            int uidLength = (int) in.readVarint();
+            uid = new String(in.readBytes(uidLength), "UTF-8");
+        } else {
+            byte[] raw = in.readBytes(16);
+            uid = new UUID(readLong(raw, 0), readLong(raw, 8)).toString();
+        }
+        long count = in.readVarint();
+        if (count > length) {
+            throw new IOException("Fix batch claims " + count + " fixes in " + length + " bytes");
+        }
+        List<LocationFix> fixes = new ArrayList<LocationFix>((int) count);
+        long seconds = 0;
+        long lat = 0;
+        long lng = 0;
+        long alt = 0;
+        for (int i = 0; i < count; i++) {
+            seconds += unzigzag(in.readVarint());
+            lat += unzigzag(in.readVarint());
+            lng += unzigzag(in.readVarint());
+            alt += unzigzag(in.readVarint());
+            long accuracy = in.readVarint();
+            fixes.add(new LocationFix(lat / 1e7, lng / 1e7, alt, accuracy, seconds * 1000L));
+        }
+        if (in.mPos != in.mEnd) {
+            throw new IOException("Fix batch has " + (in.mEnd - in.mPos) + " trailing bytes");
+        }
+        return new Batch(uid, fixes);
+    }
+
+    static long quantizeAccuracy(float accuracy) {
+        return accuracy > 0 ? (long) Math.ceil(accuracy) : 0;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int writeVarint(byte[] buf, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+
+    private void ensure(int capacity) {
+        if (mBuffer.length < capacity) {
+            mBuffer = new byte[Math.max(capacity, mBuffer.length * 2)];
+        }
+    }
+
+    /**
+     * The 16 bytes of {@code uid} if it is a UUID in canonical form, otherwise null.
+     */
+    private static byte[] uuidBytes(String uid) {
+        if (uid.length() != 36) {
+            return null;
+        }
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(uid);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!uuid.toString().equals(uid)) {
+            return null;
+        }
+        byte[] bytes = new byte[16];
+        writeLong(bytes, 0, uuid.getMostSignificantBits());
+        writeLong(bytes, 8, uuid.getLeastSignificantBits());
+        return bytes;
+    }
+
+    private static void writeLong(byte[] buf, int pos, long value) {
+        for (int i = 7; i >= 0; i--) {
+            buf[pos + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long readLong(byte[] buf, int pos) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buf[pos + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] mBuf;
+        private final int mEnd;
+        private int mPos;
+
+        Reader(byte[] buf, int pos, int end) {
+            mBuf = buf;
+            mPos = pos;
+            mEnd = end;
+        }
+
+        int readByte() throws IOException {
+            if (mPos >= mEnd) {
+                throw new IOException("Fix batch is truncated");
+            }
+            return mBuf[mPos++] & 0xFF;
+        }
+
+        byte[] readBytes(int n) throws IOException {
+            if (n < 0 || mEnd - mPos < n) {
+                throw new IOException("Fix batch is truncated");
+            }
+            byte[] bytes = new byte[n];
+            System.arraycopy(mBuf, mPos, bytes, 0, n);
+            mPos += n;
+            return bytes;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in fix batch");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+/**
+ * The uid this device reports as, resolved once: its string form, as the webservice and the
+ * screen show it, and the 128-bit value {@link UidIndex} and {@link InfectedUidFilter} look
+ * uids up by.
+ *
+ * {@link Holder} keeps the identity of a process; after the first resolution reading it is a
+ * single volatile read, with no lock, hashing or I/O.
+ */
+public final class DeviceIdentity {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_INSTALLATION_FILE_BYTES = 256;
+
+    /**
+     * Works out the identity the first time a {@link Holder} is read.
+     */
+    public interface Resolver {
+        DeviceIdentity resolve() throws IOException;
+    }
+
+    /**
+     * Resolves an identity at most once and then hands it out lock-free.
+     */
+    public static final class Holder {
+        private volatile DeviceIdentity mIdentity;
+
+        /**
+         * Returns the identity, resolving it with {@code resolver} if this is the first call.
+         * Concurrent first callers wait for one resolution. If it fails the next call tries
+         * again.
+         */
+        public DeviceIdentity get(Resolver resolver) throws IOException {
+            DeviceIdentity identity = mIdentity;
+            if (identity != null) {
+                return identity;
+            }
+            synchronized (this) {
+                if (mIdentity == null) {
+                    mIdentity = resolver.resolve();
+                }
+                return mIdentity;
+            }
+        }
+
+        /**
+         * The identity if it has been resolved, otherwise null.
+         */
+        public DeviceIdentity peek() {
+            return mIdentity;
+        }
+    }
+
+    private final long mHigh;
+    private final long mLow;
+    private final String mString;
+
+    private DeviceIdentity(long high, long low, String string) {
+        mHigh = high;
+        mLow = low;
+        mString = string;
+    }
+
+    /**
+     * The identity whose string form is {@code uid}. A uid that is not a canonical UUID keeps its
+     * string, and its 128-bit value is the one {@link UidIndex} derives for it.
+     */
+    public static DeviceIdentity of(String uid) {
+        return new DeviceIdentity(UidIndex.mostSignificantBits(uid),
+                UidIndex.leastSignificantBits(uid), uid);
+    }
+
+    /**
+     * The name-based UUID of a hardware or platform id, such as a serial number.
+     */
+    public static DeviceIdentity fromHardwareId(String id) {
+        UUID uuid = UUID.nameUUIDFromBytes(id.getBytes(UTF_8));
+        return new DeviceIdentity(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(),
+                uuid.toString());
+    }
+
+    /**
+     * The random installation id kept in {@code file}, which is created with a new one if it
+     * does not exist yet.
+     */
+    public static DeviceIdentity fromInstallationFile(File file) throws IOException {
+        if (!file.exists()) {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(UUID.randomUUID().toString().getBytes(UTF_8));
+            } finally {
+                out.close();
+            }
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[MAX_INSTALLATION_FILE_BYTES];
+            int length = 0;
+            int n;
+            while (length < buffer.length
+                    && (n = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += n;
+            }
+            return of(new String(buffer, 0, length, UTF_8));
+        } finally {
+            in.close();
+        }
+    }
+
+    public long getMostSignificantBits() {
+        return mHigh;
+    }
+
+    public long getLeastSignificantBits() {
+        return mLow;
+    }
+
+    /**
+     * The uid as the webservice knows it.
+     */
+    @Override
+    public String toString() {
+        return mString;
+    }
+}
@@ -0,0 +1,433 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Compares the device's own fixes, as they arrive, against the infected bumps, and flags an
+ * exposure once the device has spent long enough near one bump within a sliding time window.
+ *
+ * Each fix is one radius query on the bumps' {@link SpatialGridIndex}, and every bump it finds
+ * is a contact. A contact is credited with the time since the previous contact with the same
+ * bump, capped at {@link #MAX_CREDIT_MILLIS}, so sparse fixes do not count as hours of contact;
+ * the first contact with a bump counts for nothing. Contacts are kept in a queue in time order
+ * and leave it once they are older than the window, taking their credit with them. A bump whose
+ * credit within the window reaches the minimum contact time is flagged once, and not again until
+ * it has had no contact for a whole window.
+ *
+ * Encounters are keyed on a bump's coordinates rather than its row, so they carry over when the
+ * index is replaced by one built from a refreshed table: a bump that is still listed at the same
+ * place keeps its contact time, and one that is gone simply gets no further contacts.
+ *
+ * The cost of a fix is the radius query plus the contacts it adds and evicts, so it does not grow
+ * with the length of the history. State is kept in primitive arrays indexed through an
+ * open-addressing table, and nothing is allocated per fix except for a flagged exposure and the
+ * occasional growth of an array.
+ *
+ * Not thread safe; feed it from one thread.
+ */
+public final class ExposureEngine {
+    /**
+     * About the accuracy of a GPS fix outdoors.
+     */
+    public static final double DEFAULT_RADIUS_METERS = 25;
+    public static final long DEFAULT_WINDOW_MILLIS = 30 * 60 * 1000;
+    public static final long DEFAULT_MIN_CONTACT_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Most time one contact is credited with; the interval the sampling policy uses when the
+     * device has settled, since a settled device reports no more often than that.
+     */
+    public static final long MAX_CREDIT_MILLIS = 2 * 60 * 1000;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Receives exposures as they are flagged.
+     */
+    public interface Listener {
+        void onExposure(Exposure exposure);
+    }
+
+    /**
+     * Enough time spent near one infected bump.
+     */
+    public static final class Exposure {
+        private final int mRow;
+        private final double mLatitude;
+        private final double mLongitude;
+        private final long mFirstContactTime;
+        private final long mTime;
+        private final long mContactMillis;
+        private final double mMinDistanceMeters;
+
+        Exposure(int row, double latitude, double longitude, long firstContactTime, long time,
+                 long contactMillis, double minDistanceMeters) {
+            mRow = row;
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mFirstContactTime = firstContactTime;
+            mTime = time;
+            mContactMillis = contactMillis;
+            mMinDistanceMeters = minDistanceMeters;
+        }
+
+        /**
+         * The bump's row in the arrays the index in use when it was flagged was built from.
+         */
+        public int getRow() {
+            return mRow;
+        }
+
+        public double getLatitude() {
+            return mLatitude;
+        }
+
+        public double getLongitude() {
+            return mLongitude;
+        }
+
+        /**
+         * Time of the first contact with the bump in this encounter.
+         */
+        public long getFirstContactTime() {
+            return mFirstContactTime;
+        }
+
+        /**
+         * Time of the fix that completed the minimum contact time.
+         */
+        public long getTime() {
+            return mTime;
+        }
+
+        /**
+         * Contact time credited within the window when the exposure was flagged.
+         */
+        public long getContactMillis() {
+            return mContactMillis;
+        }
+
+        /**
+         * Closest the device came to the bump during the encounter, up to the flagging fix.
+         */
+        public double getMinDistanceMeters() {
+            return mMinDistanceMeters;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Exposure{row=%d, %.1fs of contact, closest %.1fm}",
+                    mRow, mContactMillis / 1000.0, mMinDistanceMeters);
+        }
+    }
+
+    private final double mRadius;
+    private final long mWindowMillis;
+    private final long mMinContactMillis;
+    private final Listener mListener;
+    private SpatialGridIndex mIndex;
+
+    // Open-addressing table from bump coordinates to encounter slot, hashed on the coordinates
+    // stored in the slot; an entry is slot + 1, 0 is empty.
+    private int[] mKeys = new int[INITIAL_CAPACITY];
+    private int mActive;
+
+    // One encounter per bump with contacts in the window, by slot.
+    private double[] mBumpLat = new double[INITIAL_CAPACITY];
+    private double[] mBumpLng = new double[INITIAL_CAPACITY];
+    private long[] mFirstContact = new long[INITIAL_CAPACITY];
+    private long[] mLastContact = new long[INITIAL_CAPACITY];
+    private long[] mCredited = new long[INITIAL_CAPACITY];
+    private int[] mContacts = new int[INITIAL_CAPACITY];
+    private double[] mMinDistance = new double[INITIAL_CAPACITY];
+    private boolean[] mFlagged = new boolean[INITIAL_CAPACITY];
+    private int[] mFreeSlots = new int[INITIAL_CAPACITY];
+    private int mFreeCount;
+    private int mSlotCount;
+
+    // Contacts in the window, oldest first, in a ring.
+    private int[] mQueueSlot = new int[INITIAL_CAPACITY];
+    private long[] mQueueTime = new long[INITIAL_CAPACITY];
+    private long[] mQueueCredit = new long[INITIAL_CAPACITY];
+    private int mQueueHead;
+    private int mQueueSize;
+
+    private boolean mHasFix;
+    private long mLastTime;
+    private double mFixLat;
+    private double mFixLng;
+    private int mFlaggedByFix;
+
+    private long mFixCount;
+    private long mStaleCount;
+    private long mContactCount;
+    private long mExposureCount;
+
+    private final SpatialGridIndex.Visitor mVisitor = new SpatialGridIndex.Visitor() {
+        @Override
+        public boolean visit(int row, double latitude, double longitude) {
+            contact(row, latitude, longitude);
+            return true;
+        }
+    };
+
+    public ExposureEngine(Listener listener) {
+        this(DEFAULT_RADIUS_METERS, DEFAULT_WINDOW_MILLIS, DEFAULT_MIN_CONTACT_MILLIS, listener);
+    }
+
+    public ExposureEngine(double radiusMeters, long windowMillis, long minContactMillis,
+                          Listener listener) {
+        if (!(radiusMeters >= 0) || minContactMillis <= 0 || windowMillis < minContactMillis) {
+            throw new IllegalArgumentException("Invalid radius " + radiusMeters + ", window "
+                    + windowMillis + " or minimum contact " + minContactMillis);
+        }
+        mRadius = radiusMeters;
+        mWindowMillis = windowMillis;
+        mMinContactMillis = minContactMillis;
+        mListener = listener;
+    }
+
+    /**
+     * Sets the infected bumps to compare against; null if none are known. The encounters in
+     * progress are kept and go on with whichever of their bumps the new index still has.
+     */
+    public void setInfectedIndex(SpatialGridIndex index) {
+        mIndex = index;
+    }
+
+    /**
+     * Takes the next fix and returns the number of exposures it flagged, each of which has been
+     * passed to the listener. A fix no newer than the previous one is ignored.
+     */
+    public int onFix(LocationFix fix) {
+        long time = fix.getTime();
+        if (mHasFix && time <= mLastTime) {
+            mStaleCount++;
+            return 0;
+        }
+        mHasFix = true;
+        mLastTime = time;
+        mFixCount++;
+        evictBefore(time - mWindowMillis);
+        if (mIndex == null) {
+            return 0;
+        }
+        mFixLat = fix.getLatitude();
+        mFixLng = fix.getLongitude();
+        mFlaggedByFix = 0;
+        mIndex.queryRadius(mFixLat, mFixLng, mRadius, mVisitor);
+        return mFlaggedByFix;
+    }
+
+    public long getFixCount() {
+        return mFixCount;
+    }
+
+    public long getStaleCount() {
+        return mStaleCount;
+    }
+
+    /**
+     * Number of fix and bump pairs found within the radius.
+     */
+    public long getContactCount() {
+        return mContactCount;
+    }
+
+    public long getExposureCount() {
+        return mExposureCount;
+    }
+
+    /**
+     * Number of bumps with contacts in the current window.
+     */
+    public int getActiveEncounterCount() {
+        return mActive;
+    }
+
+    private void contact(int row, double latitude, double longitude) {
+        mContactCount++;
+        long credit = 0;
+        // -0.0 and 0.0 compare equal but hash apart.
+        latitude += 0.0;
+        longitude += 0.0;
+        int slot = find(latitude, longitude);
+        if (slot < 0) {
+            slot = open(latitude, longitude);
+            mFirstContact[slot] = mLastTime;
+        } else {
+            credit = Math.min(mLastTime - mLastContact[slot], MAX_CREDIT_MILLIS);
+        }
+        mLastContact[slot] = mLastTime;
+        mCredited[slot] += credit;
+        mContacts[slot]++;
+        double distance = SpatialGridIndex.distanceMeters(mFixLat, mFixLng, latitude, longitude);
+        if (distance < mMinDistance[slot]) {
+            mMinDistance[slot] = distance;
+        }
+        enqueue(slot, credit);
+
+        if (!mFlagged[slot] && mCredited[slot] >= mMinContactMillis) {
+            mFlagged[slot] = true;
+            mExposureCount++;
+            mFlaggedByFix++;
+            if (mListener != null) {
+                mListener.onExposure(new Exposure(row, latitude, longitude, mFirstContact[slot],
+                        mLastTime, mCredited[slot], mMinDistance[slot]));
+            }
+        }
+    }
+
+    private void evictBefore(long cutoff) {
+        while (mQueueSize > 0 && mQueueTime[mQueueHead] < cutoff) {
+            int slot = mQueueSlot[mQueueHead];
+            mCredited[slot] -= mQueueCredit[mQueueHead];
+            if (--mContacts[slot] == 0) {
+                close(slot);
+            }
+            mQueueHead = (mQueueHead + 1) & (mQueueSlot.length - 1);
+            mQueueSize--;
+        }
+    }
+
+    private void enqueue(int slot, long credit) {
+        if (mQueueSize == mQueueSlot.length) {
+            int capacity = mQueueSlot.length * 2;
+            mQueueSlot = unwrap(mQueueSlot, capacity);
+            mQueueTime = unwrap(mQueueTime, capacity);
+            mQueueCredit = unwrap(mQueueCredit, capacity);
+            mQueueHead = 0;
+        }
+        int tail = (mQueueHead + mQueueSize) & (mQueueSlot.length - 1);
+        mQueueSlot[tail] = slot;
+        mQueueTime[tail] = mLastTime;
+        mQueueCredit[tail] = credit;
+        mQueueSize++;
+    }
+
+    private int[] unwrap(int[] ring, int capacity) {
+        int[] grown = new int[capacity];
+        int first = Math.min(mQueueSize, ring.length - mQueueHead);
+        System.arraycopy(ring, mQueueHead, grown, 0, first);
+        System.arraycopy(ring, 0, grown, first, mQueueSize - first);
+        return grown;
+    }
+
+    private long[] unwrap(long[] ring, int capacity) {
+        long[] grown = new long[capacity];
+        int first = Math.min(mQueueSize, ring.length - mQueueHead);
+        System.arraycopy(ring, mQueueHead, grown, 0, first);
+        System.arraycopy(ring, 0, grown, first, mQueueSize - first);
+        return grown;
+    }
+
+    /**
+     * Starts an encounter with the bump at {@code latitude}, {@code longitude} and returns its
+     * slot. A slot is only reused once no queued contact refers to it.
+     */
+    private int open(double latitude, double longitude) {
+        int slot;
+        if (mFreeCount > 0) {
+            slot = mFreeSlots[--mFreeCount];
+        } else {
+            if (mSlotCount == mFirstContact.length) {
+                int capacity = mSlotCount * 2;
+                mBumpLat = Arrays.copyOf(mBumpLat, capacity);
+                mBumpLng = Arrays.copyOf(mBumpLng, capacity);
+                mFirstContact = Arrays.copyOf(mFirstContact, capacity);
+                mLastContact = Arrays.copyOf(mLastContact, capacity);
+                mCredited = Arrays.copyOf(mCredited, capacity);
+                mContacts = Arrays.copyOf(mContacts, capacity);
+                mMinDistance = Arrays.copyOf(mMinDistance, capacity);
+                mFlagged = Arrays.copyOf(mFlagged, capacity);
+                mFreeSlots = new int[capacity];
+            }
+            slot = mSlotCount++;
+        }
+        mBumpLat[slot] = latitude;
+        mBumpLng[slot] = longitude;
+        mCredited[slot] = 0;
+        mContacts[slot] = 0;
+        mMinDistance[slot] = Double.POSITIVE_INFINITY;
+        mFlagged[slot] = false;
+
+        if (2 * (mActive + 1) > mKeys.length) {
+            rehash(mKeys.length * 2);
+        }
+        int mask = mKeys.length - 1;
+        int i = hash(latitude, longitude) & mask;
+        while (mKeys[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        mKeys[i] = slot + 1;
+        mActive++;
+        return slot;
+    }
+
+    /**
+     * Ends the encounter in {@code slot}, whose contacts have all left the window.
+     */
+    private void close(int slot) {
+        mFreeSlots[mFreeCount++] = slot;
+        int mask = mKeys.length - 1;
+        int hole = hashOf(slot) & mask;
+        while (mKeys[hole] != slot + 1) {
+            hole = (hole + 1) & mask;
+        }
+        // Shifts back any later key of the probe run that may no longer be reachable.
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            if (mKeys[i] == 0) {
+                break;
+            }
+            int home = hashOf(mKeys[i] - 1) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                mKeys[hole] = mKeys[i];
+                hole = i;
+            }
+        }
+        mKeys[hole] = 0;
+        mActive--;
+    }
+
+    private int find(double latitude, double longitude) {
+        int mask = mKeys.length - 1;
+        int i = hash(latitude, longitude) & mask;
+        int key;
+        while ((key = mKeys[i]) != 0) {
+            int slot = key - 1;
+            if (mBumpLat[slot] == latitude && mBumpLng[slot] == longitude) {
+                return slot;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        int[] keys = mKeys;
+        mKeys = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < keys.length; j++) {
+            if (keys[j] != 0) {
+                int i = hashOf(keys[j] - 1) & mask;
+                while (mKeys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                mKeys[i] = keys[j];
+            }
+        }
+    }
+
+    private int hashOf(int slot) {
+        return hash(mBumpLat[slot], mBumpLng[slot]);
+    }
+
+    private static int hash(double latitude, double longitude) {
+        long bits = Double.doubleToLongBits(latitude) * 31 + Double.doubleToLongBits(longitude);
+        int h = (int) (bits ^ (bits >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
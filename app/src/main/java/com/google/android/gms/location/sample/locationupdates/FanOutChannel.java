@@ -0,0 +1,194 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Publishes items from one producer thread to any number of subscribers, each on its own
+ * executor.
+ *
+ * Every subscription has a bounded ring of pending items, so a slow subscriber never blocks the
+ * producer or the other subscribers. When a ring is full the subscription's {@link Overflow}
+ * decides which item is lost, and the loss is counted. Publishing takes no lock: it writes the
+ * item into each ring and, if the subscriber is idle, schedules one drain task on its executor.
+ * A drain delivers items in publish order, one at a time, and hands the executor back after
+ * {@link #DRAIN_BATCH} items so a busy channel cannot starve it.
+ *
+ * {@link #publish(Object)} must always be called from the same thread. Subscribing and
+ * cancelling are safe from any thread.
+ */
+public final class FanOutChannel<T> {
+    static final int DRAIN_BATCH = 64;
+
+    /**
+     * What a full subscription does with the next item.
+     */
+    public enum Overflow {
+        /** Discard the oldest pending item; for subscribers that only care about recent ones. */
+        DROP_OLDEST,
+        /** Discard the new item; for subscribers that must see a gap-free prefix. */
+        DROP_NEWEST
+    }
+
+    /**
+     * Receives published items on the executor it was subscribed with.
+     */
+    public interface Subscriber<T> {
+        void onItem(T item);
+    }
+
+    /**
+     * One subscriber's ring of pending items. The producer appends at the tail; the drain task
+     * removes at the head, and so does the producer when dropping the oldest item, so the head
+     * only moves by compare-and-set.
+     */
+    public static final class Subscription<T> implements Runnable {
+        private final FanOutChannel<T> mChannel;
+        private final Subscriber<T> mSubscriber;
+        private final Executor mExecutor;
+        private final Overflow mOverflow;
+        private final int mCapacity;
+        private final AtomicReferenceArray<T> mSlots;
+        private final AtomicLong mHead = new AtomicLong();
+        private final AtomicLong mTail = new AtomicLong();
+        private final AtomicBoolean mScheduled = new AtomicBoolean();
+        private final AtomicLong mDropped = new AtomicLong();
+        private final AtomicLong mDelivered = new AtomicLong();
+        private volatile boolean mCancelled;
+
+        Subscription(FanOutChannel<T> channel, Subscriber<T> subscriber, Executor executor,
+                     int capacity, Overflow overflow) {
+            mChannel = channel;
+            mSubscriber = subscriber;
+            mExecutor = executor;
+            mCapacity = capacity;
+            mOverflow = overflow;
+            mSlots = new AtomicReferenceArray<T>(capacity);
+        }
+
+        /**
+         * Stops delivery. Items still pending are discarded; an item being delivered finishes.
+         */
+        public void cancel() {
+            mCancelled = true;
+            mChannel.mSubscriptions.remove(this);
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Number of items lost because this subscription was full.
+         */
+        public long getDroppedCount() {
+            return mDropped.get();
+        }
+
+        public long getDeliveredCount() {
+            return mDelivered.get();
+        }
+
+        /**
+         * Number of items published to this subscription and not yet delivered.
+         */
+        public int getPendingCount() {
+            return (int) (mTail.get() - mHead.get());
+        }
+
+        void offer(T item) {
+            long tail = mTail.get();
+            long head = mHead.get();
+            if (tail - head == mCapacity) {
+                if (mOverflow == Overflow.DROP_NEWEST) {
+                    mDropped.incrementAndGet();
+                    return;
+                }
+                // If the drain took the oldest item first, there is room anyway.
+                if (mHead.compareAndSet(head, head + 1)) {
+                    mDropped.incrementAndGet();
+                }
+            }
+            mSlots.set((int) (tail % mCapacity), item);
+            mTail.lazySet(tail + 1);
+            schedule();
+        }
+
+        private T poll() {
+            while (true) {
+                long head = mHead.get();
+                if (head == mTail.get()) {
+                    return null;
+                }
+                T item = mSlots.get((int) (head % mCapacity));
+                if (mHead.compareAndSet(head, head + 1)) {
+                    return item;
+                }
+            }
+        }
+
+        private void schedule() {
+            if (!mCancelled && mScheduled.compareAndSet(false, true)) {
+                try {
+                    mExecutor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    mScheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < DRAIN_BATCH && !mCancelled; i++) {
+                T item = poll();
+                if (item == null) {
+                    break;
+                }
+                mDelivered.incrementAndGet();
+                mSubscriber.onItem(item);
+            }
+            mScheduled.set(false);
+            // An item published after the last poll found nothing would otherwise wait for the
+            // next publish.
+            if (mHead.get() != mTail.get()) {
+                schedule();
+            }
+        }
+    }
+
+    private final CopyOnWriteArrayList<Subscription<T>> mSubscriptions =
+            new CopyOnWriteArrayList<Subscription<T>>();
+
+    /**
+     * Delivers every item published from now on to {@code subscriber} on {@code executor}.
+     *
+     * @param capacity number of undelivered items held before {@code overflow} applies.
+     */
+    public Subscription<T> subscribe(Subscriber<T> subscriber, Executor executor, int capacity,
+                                     Overflow overflow) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        Subscription<T> subscription =
+                new Subscription<T>(this, subscriber, executor, capacity, overflow);
+        mSubscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Hands {@code item} to every current subscriber.
+     */
+    public void publish(T item) {
+        for (Subscription<T> subscription : mSubscriptions) {
+            subscription.offer(item);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return mSubscriptions.size();
+    }
+}
@@ -0,0 +1,245 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+/**
+ * Merges the fix streams of several location providers into one.
+ *
+ * A provider's own stream is passed through, except for repeats of a fix it already gave. A fix
+ * from a different provider than the last accepted one is dropped if it adds nothing:
+ * <ul>
+ * <li>it is within the merge window of the last fix and not strictly more accurate, so both
+ * describe the same moment; or</li>
+ * <li>it is dominated: the last fix, with its uncertainty grown by the assumed speed over the
+ * time since, is still more accurate than the new one. A 40 m network fix ten seconds after a
+ * 5 m GPS fix is dropped; the same fix a minute later is kept.</li>
+ * </ul>
+ * Fixes no newer than the last accepted one are dropped too, so what comes out is in time order.
+ *
+ * With smoothing on, accepted fixes also go through a Kalman filter on latitude and longitude
+ * that assumes the device stays put with a position uncertainty growing at the assumed speed.
+ * The output carries the filtered position and its standard deviation as the accuracy. A fix
+ * too far from the filtered position to be explained by the two uncertainties restarts the
+ * filter, so a device that starts moving fast is not dragged behind.
+ *
+ * Not thread safe; a pipeline feeds it from the provider callback thread.
+ */
+public final class FixFusion {
+    /**
+     * Fixes from different providers this close together describe the same moment.
+     */
+    public static final long MERGE_WINDOW_MILLIS = 2000;
+
+    /**
+     * Walking pace with some margin. Faster movement is followed by restarting the filter.
+     */
+    public static final float DEFAULT_SPEED_METERS_PER_SECOND = 3f;
+
+    /**
+     * Innovations beyond this many standard deviations restart the filter.
+     */
+    static final double RESET_SIGMAS = 3;
+
+    /**
+     * Platforms report an accuracy of 0 when they have none; treat it as this.
+     */
+    private static final float MIN_ACCURACY_METERS = 1f;
+
+    private final long mMergeWindowMillis;
+    private final double mSpeed;
+    private final boolean mSmooth;
+
+    // Last time seen from each provider. There are only ever a few, so a linear scan over
+    // parallel arrays beats boxing a time per fix into a map.
+    private String[] mSources = new String[4];
+    private long[] mSourceTimes = new long[4];
+    private int mSourceCount;
+
+    private int mLastSource = -1;
+    private long mLastTime;
+    private float mLastAccuracy;
+
+    private double mLatitude;
+    private double mLongitude;
+    private double mVariance;
+
+    private long mReceived;
+    private long mAccepted;
+    private long mRepeated;
+    private long mStale;
+    private long mMerged;
+    private long mDominated;
+    private long mResets;
+
+    /**
+     * Fusion with the default merge window and speed, and smoothing as given.
+     */
+    public FixFusion(boolean smooth) {
+        this(MERGE_WINDOW_MILLIS, DEFAULT_SPEED_METERS_PER_SECOND, smooth);
+    }
+
+    /**
+     * @param speedMetersPerSecond how fast a fix is assumed to lose accuracy as it ages.
+     */
+    public FixFusion(long mergeWindowMillis, float speedMetersPerSecond, boolean smooth) {
+        if (mergeWindowMillis < 0 || !(speedMetersPerSecond > 0)) {
+            throw new IllegalArgumentException("Invalid window " + mergeWindowMillis
+                    + " or speed " + speedMetersPerSecond);
+        }
+        mMergeWindowMillis = mergeWindowMillis;
+        mSpeed = speedMetersPerSecond;
+        mSmooth = smooth;
+    }
+
+    /**
+     * Takes one fix from {@code source} and returns the fix to publish, or null if it was
+     * dropped. Without smoothing the returned fix is {@code fix} itself.
+     */
+    public LocationFix accept(String source, LocationFix fix) {
+        mReceived++;
+        long time = fix.getTime();
+        int index = indexOf(source);
+        if (index < 0) {
+            index = addSource(source);
+        } else if (time <= mSourceTimes[index]) {
+            mRepeated++;
+            return null;
+        }
+        mSourceTimes[index] = time;
+
+        float accuracy = Math.max(MIN_ACCURACY_METERS, fix.getAccuracy());
+        if (mLastSource >= 0) {
+            long elapsed = time - mLastTime;
+            if (elapsed <= 0) {
+                mStale++;
+                return null;
+            }
+            if (index != mLastSource) {
+                if (elapsed < mMergeWindowMillis && !(accuracy < mLastAccuracy)) {
+                    mMerged++;
+                    return null;
+                }
+                if (mLastAccuracy + mSpeed * elapsed / 1000.0 <= accuracy) {
+                    mDominated++;
+                    return null;
+                }
+            }
+        }
+
+        mAccepted++;
+        if (!mSmooth) {
+            remember(index, time, accuracy);
+            return fix;
+        }
+        filter(fix.getLatitude(), fix.getLongitude(), accuracy, time);
+        remember(index, time, accuracy);
+        return new LocationFix(mLatitude, mLongitude, fix.getAltitude(),
+                (float) Math.sqrt(mVariance), time);
+    }
+
+    private void filter(double latitude, double longitude, float accuracy, long time) {
+        double measured = (double) accuracy * accuracy;
+        if (mLastSource < 0) {
+            reset(latitude, longitude, measured);
+            return;
+        }
+        double seconds = (time - mLastTime) / 1000.0;
+        double predicted = mVariance + seconds * mSpeed * mSpeed;
+        double innovation = SpatialGridIndex.distanceMeters(mLatitude, mLongitude,
+                latitude, longitude);
+        if (innovation > RESET_SIGMAS * Math.sqrt(predicted + measured)) {
+            mResets++;
+            reset(latitude, longitude, measured);
+            return;
+        }
+        double gain = predicted / (predicted + measured);
+        mLatitude += gain * (latitude - mLatitude);
+        mLongitude += gain * (longitude - mLongitude);
+        mVariance = (1 - gain) * predicted;
+    }
+
+    private void reset(double latitude, double longitude, double variance) {
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mVariance = variance;
+    }
+
+    private void remember(int source, long time, float accuracy) {
+        mLastSource = source;
+        mLastTime = time;
+        mLastAccuracy = accuracy;
+    }
+
+    private int indexOf(String source) {
+        for (int i = 0; i < mSourceCount; i++) {
+            if (mSources[i] == source || mSources[i].equals(source)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int addSource(String source) {
+        if (mSourceCount == mSources.length) {
+            String[] sources = new String[mSourceCount * 2];
+            long[] times = new long[mSourceCount * 2];
+            System.arraycopy(mSources, 0, sources, 0, mSourceCount);
+            System.arraycopy(mSourceTimes, 0, times, 0, mSourceCount);
+            mSources = sources;
+            mSourceTimes = times;
+        }
+        mSources[mSourceCount] = source;
+        return mSourceCount++;
+    }
+
+    public boolean isSmoothing() {
+        return mSmooth;
+    }
+
+    /**
+     * Number of fixes handed in by providers.
+     */
+    public long getReceivedCount() {
+        return mReceived;
+    }
+
+    /**
+     * Number of fixes returned for publishing.
+     */
+    public long getAcceptedCount() {
+        return mAccepted;
+    }
+
+    /**
+     * Number of fixes a provider gave again, or gave out of its own order.
+     */
+    public long getRepeatedCount() {
+        return mRepeated;
+    }
+
+    /**
+     * Number of fixes no newer than the last accepted one.
+     */
+    public long getStaleCount() {
+        return mStale;
+    }
+
+    /**
+     * Number of fixes dropped as another provider's view of a moment already published.
+     */
+    public long getMergedCount() {
+        return mMerged;
+    }
+
+    /**
+     * Number of fixes dropped because a recent fix was still more accurate.
+     */
+    public long getDominatedCount() {
+        return mDominated;
+    }
+
+    /**
+     * Number of times the filter restarted at a fix it could not explain.
+     */
+    public long getResetCount() {
+        return mResets;
+    }
+}
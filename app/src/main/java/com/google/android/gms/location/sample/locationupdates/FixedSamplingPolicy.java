@@ -0,0 +1,29 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+/**
+ * Always asks for the same request, whatever the device does.
+ */
+public final class FixedSamplingPolicy implements SamplingPolicy {
+    /**
+     * What MyService used to request from both the GPS and network providers.
+     */
+    public static final FixedSamplingPolicy LEGACY_SERVICE = new FixedSamplingPolicy(
+            new SamplingRequest(1000, 1000, 10, SamplingRequest.Priority.HIGH_ACCURACY));
+
+    /**
+     * What MainActivity used to request from the fused provider.
+     */
+    public static final FixedSamplingPolicy LEGACY_ACTIVITY = new FixedSamplingPolicy(
+            new SamplingRequest(10000, 5000, 0, SamplingRequest.Priority.HIGH_ACCURACY));
+
+    private final SamplingRequest mRequest;
+
+    public FixedSamplingPolicy(SamplingRequest request) {
+        mRequest = request;
+    }
+
+    @Override
+    public SamplingRequest choose(MotionState motion) {
+        return mRequest;
+    }
+}
@@ -0,0 +1,37 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+/**
+ * Decides when buffered location fixes are sent to the webservice. A batch is flushed as soon as
+ * it holds {@code maxBatchSize} fixes, or {@code maxDelayMillis} after its first fix was buffered,
+ * whichever comes first.
+ */
+public final class FlushPolicy {
+    /**
+     * Default policy for the background service: at most one request every 30 seconds while
+     * fixes arrive at 1 Hz per provider.
+     */
+    public static final FlushPolicy DEFAULT = new FlushPolicy(50, 30000);
+
+    private final int mMaxBatchSize;
+    private final long mMaxDelayMillis;
+
+    public FlushPolicy(int maxBatchSize, long maxDelayMillis) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        if (maxDelayMillis < 0) {
+            throw new IllegalArgumentException("maxDelayMillis must not be negative: "
+                    + maxDelayMillis);
+        }
+        mMaxBatchSize = maxBatchSize;
+        mMaxDelayMillis = maxDelayMillis;
+    }
+
+    public int getMaxBatchSize() {
+        return mMaxBatchSize;
+    }
+
+    public long getMaxDelayMillis() {
+        return mMaxDelayMillis;
+    }
+}
@@ -0,0 +1,80 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Posts batches of fixes to the webservice as one request.
+ *
+ * The body is the {@link BinaryFixCodec} encoding of the batch: the uid once, then each fix as
+ * a few bytes of deltas from the previous one. Its content type and header let the batch
+ * endpoint tell it apart from the gzip-compressed form-encoded rows it used to receive. Requests
+ * go through an {@link UploadClient}, so consecutive batches share one connection.
+ */
+public class HttpLocationBatchSender implements LocationBatchSender {
+    public static final String BATCH_URL = "http://cs.furman.edu/~wstewart/webservice_batch.php";
+
+    private final UploadClient mClient;
+    // Only used on the uploader's worker thread.
+    private final BinaryFixCodec mCodec;
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    public HttpLocationBatchSender(URL url, String uid) {
+        this(new UploadClient(url), uid);
+    }
+
+    public HttpLocationBatchSender(UploadClient client, String uid) {
+        mClient = client;
+        mCodec = new BinaryFixCodec(uid);
+    }
+
+    @Override
+    public void send(List<LocationFix> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int length = mCodec.encode(batch);
+        try {
+            mClient.post(mCodec.getBuffer(), length, BinaryFixCodec.CONTENT_TYPE);
+        } catch (UploadClient.HttpStatusException e) {
+            if (isPermanent(e.getStatusCode())) {
+                throw new RejectedException("Batch of " + batch.size() + " fixes rejected", e);
+            }
+            throw e;
+        }
+        mRequestCount.incrementAndGet();
+        mBytesSent.addAndGet(length);
+    }
+
+    /**
+     * A 4xx answer means the request itself is wrong, except for a request timeout or rate
+     * limiting, which are worth retrying.
+     */
+    static boolean isPermanent(int statusCode) {
+        return statusCode >= 400 && statusCode < 500 && statusCode != 408 && statusCode != 429;
+    }
+
+    /**
+     * Number of batches the backend has accepted.
+     */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Body bytes of all accepted batches.
+     */
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    /**
+     * The client batches are posted with, for its latency histogram.
+     */
+    public UploadClient getClient() {
+        return mClient;
+    }
+}
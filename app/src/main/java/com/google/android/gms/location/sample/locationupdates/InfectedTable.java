@@ -0,0 +1,200 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the rows of displayinfectedtable.php.
+ *
+ * Each row's uid is kept as the 128-bit value used by {@link UidIndex}, and the set of all uids
+ * is held in a {@link UidIndex} so {@link #containsUid(String)} is a constant-time,
+ * allocation-free probe. Rows without coordinates are kept for the uid lookup and have
+ * {@code NaN} latitude and longitude. Proximity queries go through {@link #getSpatialIndex()}.
+ */
+public final class InfectedTable {
+    public static final InfectedTable EMPTY = new Builder().build();
+
+    private final long[] mUidHigh;
+    private final long[] mUidLow;
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private final UidIndex mUids;
+    private volatile SpatialGridIndex mSpatialIndex;
+
+    private InfectedTable(long[] uidHigh, long[] uidLow, double[] latitudes, double[] longitudes,
+                          UidIndex uids) {
+        mUidHigh = uidHigh;
+        mUidLow = uidLow;
+        mLatitudes = latitudes;
+        mLongitudes = longitudes;
+        mUids = uids;
+    }
+
+    public int size() {
+        return mLatitudes.length;
+    }
+
+    public long getUidHigh(int row) {
+        return mUidHigh[row];
+    }
+
+    public long getUidLow(int row) {
+        return mUidLow[row];
+    }
+
+    public double getLatitude(int row) {
+        return mLatitudes[row];
+    }
+
+    public double getLongitude(int row) {
+        return mLongitudes[row];
+    }
+
+    public boolean hasCoordinates(int row) {
+        return !Double.isNaN(mLatitudes[row]) && !Double.isNaN(mLongitudes[row]);
+    }
+
+    public boolean containsUid(String uid) {
+        return mUids.contains(uid);
+    }
+
+    public boolean containsUid(long high, long low) {
+        return mUids.contains(high, low);
+    }
+
+    /**
+     * Spatial index over the rows that have coordinates, built on first use. Its query results
+     * are row numbers of this table.
+     */
+    public SpatialGridIndex getSpatialIndex() {
+        SpatialGridIndex index = mSpatialIndex;
+        if (index == null) {
+            // Building twice in a race is harmless; both results are equal.
+            index = SpatialGridIndex.build(mLatitudes, mLongitudes, mLatitudes.length);
+            mSpatialIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns a table with {@code delta} applied, leaving this one untouched. Surviving rows are
+     * copied column by column and the uid index is copied and patched, so nothing is re-parsed.
+     * Each removal drops one row with the same uid and coordinates; other rows of that uid stay.
+     */
+    public InfectedTable apply(InfectedTableDelta delta) {
+        if (delta.isEmpty()) {
+            return this;
+        }
+        int removed = delta.getRemovedCount();
+        int added = delta.getAddedCount();
+        // Rows still to drop, counted per identity; the uid set skips the lookup for most rows.
+        Map<InfectedTableDelta.RowKey, Integer> pending =
+                new HashMap<InfectedTableDelta.RowKey, Integer>();
+        UidIndex removedUids = new UidIndex(removed);
+        for (int i = 0; i < removed; i++) {
+            InfectedTableDelta.RowKey key = new InfectedTableDelta.RowKey(
+                    delta.getRemovedUidHigh(i), delta.getRemovedUidLow(i),
+                    delta.getRemovedLatitude(i), delta.getRemovedLongitude(i));
+            Integer count = pending.get(key);
+            pending.put(key, count == null ? 1 : count + 1);
+            removedUids.add(delta.getRemovedUidHigh(i), delta.getRemovedUidLow(i));
+        }
+
+        int capacity = size() + added;
+        long[] uidHigh = new long[capacity];
+        long[] uidLow = new long[capacity];
+        double[] latitudes = new double[capacity];
+        double[] longitudes = new double[capacity];
+        // Uids that lost a row but still have another one.
+        UidIndex remaining = new UidIndex(removed);
+        int count = 0;
+        for (int row = 0; row < size(); row++) {
+            long high = mUidHigh[row];
+            long low = mUidLow[row];
+            if (removedUids.contains(high, low)) {
+                InfectedTableDelta.RowKey key = new InfectedTableDelta.RowKey(high, low,
+                        mLatitudes[row], mLongitudes[row]);
+                Integer left = pending.get(key);
+                if (left != null) {
+                    if (left == 1) {
+                        pending.remove(key);
+                    } else {
+                        pending.put(key, left - 1);
+                    }
+                    continue;
+                }
+                remaining.add(high, low);
+            }
+            uidHigh[count] = high;
+            uidLow[count] = low;
+            latitudes[count] = mLatitudes[row];
+            longitudes[count] = mLongitudes[row];
+            count++;
+        }
+        UidIndex uids = mUids.copy();
+        for (int i = 0; i < added; i++) {
+            uidHigh[count] = delta.getAddedUidHigh(i);
+            uidLow[count] = delta.getAddedUidLow(i);
+            latitudes[count] = delta.getAddedLatitude(i);
+            longitudes[count] = delta.getAddedLongitude(i);
+            count++;
+            uids.add(delta.getAddedUidHigh(i), delta.getAddedUidLow(i));
+            remaining.add(delta.getAddedUidHigh(i), delta.getAddedUidLow(i));
+        }
+        for (int i = 0; i < removed; i++) {
+            if (!remaining.contains(delta.getRemovedUidHigh(i), delta.getRemovedUidLow(i))) {
+                uids.remove(delta.getRemovedUidHigh(i), delta.getRemovedUidLow(i));
+            }
+        }
+        return new InfectedTable(Arrays.copyOf(uidHigh, count), Arrays.copyOf(uidLow, count),
+                Arrays.copyOf(latitudes, count), Arrays.copyOf(longitudes, count), uids);
+    }
+
+    /**
+     * Collects parsed rows into a new table. Can be handed straight to
+     * {@link InfectedTableParser#parse}.
+     */
+    public static final class Builder implements InfectedTableParser.RowHandler {
+        private long[] mUidHigh = new long[16];
+        private long[] mUidLow = new long[16];
+        private double[] mLatitudes = new double[16];
+        private double[] mLongitudes = new double[16];
+        private int mSize;
+        private final UidIndex mUids = new UidIndex();
+
+        public Builder add(CharSequence uid, double latitude, double longitude) {
+            return add(UidIndex.mostSignificantBits(uid), UidIndex.leastSignificantBits(uid),
+                    latitude, longitude);
+        }
+
+        public Builder add(long uidHigh, long uidLow, double latitude, double longitude) {
+            if (mSize == mLatitudes.length) {
+                int capacity = mSize * 2;
+                mUidHigh = Arrays.copyOf(mUidHigh, capacity);
+                mUidLow = Arrays.copyOf(mUidLow, capacity);
+                mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+                mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+            }
+            mUidHigh[mSize] = uidHigh;
+            mUidLow[mSize] = uidLow;
+            mLatitudes[mSize] = latitude;
+            mLongitudes[mSize] = longitude;
+            mSize++;
+            mUids.add(uidHigh, uidLow);
+            return this;
+        }
+
+        @Override
+        public boolean onRow(InfectedTableParser.Row row) {
+            add(row.getUidChars(), row.getLatitude(), row.getLongitude());
+            return true;
+        }
+
+        public InfectedTable build() {
+            return new InfectedTable(Arrays.copyOf(mUidHigh, mSize), Arrays.copyOf(mUidLow, mSize),
+                    Arrays.copyOf(mLatitudes, mSize), Arrays.copyOf(mLongitudes, mSize),
+                    mUids.copy());
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The rows added to and removed from the infected table between two sequence numbers, as served
+ * by the delta endpoint.
+ *
+ * The table has one row per bump, so a uid usually has several rows. A row is identified by its
+ * uid and coordinates together. The body is UTF-8 text, one record per line, with tab-separated
+ * fields:
+ * <pre>
+ * delta    fromSequence    toSequence
+ * +        uid             longitude    latitude
+ * -        uid             longitude    latitude
+ * </pre>
+ * The header line comes first and the changes take effect in order: a {@code +} appends one row,
+ * and a {@code -} removes one row with that uid and those coordinates, cancelling an earlier
+ * {@code +} of the same row in this delta if there is one. A record with only a uid stands for a
+ * row without coordinates. Empty lines are ignored.
+ */
+public final class InfectedTableDelta {
+    private final long mFromSequence;
+    private final long mToSequence;
+    private final long[] mRemovedHigh;
+    private final long[] mRemovedLow;
+    private final double[] mRemovedLatitudes;
+    private final double[] mRemovedLongitudes;
+    private final long[] mAddedHigh;
+    private final long[] mAddedLow;
+    private final double[] mAddedLatitudes;
+    private final double[] mAddedLongitudes;
+
+    private InfectedTableDelta(long fromSequence, long toSequence, long[] removedHigh,
+                               long[] removedLow, double[] removedLatitudes,
+                               double[] removedLongitudes, long[] addedHigh, long[] addedLow,
+                               double[] addedLatitudes, double[] addedLongitudes) {
+        mFromSequence = fromSequence;
+        mToSequence = toSequence;
+        mRemovedHigh = removedHigh;
+        mRemovedLow = removedLow;
+        mRemovedLatitudes = removedLatitudes;
+        mRemovedLongitudes = removedLongitudes;
+        mAddedHigh = addedHigh;
+        mAddedLow = addedLow;
+        mAddedLatitudes = addedLatitudes;
+        mAddedLongitudes = addedLongitudes;
+    }
+
+    /**
+     * Reads a delta body.
+     *
+     * @throws IOException if the body cannot be read or is malformed.
+     */
+    public static InfectedTableDelta read(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        String header = reader.readLine();
+        String[] fields = header == null ? null : header.split("\t");
+        if (fields == null || fields.length != 3 || !fields[0].equals("delta")) {
+            throw new IOException("Missing delta header");
+        }
+        Builder builder = new Builder(parseSequence(fields[1]), parseSequence(fields[2]));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            fields = line.split("\t");
+            if (fields.length != 2 && fields.length != 4) {
+                throw new IOException("Malformed delta line: " + line);
+            }
+            double latitude = Double.NaN;
+            double longitude = Double.NaN;
+            if (fields.length == 4) {
+                latitude = parseCoordinate(fields[3], line);
+                longitude = parseCoordinate(fields[2], line);
+            }
+            if (fields[0].equals("+")) {
+                builder.add(fields[1], latitude, longitude);
+            } else if (fields[0].equals("-")) {
+                builder.remove(fields[1], latitude, longitude);
+            } else {
+                throw new IOException("Malformed delta line: " + line);
+            }
+        }
+        return builder.build();
+    }
+
+    public long getFromSequence() {
+        return mFromSequence;
+    }
+
+    public long getToSequence() {
+        return mToSequence;
+    }
+
+    public int getRemovedCount() {
+        return mRemovedHigh.length;
+    }
+
+    public int getAddedCount() {
+        return mAddedHigh.length;
+    }
+
+    public boolean isEmpty() {
+        return mRemovedHigh.length == 0 && mAddedHigh.length == 0;
+    }
+
+    long getRemovedUidHigh(int i) {
+        return mRemovedHigh[i];
+    }
+
+    long getRemovedUidLow(int i) {
+        return mRemovedLow[i];
+    }
+
+    double getRemovedLatitude(int i) {
+        return mRemovedLatitudes[i];
+    }
+
+    double getRemovedLongitude(int i) {
+        return mRemovedLongitudes[i];
+    }
+
+    long getAddedUidHigh(int i) {
+        return mAddedHigh[i];
+    }
+
+    long getAddedUidLow(int i) {
+        return mAddedLow[i];
+    }
+
+    double getAddedLatitude(int i) {
+        return mAddedLatitudes[i];
+    }
+
+    double getAddedLongitude(int i) {
+        return mAddedLongitudes[i];
+    }
+
+    private static long parseSequence(String text) throws IOException {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad delta sequence: " + text);
+        }
+    }
+
+    private static double parseCoordinate(String text, String line) throws IOException {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed delta line: " + line);
+        }
+    }
+
+    /**
+     * Identifies a row by its uid and coordinates. Coordinates compare by their bits, so rows
+     * without coordinates match each other.
+     */
+    static final class RowKey {
+        private final long mHigh;
+        private final long mLow;
+        private final long mLatitudeBits;
+        private final long mLongitudeBits;
+
+        RowKey(long high, long low, double latitude, double longitude) {
+            mHigh = high;
+            mLow = low;
+            // -0.0 and 0.0 are the same place.
+            mLatitudeBits = Double.doubleToLongBits(latitude + 0.0);
+            mLongitudeBits = Double.doubleToLongBits(longitude + 0.0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RowKey)) {
+                return false;
+            }
+            RowKey other = (RowKey) o;
+            return mHigh == other.mHigh && mLow == other.mLow
+                    && mLatitudeBits == other.mLatitudeBits
+                    && mLongitudeBits == other.mLongitudeBits;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = mHigh * 31 + mLow;
+            h = h * 31 + mLatitudeBits;
+            h = h * 31 + mLongitudeBits;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /**
+     * Collects the changes of one delta. Mostly useful for tests and stand-in servers.
+     */
+    public static final class Builder {
+        private final long mFromSequence;
+        private final long mToSequence;
+        private long[] mRemovedHigh = new long[8];
+        private long[] mRemovedLow = new long[8];
+        private double[] mRemovedLatitudes = new double[8];
+        private double[] mRemovedLongitudes = new double[8];
+        private int mRemovedCount;
+        private long[] mAddedHigh = new long[8];
+        private long[] mAddedLow = new long[8];
+        private double[] mAddedLatitudes = new double[8];
+        private double[] mAddedLongitudes = new double[8];
+        private int mAddedCount;
+
+        // Additions a later removal cancelled; dropped when the delta is built.
+        private boolean[] mCancelled = new boolean[8];
+        private int mCancelledCount;
+
+        // The newest live addition of each row, and for every addition the live one of the same
+        // row before it, or -1. A removal cancels the newest, so each chain only loses its head.
+        private final Map<RowKey, Integer> mNewestAdded = new HashMap<RowKey, Integer>();
+        private int[] mPreviousAdded = new int[8];
+
+        public Builder(long fromSequence, long toSequence) {
+            mFromSequence = fromSequence;
+            mToSequence = toSequence;
+        }
+
+        /**
+         * Adds a row for {@code uid} at the given coordinates, which are NaN for a row without
+         * any.
+         */
+        public Builder add(CharSequence uid, double latitude, double longitude) {
+            long high = UidIndex.mostSignificantBits(uid);
+            long low = UidIndex.leastSignificantBits(uid);
+            if (mAddedCount == mAddedHigh.length) {
+                int capacity = mAddedCount * 2;
+                mAddedHigh = Arrays.copyOf(mAddedHigh, capacity);
+                mAddedLow = Arrays.copyOf(mAddedLow, capacity);
+                mAddedLatitudes = Arrays.copyOf(mAddedLatitudes, capacity);
+                mAddedLongitudes = Arrays.copyOf(mAddedLongitudes, capacity);
+                mCancelled = Arrays.copyOf(mCancelled, capacity);
+                mPreviousAdded = Arrays.copyOf(mPreviousAdded, capacity);
+            }
+            Integer previous = mNewestAdded.put(new RowKey(high, low, latitude, longitude),
+                    mAddedCount);
+            mPreviousAdded[mAddedCount] = previous == null ? -1 : previous;
+            mAddedHigh[mAddedCount] = high;
+            mAddedLow[mAddedCount] = low;
+            mAddedLatitudes[mAddedCount] = latitude;
+            mAddedLongitudes[mAddedCount] = longitude;
+            mAddedCount++;
+            return this;
+        }
+
+        /**
+         * Removes one row of {@code uid} at the given coordinates: the latest one added by this
+         * delta if any, otherwise one of the table's.
+         */
+        public Builder remove(CharSequence uid, double latitude, double longitude) {
+            long high = UidIndex.mostSignificantBits(uid);
+            long low = UidIndex.leastSignificantBits(uid);
+            RowKey key = new RowKey(high, low, latitude, longitude);
+            Integer added = mNewestAdded.remove(key);
+            if (added != null) {
+                mCancelled[added] = true;
+                mCancelledCount++;
+                if (mPreviousAdded[added] >= 0) {
+                    mNewestAdded.put(key, mPreviousAdded[added]);
+                }
+                return this;
+            }
+            if (mRemovedCount == mRemovedHigh.length) {
+                int capacity = mRemovedCount * 2;
+                mRemovedHigh = Arrays.copyOf(mRemovedHigh, capacity);
+                mRemovedLow = Arrays.copyOf(mRemovedLow, capacity);
+                mRemovedLatitudes = Arrays.copyOf(mRemovedLatitudes, capacity);
+                mRemovedLongitudes = Arrays.copyOf(mRemovedLongitudes, capacity);
+            }
+            mRemovedHigh[mRemovedCount] = high;
+            mRemovedLow[mRemovedCount] = low;
+            mRemovedLatitudes[mRemovedCount] = latitude;
+            mRemovedLongitudes[mRemovedCount] = longitude;
+            mRemovedCount++;
+            return this;
+        }
+
+        public InfectedTableDelta build() {
+            int added = mAddedCount - mCancelledCount;
+            long[] addedHigh = new long[added];
+            long[] addedLow = new long[added];
+            double[] addedLatitudes = new double[added];
+            double[] addedLongitudes = new double[added];
+            int kept = 0;
+            for (int i = 0; i < mAddedCount; i++) {
+                if (!mCancelled[i]) {
+                    addedHigh[kept] = mAddedHigh[i];
+                    addedLow[kept] = mAddedLow[i];
+                    addedLatitudes[kept] = mAddedLatitudes[i];
+                    addedLongitudes[kept] = mAddedLongitudes[i];
+                    kept++;
+                }
+            }
+            return new InfectedTableDelta(mFromSequence, mToSequence,
+                    Arrays.copyOf(mRemovedHigh, mRemovedCount),
+                    Arrays.copyOf(mRemovedLow, mRemovedCount),
+                    Arrays.copyOf(mRemovedLatitudes, mRemovedCount),
+                    Arrays.copyOf(mRemovedLongitudes, mRemovedCount),
+                    addedHigh, addedLow, addedLatitudes, addedLongitudes);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Single-pass parser for the HTML table served by displayinfectedtable.php.
+ *
+ * The page holds rows of the form
+ * {@code <tr><td>uid</td><td>longitude</td><td>latitude</td>...</tr>}. The parser reads the
+ * stream through a fixed buffer and reports each row to a {@link RowHandler} as soon as its
+ * closing tag is seen. Cell text is collected into reusable buffers and the coordinates are
+ * parsed in place, so no intermediate strings are built for the page, the rows or the cells.
+ *
+ * A parser instance may be reused but is not thread-safe.
+ */
+public class InfectedTableParser {
+    private static final int READ_BUFFER_BYTES = 8 * 1024;
+    private static final int MAX_TAG_NAME = 8;
+    private static final int MAX_NUMBER_CHARS = 32;
+
+    private static final int TAG_OTHER = 0;
+    private static final int TAG_TR_OPEN = 1;
+    private static final int TAG_TR_CLOSE = 2;
+    private static final int TAG_TD_OPEN = 3;
+    private static final int TAG_TD_CLOSE = 4;
+
+    /**
+     * Receives the rows of the table in document order.
+     */
+    public interface RowHandler {
+        /**
+         * @param row the current row; only valid for the duration of the call.
+         * @return false to stop parsing.
+         */
+        boolean onRow(Row row);
+    }
+
+    /**
+     * A reusable view of the row being reported. Coordinates are {@code NaN} when the cell is
+     * missing or not a number.
+     */
+    public static final class Row {
+        private char[] mUid = new char[64];
+        private int mUidLength;
+        private int mCellCount;
+        private double mLongitude;
+        private double mLatitude;
+        private final CharSequence mUidView = new CharSequence() {
+            @Override
+            public int length() {
+                return mUidLength;
+            }
+
+            @Override
+            public char charAt(int index) {
+                return mUid[index];
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return new String(mUid, start, end - start);
+            }
+
+            @Override
+            public String toString() {
+                return getUid();
+            }
+        };
+
+        public int getCellCount() {
+            return mCellCount;
+        }
+
+        public double getLongitude() {
+            return mLongitude;
+        }
+
+        public double getLatitude() {
+            return mLatitude;
+        }
+
+        public boolean hasCoordinates() {
+            return !Double.isNaN(mLongitude) && !Double.isNaN(mLatitude);
+        }
+
+        /**
+         * Compares the uid cell to {@code uid} without allocating.
+         */
+        public boolean uidEquals(String uid) {
+            if (uid == null || uid.length() != mUidLength) {
+                return false;
+            }
+            for (int i = 0; i < mUidLength; i++) {
+                if (mUid[i] != uid.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * A view of the uid cell that reads the row's buffer directly; only valid until the
+         * next row.
+         */
+        public CharSequence getUidChars() {
+            return mUidView;
+        }
+
+        /**
+         * Copies the uid cell into a new string.
+         */
+        public String getUid() {
+            return new String(mUid, 0, mUidLength);
+        }
+
+        private void reset() {
+            mUidLength = 0;
+            mCellCount = 0;
+            mLongitude = Double.NaN;
+            mLatitude = Double.NaN;
+        }
+
+        private void appendUid(char c) {
+            if (mUidLength == mUid.length) {
+                char[] grown = new char[mUid.length * 2];
+                System.arraycopy(mUid, 0, grown, 0, mUidLength);
+                mUid = grown;
+            }
+            mUid[mUidLength++] = c;
+        }
+    }
+
+    private final byte[] mReadBuffer = new byte[READ_BUFFER_BYTES];
+    private final char[] mTag = new char[MAX_TAG_NAME];
+    private final char[] mNumber = new char[MAX_NUMBER_CHARS];
+    private final Row mRow = new Row();
+
+    /**
+     * Parses the whole of {@code in}, or until the handler asks to stop. Does not close the
+     * stream.
+     *
+     * @return number of rows reported.
+     */
+    public int parse(InputStream in, RowHandler handler) throws IOException {
+        final Row row = mRow;
+        row.reset();
+        boolean inTag = false;
+        boolean tagNameDone = false;
+        int tagLength = 0;
+        boolean inRow = false;
+        boolean inCell = false;
+        int numberLength = 0;
+        int rows = 0;
+
+        int n;
+        while ((n = in.read(mReadBuffer)) != -1) {
+            for (int i = 0; i < n; i++) {
+                char c = (char) (mReadBuffer[i] & 0xff);
+                if (inTag) {
+                    if (c == '>') {
+                        inTag = false;
+                        int tag = classifyTag(tagLength);
+                        if (tag == TAG_TR_OPEN) {
+                            row.reset();
+                            inRow = true;
+                            inCell = false;
+                        } else if (tag == TAG_TD_OPEN && inRow) {
+                            inCell = true;
+                            numberLength = 0;
+                        } else if (tag == TAG_TD_CLOSE && inCell) {
+                            inCell = false;
+                            if (row.mCellCount == 1) {
+                                row.mLongitude = parseNumber(mNumber, numberLength);
+                            } else if (row.mCellCount == 2) {
+                                row.mLatitude = parseNumber(mNumber, numberLength);
+                            }
+                            row.mCellCount++;
+                        } else if (tag == TAG_TR_CLOSE && inRow) {
+                            inRow = false;
+                            inCell = false;
+                            if (row.mCellCount > 0) {
+                                rows++;
+                                if (!handler.onRow(row)) {
+                                    return rows;
+                                }
+                            }
+                        }
+                    } else if (!tagNameDone) {
+                        if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                            tagNameDone = tagLength > 0;
+                        } else if (tagLength < MAX_TAG_NAME) {
+                            mTag[tagLength++] = Character.toLowerCase(c);
+                        } else {
+                            tagNameDone = true;
+                            tagLength = 0;
+                        }
+                    }
+                } else if (c == '<') {
+                    inTag = true;
+                    tagNameDone = false;
+                    tagLength = 0;
+                } else if (inCell) {
+                    if (row.mCellCount == 0) {
+                        row.appendUid(c);
+                    } else if (row.mCellCount <= 2) {
+                        if (numberLength < MAX_NUMBER_CHARS) {
+                            mNumber[numberLength] = c;
+                        }
+                        numberLength++;
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    private int classifyTag(int length) {
+        char[] t = mTag;
+        if (length == 2 && t[0] == 't') {
+            return t[1] == 'r' ? TAG_TR_OPEN : t[1] == 'd' ? TAG_TD_OPEN : TAG_OTHER;
+        }
+        if (length == 3 && t[0] == '/' && t[1] == 't') {
+            return t[2] == 'r' ? TAG_TR_CLOSE : t[2] == 'd' ? TAG_TD_CLOSE : TAG_OTHER;
+        }
+        return TAG_OTHER;
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Parses a decimal number from {@code chars}. Plain decimals with up to 15 significant digits,
+     * which covers coordinates as the server prints them, are converted exactly without
+     * allocating; anything else falls back to {@link Double#parseDouble(String)}.
+     *
+     * @return the value, or {@code NaN} if the text is not a number.
+     */
+    static double parseNumber(char[] chars, int length) {
+        if (length > chars.length) {
+            // Longer than any coordinate the server prints.
+            return Double.NaN;
+        }
+        int start = 0;
+        int end = length;
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return Double.NaN;
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (chars[i] == '-' || chars[i] == '+') {
+            negative = chars[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDot = false;
+        boolean seenDigit = false;
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (mantissa == 0 && c == '0') {
+                    if (seenDot) {
+                        fractionDigits++;
+                    }
+                    continue;
+                }
+                if (++digits > 15) {
+                    return parseSlow(chars, start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenDot) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                // Exponents, infinities and anything unexpected.
+                return parseSlow(chars, start, end);
+            }
+        }
+        if (!seenDigit) {
+            return Double.NaN;
+        }
+        if (fractionDigits >= POWERS_OF_TEN.length) {
+            return parseSlow(chars, start, end);
+        }
+        // Both operands are exact doubles, so one IEEE division rounds correctly.
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private static double parseSlow(char[] chars, int start, int end) {
+        try {
+            return Double.parseDouble(new String(chars, start, end - start));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Fetches displayinfectedtable.php and shares the parsed {@link InfectedTable} between all of its
+ * readers.
+ *
+ * A snapshot is reused for {@code ttlMillis} after it was fetched or revalidated. After that the
+ * next {@link #get()} makes a conditional request with the ETag and Last-Modified validators of
+ * the current snapshot, so an unchanged table costs a 304 rather than a download. Concurrent
+ * callers wait for the single request in flight instead of starting their own. Refreshes are
+ * serialized on a lock of their own, so {@link #peek()} and the counters never wait for the
+ * network and are safe to call from the main thread.
+ *
+ * When the full table response carries an {@value #SEQUENCE_HEADER} header and a delta URL is
+ * configured, later refreshes ask the delta endpoint for {@code since=<sequence>} and apply the
+ * returned {@link InfectedTableDelta} to the snapshot instead of downloading the whole table.
+ * A delta that does not start at the sequence held locally, a 404 or 410 answer, or a body that
+ * cannot be read all fall back to a full resync.
+ *
+ * How long each request takes to answer, and how long each body takes to read and parse, are
+ * recorded in {@link #getFetchLatency()} and {@link #getParseLatency()}.
+ */
+public class InfectedTableRepository {
+    public static final String TABLE_URL =
+            "http://cs.furman.edu/~wstewart/displayinfectedtable.php";
+    public static final String DELTA_URL =
+            "http://cs.furman.edu/~wstewart/infectedtabledelta.php";
+    public static final String SEQUENCE_HEADER = "X-Table-Sequence";
+    public static final long DEFAULT_TTL_MILLIS = 60000;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    private static InfectedTableRepository sDefault;
+
+    private final URL mUrl;
+    private final URL mDeltaUrl;
+    private final long mTtlNanos;
+    private final InfectedTableParser mParser = new InfectedTableParser();
+    private final LatencyHistogram mFetchLatency = new LatencyHistogram();
+    private final LatencyHistogram mParseLatency = new LatencyHistogram();
+
+    // Held for the whole of get(), network I/O included. Everything below except the expiry
+    // that invalidate() moves is written only with it held; the volatile fields are also read
+    // without it.
+    private final Object mRefreshLock = new Object();
+
+    private volatile InfectedTable mSnapshot;
+    private volatile long mValidatedAtNanos;
+    private String mETag;
+    private String mLastModified;
+    private long mSequence = -1;
+    private volatile int mNetworkFetches;
+    private volatile int mFullSyncs;
+    private volatile int mDeltaSyncs;
+    private volatile long mBytesReceived;
+    private volatile long mLastSyncBytes;
+    private volatile long mLastFullSyncBytes;
+
+    public InfectedTableRepository(URL url, long ttlMillis) {
+        this(url, null, ttlMillis);
+    }
+
+    /**
+     * @param deltaUrl the delta endpoint, or null to always download the full table.
+     */
+    public InfectedTableRepository(URL url, URL deltaUrl, long ttlMillis) {
+        mUrl = url;
+        mDeltaUrl = deltaUrl;
+        mTtlNanos = ttlMillis * 1000000L;
+    }
+
+    /**
+     * The process-wide repository for {@link #TABLE_URL}.
+     */
+    public static synchronized InfectedTableRepository getDefault() {
+        if (sDefault == null) {
+            try {
+                sDefault = new InfectedTableRepository(new URL(TABLE_URL), new URL(DELTA_URL),
+                        DEFAULT_TTL_MILLIS);
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return sDefault;
+    }
+
+    /**
+     * Returns the current snapshot, fetching or revalidating it first if it has expired. If the
+     * refresh fails but an older snapshot exists, the older snapshot is returned and the next
+     * call tries again.
+     *
+     * @throws IOException if there is no snapshot yet and the fetch failed.
+     */
+    public InfectedTable get() throws IOException {
+        synchronized (mRefreshLock) {
+            if (mSnapshot != null && System.nanoTime() - mValidatedAtNanos < mTtlNanos) {
+                return mSnapshot;
+            }
+            try {
+                refresh();
+            } catch (IOException e) {
+                if (mSnapshot == null) {
+                    throw e;
+                }
+            }
+            return mSnapshot;
+        }
+    }
+
+    /**
+     * Returns the last snapshot without touching the network, or null if there is none.
+     */
+    public InfectedTable peek() {
+        return mSnapshot;
+    }
+
+    /**
+     * Makes the next {@link #get()} revalidate the snapshot regardless of its age.
+     */
+    public void invalidate() {
+        mValidatedAtNanos = System.nanoTime() - mTtlNanos;
+    }
+
+    /**
+     * Number of requests made so far, including ones answered with 304 Not Modified.
+     */
+    public int getNetworkFetchCount() {
+        return mNetworkFetches;
+    }
+
+    /**
+     * Number of times the whole table was downloaded.
+     */
+    public int getFullSyncCount() {
+        return mFullSyncs;
+    }
+
+    /**
+     * Number of times a delta was applied instead of downloading the table.
+     */
+    public int getDeltaSyncCount() {
+        return mDeltaSyncs;
+    }
+
+    /**
+     * Response body bytes read over all syncs.
+     */
+    public long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    /**
+     * Response body bytes read by the most recent sync, full or delta.
+     */
+    public long getLastSyncBytes() {
+        return mLastSyncBytes;
+    }
+
+    /**
+     * Body size of the most recent full download, i.e. what every refresh would cost without
+     * deltas.
+     */
+    public long getLastFullSyncBytes() {
+        return mLastFullSyncBytes;
+    }
+
+    /**
+     * Time from opening each request to its response status, 304s included.
+     */
+    public LatencyHistogram getFetchLatency() {
+        return mFetchLatency;
+    }
+
+    /**
+     * Time to read and parse each table or delta body that was downloaded.
+     */
+    public LatencyHistogram getParseLatency() {
+        return mParseLatency;
+    }
+
+    private void refresh() throws IOException {
+        if (mSnapshot != null && mDeltaUrl != null && mSequence >= 0) {
+            if (syncDelta()) {
+                return;
+            }
+            // The snapshot may be behind the server's current sequence even if the table
+            // content still matches its validators, so resync unconditionally.
+            syncFull(false);
+            return;
+        }
+        syncFull(true);
+    }
+
+    /**
+     * @return false if the delta could not be applied and a full resync is needed.
+     */
+    private boolean syncDelta() throws IOException {
+        String query = (mDeltaUrl.getQuery() == null ? "?" : "&") + "since=" + mSequence;
+        HttpURLConnection conn =
+                (HttpURLConnection) new URL(mDeltaUrl.toString() + query).openConnection();
+        try {
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+            mNetworkFetches++;
+            long start = System.nanoTime();
+            int code = conn.getResponseCode();
+            mFetchLatency.recordNanos(System.nanoTime() - start);
+            if (code == HttpURLConnection.HTTP_GONE || code == HttpURLConnection.HTTP_NOT_FOUND) {
+                return false;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Infected table delta request failed with HTTP " + code);
+            }
+
+            InfectedTableDelta delta;
+            long parseStart = System.nanoTime();
+            CountingInputStream in = new CountingInputStream(conn.getInputStream());
+            try {
+                delta = InfectedTableDelta.read(in);
+            } catch (IOException e) {
+                return false;
+            } finally {
+                in.close();
+                recordBytes(in.getCount());
+                mParseLatency.recordNanos(System.nanoTime() - parseStart);
+            }
+            if (delta.getFromSequence() != mSequence) {
+                // Changes between our sequence and the delta's start are missing.
+                return false;
+            }
+            mSnapshot = mSnapshot.apply(delta);
+            mSequence = delta.getToSequence();
+            mDeltaSyncs++;
+            mValidatedAtNanos = System.nanoTime();
+            return true;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private void syncFull(boolean conditional) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) mUrl.openConnection();
+        try {
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+            if (conditional && mSnapshot != null) {
+                if (mETag != null) {
+                    conn.setRequestProperty("If-None-Match", mETag);
+                }
+                if (mLastModified != null) {
+                    conn.setRequestProperty("If-Modified-Since", mLastModified);
+                }
+            }
+            mNetworkFetches++;
+            long start = System.nanoTime();
+            int code = conn.getResponseCode();
+            mFetchLatency.recordNanos(System.nanoTime() - start);
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && mSnapshot != null) {
+                mValidatedAtNanos = System.nanoTime();
+                return;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Infected table request failed with HTTP " + code);
+            }
+
+            InfectedTable.Builder builder = new InfectedTable.Builder();
+            long parseStart = System.nanoTime();
+            CountingInputStream in = new CountingInputStream(conn.getInputStream());
+            try {
+                mParser.parse(in, builder);
+            } finally {
+                in.close();
+                recordBytes(in.getCount());
+            }
+            mSnapshot = builder.build();
+            mParseLatency.recordNanos(System.nanoTime() - parseStart);
+            mETag = conn.getHeaderField("ETag");
+            mLastModified = conn.getHeaderField("Last-Modified");
+            mSequence = parseSequence(conn.getHeaderField(SEQUENCE_HEADER));
+            mFullSyncs++;
+            mLastFullSyncBytes = in.getCount();
+            mValidatedAtNanos = System.nanoTime();
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private void recordBytes(long bytes) {
+        mBytesReceived += bytes;
+        mLastSyncBytes = bytes;
+    }
+
+    private static long parseSequence(String header) {
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                mCount += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
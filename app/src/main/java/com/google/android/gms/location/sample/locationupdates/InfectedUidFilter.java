@@ -0,0 +1,245 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Bloom filter over the uids of the infected table: answers "might this uid be infected?" in a
+ * few bytes per uid instead of the whole table with everyone's coordinates. A negative answer
+ * is certain; a positive one is wrong with the false-positive rate the filter was built for, so
+ * callers confirm it with the server.
+ *
+ * Uids are reduced to the same 128-bit value {@link UidIndex} stores. That value is hashed to
+ * two 64-bit values {@code h1 = fmix64(high ^ fmix64(low))} and
+ * {@code h2 = fmix64(h1 ^ 0x9e3779b97f4a7c15) | 1}, where fmix64 is the MurmurHash3 finaliser,
+ * and probe {@code i} of {@code k} sets bit {@code ((h1 + i * h2) >>> 32) * bits >>> 32}.
+ * The server builds the digest the same way.
+ *
+ * <pre>
+ *   byte[2] magic "ZB"
+ *   byte    version, {@link #VERSION}
+ *   byte    number of probes k
+ *   int     number of bits
+ *   int     number of uids added
+ *   long[]  the bits, ceil(bits / 64) words, bit j in word j / 64 at position j % 64
+ * </pre>
+ * All integers are big-endian. Immutable once built, so lookups may happen on any thread.
+ */
+public final class InfectedUidFilter {
+    public static final int VERSION = 1;
+    public static final String CONTENT_TYPE = "application/vnd.zombieapp.uidfilter";
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.001;
+
+    private static final byte MAGIC_0 = 'Z';
+    private static final byte MAGIC_1 = 'B';
+    private static final int MAX_PROBES = 30;
+    private static final int HEADER_BYTES = 12;
+
+    /**
+     * 16 MiB of bits, enough for about nine million uids at the default false-positive rate.
+     * Bounds what a corrupt or hostile header can make {@link #read} allocate.
+     */
+    static final int MAX_BITS = 1 << 27;
+    private static final long SECOND_HASH_SEED = 0x9e3779b97f4a7c15L;
+
+    private final long[] mWords;
+    private final int mBits;
+    private final int mProbes;
+    private final int mCount;
+
+    private InfectedUidFilter(long[] words, int bits, int probes, int count) {
+        mWords = words;
+        mBits = bits;
+        mProbes = probes;
+        mCount = count;
+    }
+
+    /**
+     * False if {@code uid} is certainly not in the set; true if it probably is.
+     */
+    public boolean mightContain(CharSequence uid) {
+        return mightContain(UidIndex.mostSignificantBits(uid),
+                UidIndex.leastSignificantBits(uid));
+    }
+
+    public boolean mightContain(long high, long low) {
+        long h1 = fmix64(high ^ fmix64(low));
+        long h2 = fmix64(h1 ^ SECOND_HASH_SEED) | 1;
+        long bits = mBits;
+        long[] words = mWords;
+        long hash = h1;
+        for (int i = 0; i < mProbes; i++) {
+            int bit = (int) (((hash >>> 32) * bits) >>> 32);
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+            hash += h2;
+        }
+        return true;
+    }
+
+    /**
+     * Number of uids the filter was built from.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    public int getBitCount() {
+        return mBits;
+    }
+
+    public int getProbeCount() {
+        return mProbes;
+    }
+
+    /**
+     * Length of the serialized filter in bytes.
+     */
+    public int getSerializedBytes() {
+        return HEADER_BYTES + 8 * mWords.length;
+    }
+
+    /**
+     * False-positive rate expected from the filter's size, probes and contents.
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) mProbes * mCount / mBits), mProbes);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeByte(MAGIC_0);
+        data.writeByte(MAGIC_1);
+        data.writeByte(VERSION);
+        data.writeByte(mProbes);
+        data.writeInt(mBits);
+        data.writeInt(mCount);
+        for (long word : mWords) {
+            data.writeLong(word);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(OutputStream)}.
+     *
+     * @throws IOException if the stream does not hold a complete filter of this version.
+     */
+    public static InfectedUidFilter read(InputStream in) throws IOException {
+        return read(in, -1);
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(OutputStream)} that is known to take
+     * {@code length} bytes, such as a response with that Content-Length. A header announcing a
+     * different size is rejected before anything is allocated for the bits.
+     *
+     * @param length the filter's size in bytes, or -1 if unknown.
+     * @throws IOException if the stream does not hold a complete filter of this version.
+     */
+    public static InfectedUidFilter read(InputStream in, long length) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readByte() != MAGIC_0 || data.readByte() != MAGIC_1) {
+            throw new IOException("Not a uid filter");
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported uid filter version " + version);
+        }
+        int probes = data.readUnsignedByte();
+        int bits = data.readInt();
+        int count = data.readInt();
+        if (probes < 1 || probes > MAX_PROBES || bits < 1 || bits > MAX_BITS || count < 0) {
+            throw new IOException("Bad uid filter header: " + probes + " probes, " + bits
+                    + " bits, " + count + " uids");
+        }
+        if (length >= 0 && length != HEADER_BYTES + 8L * wordsFor(bits)) {
+            throw new IOException("Uid filter of " + bits + " bits does not take " + length
+                    + " bytes");
+        }
+        long[] words = new long[wordsFor(bits)];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = data.readLong();
+        }
+        return new InfectedUidFilter(words, bits, probes, count);
+    }
+
+    private static int wordsFor(int bits) {
+        return (int) ((bits + 63L) >>> 6);
+    }
+
+    private static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Sizes a filter for an expected number of uids and false-positive rate, and collects them.
+     * Adding more uids than expected still works, at a higher false-positive rate.
+     */
+    public static final class Builder implements InfectedTableParser.RowHandler {
+        private final long[] mWords;
+        private final int mBits;
+        private final int mProbes;
+        private int mCount;
+
+        public Builder(int expectedUids) {
+            this(expectedUids, DEFAULT_FALSE_POSITIVE_RATE);
+        }
+
+        public Builder(int expectedUids, double falsePositiveRate) {
+            if (expectedUids < 0 || !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+                throw new IllegalArgumentException("Invalid size " + expectedUids
+                        + " or false-positive rate " + falsePositiveRate);
+            }
+            // The optimal sizes: m = -n ln p / (ln 2)^2 bits and k = m / n ln 2 probes.
+            double n = Math.max(1, expectedUids);
+            double ln2 = Math.log(2);
+            double bits = Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2));
+            if (bits > MAX_BITS) {
+                throw new IllegalArgumentException("Filter of " + bits + " bits is too large");
+            }
+            mBits = Math.max(64, (int) bits);
+            mProbes = (int) Math.max(1, Math.min(MAX_PROBES, Math.round(mBits / n * ln2)));
+            mWords = new long[wordsFor(mBits)];
+        }
+
+        public Builder add(CharSequence uid) {
+            return add(UidIndex.mostSignificantBits(uid), UidIndex.leastSignificantBits(uid));
+        }
+
+        public Builder add(long high, long low) {
+            long h1 = fmix64(high ^ fmix64(low));
+            long h2 = fmix64(h1 ^ SECOND_HASH_SEED) | 1;
+            long hash = h1;
+            for (int i = 0; i < mProbes; i++) {
+                int bit = (int) (((hash >>> 32) * mBits) >>> 32);
+                mWords[bit >>> 6] |= 1L << bit;
+                hash += h2;
+            }
+            mCount++;
+            return this;
+        }
+
+        @Override
+        public boolean onRow(InfectedTableParser.Row row) {
+            add(row.getUidChars());
+            return true;
+        }
+
+        /**
+         * Returns the filter of the uids added so far; the builder must not be used after.
+         */
+        public InfectedUidFilter build() {
+            return new InfectedUidFilter(mWords, mBits, mProbes, mCount);
+        }
+    }
+}
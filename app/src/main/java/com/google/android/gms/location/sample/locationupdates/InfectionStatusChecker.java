@@ -0,0 +1,240 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+
+/**
+ * Answers whether a uid is in the infected table without downloading the table.
+ *
+ * The device keeps an {@link InfectedUidFilter} digest of the infected uids, fetched from the
+ * digest endpoint and revalidated with its ETag once it is {@code ttlMillis} old. A uid the
+ * filter rules out is not infected, with no further request. A possible hit is confirmed by
+ * asking the row endpoint for {@code uid=<uid>}, which answers with the matching rows in the
+ * displayinfectedtable.php format, or 404 if there are none; only then does any row data cross
+ * the network.
+ *
+ * If the digest cannot be had at all, e.g. on a server without the endpoint, the check falls
+ * back to the full table of the {@link InfectedTableRepository}. A stale digest is used if
+ * revalidating it fails.
+ */
+public class InfectionStatusChecker {
+    public static final String DIGEST_URL =
+            "http://cs.furman.edu/~wstewart/infecteddigest.php";
+    public static final String ROW_URL =
+            "http://cs.furman.edu/~wstewart/infectedrow.php";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    private static InfectionStatusChecker sDefault;
+
+    private final URL mDigestUrl;
+    private final URL mRowUrl;
+    private final InfectedTableRepository mFallback;
+    private final long mTtlNanos;
+    private final InfectedTableParser mParser = new InfectedTableParser();
+
+    private InfectedUidFilter mFilter;
+    private long mValidatedAtNanos;
+    private String mETag;
+    private int mDigestFetches;
+    private int mRowFetches;
+    private int mFalsePositives;
+    private int mFallbacks;
+    private long mBytesReceived;
+
+    /**
+     * @param fallback the table to consult when no digest is available.
+     */
+    public InfectionStatusChecker(URL digestUrl, URL rowUrl, InfectedTableRepository fallback,
+                                  long ttlMillis) {
+        mDigestUrl = digestUrl;
+        mRowUrl = rowUrl;
+        mFallback = fallback;
+        mTtlNanos = ttlMillis * 1000000L;
+    }
+
+    /**
+     * The process-wide checker, falling back to {@link InfectedTableRepository#getDefault()}.
+     */
+    public static synchronized InfectionStatusChecker getDefault() {
+        if (sDefault == null) {
+            try {
+                sDefault = new InfectionStatusChecker(new URL(DIGEST_URL), new URL(ROW_URL),
+                        InfectedTableRepository.getDefault(),
+                        InfectedTableRepository.DEFAULT_TTL_MILLIS);
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return sDefault;
+    }
+
+    /**
+     * True if {@code uid} is in the infected table. Blocks on the network when the digest needs
+     * refreshing or reports a possible hit.
+     *
+     * @throws IOException if neither the digest, the row nor the fallback table can be read.
+     */
+    public boolean isInfected(String uid) throws IOException {
+        return isInfected(DeviceIdentity.of(uid));
+    }
+
+    /**
+     * @see #isInfected(String)
+     */
+    public synchronized boolean isInfected(DeviceIdentity identity) throws IOException {
+        long high = identity.getMostSignificantBits();
+        long low = identity.getLeastSignificantBits();
+        InfectedUidFilter filter = getFilter();
+        if (filter == null) {
+            mFallbacks++;
+            return mFallback.get().containsUid(high, low);
+        }
+        if (!filter.mightContain(high, low)) {
+            return false;
+        }
+        if (fetchRow(identity.toString(), high, low)) {
+            return true;
+        }
+        mFalsePositives++;
+        return false;
+    }
+
+    /**
+     * Downloads or revalidates the digest ahead of the first check, so that check only waits
+     * on the network for a possible hit. Blocks; failures are left for the check to retry.
+     */
+    public synchronized void prefetch() {
+        getFilter();
+    }
+
+    /**
+     * Number of digest requests made, including ones answered with 304 Not Modified.
+     */
+    public synchronized int getDigestFetchCount() {
+        return mDigestFetches;
+    }
+
+    /**
+     * Number of possible hits confirmed with the row endpoint.
+     */
+    public synchronized int getRowFetchCount() {
+        return mRowFetches;
+    }
+
+    /**
+     * Number of possible hits the row endpoint did not confirm.
+     */
+    public synchronized int getFalsePositiveCount() {
+        return mFalsePositives;
+    }
+
+    /**
+     * Number of checks answered from the full table for want of a digest.
+     */
+    public synchronized int getFallbackCount() {
+        return mFallbacks;
+    }
+
+    /**
+     * Response body bytes read from the digest and row endpoints.
+     */
+    public synchronized long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    /**
+     * Returns the digest, refreshed first if it has expired, or null if there is none.
+     */
+    private InfectedUidFilter getFilter() {
+        if (mFilter != null && System.nanoTime() - mValidatedAtNanos < mTtlNanos) {
+            return mFilter;
+        }
+        try {
+            fetchDigest();
+        } catch (IOException e) {
+            // Keep whatever digest there is; the next check tries again.
+        }
+        return mFilter;
+    }
+
+    private void fetchDigest() throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) mDigestUrl.openConnection();
+        try {
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+            if (mFilter != null && mETag != null) {
+                conn.setRequestProperty("If-None-Match", mETag);
+            }
+            mDigestFetches++;
+            int code = conn.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && mFilter != null) {
+                mValidatedAtNanos = System.nanoTime();
+                return;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Infected digest request failed with HTTP " + code);
+            }
+            InputStream in = new BufferedInputStream(conn.getInputStream());
+            try {
+                mFilter = InfectedUidFilter.read(in, conn.getContentLength());
+            } finally {
+                in.close();
+            }
+            mBytesReceived += mFilter.getSerializedBytes();
+            mETag = conn.getHeaderField("ETag");
+            mValidatedAtNanos = System.nanoTime();
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * @return true if the row endpoint lists {@code uid}.
+     */
+    private boolean fetchRow(String uid, final long high, final long low) throws IOException {
+        String query = (mRowUrl.getQuery() == null ? "?" : "&") + "uid="
+                + URLEncoder.encode(uid, "UTF-8");
+        HttpURLConnection conn =
+                (HttpURLConnection) new URL(mRowUrl.toString() + query).openConnection();
+        try {
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+            mRowFetches++;
+            int code = conn.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+                return false;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Infected row request failed with HTTP " + code);
+            }
+            final boolean[] found = {false};
+            InputStream in = conn.getInputStream();
+            try {
+                mParser.parse(in, new InfectedTableParser.RowHandler() {
+                    @Override
+                    public boolean onRow(InfectedTableParser.Row row) {
+                        CharSequence rowUid = row.getUidChars();
+                        found[0] = UidIndex.mostSignificantBits(rowUid) == high
+                                && UidIndex.leastSignificantBits(rowUid) == low;
+                        return !found[0];
+                    }
+                });
+            } finally {
+                in.close();
+            }
+            if (conn.getContentLength() > 0) {
+                mBytesReceived += conn.getContentLength();
+            }
+            return found[0];
+        } finally {
+            conn.disconnect();
+        }
+    }
+}
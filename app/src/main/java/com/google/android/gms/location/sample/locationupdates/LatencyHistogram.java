@@ -0,0 +1,113 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in log-linear buckets, so percentiles can be read without keeping samples.
+ *
+ * Latencies are in microseconds. Below 16 µs every value has its own bucket; above, each power of
+ * two is split into eight equal buckets, so a percentile is within 12.5% of the true value, and
+ * is reported as its bucket's upper bound. Values from a microsecond up to days fit in a few
+ * hundred counters.
+ *
+ * Recording takes no lock and may happen on any thread. Reads see a recent, not necessarily
+ * consistent, view.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int LINEAR_EXPONENT = 4;
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = LINEAR_LIMIT + (MAX_EXPONENT - LINEAR_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    /**
+     * Records one latency of {@code micros} microseconds; negative values count as zero.
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        mCounts.incrementAndGet(bucketOf(micros));
+        mCount.incrementAndGet();
+        mSum.addAndGet(micros);
+        long max;
+        while (micros > (max = mMax.get())) {
+            if (mMax.compareAndSet(max, micros)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMaxMicros() {
+        return mMax.get();
+    }
+
+    public double getMeanMicros() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mSum.get() / (double) count;
+    }
+
+    /**
+     * The latency that {@code percent} percent of recorded latencies are at or below, rounded up
+     * to its bucket's bound but never above the maximum, or 0 if nothing was recorded.
+     */
+    public long getPercentileMicros(double percent) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, percent) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "n=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+                getCount(), getPercentileMicros(50) / 1000.0, getPercentileMicros(90) / 1000.0,
+                getPercentileMicros(99) / 1000.0, getMaxMicros() / 1000.0);
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - LINEAR_EXPONENT) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = LINEAR_EXPONENT + (bucket - LINEAR_LIMIT) / SUB_BUCKETS;
+        int sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,30 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Delivers a batch of location fixes to the backend in a single request.
+ */
+public interface LocationBatchSender {
+
+    /**
+     * The backend refused the batch itself, so sending it again cannot succeed.
+     */
+    class RejectedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public RejectedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Sends all fixes in {@code batch}. Returns normally only once the backend has accepted the
+     * whole batch.
+     *
+     * @throws RejectedException if the backend will never accept this batch.
+     * @throws IOException       if the batch could not be delivered this time.
+     */
+    void send(List<LocationFix> batch) throws IOException;
+}
@@ -0,0 +1,72 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+/**
+ * Immutable copy of the fields of a location fix that are sent to the webservice.
+ *
+ * Kept free of Android types so the upload pipeline can be exercised on a plain JVM.
+ */
+public final class LocationFix {
+    private final double mLatitude;
+    private final double mLongitude;
+    private final double mAltitude;
+    private final float mAccuracy;
+    private final long mTime;
+
+    /**
+     * @param time UTC time of the fix in milliseconds since the epoch.
+     */
+    public LocationFix(double latitude, double longitude, double altitude, float accuracy,
+                       long time) {
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mAltitude = altitude;
+        mAccuracy = accuracy;
+        mTime = time;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public double getAltitude() {
+        return mAltitude;
+    }
+
+    public float getAccuracy() {
+        return mAccuracy;
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LocationFix)) {
+            return false;
+        }
+        LocationFix other = (LocationFix) o;
+        return Double.compare(mLatitude, other.mLatitude) == 0
+                && Double.compare(mLongitude, other.mLongitude) == 0
+                && Double.compare(mAltitude, other.mAltitude) == 0
+                && Float.compare(mAccuracy, other.mAccuracy) == 0
+                && mTime == other.mTime;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(mLatitude);
+        bits = 31 * bits + Double.doubleToLongBits(mLongitude);
+        bits = 31 * bits + Double.doubleToLongBits(mAltitude);
+        bits = 31 * bits + Float.floatToIntBits(mAccuracy);
+        bits = 31 * bits + mTime;
+        return (int) (bits ^ (bits >>> 32));
+    }
+}
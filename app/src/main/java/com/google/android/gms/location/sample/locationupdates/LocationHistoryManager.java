@@ -2,40 +2,128 @@ package com.google.android.gms.location.sample.locationupdates;
 
 import android.location.Location;
 
-import java.util.AbstractQueue;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Created by admin on 5/3/2016.
+ *
+ * Keeps the most recent fixes in a {@link LocationRingBuffer}, so recording a fix copies five
+ * primitives instead of retaining a {@link Location} and a list node per entry. Once a
+ * {@link LocationHistoryStore} is attached, every fix is also recorded durably on a background
+ * executor, and older history can be queried by time.
  */
 public class LocationHistoryManager {
-    private Queue<Location> locations;
-    private int maxSize;
+    private static final Logger LOG = Logger.get("LocationHistoryManager");
+
+    private final LocationRingBuffer locations;
+    private volatile LocationHistoryStore store;
+    private Executor writer;
 
     public LocationHistoryManager(int maxNumOfRecords) {
-        this.maxSize = maxNumOfRecords;
-        locations = new LinkedList<Location>();
+        locations = new LocationRingBuffer(maxNumOfRecords);
     }
 
-    private boolean maxSizeReached() {
-        return locations.size() == maxSize;
+    /**
+     * Starts recording fixes into {@code historyStore}, appending on {@code storeWriter}, which
+     * must run tasks one at a time and in order. The in-memory history is refilled with
+     * {@code stored}, the newest stored fixes oldest first, followed by those added before the
+     * store was attached. Does no I/O, so the caller reads {@code stored} with
+     * {@link LocationHistoryStore#getLatest(int)} off the main thread beforehand.
+     */
+    public void attach(LocationHistoryStore historyStore, List<LocationFix> stored,
+                       Executor storeWriter) {
+        List<LocationFix> added = getAll();
+        store = historyStore;
+        writer = storeWriter;
+        locations.clear();
+        for (LocationFix fix : stored) {
+            locations.append(fix);
+        }
+        for (LocationFix fix : added) {
+            add(fix);
+        }
     }
 
-    private void dequeue() {
-        locations.poll();
+    /**
+     * Stops recording and closes the attached store once the pending appends are written.
+     */
+    public void detach() {
+        if (store == null) {
+            return;
+        }
+        final LocationHistoryStore closing = store;
+        store = null;
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                closing.close();
+            }
+        });
     }
 
     public void add(Location location) {
-        if(maxSizeReached()){
-            dequeue();
+        add(new LocationFix(location.getLatitude(), location.getLongitude(),
+                location.getAltitude(), location.getAccuracy(), location.getTime()));
+    }
+
+    public void add(final LocationFix fix) {
+        locations.append(fix);
+        final LocationHistoryStore target = store;
+        if (target == null) {
+            return;
+        }
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    target.append(fix);
+                } catch (IOException e) {
+                    LOG.w("Cannot record location fix", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * The recorded fixes, oldest first.
+     */
+    public List<LocationFix> getAll() {
+        int size = locations.size();
+        List<LocationFix> fixes = new ArrayList<LocationFix>(size);
+        for (int i = 0; i < size; i++) {
+            fixes.add(locations.getFix(i));
         }
-        locations.add(location);
+        return fixes;
     }
 
-    public Collection<Location> getAll() {
+    /**
+     * Stored fixes with {@code from <= time < to}, oldest first, or only the recent ones held
+     * in memory if no store is attached. Reads the store, so call it off the main thread.
+     */
+    public List<LocationFix> getBetween(long from, long to) throws IOException {
+        LocationHistoryStore target = store;
+        if (target != null) {
+            return target.getBetween(from, to);
+        }
+        LocationRingBuffer.Snapshot recent = locations.snapshot(null);
+        List<LocationFix> fixes = new ArrayList<LocationFix>();
+        for (int i = 0; i < recent.size(); i++) {
+            if (recent.getTime(i) >= from && recent.getTime(i) < to) {
+                fixes.add(recent.getFix(i));
+            }
+        }
+        return fixes;
+    }
+
+    /**
+     * The underlying buffer, for reading fixes in place or taking a snapshot from another
+     * thread.
+     */
+    public LocationRingBuffer getBuffer() {
         return locations;
     }
 
@@ -43,4 +131,16 @@ public class LocationHistoryManager {
         return locations.size();
     }
 
+    public int getCapacity() {
+        return locations.capacity();
+    }
+
+    private void submit(Runnable task) {
+        try {
+            writer.execute(task);
+        } catch (RejectedExecutionException e) {
+            LOG.w("History writer is saturated; fix not recorded", e);
+        }
+    }
+
 }
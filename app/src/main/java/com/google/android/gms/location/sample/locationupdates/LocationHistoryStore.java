@@ -0,0 +1,534 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * Durable history of location fixes, one memory-mapped file per UTC day.
+ *
+ * Each day segment stores its fixes column by column after a small header:
+ * <pre>
+ *   int   magic, int version, int capacity, int count, long day start (UTC millis), 8 spare
+ *   int[capacity]   milliseconds since the day start
+ *   int[capacity]   latitude in 1e-7 degrees
+ *   int[capacity]   longitude in 1e-7 degrees
+ *   float[capacity] altitude
+ *   float[capacity] accuracy
+ * </pre>
+ * so a fix costs 20 bytes. The time column is sorted and doubles as the time index: a range
+ * query binary-searches it in every day it touches. The current day is preallocated for one fix
+ * per second as a sparse file, doubled if it fills up, and compacted to its real size once a fix
+ * for a later day arrives. Whole days older than the retention period are deleted as new days
+ * start.
+ *
+ * Appends are plain memory writes; the count in the header is updated after the columns, so a
+ * process that dies mid-append loses at most that fix. {@link #flush()} forces the current day
+ * to disk. Fixes older than the newest stored fix are dropped, which keeps every day sorted.
+ *
+ * Thread-safe; every method holds the store's lock.
+ */
+public class LocationHistoryStore implements Closeable {
+    public static final int DEFAULT_RETENTION_DAYS = 30;
+
+    static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    static final int HEADER_BYTES = 32;
+    static final int BYTES_PER_FIX = 5 * 4;
+    static final int DEFAULT_DAY_CAPACITY = 24 * 60 * 60;
+
+    private static final int MAGIC = 0x4c485331;
+    private static final int VERSION = 1;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int DAY_START_OFFSET = 16;
+    private static final int TIME_COLUMN = 0;
+    private static final int LATITUDE_COLUMN = 1;
+    private static final int LONGITUDE_COLUMN = 2;
+    private static final int ALTITUDE_COLUMN = 3;
+    private static final int ACCURACY_COLUMN = 4;
+    private static final double E7 = 1e7;
+    private static final String SEGMENT_SUFFIX = ".day";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Receives the fixes of a range query in time order. Returning false stops the query.
+     */
+    public interface Visitor {
+        boolean visit(double latitude, double longitude, double altitude, float accuracy,
+                      long time);
+    }
+
+    private static final class Segment {
+        final long mDay;
+        final File mFile;
+        MappedByteBuffer mBuffer;
+        int mCapacity;
+        int mCount;
+
+        Segment(long day, File file) {
+            mDay = day;
+            mFile = file;
+        }
+
+        long start() {
+            return mDay * DAY_MILLIS;
+        }
+
+        int offset(int column, int index) {
+            return HEADER_BYTES + (column * mCapacity + index) * 4;
+        }
+
+        long time(int index) {
+            return start() + mBuffer.getInt(offset(TIME_COLUMN, index));
+        }
+    }
+
+    private final File mDir;
+    private final int mRetentionDays;
+    private final int mDayCapacity;
+    private final TreeMap<Long, Segment> mSegments = new TreeMap<Long, Segment>();
+    private Segment mActive;
+    private long mLastTime = Long.MIN_VALUE;
+    private long mDropped;
+    private boolean mClosed;
+
+    public LocationHistoryStore(File dir) throws IOException {
+        this(dir, DEFAULT_RETENTION_DAYS);
+    }
+
+    /**
+     * Opens the store in {@code dir}, creating it if needed.
+     *
+     * @param retentionDays number of days, including the current one, whose fixes are kept.
+     */
+    public LocationHistoryStore(File dir, int retentionDays) throws IOException {
+        this(dir, retentionDays, DEFAULT_DAY_CAPACITY);
+    }
+
+    LocationHistoryStore(File dir, int retentionDays, int dayCapacity) throws IOException {
+        if (retentionDays <= 0 || dayCapacity <= 0) {
+            throw new IllegalArgumentException("retention and capacity must be positive");
+        }
+        mDir = dir;
+        mRetentionDays = retentionDays;
+        mDayCapacity = dayCapacity;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create history directory " + dir);
+        }
+        recover();
+    }
+
+    /**
+     * Records a fix. Returns false, and drops the fix, if it is older than the newest fix
+     * already stored.
+     */
+    public synchronized boolean append(double latitude, double longitude, double altitude,
+                                       float accuracy, long time) throws IOException {
+        checkOpen();
+        if (time < mLastTime || time < 0) {
+            mDropped++;
+            return false;
+        }
+        long day = time / DAY_MILLIS;
+        if (mActive == null || day != mActive.mDay) {
+            startDay(day);
+        }
+        Segment segment = mActive;
+        if (segment.mCount == segment.mCapacity) {
+            resize(segment, segment.mCapacity * 2);
+        }
+        int index = segment.mCount;
+        MappedByteBuffer buffer = segment.mBuffer;
+        buffer.putInt(segment.offset(TIME_COLUMN, index), (int) (time - segment.start()));
+        buffer.putInt(segment.offset(LATITUDE_COLUMN, index), (int) Math.round(latitude * E7));
+        buffer.putInt(segment.offset(LONGITUDE_COLUMN, index), (int) Math.round(longitude * E7));
+        buffer.putFloat(segment.offset(ALTITUDE_COLUMN, index), (float) altitude);
+        buffer.putFloat(segment.offset(ACCURACY_COLUMN, index), accuracy);
+        segment.mCount = index + 1;
+        buffer.putInt(COUNT_OFFSET, segment.mCount);
+        mLastTime = time;
+        return true;
+    }
+
+    public boolean append(LocationFix fix) throws IOException {
+        return append(fix.getLatitude(), fix.getLongitude(), fix.getAltitude(),
+                fix.getAccuracy(), fix.getTime());
+    }
+
+    /**
+     * Visits the fixes with {@code from <= time < to} in time order and returns how many were
+     * visited. Positions come back rounded to 1e-7 degrees and altitude to float precision.
+     */
+    public synchronized int query(long from, long to, Visitor visitor) throws IOException {
+        checkOpen();
+        if (from >= to || mSegments.isEmpty()) {
+            return 0;
+        }
+        int visited = 0;
+        long firstDay = Math.max(from, 0) / DAY_MILLIS;
+        long lastDay = Math.max(to - 1, 0) / DAY_MILLIS;
+        for (Segment segment : mSegments.subMap(firstDay, true, lastDay, true).values()) {
+            map(segment);
+            int end = lowerBound(segment, to);
+            for (int i = lowerBound(segment, from); i < end; i++) {
+                visited++;
+                if (!visit(segment, i, visitor)) {
+                    return visited;
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * The fixes with {@code from <= time < to}, oldest first.
+     */
+    public List<LocationFix> getBetween(long from, long to) throws IOException {
+        final List<LocationFix> fixes = new ArrayList<LocationFix>();
+        query(from, to, new Visitor() {
+            @Override
+            public boolean visit(double latitude, double longitude, double altitude,
+                                 float accuracy, long time) {
+                fixes.add(new LocationFix(latitude, longitude, altitude, accuracy, time));
+                return true;
+            }
+        });
+        return fixes;
+    }
+
+    /**
+     * Up to {@code count} of the newest fixes, oldest first.
+     */
+    public synchronized List<LocationFix> getLatest(int count) throws IOException {
+        checkOpen();
+        final List<LocationFix> fixes = new ArrayList<LocationFix>(count);
+        Visitor collect = new Visitor() {
+            @Override
+            public boolean visit(double latitude, double longitude, double altitude,
+                                 float accuracy, long time) {
+                fixes.add(new LocationFix(latitude, longitude, altitude, accuracy, time));
+                return true;
+            }
+        };
+        for (Segment segment : mSegments.descendingMap().values()) {
+            if (fixes.size() >= count) {
+                break;
+            }
+            map(segment);
+            for (int i = segment.mCount - 1; i >= 0 && fixes.size() < count; i--) {
+                visit(segment, i, collect);
+            }
+        }
+        Collections.reverse(fixes);
+        return fixes;
+    }
+
+    /**
+     * Deletes the days that lie entirely outside the retention period ending at {@code now}
+     * and returns how many were deleted.
+     */
+    public synchronized int applyRetention(long now) throws IOException {
+        checkOpen();
+        return deleteDaysBefore(now / DAY_MILLIS - mRetentionDays + 1);
+    }
+
+    /**
+     * Deletes the days that end at or before {@code time} and returns how many were deleted.
+     */
+    public synchronized int deleteBefore(long time) throws IOException {
+        checkOpen();
+        return deleteDaysBefore(time / DAY_MILLIS);
+    }
+
+    public synchronized long getFixCount() {
+        long count = 0;
+        for (Segment segment : mSegments.values()) {
+            count += segment.mCount;
+        }
+        return count;
+    }
+
+    public synchronized int getDayCount() {
+        return mSegments.size();
+    }
+
+    /**
+     * Number of fixes dropped because they arrived out of order.
+     */
+    public synchronized long getDroppedCount() {
+        return mDropped;
+    }
+
+    /**
+     * Total length of all day files. The current day is a sparse file, so this overstates its
+     * blocks on disk until it is compacted.
+     */
+    public synchronized long getSizeOnDisk() {
+        long total = 0;
+        for (Segment segment : mSegments.values()) {
+            total += segment.mFile.length();
+        }
+        return total;
+    }
+
+    /**
+     * Forces the current day to disk.
+     */
+    public synchronized void flush() {
+        if (mActive != null && mActive.mBuffer != null) {
+            mActive.mBuffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mClosed) {
+            return;
+        }
+        flush();
+        mClosed = true;
+        for (Segment segment : mSegments.values()) {
+            segment.mBuffer = null;
+        }
+        mActive = null;
+    }
+
+    private void recover() throws IOException {
+        File[] files = mDir.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list history directory " + mDir);
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                // A resize that did not finish; the original file is still intact.
+                delete(file);
+                continue;
+            }
+            long day = parseDay(name);
+            if (day < 0) {
+                continue;
+            }
+            Segment segment = new Segment(day, file);
+            if (readHeader(segment)) {
+                mSegments.put(day, segment);
+            } else {
+                delete(file);
+            }
+        }
+        if (mSegments.isEmpty()) {
+            return;
+        }
+        // Only the newest day can still receive fixes; older ones left uncompacted by a crash
+        // are compacted now.
+        Segment newest = mSegments.lastEntry().getValue();
+        for (Segment segment : new ArrayList<Segment>(mSegments.values())) {
+            if (segment != newest) {
+                compact(segment);
+            }
+        }
+        if (newest.mCount == 0) {
+            mSegments.remove(newest.mDay);
+            delete(newest.mFile);
+            return;
+        }
+        mActive = newest;
+        map(newest);
+        mLastTime = newest.time(newest.mCount - 1);
+    }
+
+    private boolean readHeader(Segment segment) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segment.mFile, "r");
+        try {
+            if (file.length() < HEADER_BYTES) {
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            file.getChannel().read(header, 0);
+            int capacity = header.getInt(CAPACITY_OFFSET);
+            int count = header.getInt(COUNT_OFFSET);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                    || header.getLong(DAY_START_OFFSET) != segment.start()
+                    || capacity <= 0 || count < 0 || count > capacity
+                    || file.length() < HEADER_BYTES + (long) capacity * BYTES_PER_FIX) {
+                return false;
+            }
+            segment.mCapacity = capacity;
+            segment.mCount = count;
+            return true;
+        } finally {
+            file.close();
+        }
+    }
+
+    private void startDay(long day) throws IOException {
+        if (mActive != null) {
+            compact(mActive);
+        }
+        Segment segment = new Segment(day, segmentFile(day));
+        segment.mBuffer = create(segment.mFile, day, mDayCapacity);
+        segment.mCapacity = mDayCapacity;
+        mSegments.put(day, segment);
+        mActive = segment;
+        deleteDaysBefore(day - mRetentionDays + 1);
+    }
+
+    private void compact(Segment segment) throws IOException {
+        if (segment.mCount == 0) {
+            mSegments.remove(segment.mDay);
+            segment.mBuffer = null;
+            delete(segment.mFile);
+        } else if (segment.mCount < segment.mCapacity) {
+            resize(segment, segment.mCount);
+        }
+        if (segment == mActive) {
+            mActive = null;
+        }
+    }
+
+    /**
+     * Rewrites {@code segment} with room for {@code capacity} fixes and swaps the new file in.
+     */
+    private void resize(Segment segment, int capacity) throws IOException {
+        map(segment);
+        File temp = new File(mDir, segment.mFile.getName() + TEMP_SUFFIX);
+        MappedByteBuffer target = create(temp, segment.mDay, capacity);
+        ByteBuffer source = segment.mBuffer.duplicate();
+        int columnBytes = segment.mCount * 4;
+        for (int column = TIME_COLUMN; column <= ACCURACY_COLUMN; column++) {
+            int from = segment.offset(column, 0);
+            source.limit(from + columnBytes).position(from);
+            target.position(HEADER_BYTES + column * capacity * 4);
+            target.put(source);
+        }
+        target.putInt(COUNT_OFFSET, segment.mCount);
+        target.force();
+        if (!temp.renameTo(segment.mFile)) {
+            throw new IOException("Cannot replace history segment " + segment.mFile);
+        }
+        segment.mBuffer = target;
+        segment.mCapacity = capacity;
+    }
+
+    private MappedByteBuffer create(File file, long day, int capacity) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            // setLength leaves the columns sparse until they are written.
+            out.setLength(0);
+            out.setLength(HEADER_BYTES + (long) capacity * BYTES_PER_FIX);
+            MappedByteBuffer buffer = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    out.length());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            buffer.putInt(COUNT_OFFSET, 0);
+            buffer.putLong(DAY_START_OFFSET, day * DAY_MILLIS);
+            return buffer;
+        } finally {
+            out.close();
+        }
+    }
+
+    private void map(Segment segment) throws IOException {
+        if (segment.mBuffer != null) {
+            return;
+        }
+        // Only the current day is written; past days are mapped read-only.
+        boolean writable = segment == mActive;
+        RandomAccessFile file = new RandomAccessFile(segment.mFile, writable ? "rw" : "r");
+        try {
+            segment.mBuffer = file.getChannel().map(writable
+                    ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0,
+                    HEADER_BYTES + (long) segment.mCapacity * BYTES_PER_FIX);
+            segment.mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Index of the first fix in {@code segment} at or after {@code time}.
+     */
+    private static int lowerBound(Segment segment, long time) {
+        long offset = time - segment.start();
+        if (offset <= 0) {
+            return 0;
+        }
+        if (offset >= DAY_MILLIS) {
+            return segment.mCount;
+        }
+        int low = 0;
+        int high = segment.mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segment.mBuffer.getInt(HEADER_BYTES + mid * 4) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean visit(Segment segment, int index, Visitor visitor) {
+        MappedByteBuffer buffer = segment.mBuffer;
+        return visitor.visit(
+                buffer.getInt(segment.offset(LATITUDE_COLUMN, index)) / E7,
+                buffer.getInt(segment.offset(LONGITUDE_COLUMN, index)) / E7,
+                buffer.getFloat(segment.offset(ALTITUDE_COLUMN, index)),
+                buffer.getFloat(segment.offset(ACCURACY_COLUMN, index)),
+                segment.time(index));
+    }
+
+    private int deleteDaysBefore(long day) throws IOException {
+        int deleted = 0;
+        while (!mSegments.isEmpty() && mSegments.firstKey() < day) {
+            Segment segment = mSegments.pollFirstEntry().getValue();
+            segment.mBuffer = null;
+            if (segment == mActive) {
+                mActive = null;
+            }
+            delete(segment.mFile);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("History store is closed");
+        }
+    }
+
+    private File segmentFile(long day) {
+        return new File(mDir, String.format(Locale.US, "%08d%s", day, SEGMENT_SUFFIX));
+    }
+
+    private static long parseDay(String name) {
+        if (!name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void delete(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete history segment " + file);
+        }
+    }
+}
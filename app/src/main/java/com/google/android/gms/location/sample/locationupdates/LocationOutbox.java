@@ -0,0 +1,437 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only on-disk queue of location fixes that have not been acknowledged by the backend.
+ *
+ * Fixes are written to numbered segment files as length-prefixed records:
+ * <pre>
+ *   int   payload length
+ *   int   CRC32 of the payload
+ *   byte[] payload (latitude, longitude, altitude, accuracy, time)
+ * </pre>
+ * The position of the oldest unacknowledged record is kept in a small cursor file that is
+ * replaced atomically on every {@link #commit(Batch)}. Segments that lie entirely before the
+ * cursor are deleted. When the outbox is reopened after a crash, a torn or corrupt record at the
+ * end of the newest segment is cut off and everything before it is replayed.
+ *
+ * Not thread-safe; the uploader only touches it from its worker thread.
+ */
+public class LocationOutbox implements Closeable {
+    static final int RECORD_HEADER_BYTES = 8;
+    static final int FIX_PAYLOAD_BYTES = 8 + 8 + 8 + 4 + 8;
+
+    public static final long DEFAULT_SEGMENT_BYTES = 1024 * 1024;
+    public static final int DEFAULT_SYNC_EVERY_RECORDS = 64;
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 5000;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CURSOR_FILE = "cursor";
+    private static final String CURSOR_TEMP_FILE = "cursor.tmp";
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Fixes read from the outbox that stay in it until they are committed.
+     */
+    public static final class Batch {
+        private final List<LocationFix> mFixes;
+        private final long mStartSegment;
+        private final long mStartOffset;
+        private final long mEndSegment;
+        private final long mEndOffset;
+
+        Batch(List<LocationFix> fixes, long startSegment, long startOffset, long endSegment,
+              long endOffset) {
+            mFixes = Collections.unmodifiableList(fixes);
+            mStartSegment = startSegment;
+            mStartOffset = startOffset;
+            mEndSegment = endSegment;
+            mEndOffset = endOffset;
+        }
+
+        public List<LocationFix> getFixes() {
+            return mFixes;
+        }
+
+        public boolean isEmpty() {
+            return mFixes.isEmpty();
+        }
+    }
+
+    private final File mDir;
+    private final long mSegmentBytes;
+    private final int mSyncEveryRecords;
+    private final long mSyncIntervalNanos;
+
+    private final List<Long> mSegmentIds = new ArrayList<Long>();
+    private long mActiveId;
+    private FileChannel mActive;
+    private long mActiveSize;
+
+    private FileChannel mReadChannel;
+    private long mReadChannelId = -1;
+
+    private long mCursorSegment;
+    private long mCursorOffset;
+    private long mPendingRecords;
+
+    private int mUnsyncedRecords;
+    private long mLastSyncNanos;
+
+    private final CRC32 mCrc = new CRC32();
+    private final ByteBuffer mWriteBuffer =
+            ByteBuffer.allocate(RECORD_HEADER_BYTES + FIX_PAYLOAD_BYTES);
+    private final ByteBuffer mReadBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+    private final byte[] mCrcScratch = new byte[FIX_PAYLOAD_BYTES];
+
+    public LocationOutbox(File dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_BYTES, DEFAULT_SYNC_EVERY_RECORDS, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens the outbox in {@code dir}, creating it if needed and recovering from a torn write.
+     *
+     * @param segmentBytes       size after which a new segment file is started.
+     * @param syncEveryRecords   number of appends after which the active segment is fsynced.
+     * @param syncIntervalMillis time after which an append fsyncs regardless of the count.
+     */
+    public LocationOutbox(File dir, long segmentBytes, int syncEveryRecords,
+                          long syncIntervalMillis) throws IOException {
+        mDir = dir;
+        mSegmentBytes = segmentBytes;
+        mSyncEveryRecords = syncEveryRecords;
+        mSyncIntervalNanos = syncIntervalMillis * 1000000L;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create outbox directory " + dir);
+        }
+        recover();
+        mLastSyncNanos = System.nanoTime();
+    }
+
+    /**
+     * Appends {@code fix} to the newest segment. The record reaches the OS immediately and the
+     * disk at the next periodic fsync.
+     */
+    public void append(LocationFix fix) throws IOException {
+        if (mActiveSize >= mSegmentBytes) {
+            rollActiveSegment();
+        }
+        ByteBuffer record = mWriteBuffer;
+        record.clear();
+        record.position(RECORD_HEADER_BYTES);
+        record.putDouble(fix.getLatitude());
+        record.putDouble(fix.getLongitude());
+        record.putDouble(fix.getAltitude());
+        record.putFloat(fix.getAccuracy());
+        record.putLong(fix.getTime());
+        mCrc.reset();
+        mCrc.update(record.array(), RECORD_HEADER_BYTES, FIX_PAYLOAD_BYTES);
+        record.putInt(0, FIX_PAYLOAD_BYTES);
+        record.putInt(4, (int) mCrc.getValue());
+        record.flip();
+
+        while (record.hasRemaining()) {
+            mActive.write(record, mActiveSize + record.position());
+        }
+        mActiveSize += RECORD_HEADER_BYTES + FIX_PAYLOAD_BYTES;
+        mPendingRecords++;
+
+        mUnsyncedRecords++;
+        if (mUnsyncedRecords >= mSyncEveryRecords
+                || System.nanoTime() - mLastSyncNanos >= mSyncIntervalNanos) {
+            sync();
+        }
+    }
+
+    /**
+     * Forces appended records to disk.
+     */
+    public void sync() throws IOException {
+        if (mUnsyncedRecords > 0) {
+            mActive.force(false);
+            mUnsyncedRecords = 0;
+        }
+        mLastSyncNanos = System.nanoTime();
+    }
+
+    /**
+     * Reads up to {@code maxFixes} of the oldest unacknowledged fixes, in append order. The fixes
+     * remain in the outbox until the batch is passed to {@link #commit(Batch)}.
+     */
+    public Batch read(int maxFixes) throws IOException {
+        List<LocationFix> fixes = new ArrayList<LocationFix>(
+                (int) Math.min(maxFixes, mPendingRecords));
+        long segment = mCursorSegment;
+        long offset = mCursorOffset;
+        while (fixes.size() < maxFixes) {
+            long end = segmentSize(segment);
+            if (offset < end) {
+                offset = readRecords(channelFor(segment), offset, end, maxFixes, fixes);
+            }
+            if (fixes.size() >= maxFixes || segment == mActiveId) {
+                break;
+            }
+            segment = nextSegmentId(segment);
+            offset = 0;
+        }
+        return new Batch(fixes, mCursorSegment, mCursorOffset, segment, offset);
+    }
+
+    /**
+     * Acknowledges {@code batch}, which must be the batch most recently returned by
+     * {@link #read(int)}. Segments that are fully acknowledged are deleted.
+     */
+    public void commit(Batch batch) throws IOException {
+        if (batch.mStartSegment != mCursorSegment || batch.mStartOffset != mCursorOffset) {
+            throw new IllegalStateException("Batch does not start at the outbox cursor");
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        mCursorSegment = batch.mEndSegment;
+        mCursorOffset = batch.mEndOffset;
+        mPendingRecords -= batch.getFixes().size();
+
+        if (mCursorSegment == mActiveId && mCursorOffset == mActiveSize) {
+            // Everything is acknowledged: start a fresh segment so the old one can go.
+            rollActiveSegment();
+            mCursorSegment = mActiveId;
+            mCursorOffset = 0;
+        }
+        writeCursor();
+        deleteSegmentsBefore(mCursorSegment);
+    }
+
+    /**
+     * Number of fixes appended but not yet acknowledged.
+     */
+    public long getPendingCount() {
+        return mPendingRecords;
+    }
+
+    /**
+     * Total size of all segment files on disk.
+     */
+    public long getSizeOnDisk() throws IOException {
+        long total = 0;
+        for (Long id : mSegmentIds) {
+            total += segmentSize(id);
+        }
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            closeReadChannel();
+            mActive.close();
+        }
+    }
+
+    private void recover() throws IOException {
+        String[] names = mDir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    mSegmentIds.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+        }
+        Collections.sort(mSegmentIds);
+        readCursor();
+        deleteSegmentsBefore(mCursorSegment);
+
+        if (mSegmentIds.isEmpty()) {
+            mSegmentIds.add(mCursorSegment);
+        } else if (mSegmentIds.get(0) != mCursorSegment) {
+            // The segment the cursor pointed into was already deleted.
+            mCursorSegment = mSegmentIds.get(0);
+            mCursorOffset = 0;
+        }
+        mActiveId = mSegmentIds.get(mSegmentIds.size() - 1);
+        mActive = new RandomAccessFile(segmentFile(mActiveId), "rw").getChannel();
+        mActiveSize = mActive.size();
+
+        // Count what is left to send and cut off anything after the last intact record.
+        for (int i = 0; i < mSegmentIds.size(); i++) {
+            long id = mSegmentIds.get(i);
+            long start = id == mCursorSegment ? mCursorOffset : 0;
+            FileChannel channel = channelFor(id);
+            long size = channel.size();
+            long validEnd = start < size ? readRecords(channel, start, size, -1, null) : size;
+            if (validEnd < size) {
+                channel.truncate(validEnd);
+                channel.force(true);
+                if (id == mActiveId) {
+                    mActiveSize = validEnd;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses records from {@code channel} between {@code offset} and {@code end}, stopping after
+     * {@code maxFixes} fixes (unbounded if negative) or at the first incomplete or corrupt
+     * record. Decoded fixes go into {@code out}; if {@code out} is null they are only counted
+     * towards the pending total.
+     *
+     * @return offset just past the last valid record consumed.
+     */
+    private long readRecords(FileChannel channel, long offset, long end, int maxFixes,
+                             List<LocationFix> out) throws IOException {
+        final int recordBytes = RECORD_HEADER_BYTES + FIX_PAYLOAD_BYTES;
+        ByteBuffer buffer = mReadBuffer;
+        buffer.clear();
+        buffer.flip();
+        long bufferStart = offset;
+        while (maxFixes < 0 || out == null || out.size() < maxFixes) {
+            if (buffer.remaining() < recordBytes) {
+                if (end - offset < recordBytes) {
+                    // Either nothing left, or a torn record at the tail of the file.
+                    break;
+                }
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - offset));
+                bufferStart = offset;
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, bufferStart + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                if (buffer.remaining() < recordBytes) {
+                    break;
+                }
+            }
+            int position = buffer.position();
+            int length = buffer.getInt(position);
+            if (length != FIX_PAYLOAD_BYTES) {
+                break;
+            }
+            int crc = buffer.getInt(position + 4);
+            buffer.position(position + RECORD_HEADER_BYTES);
+            buffer.get(mCrcScratch, 0, length);
+            mCrc.reset();
+            mCrc.update(mCrcScratch, 0, length);
+            if ((int) mCrc.getValue() != crc) {
+                break;
+            }
+            if (out != null) {
+                int p = position + RECORD_HEADER_BYTES;
+                out.add(new LocationFix(buffer.getDouble(p), buffer.getDouble(p + 8),
+                        buffer.getDouble(p + 16), buffer.getFloat(p + 24),
+                        buffer.getLong(p + 28)));
+            } else {
+                mPendingRecords++;
+            }
+            offset = bufferStart + buffer.position();
+        }
+        return offset;
+    }
+
+    private void rollActiveSegment() throws IOException {
+        mActive.force(false);
+        mActive.close();
+        mUnsyncedRecords = 0;
+        mActiveId++;
+        mSegmentIds.add(mActiveId);
+        mActive = new RandomAccessFile(segmentFile(mActiveId), "rw").getChannel();
+        mActiveSize = 0;
+    }
+
+    private void deleteSegmentsBefore(long segmentId) throws IOException {
+        while (!mSegmentIds.isEmpty() && mSegmentIds.get(0) < segmentId) {
+            long id = mSegmentIds.remove(0);
+            if (id == mReadChannelId) {
+                closeReadChannel();
+            }
+            File file = segmentFile(id);
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Cannot delete outbox segment " + file);
+            }
+        }
+    }
+
+    private long nextSegmentId(long segmentId) {
+        int index = mSegmentIds.indexOf(segmentId);
+        return mSegmentIds.get(index + 1);
+    }
+
+    private long segmentSize(long segmentId) throws IOException {
+        return segmentId == mActiveId ? mActiveSize : channelFor(segmentId).size();
+    }
+
+    private FileChannel channelFor(long segmentId) throws IOException {
+        if (segmentId == mActiveId && mActive != null) {
+            return mActive;
+        }
+        if (segmentId != mReadChannelId) {
+            closeReadChannel();
+            mReadChannel = new RandomAccessFile(segmentFile(segmentId), "rw").getChannel();
+            mReadChannelId = segmentId;
+        }
+        return mReadChannel;
+    }
+
+    private void closeReadChannel() throws IOException {
+        if (mReadChannel != null) {
+            mReadChannel.close();
+            mReadChannel = null;
+            mReadChannelId = -1;
+        }
+    }
+
+    private void readCursor() throws IOException {
+        File file = new File(mDir, CURSOR_FILE);
+        mCursorSegment = mSegmentIds.isEmpty() ? 0 : mSegmentIds.get(0);
+        mCursorOffset = 0;
+        if (!file.exists()) {
+            return;
+        }
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            if (in.length() == 16) {
+                mCursorSegment = in.readLong();
+                mCursorOffset = in.readLong();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeCursor() throws IOException {
+        File temp = new File(mDir, CURSOR_TEMP_FILE);
+        RandomAccessFile out = new RandomAccessFile(temp, "rw");
+        try {
+            out.setLength(0);
+            out.writeLong(mCursorSegment);
+            out.writeLong(mCursorOffset);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(new File(mDir, CURSOR_FILE))) {
+            throw new IOException("Cannot replace outbox cursor in " + mDir);
+        }
+    }
+
+    private File segmentFile(long segmentId) {
+        return new File(mDir, String.format(Locale.US, "%s%016d%s", SEGMENT_PREFIX, segmentId,
+                SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,96 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The single path every location fix takes through the app.
+ *
+ * Providers hand their fixes to {@link #onProviderFix(String, LocationFix)}, and a
+ * {@link FixFusion} merges their streams into one. Each fix that comes out is published once on a
+ * {@link FanOutChannel} to every subscriber: the UI, the history and the uploader each get it on
+ * their own executor, with their own backpressure.
+ *
+ * Owned by MyService and confined to the thread that receives provider callbacks, which also
+ * subscribes and cancels; the counters may be read from any thread.
+ */
+public final class LocationPipeline {
+    private final FanOutChannel<LocationFix> mChannel = new FanOutChannel<LocationFix>();
+    private final FixFusion mFusion;
+    private volatile LocationFix mLatest;
+    private volatile long mReceived;
+    private volatile long mPublished;
+
+    /**
+     * A pipeline that merges provider streams without smoothing them.
+     */
+    public LocationPipeline() {
+        this(new FixFusion(false));
+    }
+
+    public LocationPipeline(FixFusion fusion) {
+        mFusion = fusion;
+    }
+
+    /**
+     * Takes one fix from {@code source} and returns true if it was published.
+     */
+    public boolean onProviderFix(String source, LocationFix fix) {
+        mReceived++;
+        LocationFix fused = mFusion.accept(source, fix);
+        if (fused == null) {
+            return false;
+        }
+        mLatest = fused;
+        mPublished++;
+        mChannel.publish(fused);
+        return true;
+    }
+
+    /**
+     * Delivers every fix published from now on to {@code subscriber} on {@code executor}. If
+     * {@code replayLatest} is set the latest fix, if any, is delivered first.
+     */
+    public FanOutChannel.Subscription<LocationFix> subscribe(
+            FanOutChannel.Subscriber<LocationFix> subscriber, Executor executor, int capacity,
+            FanOutChannel.Overflow overflow, boolean replayLatest) {
+        FanOutChannel.Subscription<LocationFix> subscription =
+                mChannel.subscribe(subscriber, executor, capacity, overflow);
+        LocationFix latest = mLatest;
+        if (replayLatest && latest != null) {
+            subscription.offer(latest);
+        }
+        return subscription;
+    }
+
+    /**
+     * The most recently published fix, or null.
+     */
+    public LocationFix getLatest() {
+        return mLatest;
+    }
+
+    /**
+     * Number of fixes handed in by providers.
+     */
+    public long getReceivedCount() {
+        return mReceived;
+    }
+
+    /**
+     * Number of fixes published to subscribers.
+     */
+    public long getPublishedCount() {
+        return mPublished;
+    }
+
+    /**
+     * The fusion stage, for its drop counters. Read it on the provider callback thread.
+     */
+    public FixFusion getFusion() {
+        return mFusion;
+    }
+
+    public int getSubscriberCount() {
+        return mChannel.getSubscriberCount();
+    }
+}
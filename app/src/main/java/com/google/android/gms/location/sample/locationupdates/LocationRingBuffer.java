@@ -0,0 +1,214 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+/**
+ * Fixed-capacity history of location fixes, stored as one primitive array per field.
+ *
+ * Appending overwrites the oldest fix once the buffer is full and allocates nothing. Entries are
+ * numbered from 0, the oldest, to {@code size() - 1}, the newest.
+ *
+ * One thread owns the buffer and appends to it; that thread may also read it in place through
+ * the indexed getters. Any other thread reads through {@link #snapshot(Snapshot)}, which copies
+ * the fixes into a {@link Snapshot} that can be reused from call to call. Appends and snapshots
+ * hold the buffer's lock only for the copy, so readers never observe a half-written fix.
+ */
+public final class LocationRingBuffer {
+    private final int mCapacity;
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private final double[] mAltitudes;
+    private final float[] mAccuracies;
+    private final long[] mTimes;
+    // Slot the next fix goes into, and the number of valid fixes ending just before it.
+    private int mHead;
+    private int mSize;
+    private long mAppended;
+
+    public LocationRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mCapacity = capacity;
+        mLatitudes = new double[capacity];
+        mLongitudes = new double[capacity];
+        mAltitudes = new double[capacity];
+        mAccuracies = new float[capacity];
+        mTimes = new long[capacity];
+    }
+
+    public int capacity() {
+        return mCapacity;
+    }
+
+    public synchronized void append(double latitude, double longitude, double altitude,
+                                    float accuracy, long time) {
+        int slot = mHead;
+        mLatitudes[slot] = latitude;
+        mLongitudes[slot] = longitude;
+        mAltitudes[slot] = altitude;
+        mAccuracies[slot] = accuracy;
+        mTimes[slot] = time;
+        mHead = slot + 1 == mCapacity ? 0 : slot + 1;
+        if (mSize < mCapacity) {
+            mSize++;
+        }
+        mAppended++;
+    }
+
+    public void append(LocationFix fix) {
+        append(fix.getLatitude(), fix.getLongitude(), fix.getAltitude(), fix.getAccuracy(),
+                fix.getTime());
+    }
+
+    public synchronized void clear() {
+        mHead = 0;
+        mSize = 0;
+        mAppended = 0;
+    }
+
+    // The methods below read in place and are meant for the appending thread.
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Number of fixes appended since the buffer was created, including overwritten ones.
+     */
+    public long getAppendedCount() {
+        return mAppended;
+    }
+
+    public double getLatitude(int index) {
+        return mLatitudes[slot(index)];
+    }
+
+    public double getLongitude(int index) {
+        return mLongitudes[slot(index)];
+    }
+
+    public double getAltitude(int index) {
+        return mAltitudes[slot(index)];
+    }
+
+    public float getAccuracy(int index) {
+        return mAccuracies[slot(index)];
+    }
+
+    public long getTime(int index) {
+        return mTimes[slot(index)];
+    }
+
+    public LocationFix getFix(int index) {
+        int slot = slot(index);
+        return new LocationFix(mLatitudes[slot], mLongitudes[slot], mAltitudes[slot],
+                mAccuracies[slot], mTimes[slot]);
+    }
+
+    /**
+     * Copies the current fixes, oldest first, into {@code reuse} if it is large enough, or into a
+     * new snapshot otherwise. Safe to call from any thread.
+     */
+    public Snapshot snapshot(Snapshot reuse) {
+        Snapshot snapshot = reuse != null && reuse.mLatitudes.length >= mCapacity
+                ? reuse : new Snapshot(mCapacity);
+        synchronized (this) {
+            int size = mSize;
+            int oldest = oldestSlot();
+            // The fixes form at most two runs: oldest..end of the arrays, then 0..newest.
+            int firstRun = Math.min(size, mCapacity - oldest);
+            copy(oldest, snapshot, 0, firstRun);
+            copy(0, snapshot, firstRun, size - firstRun);
+            snapshot.mSize = size;
+            snapshot.mAppended = mAppended;
+        }
+        return snapshot;
+    }
+
+    private void copy(int from, Snapshot to, int at, int length) {
+        System.arraycopy(mLatitudes, from, to.mLatitudes, at, length);
+        System.arraycopy(mLongitudes, from, to.mLongitudes, at, length);
+        System.arraycopy(mAltitudes, from, to.mAltitudes, at, length);
+        System.arraycopy(mAccuracies, from, to.mAccuracies, at, length);
+        System.arraycopy(mTimes, from, to.mTimes, at, length);
+    }
+
+    private int oldestSlot() {
+        int oldest = mHead - mSize;
+        return oldest < 0 ? oldest + mCapacity : oldest;
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        }
+        int slot = oldestSlot() + index;
+        return slot >= mCapacity ? slot - mCapacity : slot;
+    }
+
+    /**
+     * A consistent copy of a {@link LocationRingBuffer}, oldest fix first. Owned by the thread
+     * that took it.
+     */
+    public static final class Snapshot {
+        private final double[] mLatitudes;
+        private final double[] mLongitudes;
+        private final double[] mAltitudes;
+        private final float[] mAccuracies;
+        private final long[] mTimes;
+        private int mSize;
+        private long mAppended;
+
+        Snapshot(int capacity) {
+            mLatitudes = new double[capacity];
+            mLongitudes = new double[capacity];
+            mAltitudes = new double[capacity];
+            mAccuracies = new float[capacity];
+            mTimes = new long[capacity];
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        /**
+         * The buffer's {@link LocationRingBuffer#getAppendedCount()} when this was taken; equal
+         * counts mean equal contents.
+         */
+        public long getAppendedCount() {
+            return mAppended;
+        }
+
+        public double getLatitude(int index) {
+            return mLatitudes[check(index)];
+        }
+
+        public double getLongitude(int index) {
+            return mLongitudes[check(index)];
+        }
+
+        public double getAltitude(int index) {
+            return mAltitudes[check(index)];
+        }
+
+        public float getAccuracy(int index) {
+            return mAccuracies[check(index)];
+        }
+
+        public long getTime(int index) {
+            return mTimes[check(index)];
+        }
+
+        public LocationFix getFix(int index) {
+            check(index);
+            return new LocationFix(mLatitudes[index], mLongitudes[index], mAltitudes[index],
+                    mAccuracies[index], mTimes[index]);
+        }
+
+        private int check(int index) {
+            if (index < 0 || index >= mSize) {
+                throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records location fixes in a {@link LocationOutbox} and drains it to a
+ * {@link LocationBatchSender} in batches bounded by a {@link FlushPolicy}.
+ *
+ * All disk and network work happens on a single background worker thread, so
+ * {@link #submit(LocationFix)} is safe to call from the main thread. Fixes that cannot be
+ * delivered stay in the outbox and are replayed, in order, on the next flush; call
+ * {@link #flush()} when connectivity comes back.
+ *
+ * {@link #shutdown()} returns at once and the worker closes the outbox after the last batch.
+ * A new uploader on the same directory waits for that on its own worker before opening it, so
+ * two uploaders never write the same outbox.
+ */
+public class LocationUploader {
+    private static final int MAX_SEND_ATTEMPTS = 4;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    /**
+     * Released once the uploader shutting down in each outbox directory has closed its outbox.
+     */
+    private static final Map<File, CountDownLatch> sClosing = new HashMap<File, CountDownLatch>();
+
+    private final FlushPolicy mPolicy;
+    private final ScheduledExecutorService mWorker;
+    private final File mOutboxDir;
+    private final CountDownLatch mClosed = new CountDownLatch(1);
+
+    // Only touched on the worker thread.
+    private LocationOutbox mOutbox;
+    private OutboxDrainer mDrainer;
+    private int mUnsentSinceDrain;
+    private ScheduledFuture<?> mScheduledFlush;
+
+    private final AtomicLong mDroppedFixes = new AtomicLong();
+    private final AtomicLong mPendingFixes = new AtomicLong();
+    private final AtomicLong mRejectedFixes = new AtomicLong();
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public LocationUploader(File outboxDir, LocationBatchSender sender, FlushPolicy policy) {
+        this(outboxDir, sender, policy, MAX_SEND_ATTEMPTS, INITIAL_BACKOFF_MILLIS);
+    }
+
+    LocationUploader(final File outboxDir, final LocationBatchSender sender, FlushPolicy policy,
+                     final int maxSendAttempts, final long initialBackoffMillis) {
+        mPolicy = policy;
+        mOutboxDir = outboxDir.getAbsoluteFile();
+        final CountDownLatch previous;
+        synchronized (sClosing) {
+            previous = sClosing.get(mOutboxDir);
+        }
+        mWorker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "location-uploader");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (previous != null) {
+                        previous.await();
+                    }
+                    mOutbox = new LocationOutbox(outboxDir);
+                } catch (IOException e) {
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                mDrainer = new OutboxDrainer(mOutbox, sender, mPolicy.getMaxBatchSize(),
+                        maxSendAttempts, initialBackoffMillis, MAX_BACKOFF_MILLIS);
+                mPendingFixes.set(mOutbox.getPendingCount());
+                if (mOutbox.getPendingCount() > 0) {
+                    // Replay whatever a previous process left behind.
+                    drain();
+                }
+            }
+        });
+    }
+
+    /**
+     * Records {@code fix} for upload. Never blocks on disk or network.
+     */
+    public void submit(final LocationFix fix) {
+        mWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(fix);
+            }
+        });
+    }
+
+    /**
+     * Sends everything in the outbox without waiting for the policy to trigger.
+     */
+    public void flush() {
+        mWorker.execute(mFlushTask);
+    }
+
+    /**
+     * Flushes the outbox and stops the worker without waiting for either, so it is safe to call
+     * from the main thread. Anything not delivered is sent by the next uploader using the same
+     * directory.
+     */
+    public void shutdown() {
+        flush();
+        synchronized (sClosing) {
+            sClosing.put(mOutboxDir, mClosed);
+        }
+        mWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mOutbox != null) {
+                    try {
+                        mOutbox.close();
+                    } catch (IOException e) {
+                        // Unsynced records are re-validated when the outbox is reopened.
+                    }
+                    mOutbox = null;
+                }
+                mClosed.countDown();
+                synchronized (sClosing) {
+                    if (sClosing.get(mOutboxDir) == mClosed) {
+                        sClosing.remove(mOutboxDir);
+                    }
+                }
+            }
+        });
+        mWorker.shutdown();
+    }
+
+    /**
+     * Waits for the worker to finish after {@link #shutdown()}. Not for the main thread.
+     *
+     * @return false if it was still running when {@code timeout} ran out.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return mWorker.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Number of fixes that were lost because they could not be written to the outbox.
+     */
+    public long getDroppedFixCount() {
+        return mDroppedFixes.get();
+    }
+
+    /**
+     * Number of fixes dropped because the backend rejected their batch.
+     */
+    public long getRejectedFixCount() {
+        return mRejectedFixes.get();
+    }
+
+    /**
+     * Number of fixes recorded in the outbox but not yet accepted by the backend.
+     */
+    public long getPendingFixCount() {
+        return mPendingFixes.get();
+    }
+
+    private void append(LocationFix fix) {
+        if (mOutbox == null) {
+            mDroppedFixes.incrementAndGet();
+            return;
+        }
+        try {
+            mOutbox.append(fix);
+        } catch (IOException e) {
+            mDroppedFixes.incrementAndGet();
+            return;
+        }
+        mPendingFixes.set(mOutbox.getPendingCount());
+
+        mUnsentSinceDrain++;
+        if (mUnsentSinceDrain >= mPolicy.getMaxBatchSize()) {
+            drain();
+        } else if (mScheduledFlush == null) {
+            mScheduledFlush = mWorker.schedule(mFlushTask, mPolicy.getMaxDelayMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drain() {
+        if (mScheduledFlush != null) {
+            mScheduledFlush.cancel(false);
+            mScheduledFlush = null;
+        }
+        mUnsentSinceDrain = 0;
+        if (mOutbox == null) {
+            return;
+        }
+        try {
+            // A batch that exhausts its retries stays in the outbox for the next flush.
+            mDrainer.drain();
+        } catch (IOException e) {
+            // Outbox could not be read; the same records are retried on the next flush.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mPendingFixes.set(mOutbox.getPendingCount());
+        mRejectedFixes.set(mDrainer.getRejectedFixCount());
+    }
+}
@@ -0,0 +1,33 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import android.util.Log;
+
+/**
+ * Writes {@link Logger} lines to logcat.
+ */
+public final class LogcatSink implements Logger.Sink {
+    private static boolean sInstalled;
+
+    /**
+     * Routes every {@link Logger} through an {@link AsyncLogAppender} to logcat, at debug level
+     * in debug builds and info level otherwise. Each entry point calls this first; only the
+     * first call in a process does anything.
+     */
+    public static synchronized void install() {
+        if (sInstalled) {
+            return;
+        }
+        Logger.setLevel(BuildConfig.DEBUG ? Logger.DEBUG : Logger.INFO);
+        Logger.setSink(new AsyncLogAppender(new LogcatSink(), TaskExecutors.newPool("log", 1, 2),
+                AsyncLogAppender.DEFAULT_CAPACITY));
+        sInstalled = true;
+    }
+
+    @Override
+    public void write(int level, String tag, String message, Throwable error) {
+        if (error != null) {
+            message = message + '\n' + Log.getStackTraceString(error);
+        }
+        Log.println(level, tag, message);
+    }
+}
@@ -0,0 +1,211 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * A tagged, level-gated logger in front of a replaceable {@link Sink}.
+ *
+ * A line below the current level costs one volatile read: messages are format strings with up
+ * to three arguments that are only formatted once the level is known to be enabled, so nothing
+ * is concatenated or allocated for a disabled line unless a primitive argument has to be boxed.
+ * For lines that should not exist in release builds at all, guard the call with
+ * {@code BuildConfig.DEBUG}, which is a compile-time constant, and the compiler drops it.
+ *
+ * The levels are those of {@code android.util.Log}. Until a sink is installed, lines go to
+ * standard error; the app installs an {@link AsyncLogAppender} in front of logcat.
+ */
+public final class Logger {
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    /**
+     * Receives the lines that pass the level check, already formatted.
+     */
+    public interface Sink {
+        void write(int level, String tag, String message, Throwable error);
+    }
+
+    /**
+     * Writes lines to a stream, one at a time, with their stack traces.
+     */
+    public static final class StreamSink implements Sink {
+        private final PrintStream mOut;
+
+        public StreamSink(PrintStream out) {
+            mOut = out;
+        }
+
+        @Override
+        public synchronized void write(int level, String tag, String message, Throwable error) {
+            mOut.println(levelName(level) + "/" + tag + ": " + message);
+            if (error != null) {
+                error.printStackTrace(mOut);
+            }
+        }
+    }
+
+    private static volatile int sLevel = INFO;
+    private static volatile Sink sSink = new StreamSink(System.err);
+
+    private final String mTag;
+
+    private Logger(String tag) {
+        mTag = tag;
+    }
+
+    /**
+     * A logger for {@code tag}. Keep it in a static field.
+     */
+    public static Logger get(String tag) {
+        return new Logger(tag);
+    }
+
+    /**
+     * Lines below {@code level} are dropped from now on.
+     */
+    public static void setLevel(int level) {
+        sLevel = level;
+    }
+
+    public static int getLevel() {
+        return sLevel;
+    }
+
+    /**
+     * Sends the lines of every logger to {@code sink} from now on.
+     */
+    public static void setSink(Sink sink) {
+        sSink = sink;
+    }
+
+    public static Sink getSink() {
+        return sSink;
+    }
+
+    public static String levelName(int level) {
+        switch (level) {
+            case VERBOSE:
+                return "V";
+            case DEBUG:
+                return "D";
+            case INFO:
+                return "I";
+            case WARN:
+                return "W";
+            case ERROR:
+                return "E";
+            default:
+                return Integer.toString(level);
+        }
+    }
+
+    public String getTag() {
+        return mTag;
+    }
+
+    /**
+     * True if lines at {@code level} are written. Check it before building anything expensive
+     * to log.
+     */
+    public boolean isLoggable(int level) {
+        return level >= sLevel;
+    }
+
+    public void d(String message) {
+        log(DEBUG, message, null, 0, null, null, null);
+    }
+
+    public void d(String format, Object arg) {
+        log(DEBUG, format, null, 1, arg, null, null);
+    }
+
+    public void d(String format, Object arg1, Object arg2) {
+        log(DEBUG, format, null, 2, arg1, arg2, null);
+    }
+
+    public void d(String format, Object arg1, Object arg2, Object arg3) {
+        log(DEBUG, format, null, 3, arg1, arg2, arg3);
+    }
+
+    public void i(String message) {
+        log(INFO, message, null, 0, null, null, null);
+    }
+
+    public void i(String format, Object arg) {
+        log(INFO, format, null, 1, arg, null, null);
+    }
+
+    public void i(String format, Object arg1, Object arg2) {
+        log(INFO, format, null, 2, arg1, arg2, null);
+    }
+
+    public void w(String message) {
+        log(WARN, message, null, 0, null, null, null);
+    }
+
+    public void w(String message, Throwable error) {
+        log(WARN, message, error, 0, null, null, null);
+    }
+
+    public void w(String format, Object arg) {
+        log(WARN, format, null, 1, arg, null, null);
+    }
+
+    public void e(String message) {
+        log(ERROR, message, null, 0, null, null, null);
+    }
+
+    public void e(String message, Throwable error) {
+        log(ERROR, message, error, 0, null, null, null);
+    }
+
+    public void e(String format, Object arg) {
+        log(ERROR, format, null, 1, arg, null, null);
+    }
+
+    private void log(int level, String format, Throwable error, int argCount, Object arg1,
+                     Object arg2, Object arg3) {
+        if (level < sLevel) {
+            return;
+        }
+        String message = argCount == 0 ? format : format(format, argCount, arg1, arg2, arg3);
+        sSink.write(level, mTag, message, error);
+    }
+
+    /**
+     * Formats {@code %s}, {@code %d} and {@code %%} directly, which is all most lines use, and
+     * leaves anything else to {@link String#format}, which is several times slower.
+     */
+    static String format(String format, int argCount, Object arg1, Object arg2, Object arg3) {
+        StringBuilder sb = new StringBuilder(format.length() + 16 * argCount);
+        int used = 0;
+        int length = format.length();
+        for (int i = 0; i < length; i++) {
+            char c = format.charAt(i);
+            if (c != '%') {
+                sb.append(c);
+                continue;
+            }
+            char conversion = i + 1 < length ? format.charAt(i + 1) : 0;
+            if (conversion == '%') {
+                sb.append('%');
+                i++;
+                continue;
+            }
+            Object arg = used == 0 ? arg1 : used == 1 ? arg2 : arg3;
+            if (used < argCount && (conversion == 's'
+                    || conversion == 'd' && (arg instanceof Integer || arg instanceof Long))) {
+                sb.append(arg);
+                used++;
+                i++;
+                continue;
+            }
+            return String.format(Locale.US, format, arg1, arg2, arg3);
+        }
+        return sb.toString();
+    }
+}
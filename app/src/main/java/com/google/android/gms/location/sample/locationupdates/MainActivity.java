@@ -16,29 +16,30 @@
 
 package com.google.android.gms.location.sample.locationupdates;
 
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.location.Location;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Looper;
 import android.os.StrictMode;
 import android.support.v7.app.AppCompatActivity;
-import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.GoogleApiClient.ConnectionCallbacks;
-import com.google.android.gms.common.api.GoogleApiClient.OnConnectionFailedListener;
-import com.google.android.gms.location.LocationListener;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.MapFragment;
 import com.google.android.gms.maps.OnMapReadyCallback;
+import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 
 import org.w3c.dom.Document;
@@ -46,17 +47,16 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.net.URLConnection;
-import java.net.URLEncoder;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -76,51 +76,102 @@ import javax.xml.parsers.DocumentBuilderFactory;
  * https://github.com/googlesamples/android-google-accounts/tree/master/QuickStart.
  */
 public class MainActivity extends AppCompatActivity implements
-        ConnectionCallbacks, OnConnectionFailedListener, LocationListener, OnMapReadyCallback {
+        OnMapReadyCallback {
 
     /**
-     * The desired interval for location updates. Inexact. Updates may be more or less frequent.
+     * Infected bumps within this distance of the current location count as nearby.
      */
-    public static final long UPDATE_INTERVAL_IN_MILLISECONDS = 10000;
-    public static final float SMALLEST_DISPLACEMENT_IN_METERS = 0.0f;
-    /**
-     * The fastest rate for active location updates. Exact. Updates will never be more frequent
-     * than this value.
-     */
-    public static final long FASTEST_UPDATE_INTERVAL_IN_MILLISECONDS =
-            UPDATE_INTERVAL_IN_MILLISECONDS / 2;
+    public static final double NEARBY_BUMP_RADIUS_METERS = 50;
     protected static final String TAG = "location-updates-sample";
+    private static final Logger LOG = Logger.get(TAG);
     // Keys for storing activity state in the Bundle.
     protected final static String REQUESTING_LOCATION_UPDATES_KEY = "requesting-location-updates-key";
     protected final static String LOCATION_KEY = "location-key";
     protected final static String LAST_UPDATED_TIME_STRING_KEY = "last-updated-time-string-key";
 
     /**
-     * Provides the entry point to Google Play services.
+     * Fixes the UI may fall behind by. It only shows the newest one.
      */
-    protected GoogleApiClient mGoogleApiClient;
+    private static final int UI_QUEUE_CAPACITY = 1;
 
     /**
-     * Stores parameters for requests to the FusedLocationProviderApi.
+     * How long the startup trace export waits for the splash's prefetches to finish.
      */
-    protected LocationRequest mLocationRequest;
+    private static final long STARTUP_TRACE_WAIT_MILLIS = 30 * 1000;
+
+    /**
+     * The service's location pipeline and history while this activity is bound to it, and this
+     * activity's subscription to the pipeline. Fixes come only from there; the activity no
+     * longer runs a location request of its own, and the service records the history.
+     */
+    protected LocationPipeline mPipeline;
+    protected LocationHistoryManager mLocationHistoryManager;
+    private FanOutChannel.Subscription<LocationFix> mUiSubscription;
+    private final MainThreadExecutor mMainThread = new MainThreadExecutor();
+
+    private final ServiceConnection mServiceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            MyService.LocalBinder service = (MyService.LocalBinder) binder;
+            mPipeline = service.getPipeline();
+            mLocationHistoryManager = service.getHistory();
+            if (mRequestingLocationUpdates) {
+                startLocationUpdates();
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            stopLocationUpdates();
+            mPipeline = null;
+            mLocationHistoryManager = null;
+        }
+    };
+
+    /**
+     * Whether this activity is between onStart() and onStop(), and whether it is bound to the
+     * service. With {@code BuildConfig.FAST_START} the service is not started or bound until
+     * after the first frame.
+     */
+    private boolean mStarted;
+    private boolean mBound;
+    private boolean mServiceStarted;
 
     /**
      * Represents a geographical location.
      */
     protected Location mCurrentLocation;
-    protected LocationHistoryManager mLocationHistoryManager;
     protected GoogleMap mMap;
 
     /**
      * Represents an unique device identification.
      */
     protected String mUid;
+    protected DeviceIdentity mIdentity;
 
     // UI Widgets.
     protected Button mStartUpdatesButton;
     protected Button mStopUpdatesButton;
     protected MapFragment mMapFragment;
+
+    /**
+     * Markers for the location history and for the infected bumps in view. Both are diffed
+     * against what is already on the map rather than re-added.
+     */
+    protected MarkerLayer<LocationFix, Marker> mHistoryLayer;
+    protected MarkerLayer<MarkerCluster, Marker> mInfectedLayer;
+    protected final MarkerClusterer mClusterer = new MarkerClusterer();
+    private int mClusterGeneration;
+
+    /**
+     * Network, disk and parsing work started by this activity; cancelled in onDestroy().
+     */
+    protected TaskScope mTasks;
+
+    /**
+     * Times main-thread messages in debug builds; the summary is logged in onPause().
+     */
+    private static MainThreadMonitor sMainThreadMonitor;
     protected TextView mUidTextView;
     protected TextView mLastUpdateTimeTextView;
     protected TextView mLatitudeTextView;
@@ -155,12 +206,22 @@ public class MainActivity extends AppCompatActivity implements
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
+        StartupTrace.Span span = StartupTrace.getDefault().begin("main_on_create");
+        LogcatSink.install();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.main_activity);
 
-        StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder().permitAll().build();
-        StrictMode.setThreadPolicy(policy);
-
+        // Blocking work runs on mTasks, so StrictMode stays on to catch anything that slips back
+        // onto the main thread.
+        if (BuildConfig.DEBUG) {
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectAll().penaltyLog().build());
+            if (sMainThreadMonitor == null) {
+                sMainThreadMonitor = new MainThreadMonitor();
+                Looper.getMainLooper().setMessageLogging(sMainThreadMonitor);
+            }
+        }
+        mTasks = new TaskScope(TaskExecutors.getDefault());
 
 
         // Locate the UI widgets.
@@ -192,26 +253,95 @@ public class MainActivity extends AppCompatActivity implements
         mRequestingLocationUpdates = true;
         setButtonsEnabledState();
 
-        // Save a set number of location records as history for display.
-        mLocationHistoryManager = new LocationHistoryManager(5);
-
         // Update values using data stored in the Bundle.
         updateValuesFromBundle(savedInstanceState);
 
-        // Set the Unique ID
-        mUid = UidProvider.getUniqueId(this);
+        // Set the Unique ID; with fast start the splash has already resolved it.
+        mIdentity = UidProvider.getIdentity(this);
+        mUid = mIdentity.toString();
         mUidTextView.setText(String.format(Locale.US, "%s: %s", mUidLabel, mUid));
 
-        checkIfInfected();
-
-        // Kick off the process of building a GoogleApiClient and requesting the LocationServices
-        // API.
-        buildGoogleApiClient();
+        if (!BuildConfig.FAST_START) {
+            checkIfInfected();
+            startLocationService();
+        }
+        // A runnable posted to the window runs once its first traversal has.
+        getWindow().getDecorView().post(new Runnable() {
+            @Override
+            public void run() {
+                StartupTrace.getDefault().mark("first_frame");
+                if (BuildConfig.FAST_START) {
+                    // Neither the infection check nor the service is needed to draw the first
+                    // frame.
+                    checkIfInfected();
+                    startLocationService();
+                }
+                exportStartupTrace();
+            }
+        });
+        span.end();
+    }
 
+    /**
+     * The service owns the only location subscription; this activity binds to it while started
+     * and follows its pipeline.
+     */
+    private void startLocationService() {
+        startService(new Intent(getBaseContext(), MyService.class));
+        mServiceStarted = true;
+        if (mStarted) {
+            bindLocationService();
+        }
+    }
 
+    private void bindLocationService() {
+        if (!mBound) {
+            mBound = bindService(new Intent(this, MyService.class), mServiceConnection,
+                    Context.BIND_AUTO_CREATE);
+        }
+    }
 
-        startService(new Intent(getBaseContext(), MyService.class));
+    /**
+     * Logs the startup spans and writes them to {@link StartupTrace#FILE_NAME} in the files
+     * directory as a Chrome trace, labelled with the build, for comparing releases. Waits in
+     * the background for spans still open, such as the splash's prefetches, to end first.
+     */
+    private void exportStartupTrace() {
+        final StartupTrace trace = StartupTrace.getDefault();
+        final Map<String, String> metadata = new LinkedHashMap<String, String>();
+        metadata.put("versionName", BuildConfig.VERSION_NAME);
+        metadata.put("versionCode", Integer.toString(BuildConfig.VERSION_CODE));
+        metadata.put("buildType", BuildConfig.BUILD_TYPE);
+        metadata.put("fastStart", Boolean.toString(BuildConfig.FAST_START));
+        metadata.put("device", Build.MODEL);
+        metadata.put("sdk", Integer.toString(Build.VERSION.SDK_INT));
+        final File file = new File(getFilesDir(), StartupTrace.FILE_NAME);
+        mTasks.io(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                if (!trace.awaitEnded(STARTUP_TRACE_WAIT_MILLIS)) {
+                    LOG.w("Startup spans still open; exporting them unfinished");
+                }
+                LOG.i("Startup:\n%s", trace.summary());
+                OutputStream out = new FileOutputStream(file);
+                try {
+                    out.write(trace.toJson(metadata).getBytes("UTF-8"));
+                } finally {
+                    out.close();
+                }
+                return null;
+            }
+        }, new TaskScope.Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                LOG.i("Startup trace written to %s", file);
+            }
 
+            @Override
+            public void onFailure(Exception e) {
+                LOG.w("Cannot write the startup trace", e);
+            }
+        });
     }
 
     /**
@@ -220,7 +350,7 @@ public class MainActivity extends AppCompatActivity implements
      * @param savedInstanceState The activity state saved in the Bundle.
      */
     private void updateValuesFromBundle(Bundle savedInstanceState) {
-        Log.i(TAG, "Updating values from bundle");
+        LOG.d("Updating values from bundle");
         if (savedInstanceState != null) {
             // Update the value of mRequestingLocationUpdates from the Bundle, and make sure that
             // the Start Updates and Stop Updates buttons are correctly enabled or disabled.
@@ -246,51 +376,6 @@ public class MainActivity extends AppCompatActivity implements
         }
     }
 
-    /**
-     * Builds a GoogleApiClient. Uses the {@code #addApi} method to request the
-     * LocationServices API.
-     */
-    protected synchronized void buildGoogleApiClient() {
-        Log.i(TAG, "Building GoogleApiClient");
-        mGoogleApiClient = new GoogleApiClient.Builder(this)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .addApi(LocationServices.API)
-                .build();
-        createLocationRequest();
-    }
-
-    /**
-     * Sets up the location request. Android has two location request settings:
-     * {@code ACCESS_COARSE_LOCATION} and {@code ACCESS_FINE_LOCATION}. These settings control
-     * the accuracy of the current location. This sample uses ACCESS_FINE_LOCATION, as defined in
-     * the AndroidManifest.xml.
-     * <p/>
-     * When the ACCESS_FINE_LOCATION setting is specified, combined with a fast update
-     * interval (5 seconds), the Fused Location Provider API returns location updates that are
-     * accurate to within a few feet.
-     * <p/>
-     * These settings are appropriate for mapping applications that show real-time location
-     * updates.
-     */
-    protected void createLocationRequest() {
-        mLocationRequest = new LocationRequest();
-
-        // Sets the desired interval for active location updates. This interval is
-        // inexact. You may not receive updates at all if no location sources are available, or
-        // you may receive them slower than requested. You may also receive updates faster than
-        // requested if other applications are requesting location at a faster interval.
-        mLocationRequest.setInterval(UPDATE_INTERVAL_IN_MILLISECONDS);
-
-        // Sets the fastest rate for active location updates. This interval is exact, and your
-        // application will never receive updates faster than this value.
-        mLocationRequest.setFastestInterval(FASTEST_UPDATE_INTERVAL_IN_MILLISECONDS);
-
-        mLocationRequest.setSmallestDisplacement(SMALLEST_DISPLACEMENT_IN_METERS);
-
-        mLocationRequest.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
-    }
-
     /**
      * Handles the Start Updates button and requests start of location updates. Does nothing if
      * updates have already been requested.
@@ -316,13 +401,19 @@ public class MainActivity extends AppCompatActivity implements
     }
 
     /**
-     * Requests location updates from the FusedLocationApi.
+     * Subscribes the UI to the service's pipeline, replaying the latest fix. Does nothing until
+     * the service is bound.
      */
     protected void startLocationUpdates() {
-        // The final argument to {@code requestLocationUpdates()} is a LocationListener
-        // (http://developer.android.com/reference/com/google/android/gms/location/LocationListener.html).
-        LocationServices.FusedLocationApi.requestLocationUpdates(
-                mGoogleApiClient, mLocationRequest, this);
+        if (mPipeline == null || mUiSubscription != null) {
+            return;
+        }
+        mUiSubscription = mPipeline.subscribe(new FanOutChannel.Subscriber<LocationFix>() {
+            @Override
+            public void onItem(LocationFix fix) {
+                onLocationChanged(fix);
+            }
+        }, mMainThread, UI_QUEUE_CAPACITY, FanOutChannel.Overflow.DROP_OLDEST, true);
     }
 
     /**
@@ -357,145 +448,116 @@ public class MainActivity extends AppCompatActivity implements
 
 
         // If map is available, plot the location history.
-        if(mMap != null) {
-            // Remove all previous markers from map.
-            //mMap.clear();
+        if(mMap != null && mLocationHistoryManager != null) {
+            List<LocationFix> history = mLocationHistoryManager.getAll();
+            mHistoryLayer.render(history);
 
-            int index = 0;
-            float markerAlpha;
-            for (Location l : mLocationHistoryManager.getAll()) {
+            int size = history.size();
+            for (int index = 0; index < size; index++) {
+                LocationFix fix = history.get(index);
                 // Normalize alpha so that the first marker isn't entirely transparent
-                markerAlpha = (index + 1.0f) / (mLocationHistoryManager.getSize() + 1.0f);
+                float markerAlpha = (index + 1.0f) / (size + 1.0f);
+                mHistoryLayer.getMarker(fix.getTime()).setAlpha(markerAlpha);
 
-                LatLng mLatLng = new LatLng(l.getLatitude(), l.getLongitude());
-                mMap.addMarker(new MarkerOptions().position(mLatLng).alpha(markerAlpha));
-
-                index++;
                 // Focus and zoom the camera on the most recent marker
-
-                if (index == mLocationHistoryManager.getSize() && isFirstBoot) {
+                if (index == size - 1 && isFirstBoot) {
+                    LatLng mLatLng = new LatLng(fix.getLatitude(), fix.getLongitude());
                     mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(mLatLng, 20));
                     displayBumpsOnMap();
                 }
-
             }
         }
         infectionStatus.append(Float.toString(mCurrentLocation.getAccuracy()));
     }
 
     private void displayBumpsOnMap(){
-        //Pulls data from a webservice and creates markers for each bump
-        Log.e("display bumps on map","method called");
-        try {
-            if (mMap != null) {
-                URL url = new URL("http://cs.furman.edu/~wstewart/displayinfectedtable.php");
-
-                // Read all the text returned by the server
-                BufferedReader in = new BufferedReader(new InputStreamReader(url.openStream()));
-                String str;
-                String dataLine = "";
-                while ((str = in.readLine()) != null) {
-                    // str is one line of text; readLine() strips the newline character(s)
-                    if (str.contains("<table>")) {
-                        dataLine = str;
-                    }
-                }
-                dataLine = dataLine.replaceAll("<td>", "");
-                dataLine = dataLine.replaceAll("</tr>", "");
-                dataLine = dataLine.replaceAll("<table>", "");
-                dataLine = dataLine.replaceAll("</table>", "");
-                dataLine = dataLine.replaceAll("</td>", "/");
-                //Log.e("raw",dataLine);
-                String[] lineSplit = dataLine.split("<tr>");
-                ArrayList<String> linesMinusTags = new ArrayList<String>();
-                //TODO: parse entirety of xml CHECK IF UID IS FIRST ELEMENT
-                //Split the individual lines and
-
-                for (String s : lineSplit) {
-                    String[] split = s.split("/");
-                    if(split.length >= 2) {
-                        double lat = Double.parseDouble(split[2]);
-                        double lng = Double.parseDouble(split[1]);
-                        //Log.e(Double.toString(lat), Double.toString(lng));
-                        LatLng latLng = new LatLng(lat, lng);
-                        mMap.addMarker(new MarkerOptions().position(latLng)); 
-                    }
-                }
-                in.close();
-            }else{Log.e("displaybumps","maps is null");}
+        //Fetches the shared infected table in the background and shows the bumps in view
+        if (mMap == null) {
+            LOG.d("displayBumpsOnMap: map is not ready");
+            return;
         }
-        catch(Exception e){
-            Log.e("displayBumpsOnMap()","something went wrong");
-            e.printStackTrace();
-        }
-    }
-
-    private void notifyDatabase() {
-        try {
-            // Open connection to database wrapper.
-            URL url = new URL("http://cs.furman.edu/~wstewart/webservice.php");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-
-            String attributesToSend = "userid=" + URLEncoder.encode(mUid, "UTF-8")
-                    + "&latitude=" + URLEncoder.encode(Double.toString(mCurrentLocation.getLatitude()), "UTF-8")
-                    + "&longitude=" + URLEncoder.encode(Double.toString(mCurrentLocation.getLongitude()), "UTF-8")
-                    + "&time=" + URLEncoder.encode(mLastUpdateTime, "UTF-8")
-                    + "&accuracy=" + URLEncoder.encode(Double.toString(mCurrentLocation.getAccuracy()), "UTF-8")
-                    + "&altitude=" + URLEncoder.encode(Double.toString(mCurrentLocation.getAltitude()), "UTF-8");
-
-            // Send location data.
-            conn.setFixedLengthStreamingMode(attributesToSend.getBytes().length);
-            conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-            java.io.BufferedOutputStream out = new java.io.BufferedOutputStream(conn.getOutputStream());
-            PrintStream pStream = new PrintStream(out);
-            pStream.print(attributesToSend);
-            pStream.close();
-
+        mTasks.io(new Callable<InfectedTable>() {
+            @Override
+            public InfectedTable call() throws Exception {
+                InfectedTable table = InfectedTableRepository.getDefault().get();
+                table.getSpatialIndex();
+                return table;
+            }
+        }, new TaskScope.Callback<InfectedTable>() {
+            @Override
+            public void onSuccess(InfectedTable table) {
+                refreshInfectedLayer();
+            }
 
-        }
-        catch(java.net.MalformedURLException ex){
-            // Error ignored, intentionally left blank.
-        }
-        catch(IOException e) {
-            // Error ignored, intentionally left blank.
-        }
+            @Override
+            public void onFailure(Exception e) {
+                LOG.e("Cannot load infected bumps", e);
+            }
+        });
     }
 
     /**
-     * Adds location record to history.
+     * Re-clusters the infected bumps inside the camera bounds on the compute executor and then
+     * updates only the markers that changed. Uses the last fetched table and never touches the
+     * network. Results of an older camera position are dropped.
      */
-    private void logLocation() {
-        mLocationHistoryManager.add(mCurrentLocation);
+    private void refreshInfectedLayer() {
+        final InfectedTable table = InfectedTableRepository.getDefault().peek();
+        if (mMap == null || table == null) {
+            return;
+        }
+        final LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+        final float zoom = mMap.getCameraPosition().zoom;
+        final int generation = ++mClusterGeneration;
+        mTasks.compute(new Callable<List<MarkerCluster>>() {
+            @Override
+            public List<MarkerCluster> call() {
+                synchronized (mClusterer) {
+                    return mClusterer.cluster(table.getSpatialIndex(),
+                            bounds.southwest.latitude, bounds.southwest.longitude,
+                            bounds.northeast.latitude, bounds.northeast.longitude, zoom);
+                }
+            }
+        }, new TaskScope.Callback<List<MarkerCluster>>() {
+            @Override
+            public void onSuccess(List<MarkerCluster> clusters) {
+                if (generation == mClusterGeneration) {
+                    mInfectedLayer.render(clusters);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                LOG.e("Clustering infected bumps failed", e);
+            }
+        });
     }
 
     /**
-     * Removes location updates from the FusedLocationApi.
+     * Stops delivering fixes to the UI. The service keeps recording and uploading them.
      */
     protected void stopLocationUpdates() {
-        // It is a good practice to remove location requests when the activity is in a paused or
-        // stopped state. Doing so helps battery performance and is especially
-        // recommended in applications that request frequent location updates.
-
-        // The final argument to {@code requestLocationUpdates()} is a LocationListener
-        // (http://developer.android.com/reference/com/google/android/gms/location/LocationListener.html).
-        LocationServices.FusedLocationApi.removeLocationUpdates(mGoogleApiClient, this);
+        if (mUiSubscription != null) {
+            mUiSubscription.cancel();
+            mUiSubscription = null;
+        }
     }
 
     @Override
     protected void onStart() {
         super.onStart();
-        mGoogleApiClient.connect();
+        mStarted = true;
+        if (mServiceStarted) {
+            bindLocationService();
+        }
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        // Within {@code onPause()}, we pause location updates, but leave the
-        // connection to GoogleApiClient intact.  Here, we resume receiving
-        // location updates if the user has requested them.
-
-        if (mGoogleApiClient.isConnected() && mRequestingLocationUpdates) {
+        // Within {@code onPause()}, we pause location updates, but stay bound to the
+        // service.  Here, we resume receiving location updates if the user has requested them.
+        if (mRequestingLocationUpdates) {
             startLocationUpdates();
         }
     }
@@ -503,128 +565,87 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     protected void onPause() {
         super.onPause();
-        // Stop location updates to save battery, but don't disconnect the GoogleApiClient object.
-        if (mGoogleApiClient.isConnected()) {
-            stopLocationUpdates();
+        if (sMainThreadMonitor != null) {
+            LOG.i("Main thread: %s", sMainThreadMonitor.summary());
         }
+        // Stop updating the UI while it is not visible, but stay bound to the service.
+        stopLocationUpdates();
     }
 
     @Override
     protected void onStop() {
-        mGoogleApiClient.disconnect();
+        if (mPipeline != null) {
+            stopLocationUpdates();
+            mPipeline = null;
+            mLocationHistoryManager = null;
+        }
+        if (mBound) {
+            unbindService(mServiceConnection);
+            mBound = false;
+        }
+        mStarted = false;
         super.onStop();
     }
 
-    /**
-     * Runs when a GoogleApiClient object successfully connects.
-     */
     @Override
-    public void onConnected(Bundle connectionHint) {
-        Log.i(TAG, "Connected to GoogleApiClient");
-
-        // If the initial location was never previously requested, we use
-        // FusedLocationApi.getLastLocation() to get it. If it was previously requested, we store
-        // its value in the Bundle and check for it in onCreate(). We
-        // do not request it again unless the user specifically requests location updates by pressing
-        // the Start Updates button.
-        //
-        // Because we cache the value of the initial location in the Bundle, it means that if the
-        // user launches the activity,
-        // moves to a new location, and then changes the device orientation, the original location
-        // is displayed as the activity is re-created.
-        if (mCurrentLocation == null) {
-            mCurrentLocation = LocationServices.FusedLocationApi.getLastLocation(mGoogleApiClient);
-
-            if(mCurrentLocation != null) {
-                mLastUpdateTime = Long.toString(mCurrentLocation.getTime() / 1000L);
-                updateUI();
-            }
-        }
-
-        // If the user presses the Start Updates button before GoogleApiClient connects, we set
-        // mRequestingLocationUpdates to true (see startUpdatesButtonHandler()). Here, we check
-        // the value of mRequestingLocationUpdates and if it is true, we start location updates.
-        if (mRequestingLocationUpdates) {
-            startLocationUpdates();
-        }
+    protected void onDestroy() {
+        mTasks.cancel();
+        super.onDestroy();
     }
 
     public void checkIfInfected(){
-        Log.e("Main activity","called checkIfInfected() method");
-
-        try {
-            // Create a URL for the desired page
-            URL url = new URL("http://cs.furman.edu/~wstewart/displayinfectedtable.php");
-
-            // Read all the text returned by the server
-            BufferedReader in = new BufferedReader(new InputStreamReader(url.openStream()));
-            String str;
-            String dataLine= "";
-            while ((str = in.readLine()) != null) {
-                // str is one line of text; readLine() strips the newline character(s)
-                if(str.contains("<table>")){
-                    dataLine=str;
+
+        // Only the uid digest is downloaded here; the full table is left to displayBumpsOnMap().
+        final Location here = mCurrentLocation;
+        mTasks.io(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                boolean infected = InfectionStatusChecker.getDefault().isInfected(mIdentity);
+                // Counting may build the table's spatial index, so it stays off the main thread.
+                InfectedTable table = InfectedTableRepository.getDefault().peek();
+                if (here != null && table != null) {
+                    int nearby = table.getSpatialIndex().countWithinRadius(here.getLatitude(),
+                            here.getLongitude(), NEARBY_BUMP_RADIUS_METERS);
+                    LOG.d("%d infected bumps nearby", nearby);
                 }
+                return infected;
             }
-            dataLine = dataLine.replaceAll("<td>","");
-            dataLine = dataLine.replaceAll("</tr>","");
-            dataLine = dataLine.replaceAll("<table>","");
-            dataLine = dataLine.replaceAll("</table>","");
-            dataLine = dataLine.replaceAll("</td>","/");
-            //Log.e("raw",dataLine);
-            String[] lineSplit = dataLine.split("<tr>");
-            ArrayList<String> linesMinusTags = new ArrayList<String>();
-            //TODO: parse entirety of xml CHECK IF UID IS FIRST ELEMENT
-            //Split the individual lines and check first element in array
-
-            for(String s: lineSplit){
-                String[] split = s.split("/");
-                if(split[0].equals(mUid)){
+        }, new TaskScope.Callback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean infected) {
+                if (infected) {
                     infectionStatus.setText("Infection status: You are infected!");
-                    Log.e("infected",split[0] + "%%%%" + mUid);
-                }else{
-                    Log.d("not infected",split[0] + "%%%%" + mUid);
+                    LOG.i("Device %s is infected", mUid);
+                } else {
+                    LOG.d("Device %s is not infected", mUid);
                 }
-               // Log.e("from web",s);
             }
 
-            in.close();
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
+            @Override
+            public void onFailure(Exception e) {
+                LOG.w("Cannot check infection status", e);
+            }
+        });
     }
 
     /**
-     * Callback that fires when the location changes.
+     * Called on the main thread with each fix the service's pipeline publishes.
      */
-    @Override
-    public void onLocationChanged(Location location) {
+    public void onLocationChanged(LocationFix fix) {
+        Location location = new Location("pipeline");
+        location.setLatitude(fix.getLatitude());
+        location.setLongitude(fix.getLongitude());
+        location.setAltitude(fix.getAltitude());
+        location.setAccuracy(fix.getAccuracy());
+        location.setTime(fix.getTime());
         mCurrentLocation = location;
         mLastUpdateTime = Long.toString(mCurrentLocation.getTime() / 1000L);
-        logLocation();
         updateUI();
         isFirstBoot = false;
-        //notifyDatabase();
         Toast.makeText(this, getResources().getString(R.string.location_updated_message),
                 Toast.LENGTH_SHORT).show();
     }
 
-    @Override
-    public void onConnectionSuspended(int cause) {
-        // The connection to Google Play services was lost for some reason. We call connect() to
-        // attempt to re-establish the connection.
-        Log.i(TAG, "Connection suspended");
-        mGoogleApiClient.connect();
-    }
-
-    @Override
-    public void onConnectionFailed(ConnectionResult result) {
-        // Refer to the javadoc for ConnectionResult to see what error codes might be returned in
-        // onConnectionFailed.
-        Log.i(TAG, "Connection failed: ConnectionResult.getErrorCode() = " + result.getErrorCode());
-    }
-
 
     /**
      * Stores activity data in the Bundle.
@@ -639,5 +660,65 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     public void onMapReady(GoogleMap googleMap) {
         mMap = googleMap;
+        mHistoryLayer = new MarkerLayer<LocationFix, Marker>(
+                new MarkerLayer.Renderer<LocationFix, Marker>() {
+                    @Override
+                    public long keyOf(LocationFix fix) {
+                        return fix.getTime();
+                    }
+
+                    @Override
+                    public Marker add(LocationFix fix) {
+                        return mMap.addMarker(new MarkerOptions().position(
+                                new LatLng(fix.getLatitude(), fix.getLongitude())));
+                    }
+
+                    @Override
+                    public void update(Marker marker, LocationFix fix) {
+                        marker.setPosition(
+                                new LatLng(fix.getLatitude(), fix.getLongitude()));
+                    }
+
+                    @Override
+                    public void remove(Marker marker) {
+                        marker.remove();
+                    }
+                });
+        mInfectedLayer = new MarkerLayer<MarkerCluster, Marker>(
+                new MarkerLayer.Renderer<MarkerCluster, Marker>() {
+                    @Override
+                    public long keyOf(MarkerCluster cluster) {
+                        return cluster.getKey();
+                    }
+
+                    @Override
+                    public Marker add(MarkerCluster cluster) {
+                        LatLng latLng = new LatLng(cluster.getLatitude(), cluster.getLongitude());
+                        return mMap.addMarker(new MarkerOptions().position(latLng)
+                                .title(clusterTitle(cluster)));
+                    }
+
+                    @Override
+                    public void update(Marker marker, MarkerCluster cluster) {
+                        marker.setPosition(
+                                new LatLng(cluster.getLatitude(), cluster.getLongitude()));
+                        marker.setTitle(clusterTitle(cluster));
+                    }
+
+                    @Override
+                    public void remove(Marker marker) {
+                        marker.remove();
+                    }
+                });
+        mMap.setOnCameraChangeListener(new GoogleMap.OnCameraChangeListener() {
+            @Override
+            public void onCameraChange(CameraPosition position) {
+                refreshInfectedLayer();
+            }
+        });
+    }
+
+    private static String clusterTitle(MarkerCluster cluster) {
+        return cluster.getCount() == 1 ? "Infected bump" : cluster.getCount() + " infected bumps";
     }
 }
@@ -0,0 +1,32 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks on the Android main thread.
+ */
+public final class MainThreadExecutor implements Executor {
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void execute(Runnable command) {
+        mHandler.post(command);
+    }
+
+    /**
+     * Runs {@code command} after {@code delayMillis}, unless it is removed first.
+     */
+    public void executeDelayed(Runnable command, long delayMillis) {
+        mHandler.postDelayed(command, delayMillis);
+    }
+
+    /**
+     * Drops every pending run of {@code command}.
+     */
+    public void remove(Runnable command) {
+        mHandler.removeCallbacks(command);
+    }
+}
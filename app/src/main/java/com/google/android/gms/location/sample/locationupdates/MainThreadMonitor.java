@@ -0,0 +1,91 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import android.util.Printer;
+
+import java.util.Locale;
+
+/**
+ * Measures how long the main thread spends in each message it dispatches.
+ *
+ * Installed with {@code Looper.getMainLooper().setMessageLogging(monitor)}, the looper prints a
+ * {@code >>>>> Dispatching} line before and a {@code <<<<< Finished} line after every message;
+ * the time between the two is time the UI could not respond. Messages longer than
+ * {@link #SLOW_MESSAGE_MILLIS}, one frame at 60 fps, are counted as blocking. The summary makes
+ * startup and map interaction comparable before and after moving work off the main thread.
+ */
+public final class MainThreadMonitor implements Printer {
+    public static final long SLOW_MESSAGE_MILLIS = 16;
+
+    private static final String DISPATCH_PREFIX = ">>>>> Dispatching";
+    private static final String FINISH_PREFIX = "<<<<< Finished";
+
+    private long mStartedAtNanos = -1;
+    private long mMessages;
+    private long mBusyNanos;
+    private long mSlowMessages;
+    private long mSlowNanos;
+    private long mLongestNanos;
+
+    @Override
+    public void println(String line) {
+        if (line.startsWith(DISPATCH_PREFIX)) {
+            dispatchStarted(System.nanoTime());
+        } else if (line.startsWith(FINISH_PREFIX)) {
+            dispatchFinished(System.nanoTime());
+        }
+    }
+
+    synchronized void dispatchStarted(long nowNanos) {
+        mStartedAtNanos = nowNanos;
+    }
+
+    synchronized void dispatchFinished(long nowNanos) {
+        if (mStartedAtNanos < 0) {
+            return;
+        }
+        long took = nowNanos - mStartedAtNanos;
+        mStartedAtNanos = -1;
+        mMessages++;
+        mBusyNanos += took;
+        mLongestNanos = Math.max(mLongestNanos, took);
+        if (took > SLOW_MESSAGE_MILLIS * 1000000L) {
+            mSlowMessages++;
+            mSlowNanos += took;
+        }
+    }
+
+    public synchronized long getMessageCount() {
+        return mMessages;
+    }
+
+    /**
+     * Total time spent in messages that took longer than {@link #SLOW_MESSAGE_MILLIS}.
+     */
+    public synchronized long getBlockedMillis() {
+        return mSlowNanos / 1000000L;
+    }
+
+    public synchronized long getSlowMessageCount() {
+        return mSlowMessages;
+    }
+
+    public synchronized long getLongestMillis() {
+        return mLongestNanos / 1000000L;
+    }
+
+    public synchronized void reset() {
+        mStartedAtNanos = -1;
+        mMessages = 0;
+        mBusyNanos = 0;
+        mSlowMessages = 0;
+        mSlowNanos = 0;
+        mLongestNanos = 0;
+    }
+
+    public synchronized String summary() {
+        return String.format(Locale.US,
+                "%d messages, %d ms busy, %d over %d ms blocking for %d ms, longest %d ms",
+                mMessages, mBusyNanos / 1000000L, mSlowMessages, SLOW_MESSAGE_MILLIS,
+                mSlowNanos / 1000000L, mLongestNanos / 1000000L);
+    }
+}
@@ -0,0 +1,74 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+/**
+ * One marker's worth of infected bumps produced by {@link MarkerClusterer}: either a single
+ * bump or a group of nearby bumps drawn at their centroid.
+ *
+ * The key identifies the grid cell the cluster came from and stays the same while the camera
+ * pans at a given zoom level, so {@link MarkerLayer} can keep its marker.
+ */
+public final class MarkerCluster {
+    private final long mKey;
+    private final int mCount;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final int mRow;
+
+    /**
+     * @param row the table row of the bump when {@code count} is 1, otherwise -1.
+     */
+    public MarkerCluster(long key, int count, double latitude, double longitude, int row) {
+        mKey = key;
+        mCount = count;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mRow = row;
+    }
+
+    public long getKey() {
+        return mKey;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * The table row of a single bump, or -1 for a group.
+     */
+    public int getRow() {
+        return mRow;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof MarkerCluster)) {
+            return false;
+        }
+        MarkerCluster other = (MarkerCluster) o;
+        return mKey == other.mKey && mCount == other.mCount && mRow == other.mRow
+                && Double.compare(mLatitude, other.mLatitude) == 0
+                && Double.compare(mLongitude, other.mLongitude) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = mKey * 31 + mCount;
+        bits = bits * 31 + Double.doubleToLongBits(mLatitude);
+        bits = bits * 31 + Double.doubleToLongBits(mLongitude);
+        return (int) (bits ^ (bits >>> 32)) * 31 + mRow;
+    }
+
+    @Override
+    public String toString() {
+        return "MarkerCluster{" + mCount + " at " + mLatitude + "," + mLongitude + "}";
+    }
+}
@@ -0,0 +1,293 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Groups the infected bumps inside the visible part of the map into {@link MarkerCluster}s.
+ *
+ * The world is divided into square cells of {@code cellPixels} screen pixels in the Web Mercator
+ * projection the map uses at the current zoom level, so clusters keep the same size on screen at
+ * every zoom. Only the bumps the {@link SpatialGridIndex} reports inside the viewport are looked
+ * at. A cell holding several bumps becomes one cluster at their centroid; a cell holding one
+ * bump becomes a single marker keyed by its table row, so it keeps its marker across zoom levels.
+ *
+ * For a screen-sized viewport the cells in view are tallied in a dense array, and each bump's
+ * cell row is found by binary search over the precomputed latitudes of the row edges rather
+ * than by projecting it. Larger or antimeridian-crossing bounds fall back to a hash table. The
+ * tallies live in reused primitive arrays either way. Not thread-safe.
+ */
+public final class MarkerClusterer {
+    public static final int DEFAULT_CELL_PIXELS = 80;
+    public static final int MAX_ZOOM = 21;
+
+    // Singles are keyed by row, groups by zoom level and cell; the top bit keeps them apart.
+    private static final long SINGLE_KEY = Long.MIN_VALUE;
+    private static final double MAX_MERCATOR_LATITUDE = 85.05112878;
+    private static final int MIN_CAPACITY = 64;
+    private static final int MAX_DENSE_CELLS = 1 << 16;
+
+    private final int mCellPixels;
+    private final int mMaxDenseCells;
+
+    // Open-addressing table from cell to tally; mUsed lists the occupied slots in first-seen order.
+    private long[] mCells = new long[MIN_CAPACITY];
+    private boolean[] mOccupied = new boolean[MIN_CAPACITY];
+    private int[] mCounts = new int[MIN_CAPACITY];
+    private double[] mSumLat = new double[MIN_CAPACITY];
+    private double[] mSumLng = new double[MIN_CAPACITY];
+    private int[] mFirstRow = new int[MIN_CAPACITY];
+    private int[] mUsed = new int[MIN_CAPACITY];
+    private int mUsedCount;
+
+    // Dense tallies for the cells in view, row-major from the north-west cell in view.
+    private int[] mDenseCounts = new int[0];
+    private double[] mDenseSumLat = new double[0];
+    private double[] mDenseSumLng = new double[0];
+    private int[] mDenseFirstRow = new int[0];
+    // mRowEdges[i] is the southern edge latitude of the i-th cell row in view.
+    private double[] mRowEdges = new double[0];
+    private long mDenseX0;
+    private long mDenseY0;
+    private int mDenseCols;
+    private int mDenseRows;
+
+    private int mZoomLevel;
+    private double mCellsPerDegreeLng;
+    private double mCellsPerMercatorUnit;
+
+    private final SpatialGridIndex.Visitor mTally = new SpatialGridIndex.Visitor() {
+        @Override
+        public boolean visit(int row, double latitude, double longitude) {
+            tally(row, latitude, longitude);
+            return true;
+        }
+    };
+
+    private final SpatialGridIndex.Visitor mDenseTally = new SpatialGridIndex.Visitor() {
+        @Override
+        public boolean visit(int row, double latitude, double longitude) {
+            denseTally(row, latitude, longitude);
+            return true;
+        }
+    };
+
+    public MarkerClusterer() {
+        this(DEFAULT_CELL_PIXELS);
+    }
+
+    public MarkerClusterer(int cellPixels) {
+        this(cellPixels, MAX_DENSE_CELLS);
+    }
+
+    MarkerClusterer(int cellPixels, int maxDenseCells) {
+        if (cellPixels <= 0) {
+            throw new IllegalArgumentException("cellPixels must be positive");
+        }
+        mCellPixels = cellPixels;
+        mMaxDenseCells = maxDenseCells;
+    }
+
+    /**
+     * Clusters the bumps of {@code index} inside the given bounds, which may cross the
+     * antimeridian ({@code west > east}).
+     *
+     * @param zoom the camera zoom; fractional zooms use the cells of the level below.
+     */
+    public List<MarkerCluster> cluster(SpatialGridIndex index, double south, double west,
+                                       double north, double east, float zoom) {
+        mZoomLevel = Math.max(0, Math.min(MAX_ZOOM, (int) Math.floor(zoom)));
+        double worldPixels = 256.0 * (1L << mZoomLevel);
+        mCellsPerDegreeLng = worldPixels / 360 / mCellPixels;
+        mCellsPerMercatorUnit = worldPixels / (2 * Math.PI) / mCellPixels;
+        reset();
+
+        if (west <= east && prepareDense(south, west, north, east)) {
+            index.queryBox(south, west, north, east, mDenseTally);
+            return denseClusters();
+        }
+        index.queryBox(south, west, north, east, mTally);
+
+        List<MarkerCluster> clusters = new ArrayList<MarkerCluster>(mUsedCount);
+        for (int i = 0; i < mUsedCount; i++) {
+            int slot = mUsed[i];
+            int count = mCounts[slot];
+            if (count == 1) {
+                clusters.add(new MarkerCluster(SINGLE_KEY | mFirstRow[slot], 1, mSumLat[slot],
+                        mSumLng[slot], mFirstRow[slot]));
+            } else {
+                clusters.add(new MarkerCluster(mCells[slot], count, mSumLat[slot] / count,
+                        mSumLng[slot] / count, -1));
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * Sets up dense tallies for the cells covering the bounds.
+     *
+     * @return false if there are too many cells in view.
+     */
+    private boolean prepareDense(double south, double west, double north, double east) {
+        mDenseX0 = cellX(west);
+        mDenseY0 = cellY(north);
+        long cols = cellX(east) - mDenseX0 + 1;
+        long rows = cellY(south) - mDenseY0 + 1;
+        if (cols * rows > mMaxDenseCells) {
+            return false;
+        }
+        mDenseCols = (int) cols;
+        mDenseRows = (int) rows;
+        int cells = mDenseCols * mDenseRows;
+        if (mDenseCounts.length < cells) {
+            mDenseCounts = new int[cells];
+            mDenseSumLat = new double[cells];
+            mDenseSumLng = new double[cells];
+            mDenseFirstRow = new int[cells];
+        } else {
+            Arrays.fill(mDenseCounts, 0, cells, 0);
+        }
+        if (mRowEdges.length < mDenseRows) {
+            mRowEdges = new double[mDenseRows];
+        }
+        for (int r = 0; r < mDenseRows; r++) {
+            mRowEdges[r] = latitudeOfY((mDenseY0 + r + 1) / mCellsPerMercatorUnit);
+        }
+        return true;
+    }
+
+    private void denseTally(int row, double latitude, double longitude) {
+        // Rows run north to south, so find the first row whose southern edge is below the bump.
+        int lo = 0;
+        int hi = mDenseRows - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mRowEdges[mid] > latitude) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int col = (int) Math.max(0, Math.min(mDenseCols - 1, cellX(longitude) - mDenseX0));
+        int slot = lo * mDenseCols + col;
+        if (mDenseCounts[slot]++ == 0) {
+            mDenseSumLat[slot] = latitude;
+            mDenseSumLng[slot] = longitude;
+            mDenseFirstRow[slot] = row;
+        } else {
+            mDenseSumLat[slot] += latitude;
+            mDenseSumLng[slot] += longitude;
+        }
+    }
+
+    private List<MarkerCluster> denseClusters() {
+        List<MarkerCluster> clusters = new ArrayList<MarkerCluster>();
+        for (int r = 0; r < mDenseRows; r++) {
+            for (int c = 0; c < mDenseCols; c++) {
+                int slot = r * mDenseCols + c;
+                int count = mDenseCounts[slot];
+                if (count == 1) {
+                    clusters.add(new MarkerCluster(SINGLE_KEY | mDenseFirstRow[slot], 1,
+                            mDenseSumLat[slot], mDenseSumLng[slot], mDenseFirstRow[slot]));
+                } else if (count > 1) {
+                    clusters.add(new MarkerCluster(key(mDenseY0 + r, mDenseX0 + c), count,
+                            mDenseSumLat[slot] / count, mDenseSumLng[slot] / count, -1));
+                }
+            }
+        }
+        return clusters;
+    }
+
+    private void tally(int row, double latitude, double longitude) {
+        long cell = cellKey(latitude, longitude);
+        int mask = mCells.length - 1;
+        int slot = mix(cell) & mask;
+        while (mOccupied[slot] && mCells[slot] != cell) {
+            slot = (slot + 1) & mask;
+        }
+        if (!mOccupied[slot]) {
+            mOccupied[slot] = true;
+            mCells[slot] = cell;
+            mCounts[slot] = 0;
+            mSumLat[slot] = 0;
+            mSumLng[slot] = 0;
+            mFirstRow[slot] = row;
+            mUsed[mUsedCount++] = slot;
+        }
+        mCounts[slot]++;
+        mSumLat[slot] += latitude;
+        mSumLng[slot] += longitude;
+        if (mUsedCount * 2 > mCells.length) {
+            grow();
+        }
+    }
+
+    private long cellKey(double latitude, double longitude) {
+        return key(cellY(latitude), cellX(longitude));
+    }
+
+    private long key(long cellY, long cellX) {
+        return ((long) mZoomLevel << 56) | (cellY << 28) | cellX;
+    }
+
+    private long cellX(double longitude) {
+        return (long) ((longitude + 180) * mCellsPerDegreeLng);
+    }
+
+    private long cellY(double latitude) {
+        double lat = Math.max(-MAX_MERCATOR_LATITUDE, Math.min(MAX_MERCATOR_LATITUDE, latitude));
+        double sin = Math.sin(Math.toRadians(lat));
+        // Mercator y grows southwards from 0 at the top edge of the map to 2 * pi at the bottom.
+        double y = Math.PI - 0.5 * Math.log((1 + sin) / (1 - sin));
+        return (long) (y * mCellsPerMercatorUnit);
+    }
+
+    private static double latitudeOfY(double y) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI - y)));
+    }
+
+    private void reset() {
+        for (int i = 0; i < mUsedCount; i++) {
+            mOccupied[mUsed[i]] = false;
+        }
+        mUsedCount = 0;
+    }
+
+    private void grow() {
+        long[] cells = mCells;
+        int[] counts = mCounts;
+        double[] sumLat = mSumLat;
+        double[] sumLng = mSumLng;
+        int[] firstRow = mFirstRow;
+        int[] used = mUsed;
+        int capacity = cells.length * 2;
+        mCells = new long[capacity];
+        mOccupied = new boolean[capacity];
+        mCounts = new int[capacity];
+        mSumLat = new double[capacity];
+        mSumLng = new double[capacity];
+        mFirstRow = new int[capacity];
+        mUsed = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < mUsedCount; i++) {
+            int from = used[i];
+            int slot = mix(cells[from]) & mask;
+            while (mOccupied[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            mOccupied[slot] = true;
+            mCells[slot] = cells[from];
+            mCounts[slot] = counts[from];
+            mSumLat[slot] = sumLat[from];
+            mSumLng[slot] = sumLng[from];
+            mFirstRow[slot] = firstRow[from];
+            mUsed[i] = slot;
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
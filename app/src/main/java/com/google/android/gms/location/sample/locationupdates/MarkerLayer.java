@@ -0,0 +1,122 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps a set of placed map markers in step with a list of items by diffing, so redrawing only
+ * touches what changed.
+ *
+ * Each item has a key. On {@link #render(Iterable)} a marker is added for every new key,
+ * updated when the item under an existing key is no longer {@code equals} to the one it was
+ * drawn from, and removed when its key is gone. The {@link Renderer} does the actual map calls, which keeps this
+ * class free of Android types. Not thread-safe; use it from the thread that owns the map.
+ *
+ * @param <I> the item type, e.g. {@link MarkerCluster}.
+ * @param <M> the marker handle returned by the renderer.
+ */
+public final class MarkerLayer<I, M> {
+
+    /**
+     * Places, moves and removes the markers for a layer.
+     */
+    public interface Renderer<I, M> {
+        long keyOf(I item);
+
+        M add(I item);
+
+        void update(M marker, I item);
+
+        void remove(M marker);
+    }
+
+    private static final class Placed<I, M> {
+        I mItem;
+        final M mMarker;
+        int mGeneration;
+
+        Placed(I item, M marker) {
+            mItem = item;
+            mMarker = marker;
+        }
+    }
+
+    private final Renderer<I, M> mRenderer;
+    private final Map<Long, Placed<I, M>> mPlaced = new HashMap<Long, Placed<I, M>>();
+    private int mGeneration;
+    private int mAdded;
+    private int mUpdated;
+    private int mRemoved;
+
+    public MarkerLayer(Renderer<I, M> renderer) {
+        mRenderer = renderer;
+    }
+
+    /**
+     * Makes the placed markers match {@code items}. If two items share a key, the last one wins.
+     */
+    public void render(Iterable<? extends I> items) {
+        int generation = ++mGeneration;
+        for (I item : items) {
+            Long key = mRenderer.keyOf(item);
+            Placed<I, M> placed = mPlaced.get(key);
+            if (placed == null) {
+                placed = new Placed<I, M>(item, mRenderer.add(item));
+                mPlaced.put(key, placed);
+                mAdded++;
+            } else if (!placed.mItem.equals(item)) {
+                mRenderer.update(placed.mMarker, item);
+                placed.mItem = item;
+                mUpdated++;
+            }
+            placed.mGeneration = generation;
+        }
+        for (Iterator<Placed<I, M>> it = mPlaced.values().iterator(); it.hasNext(); ) {
+            Placed<I, M> placed = it.next();
+            if (placed.mGeneration != generation) {
+                mRenderer.remove(placed.mMarker);
+                it.remove();
+                mRemoved++;
+            }
+        }
+    }
+
+    /**
+     * Removes every marker of the layer.
+     */
+    public void clear() {
+        for (Placed<I, M> placed : mPlaced.values()) {
+            mRenderer.remove(placed.mMarker);
+            mRemoved++;
+        }
+        mPlaced.clear();
+    }
+
+    /**
+     * The marker placed for {@code key}, or null.
+     */
+    public M getMarker(long key) {
+        Placed<I, M> placed = mPlaced.get(key);
+        return placed == null ? null : placed.mMarker;
+    }
+
+    /**
+     * Number of markers currently placed.
+     */
+    public int size() {
+        return mPlaced.size();
+    }
+
+    public int getAddCount() {
+        return mAdded;
+    }
+
+    public int getUpdateCount() {
+        return mUpdated;
+    }
+
+    public int getRemoveCount() {
+        return mRemoved;
+    }
+}
@@ -0,0 +1,190 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A registry of named counters, gauges and {@link LatencyHistogram}s for watching the location
+ * and upload pipeline in the field.
+ *
+ * Look an instrument up once and keep it: recording on a {@link Counter} or a histogram is a few
+ * atomic operations, with no lock, allocation or map lookup. Gauges are read only when a
+ * {@link #snapshot()} is taken, so exposing a component's existing counters costs its hot path
+ * nothing. Instruments may be used from any thread; a snapshot is a recent, not necessarily
+ * consistent, view. {@link MetricsDumper} writes snapshots to a file periodically.
+ */
+public final class Metrics {
+    private static Metrics sDefault;
+
+    private final ConcurrentMap<String, Object> mInstruments =
+            new ConcurrentHashMap<String, Object>();
+
+    /**
+     * A count that only goes up.
+     */
+    public static final class Counter {
+        private final AtomicLong mValue = new AtomicLong();
+
+        public void increment() {
+            mValue.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            mValue.addAndGet(delta);
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+    }
+
+    /**
+     * A value read when a snapshot is taken, such as a queue's depth. Called on the thread
+     * taking the snapshot, so it must only read state that is safe to read from there.
+     */
+    public interface Gauge {
+        long get();
+    }
+
+    /**
+     * The registry shared by the process.
+     */
+    public static synchronized Metrics getDefault() {
+        if (sDefault == null) {
+            sDefault = new Metrics();
+        }
+        return sDefault;
+    }
+
+    /**
+     * Returns the counter called {@code name}, creating it on first use.
+     *
+     * @throws IllegalArgumentException if {@code name} is registered as another kind of metric.
+     */
+    public Counter counter(String name) {
+        return getOrCreate(name, Counter.class);
+    }
+
+    /**
+     * Returns the histogram called {@code name}, creating it on first use.
+     *
+     * @throws IllegalArgumentException if {@code name} is registered as another kind of metric.
+     */
+    public LatencyHistogram histogram(String name) {
+        return getOrCreate(name, LatencyHistogram.class);
+    }
+
+    /**
+     * Reports {@code gauge} as {@code name}, replacing whatever was registered under it.
+     */
+    public void register(String name, Gauge gauge) {
+        mInstruments.put(name, gauge);
+    }
+
+    /**
+     * Reports a histogram a component keeps itself as {@code name}, replacing whatever was
+     * registered under it.
+     */
+    public void register(String name, LatencyHistogram histogram) {
+        mInstruments.put(name, histogram);
+    }
+
+    /**
+     * Stops reporting {@code name}.
+     */
+    public void unregister(String name) {
+        mInstruments.remove(name);
+    }
+
+    /**
+     * Reads every metric now. Histograms are reported as {@code name.count}, {@code name.mean},
+     * {@code name.p50}, {@code name.p90}, {@code name.p99} and {@code name.max}, in microseconds.
+     */
+    public Snapshot snapshot() {
+        SortedMap<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, Object> entry : mInstruments.entrySet()) {
+            String name = entry.getKey();
+            Object instrument = entry.getValue();
+            if (instrument instanceof Counter) {
+                values.put(name, ((Counter) instrument).get());
+            } else if (instrument instanceof Gauge) {
+                values.put(name, ((Gauge) instrument).get());
+            } else {
+                LatencyHistogram histogram = (LatencyHistogram) instrument;
+                values.put(name + ".count", histogram.getCount());
+                values.put(name + ".mean", Math.round(histogram.getMeanMicros()));
+                values.put(name + ".p50", histogram.getPercentileMicros(50));
+                values.put(name + ".p90", histogram.getPercentileMicros(90));
+                values.put(name + ".p99", histogram.getPercentileMicros(99));
+                values.put(name + ".max", histogram.getMaxMicros());
+            }
+        }
+        return new Snapshot(System.currentTimeMillis(), values);
+    }
+
+    private <T> T getOrCreate(String name, Class<T> type) {
+        Object instrument = mInstruments.get(name);
+        if (instrument == null) {
+            Object created = type == Counter.class ? new Counter() : new LatencyHistogram();
+            instrument = mInstruments.putIfAbsent(name, created);
+            if (instrument == null) {
+                instrument = created;
+            }
+        }
+        if (!type.isInstance(instrument)) {
+            throw new IllegalArgumentException(name + " is not a " + type.getSimpleName());
+        }
+        return type.cast(instrument);
+    }
+
+    /**
+     * The values of every metric at one moment, by name.
+     */
+    public static final class Snapshot {
+        private final long mTimeMillis;
+        private final SortedMap<String, Long> mValues;
+
+        Snapshot(long timeMillis, SortedMap<String, Long> values) {
+            mTimeMillis = timeMillis;
+            mValues = Collections.unmodifiableSortedMap(values);
+        }
+
+        /**
+         * When the snapshot was taken, in milliseconds since the epoch.
+         */
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+
+        public SortedMap<String, Long> getValues() {
+            return mValues;
+        }
+
+        /**
+         * The value of {@code name}, or {@code defaultValue} if it was not reported.
+         */
+        public long get(String name, long defaultValue) {
+            Long value = mValues.get(name);
+            return value == null ? defaultValue : value;
+        }
+
+        /**
+         * One {@code name value} line per metric, sorted by name, after a line with the time.
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US, "# time %d%n", mTimeMillis));
+            for (Map.Entry<String, Long> entry : mValues.entrySet()) {
+                sb.append(String.format(Locale.US, "%s %d%n", entry.getKey(), entry.getValue()));
+            }
+            return sb.toString();
+        }
+    }
+}
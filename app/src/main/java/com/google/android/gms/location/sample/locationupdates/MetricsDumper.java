@@ -0,0 +1,120 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a {@link Metrics} snapshot to a file every so often, on its own low-priority thread.
+ *
+ * The file always holds one whole snapshot: each is written next to it and renamed over it, so
+ * a reader never sees a partial one. {@link #stop()} writes a last snapshot, taken before it
+ * returns, so instruments unregistered afterwards still appear in it.
+ */
+public class MetricsDumper {
+    private final Metrics mMetrics;
+    private final File mFile;
+    private final File mTempFile;
+    private ScheduledExecutorService mWorker;
+    private ScheduledExecutorService mStoppedWorker;
+
+    private final Runnable mDumpTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                dump();
+            } catch (IOException e) {
+                // The next period tries again.
+            }
+        }
+    };
+
+    public MetricsDumper(Metrics metrics, File file) {
+        mMetrics = metrics;
+        mFile = file;
+        mTempFile = new File(file.getPath() + ".tmp");
+    }
+
+    /**
+     * Writes a snapshot now and then every {@code periodMillis}. Does nothing if already started.
+     */
+    public synchronized void start(long periodMillis) {
+        if (mWorker != null) {
+            return;
+        }
+        mWorker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "metrics-dumper");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mWorker.scheduleWithFixedDelay(mDumpTask, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic dumps after one last snapshot. The snapshot is taken on the calling
+     * thread and only written in the background; the call does not wait for the write.
+     */
+    public synchronized void stop() {
+        if (mWorker == null) {
+            return;
+        }
+        final Metrics.Snapshot last = mMetrics.snapshot();
+        mWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(last);
+                } catch (IOException e) {
+                    // Nothing left to retry; the previous snapshot stays in place.
+                }
+            }
+        });
+        mWorker.shutdown();
+        mStoppedWorker = mWorker;
+        mWorker = null;
+    }
+
+    /**
+     * Waits for the last snapshot after {@link #stop()}. Not for the main thread.
+     *
+     * @return false if it was still being written when {@code timeout} ran out.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        ScheduledExecutorService worker;
+        synchronized (this) {
+            worker = mStoppedWorker;
+        }
+        return worker == null || worker.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Takes a snapshot and writes it to the file, replacing the previous one.
+     */
+    public Metrics.Snapshot dump() throws IOException {
+        Metrics.Snapshot snapshot = mMetrics.snapshot();
+        write(snapshot);
+        return snapshot;
+    }
+
+    private void write(Metrics.Snapshot snapshot) throws IOException {
+        synchronized (mTempFile) {
+            OutputStream out = new FileOutputStream(mTempFile);
+            try {
+                out.write(snapshot.toString().getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            if (!mTempFile.renameTo(mFile)) {
+                throw new IOException("Cannot replace " + mFile);
+            }
+        }
+    }
+}
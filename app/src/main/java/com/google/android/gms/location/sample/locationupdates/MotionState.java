@@ -0,0 +1,55 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+/**
+ * What a {@link SamplingPolicy} knows about the device when it picks the next request.
+ */
+public final class MotionState {
+    /**
+     * The state before the first fix: speed and proximity unknown.
+     */
+    public static final MotionState UNKNOWN =
+            new MotionState(0, Float.NaN, 0, Double.POSITIVE_INFINITY);
+
+    private final long mTime;
+    private final float mSpeed;
+    private final long mStationaryMillis;
+    private final double mNearestInfectedMeters;
+
+    public MotionState(long time, float speedMetersPerSecond, long stationaryMillis,
+                       double nearestInfectedMeters) {
+        mTime = time;
+        mSpeed = speedMetersPerSecond;
+        mStationaryMillis = stationaryMillis;
+        mNearestInfectedMeters = nearestInfectedMeters;
+    }
+
+    /**
+     * Time of the fix this state was derived from.
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    /**
+     * Smoothed ground speed in metres per second, or {@code NaN} before two fixes are known.
+     */
+    public float getSpeedMetersPerSecond() {
+        return mSpeed;
+    }
+
+    /**
+     * How long the device has stayed within {@link SamplingEngine#STATIONARY_RADIUS_METERS} of
+     * where it settled; 0 while moving.
+     */
+    public long getStationaryMillis() {
+        return mStationaryMillis;
+    }
+
+    /**
+     * Distance to the nearest known infected bump, or positive infinity if none is within
+     * {@link SamplingEngine#PROXIMITY_SEARCH_METERS} or the table is not loaded.
+     */
+    public double getNearestInfectedMeters() {
+        return mNearestInfectedMeters;
+    }
+}
@@ -1,60 +1,222 @@
 package com.google.android.gms.location.sample.locationupdates;
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.location.Location;
 import android.location.LocationManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Binder;
 import android.os.Bundle;
 import android.os.IBinder;
 import android.os.StrictMode;
-import android.util.Log;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
-import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Created by wstewart on 10/30/2016.
  */
 public class MyService extends Service {
 
-    private static final String TAG = "BOOMBOOMTESTGPS";
+    private static final Logger LOG = Logger.get("MyService");
     private LocationManager mLocationManager = null;
-    private static final int LOCATION_INTERVAL = 1000;
-    private static final float LOCATION_DISTANCE = 10f;
+    private static final String OUTBOX_DIRECTORY = "outbox";
+
+    /**
+     * Directory under getFilesDir() holding the on-disk location history.
+     */
+    static final String HISTORY_DIRECTORY = "history";
+
     protected String mUid;
+    private LocationUploader mUploader;
+    private HttpLocationBatchSender mSender;
+
+    /**
+     * Where a snapshot of {@link Metrics#getDefault()} is kept, under getFilesDir(), and how
+     * often it is rewritten.
+     */
+    private static final String METRICS_FILE = "metrics.txt";
+    private static final long METRICS_DUMP_PERIOD_MILLIS = 5 * 60 * 1000;
+    private static final long HISTORY_CLOSE_RETRY_MILLIS = 100;
+    private MetricsDumper mMetricsDumper;
+
+    /**
+     * Names this instance registered in {@link Metrics#getDefault()}; removed in onDestroy().
+     */
+    private final List<String> mMetricNames = new ArrayList<String>();
+
+    /**
+     * Drops the fixes the server can interpolate before they reach the uploader. Only used on
+     * the main thread.
+     */
+    private final TrajectorySimplifier mSimplifier = new TrajectorySimplifier();
+
+    /**
+     * Hands the simplifier's held fixes to the uploader on the uploader's own flush interval, so
+     * at most that much of the track is only in memory when the process is killed.
+     */
+    private final Runnable mHeldFixFlusher = new Runnable() {
+        @Override
+        public void run() {
+            submitHeldFix();
+            mMainThread.executeDelayed(this, FlushPolicy.DEFAULT.getMaxDelayMillis());
+        }
+    };
+
+    /**
+     * Picks provider, interval and displacement from how the device moves and how close it is
+     * to infected bumps, instead of polling both providers every second.
+     */
+    private final SamplingEngine mSampling = new SamplingEngine(new AdaptiveSamplingPolicy());
+
+    /**
+     * Flags the infected bumps the device stays near. Only used on the main thread.
+     */
+    private final ExposureEngine mExposure = new ExposureEngine(new ExposureEngine.Listener() {
+        @Override
+        public void onExposure(ExposureEngine.Exposure exposure) {
+            LOG.w("Possible exposure: %s", exposure);
+        }
+    });
+    private TaskScope mTasks;
+
+    /**
+     * The recent fixes, and once the store is open every fix on disk. Recorded for as long as
+     * the service runs; bound activities only read it.
+     */
+    private final LocationHistoryManager mHistory = new LocationHistoryManager(5);
+
+    /**
+     * Opens, appends to and closes the on-disk history, one task at a time and in order. Shared
+     * by every instance of the service, so a restarted service opens the store only after the
+     * previous one has closed it.
+     */
+    private static final ExecutorService sHistoryWriter = TaskExecutors.newPool("history", 1, 64);
+
+    /**
+     * The store some instance opened and has not closed yet. Only touched on the history writer.
+     */
+    private static volatile LocationHistoryStore sOpenStore;
+
+    /**
+     * The store this instance opened, attached or not. Set on the history writer.
+     */
+    private volatile LocationHistoryStore mStore;
+    private boolean mDestroyed;
+
+    private long mInfectedIndexRefreshedAt = Long.MIN_VALUE;
+
+    /**
+     * The table the sampling and exposure engines were last given the index of.
+     */
+    private InfectedTable mInfectedTable;
+
+    /**
+     * Every provider fix goes through here once; the uploader, the sampling engine and any bound
+     * activity subscribe to it.
+     */
+    private final LocationPipeline mPipeline = new LocationPipeline(new FixFusion(true));
+    private final MainThreadExecutor mMainThread = new MainThreadExecutor();
+    private final IBinder mBinder = new LocalBinder();
+    private FanOutChannel.Subscription<LocationFix> mUploadSubscription;
+    private FanOutChannel.Subscription<LocationFix> mSamplingSubscription;
+    private FanOutChannel.Subscription<LocationFix> mExposureSubscription;
+    private FanOutChannel.Subscription<LocationFix> mHistorySubscription;
+
+    /**
+     * Fixes the uploader may fall behind by before new ones are dropped; the outbox behind it is
+     * what absorbs long network outages.
+     */
+    private static final int UPLOAD_QUEUE_CAPACITY = 256;
+    private static final int SAMPLING_QUEUE_CAPACITY = 16;
+
+    /**
+     * Every fix counts towards contact time, so the exposure engine gets a queue as deep as the
+     * uploader's.
+     */
+    private static final int EXPOSURE_QUEUE_CAPACITY = 256;
+
+    /**
+     * The history keeps the oldest fixes and drops new ones so it never has gaps in the middle.
+     */
+    private static final int HISTORY_QUEUE_CAPACITY = 64;
+
+    /**
+     * Gives activities in this process the service's location pipeline and its history.
+     */
+    public class LocalBinder extends Binder {
+        public LocationPipeline getPipeline() {
+            return mPipeline;
+        }
+
+        /**
+         * The service's location history, for reading on the main thread. The service records
+         * into it whether or not an activity is bound.
+         */
+        public LocationHistoryManager getHistory() {
+            return mHistory;
+        }
+    }
+
+    /**
+     * Replays fixes that were recorded while offline as soon as a network is available again.
+     */
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            ConnectivityManager cm =
+                    (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            NetworkInfo network = cm.getActiveNetworkInfo();
+            if (network != null && network.isConnected()) {
+                submitHeldFix();
+                mUploader.flush();
+            }
+        }
+    };
 
     private class LocationListener implements android.location.LocationListener{
-        Location mLastLocation;
+        private final String mProvider;
+        private final Metrics.Counter mReceived;
 
         public LocationListener(String provider)
         {
-            Log.e(TAG, "LocationListener " + provider);
-            mLastLocation = new Location(provider);
+            LOG.d("LocationListener %s", provider);
+            mProvider = provider;
+            mReceived = Metrics.getDefault().counter("fix.received." + provider);
         }
         @Override
         public void onLocationChanged(Location location)
         {
-            Log.e(TAG, "onLocationChanged: " + location);
-            mLastLocation.set(location);
-            notifyDatabase(mLastLocation);
+            mReceived.increment();
+            mPipeline.onProviderFix(mProvider, new LocationFix(location.getLatitude(),
+                    location.getLongitude(), location.getAltitude(), location.getAccuracy(),
+                    location.getTime()));
         }
         @Override
         public void onProviderDisabled(String provider)
         {
-            Log.e(TAG, "onProviderDisabled: " + provider);
+            LOG.i("onProviderDisabled: %s", provider);
         }
         @Override
         public void onProviderEnabled(String provider)
         {
-            Log.e(TAG, "onProviderEnabled: " + provider);
+            LOG.i("onProviderEnabled: %s", provider);
         }
         @Override
         public void onStatusChanged(String provider, int status, Bundle extras)
         {
-            Log.e(TAG, "onStatusChanged: " + provider);
+            LOG.d("onStatusChanged: %s %d", provider, status);
         }
     }
     LocationListener[] mLocationListeners = new LocationListener[] {
@@ -64,98 +226,386 @@ public class MyService extends Service {
     @Override
     public IBinder onBind(Intent arg0)
     {
-        return null;
+        return mBinder;
     }
     @Override
     public int onStartCommand(Intent intent, int flags, int startId)
     {
-        Log.e(TAG, "onStartCommand");
+        LOG.d("onStartCommand");
         super.onStartCommand(intent, flags, startId);
         return START_STICKY;
     }
     @Override
     public void onCreate()
     {
-        Log.e(TAG, "onCreate");
+        LogcatSink.install();
+        LOG.d("onCreate");
         initializeLocationManager();
+        mUid = UidProvider.getUniqueId(this);
+        mUploader = createUploader();
+        mTasks = new TaskScope(TaskExecutors.getDefault());
+        refreshInfectedIndex();
+        mUploadSubscription = mPipeline.subscribe(new FanOutChannel.Subscriber<LocationFix>() {
+            @Override
+            public void onItem(LocationFix fix) {
+                LocationFix kept = mSimplifier.offer(fix);
+                if (kept != null) {
+                    mUploader.submit(kept);
+                }
+            }
+        }, mMainThread, UPLOAD_QUEUE_CAPACITY, FanOutChannel.Overflow.DROP_NEWEST, false);
+        mSamplingSubscription = mPipeline.subscribe(new FanOutChannel.Subscriber<LocationFix>() {
+            @Override
+            public void onItem(LocationFix fix) {
+                adaptSampling(fix);
+            }
+        }, mMainThread, SAMPLING_QUEUE_CAPACITY, FanOutChannel.Overflow.DROP_OLDEST, false);
+        mExposureSubscription = mPipeline.subscribe(new FanOutChannel.Subscriber<LocationFix>() {
+            @Override
+            public void onItem(LocationFix fix) {
+                mExposure.onFix(fix);
+            }
+        }, mMainThread, EXPOSURE_QUEUE_CAPACITY, FanOutChannel.Overflow.DROP_NEWEST, false);
+        mHistorySubscription = mPipeline.subscribe(new FanOutChannel.Subscriber<LocationFix>() {
+            @Override
+            public void onItem(LocationFix fix) {
+                mHistory.add(fix);
+            }
+        }, mMainThread, HISTORY_QUEUE_CAPACITY, FanOutChannel.Overflow.DROP_NEWEST, false);
+        openHistoryStore();
+        mMainThread.executeDelayed(mHeldFixFlusher, FlushPolicy.DEFAULT.getMaxDelayMillis());
+        registerReceiver(mConnectivityReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        registerMetrics(Metrics.getDefault());
+        mMetricsDumper = new MetricsDumper(Metrics.getDefault(),
+                new File(getFilesDir(), METRICS_FILE));
+        mMetricsDumper.start(METRICS_DUMP_PERIOD_MILLIS);
+
+        // Uploads run on the uploader's worker thread, so StrictMode stays on.
+        if (BuildConfig.DEBUG) {
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectAll().penaltyLog().build());
+        }
+
+        requestLocationUpdates();
+    }
+
+    /**
+     * Exposes the pipeline's, the uploader's and the infected table's own counters and
+     * histograms. They are only read when a snapshot is taken.
+     */
+    private void registerMetrics(Metrics metrics) {
+        register(metrics, "fix.received", new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return mPipeline.getReceivedCount();
+            }
+        });
+        register(metrics, "fix.published", new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return mPipeline.getPublishedCount();
+            }
+        });
+        registerQueue(metrics, "queue.upload", mUploadSubscription);
+        registerQueue(metrics, "queue.sampling", mSamplingSubscription);
+        registerQueue(metrics, "queue.exposure", mExposureSubscription);
+        registerQueue(metrics, "queue.history", mHistorySubscription);
+        register(metrics, "outbox.pending", new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return mUploader.getPendingFixCount();
+            }
+        });
+        register(metrics, "outbox.dropped", new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return mUploader.getDroppedFixCount();
+            }
+        });
+        register(metrics, "outbox.rejected", new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return mUploader.getRejectedFixCount();
+            }
+        });
+        final UploadClient client = mSender.getClient();
+        register(metrics, "upload.latency", client.getLatency());
+        register(metrics, "upload.requests", new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return client.getRequestCount();
+            }
+        });
+        for (final UploadClient.Failure cause : UploadClient.Failure.values()) {
+            register(metrics, "upload.failures." + cause.name().toLowerCase(Locale.US),
+                    new Metrics.Gauge() {
+                        @Override
+                        public long get() {
+                            return client.getFailureCount(cause);
+                        }
+                    });
+        }
+        InfectedTableRepository table = InfectedTableRepository.getDefault();
+        register(metrics, "table.fetch", table.getFetchLatency());
+        register(metrics, "table.parse", table.getParseLatency());
+    }
 
-        StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder().permitAll().build();
-        StrictMode.setThreadPolicy(policy);
+    private void registerQueue(Metrics metrics, String name,
+                               final FanOutChannel.Subscription<LocationFix> queue) {
+        register(metrics, name + ".depth", new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return queue.getPendingCount();
+            }
+        });
+        register(metrics, name + ".dropped", new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return queue.getDroppedCount();
+            }
+        });
+    }
+
+    private void register(Metrics metrics, String name, Metrics.Gauge gauge) {
+        metrics.register(name, gauge);
+        mMetricNames.add(name);
+    }
+
+    private void register(Metrics metrics, String name, LatencyHistogram histogram) {
+        metrics.register(name, histogram);
+        mMetricNames.add(name);
+    }
 
+    /**
+     * Removes what {@link #registerMetrics} added, so the process-wide registry no longer holds
+     * on to this instance, its uploader or its subscriptions.
+     */
+    private void unregisterMetrics(Metrics metrics) {
+        for (String name : mMetricNames) {
+            metrics.unregister(name);
+        }
+        mMetricNames.clear();
+    }
+
+    /**
+     * Applies the sampling engine's current request. The network provider is always used; GPS
+     * only when the request needs high accuracy.
+     */
+    private void requestLocationUpdates() {
+        SamplingRequest request = mSampling.getRequest();
+        removeLocationUpdates();
         try {
             mLocationManager.requestLocationUpdates(
-                    LocationManager.NETWORK_PROVIDER, LOCATION_INTERVAL, LOCATION_DISTANCE,
-                    mLocationListeners[1]);
+                    LocationManager.NETWORK_PROVIDER, request.getIntervalMillis(),
+                    request.getSmallestDisplacementMeters(), mLocationListeners[1]);
         } catch (java.lang.SecurityException ex) {
-            Log.i(TAG, "fail to request location update, ignore", ex);
+            LOG.w("fail to request location update, ignore", ex);
         } catch (IllegalArgumentException ex) {
-            Log.d(TAG, "network provider does not exist, " + ex.getMessage());
+            LOG.d("network provider does not exist, %s", ex.getMessage());
+        }
+        if (request.getPriority() != SamplingRequest.Priority.HIGH_ACCURACY) {
+            return;
         }
         try {
             mLocationManager.requestLocationUpdates(
-                    LocationManager.GPS_PROVIDER, LOCATION_INTERVAL, LOCATION_DISTANCE,
-                    mLocationListeners[0]);
+                    LocationManager.GPS_PROVIDER, request.getIntervalMillis(),
+                    request.getSmallestDisplacementMeters(), mLocationListeners[0]);
         } catch (java.lang.SecurityException ex) {
-            Log.i(TAG, "fail to request location update, ignore", ex);
+            LOG.w("fail to request location update, ignore", ex);
         } catch (IllegalArgumentException ex) {
-            Log.d(TAG, "gps provider does not exist " + ex.getMessage());
+            LOG.d("gps provider does not exist, %s", ex.getMessage());
         }
-        Log.d("zombie app","called the service class");
-        mUid = UidProvider.getUniqueId(this);
     }
+
+    private void removeLocationUpdates() {
+        for (int i = 0; i < mLocationListeners.length; i++) {
+            try {
+                mLocationManager.removeUpdates(mLocationListeners[i]);
+            } catch (Exception ex) {
+                LOG.w("fail to remove location listeners, ignore", ex);
+            }
+        }
+    }
+
+    private void adaptSampling(LocationFix fix) {
+        if (System.currentTimeMillis() - mInfectedIndexRefreshedAt
+                > InfectedTableRepository.DEFAULT_TTL_MILLIS) {
+            refreshInfectedIndex();
+        }
+        if (mSampling.onFix(fix)) {
+            LOG.i("Sampling %s", mSampling.getRequest());
+            requestLocationUpdates();
+        }
+    }
+
+    /**
+     * Loads the infected table in the background so the sampling and exposure engines know where
+     * the infected bumps are.
+     */
+    private void refreshInfectedIndex() {
+        mInfectedIndexRefreshedAt = System.currentTimeMillis();
+        mTasks.io(new Callable<InfectedTable>() {
+            @Override
+            public InfectedTable call() throws Exception {
+                InfectedTable table = InfectedTableRepository.getDefault().get();
+                table.getSpatialIndex();
+                return table;
+            }
+        }, new TaskScope.Callback<InfectedTable>() {
+            @Override
+            public void onSuccess(InfectedTable table) {
+                // An unchanged table comes back as the same instance; keep its index too.
+                if (table == mInfectedTable) {
+                    return;
+                }
+                mInfectedTable = table;
+                SpatialGridIndex index = table.getSpatialIndex();
+                mSampling.setInfectedIndex(index);
+                mExposure.setInfectedIndex(index);
+            }
+
+            @Override
+            public void onFailure(Exception error) {
+                LOG.w("Cannot load infected table", error);
+            }
+        });
+    }
+    /**
+     * Opens the on-disk location history on the history writer, reads its newest fixes there,
+     * and attaches it to the history manager, which then records every fix in it. The fixes
+     * taken meanwhile are kept in memory and written once it is attached.
+     */
+    private void openHistoryStore() {
+        final File dir = new File(getFilesDir(), HISTORY_DIRECTORY);
+        sHistoryWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                LocationHistoryStore previous = sOpenStore;
+                if (previous != null) {
+                    // The previous instance is still waiting to queue its close.
+                    previous.close();
+                    sOpenStore = null;
+                }
+                final LocationHistoryStore store;
+                final List<LocationFix> latest;
+                try {
+                    store = new LocationHistoryStore(dir);
+                } catch (IOException e) {
+                    LOG.e("Cannot open location history", e);
+                    return;
+                }
+                sOpenStore = store;
+                mStore = store;
+                try {
+                    store.applyRetention(System.currentTimeMillis());
+                    latest = store.getLatest(mHistory.getCapacity());
+                } catch (IOException e) {
+                    LOG.e("Cannot read location history", e);
+                    return;
+                }
+                mMainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mDestroyed) {
+                            // Otherwise onDestroy() has already queued the close.
+                            mHistory.attach(store, latest, sHistoryWriter);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Closes the store this instance opened, after every append queued before it, whether or
+     * not it was ever attached. If the writer is backed up, the close is queued again later
+     * rather than run ahead of those appends.
+     */
+    private void closeHistoryStore() {
+        final Runnable close = new Runnable() {
+            @Override
+            public void run() {
+                LocationHistoryStore store = mStore;
+                if (store != null) {
+                    store.close();
+                    if (sOpenStore == store) {
+                        sOpenStore = null;
+                    }
+                }
+            }
+        };
+        new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sHistoryWriter.execute(close);
+                } catch (RejectedExecutionException e) {
+                    mMainThread.executeDelayed(this, HISTORY_CLOSE_RETRY_MILLIS);
+                }
+            }
+        }.run();
+    }
+
     @Override
     public void onDestroy()
     {
-        Log.e(TAG, "onDestroy");
+        LOG.d("onDestroy");
         super.onDestroy();
+        if (mTasks != null) {
+            mTasks.cancel();
+        }
         if (mLocationManager != null) {
-            for (int i = 0; i < mLocationListeners.length; i++) {
-                try {
-                    mLocationManager.removeUpdates(mLocationListeners[i]);
-                } catch (Exception ex) {
-                    Log.i(TAG, "fail to remove location listners, ignore", ex);
-                }
-            }
+            removeLocationUpdates();
+        }
+        if (mUploadSubscription != null) {
+            mUploadSubscription.cancel();
+            mSamplingSubscription.cancel();
+            mExposureSubscription.cancel();
+            mHistorySubscription.cancel();
+        }
+        mDestroyed = true;
+        mHistory.detach();
+        closeHistoryStore();
+        mMainThread.remove(mHeldFixFlusher);
+        if (mUploader != null) {
+            unregisterReceiver(mConnectivityReceiver);
+            submitHeldFix();
+            mUploader.shutdown();
+        }
+        if (mMetricsDumper != null) {
+            // Takes the last snapshot now, while this instance's gauges are still registered.
+            mMetricsDumper.stop();
+        }
+        unregisterMetrics(Metrics.getDefault());
+    }
+
+    /**
+     * Ends the simplifier's current segment so the uploaded track reaches the latest fix.
+     */
+    private void submitHeldFix() {
+        LocationFix held = mSimplifier.flush();
+        if (held != null) {
+            mUploader.submit(held);
         }
     }
 
     private void initializeLocationManager() {
-        Log.e(TAG, "initializeLocationManager");
+        LOG.d("initializeLocationManager");
         if (mLocationManager == null) {
             mLocationManager = (LocationManager) getApplicationContext().getSystemService(Context.LOCATION_SERVICE);
         }
     }
 
-    private void notifyDatabase(Location mLastLocation) {
+    private LocationUploader createUploader() {
+        URL url;
         try {
-            // Open connection to database wrapper.
-            URL url = new URL("http://cs.furman.edu/~wstewart/webservice.php");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-
-            String attributesToSend = "userid=" + URLEncoder.encode(mUid, "UTF-8")
-                    + "&latitude=" + URLEncoder.encode(Double.toString(mLastLocation.getLatitude()), "UTF-8")
-                    + "&longitude=" + URLEncoder.encode(Double.toString(mLastLocation.getLongitude()), "UTF-8")
-                    + "&time=" + URLEncoder.encode(Long.toString(mLastLocation.getTime() / 1000L), "UTF-8")
-                    + "&accuracy=" + URLEncoder.encode(Double.toString(mLastLocation.getAccuracy()), "UTF-8")
-                    + "&altitude=" + URLEncoder.encode(Double.toString(mLastLocation.getAltitude()), "UTF-8");
-            Log.e("data to send",attributesToSend);
-            // Send location data.
-            conn.setFixedLengthStreamingMode(attributesToSend.getBytes().length);
-            conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-            java.io.BufferedOutputStream out = new java.io.BufferedOutputStream(conn.getOutputStream());
-            PrintStream pStream = new PrintStream(out);
-            pStream.print(attributesToSend);
-            pStream.close();
-        }
-        catch(java.net.MalformedURLException ex){
-            // Error ignored, intentionally left blank.
-        }
-        catch(IOException e) {
-            // Error ignored, intentionally left blank.
-        }
-        catch(NullPointerException np){
-            Log.e("notifyDatabase","null pointer exception");
+            url = new URL(HttpLocationBatchSender.BATCH_URL);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
         }
+        mSender = new HttpLocationBatchSender(url, mUid);
+        return new LocationUploader(new File(getFilesDir(), OUTBOX_DIRECTORY), mSender,
+                FlushPolicy.DEFAULT);
     }
 }
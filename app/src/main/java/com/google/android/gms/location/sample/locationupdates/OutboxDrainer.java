@@ -0,0 +1,83 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a {@link LocationOutbox} to a {@link LocationBatchSender} in append order.
+ *
+ * Each batch is retried a bounded number of times with exponential backoff. A batch is only
+ * committed, and so removed from the outbox, once the sender has accepted it; if it keeps
+ * failing the drain stops and the batch is sent again on the next drain. A batch the backend
+ * {@link LocationBatchSender.RejectedException rejects} is committed without retrying and
+ * counted instead, so it cannot hold up the fixes behind it.
+ */
+public class OutboxDrainer {
+    private final LocationOutbox mOutbox;
+    private final LocationBatchSender mSender;
+    private final int mBatchSize;
+    private final int mMaxAttempts;
+    private final long mInitialBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final AtomicLong mRejectedFixes = new AtomicLong();
+
+    public OutboxDrainer(LocationOutbox outbox, LocationBatchSender sender, int batchSize,
+                         int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+        if (batchSize < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("batchSize and maxAttempts must be positive");
+        }
+        mOutbox = outbox;
+        mSender = sender;
+        mBatchSize = batchSize;
+        mMaxAttempts = maxAttempts;
+        mInitialBackoffMillis = initialBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Sends batches until the outbox is empty or a batch exhausts its retries.
+     *
+     * @return true if the outbox was fully drained.
+     */
+    public boolean drain() throws IOException, InterruptedException {
+        while (true) {
+            LocationOutbox.Batch batch = mOutbox.read(mBatchSize);
+            if (batch.isEmpty()) {
+                return true;
+            }
+            if (!sendWithRetries(batch)) {
+                return false;
+            }
+            mOutbox.commit(batch);
+        }
+    }
+
+    /**
+     * Number of fixes dropped because the backend rejected their batch.
+     */
+    public long getRejectedFixCount() {
+        return mRejectedFixes.get();
+    }
+
+    /**
+     * @return true once the batch is done with: accepted, or rejected for good.
+     */
+    private boolean sendWithRetries(LocationOutbox.Batch batch) throws InterruptedException {
+        long backoff = mInitialBackoffMillis;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                mSender.send(batch.getFixes());
+                return true;
+            } catch (LocationBatchSender.RejectedException e) {
+                mRejectedFixes.addAndGet(batch.getFixes().size());
+                return true;
+            } catch (IOException e) {
+                if (attempt >= mMaxAttempts) {
+                    return false;
+                }
+            }
+            Thread.sleep(backoff);
+            backoff = Math.min(mMaxBackoffMillis, backoff * 2);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+/**
+ * Tracks speed, stationarity and proximity to infected bumps from the fixes it is fed, and asks
+ * a {@link SamplingPolicy} for the request that fits them.
+ *
+ * Callers apply {@link #getRequest()} to the platform and re-apply it whenever
+ * {@link #onFix(LocationFix)} returns true. Not thread-safe; feed it from the thread that
+ * receives location callbacks.
+ */
+public final class SamplingEngine {
+    /**
+     * A device that stays within this distance of where it settled counts as stationary; about
+     * the error of a Wi-Fi fix.
+     */
+    public static final double STATIONARY_RADIUS_METERS = 30;
+
+    /**
+     * Infected bumps further away than this are not looked for.
+     */
+    public static final double PROXIMITY_SEARCH_METERS = 1000;
+
+    // Weight of the newest speed sample in the smoothed speed.
+    private static final float SPEED_SMOOTHING = 0.5f;
+
+    private final SamplingPolicy mPolicy;
+    private SpatialGridIndex mInfected;
+    private MotionState mMotion = MotionState.UNKNOWN;
+    private SamplingRequest mRequest;
+
+    private boolean mHasFix;
+    private double mLastLat;
+    private double mLastLng;
+    private long mLastTime;
+    private double mAnchorLat;
+    private double mAnchorLng;
+    private long mAnchorTime;
+    private float mSpeed = Float.NaN;
+
+    public SamplingEngine(SamplingPolicy policy) {
+        mPolicy = policy;
+        mRequest = policy.choose(mMotion);
+    }
+
+    /**
+     * Sets the infected bumps to measure proximity against; null if none are known.
+     */
+    public void setInfectedIndex(SpatialGridIndex infected) {
+        mInfected = infected;
+    }
+
+    /**
+     * Updates the motion state from {@code fix} and returns true if the request changed.
+     */
+    public boolean onFix(LocationFix fix) {
+        double lat = fix.getLatitude();
+        double lng = fix.getLongitude();
+        long time = fix.getTime();
+        if (!mHasFix) {
+            mHasFix = true;
+            mAnchorLat = lat;
+            mAnchorLng = lng;
+            mAnchorTime = time;
+        } else if (time > mLastTime) {
+            float speed = (float) (SpatialGridIndex.distanceMeters(mLastLat, mLastLng, lat, lng)
+                    / ((time - mLastTime) / 1000.0));
+            mSpeed = Float.isNaN(mSpeed)
+                    ? speed : SPEED_SMOOTHING * speed + (1 - SPEED_SMOOTHING) * mSpeed;
+        } else {
+            // A stale or duplicate fix says nothing about motion.
+            return false;
+        }
+        double settleRadius = Math.max(STATIONARY_RADIUS_METERS, fix.getAccuracy());
+        if (SpatialGridIndex.distanceMeters(mAnchorLat, mAnchorLng, lat, lng) > settleRadius) {
+            mAnchorLat = lat;
+            mAnchorLng = lng;
+            mAnchorTime = time;
+        }
+        mLastLat = lat;
+        mLastLng = lng;
+        mLastTime = time;
+
+        mMotion = new MotionState(time, mSpeed, time - mAnchorTime, nearestInfected(lat, lng));
+        SamplingRequest next = mPolicy.choose(mMotion);
+        if (next.equals(mRequest)) {
+            return false;
+        }
+        mRequest = next;
+        return true;
+    }
+
+    public SamplingRequest getRequest() {
+        return mRequest;
+    }
+
+    public MotionState getMotion() {
+        return mMotion;
+    }
+
+    private double nearestInfected(double lat, double lng) {
+        SpatialGridIndex infected = mInfected;
+        if (infected == null || infected.size() == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return infected.nearestDistanceMeters(lat, lng, PROXIMITY_SEARCH_METERS);
+    }
+}
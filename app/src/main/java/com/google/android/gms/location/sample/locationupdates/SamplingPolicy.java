@@ -0,0 +1,9 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+/**
+ * Chooses the location request for the device's current motion. Implementations must be
+ * stateless or confined to the thread of their {@link SamplingEngine}.
+ */
+public interface SamplingPolicy {
+    SamplingRequest choose(MotionState motion);
+}
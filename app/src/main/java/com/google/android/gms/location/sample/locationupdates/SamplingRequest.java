@@ -0,0 +1,94 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.Locale;
+
+/**
+ * How often, how accurately and after how much movement the platform should deliver fixes.
+ *
+ * Kept free of Android types; MainActivity maps it onto a fused {@code LocationRequest} and
+ * MyService onto {@code LocationManager} providers.
+ */
+public final class SamplingRequest {
+
+    /**
+     * Trade-off between accuracy and power, in the order of the fused provider's priorities.
+     */
+    public enum Priority {
+        /** GPS: a few metres. */
+        HIGH_ACCURACY,
+        /** Wi-Fi and cell: about a city block. */
+        BALANCED_POWER,
+        /** Cell only: about a kilometre. */
+        LOW_POWER
+    }
+
+    private final long mIntervalMillis;
+    private final long mFastestIntervalMillis;
+    private final float mSmallestDisplacementMeters;
+    private final Priority mPriority;
+
+    public SamplingRequest(long intervalMillis, long fastestIntervalMillis,
+                           float smallestDisplacementMeters, Priority priority) {
+        if (intervalMillis < 0 || fastestIntervalMillis < 0
+                || fastestIntervalMillis > intervalMillis) {
+            throw new IllegalArgumentException("Bad intervals: " + intervalMillis + ", "
+                    + fastestIntervalMillis);
+        }
+        if (smallestDisplacementMeters < 0) {
+            throw new IllegalArgumentException("Negative displacement: "
+                    + smallestDisplacementMeters);
+        }
+        mIntervalMillis = intervalMillis;
+        mFastestIntervalMillis = fastestIntervalMillis;
+        mSmallestDisplacementMeters = smallestDisplacementMeters;
+        mPriority = priority;
+    }
+
+    public long getIntervalMillis() {
+        return mIntervalMillis;
+    }
+
+    /**
+     * Fixes are never delivered more often than this, even when another app asks for more.
+     */
+    public long getFastestIntervalMillis() {
+        return mFastestIntervalMillis;
+    }
+
+    public float getSmallestDisplacementMeters() {
+        return mSmallestDisplacementMeters;
+    }
+
+    public Priority getPriority() {
+        return mPriority;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SamplingRequest)) {
+            return false;
+        }
+        SamplingRequest other = (SamplingRequest) o;
+        return mIntervalMillis == other.mIntervalMillis
+                && mFastestIntervalMillis == other.mFastestIntervalMillis
+                && Float.compare(mSmallestDisplacementMeters, other.mSmallestDisplacementMeters) == 0
+                && mPriority == other.mPriority;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (mIntervalMillis ^ (mIntervalMillis >>> 32));
+        result = 31 * result + (int) (mFastestIntervalMillis ^ (mFastestIntervalMillis >>> 32));
+        result = 31 * result + Float.floatToIntBits(mSmallestDisplacementMeters);
+        return 31 * result + mPriority.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s every %d ms (fastest %d ms), %.0f m", mPriority,
+                mIntervalMillis, mFastestIntervalMillis, mSmallestDisplacementMeters);
+    }
+}
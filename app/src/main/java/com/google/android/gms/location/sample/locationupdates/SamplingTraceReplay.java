@@ -0,0 +1,176 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays a recorded movement trace through a {@link SamplingEngine} to see what a sampling
+ * policy would have cost and how closely it would have followed the device.
+ *
+ * The trace is the device's true path, ideally one point per second. A point becomes a fix
+ * when the engine's current request lets the platform deliver it: the request's interval has
+ * passed since the last fix and the device has moved at least its smallest displacement. Fixes
+ * are batched for upload under a {@link FlushPolicy} the way {@link LocationUploader} does.
+ */
+public final class SamplingTraceReplay {
+
+    /**
+     * Outcome of one replay.
+     */
+    public static final class Report {
+        int mPoints;
+        int mFixes;
+        int mUploads;
+        int mRequestChanges;
+        long mDurationMillis;
+        final long[] mMillisByPriority = new long[SamplingRequest.Priority.values().length];
+        double mErrorSum;
+        double mMaxError;
+
+        /**
+         * Number of trace points replayed.
+         */
+        public int getPointCount() {
+            return mPoints;
+        }
+
+        public int getFixCount() {
+            return mFixes;
+        }
+
+        public int getUploadCount() {
+            return mUploads;
+        }
+
+        public int getRequestChangeCount() {
+            return mRequestChanges;
+        }
+
+        /**
+         * Time spent requesting at {@code priority}.
+         */
+        public long getMillisAt(SamplingRequest.Priority priority) {
+            return mMillisByPriority[priority.ordinal()];
+        }
+
+        /**
+         * Mean distance between the true position and the last fix, over all trace points.
+         */
+        public double getMeanErrorMeters() {
+            return mPoints == 0 ? 0 : mErrorSum / mPoints;
+        }
+
+        public double getMaxErrorMeters() {
+            return mMaxError;
+        }
+
+        @Override
+        public String toString() {
+            double hours = mDurationMillis / 3600000.0;
+            return String.format(Locale.US,
+                    "%d fixes (%.0f/h), %d uploads, %d request changes, GPS %.0f%% of the time,"
+                            + " error mean %.0f m max %.0f m",
+                    mFixes, mFixes / hours, mUploads, mRequestChanges,
+                    100.0 * getMillisAt(SamplingRequest.Priority.HIGH_ACCURACY)
+                            / Math.max(1, mDurationMillis),
+                    getMeanErrorMeters(), mMaxError);
+        }
+    }
+
+    private final FlushPolicy mFlushPolicy;
+
+    public SamplingTraceReplay(FlushPolicy flushPolicy) {
+        mFlushPolicy = flushPolicy;
+    }
+
+    /**
+     * Reads a trace with one point per line as {@code time,latitude,longitude[,accuracy]}, time
+     * in milliseconds since the epoch. Blank lines and lines starting with {@code #} are skipped.
+     */
+    public static List<LocationFix> readTrace(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        List<LocationFix> trace = new ArrayList<LocationFix>();
+        String line;
+        int number = 0;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length < 3) {
+                throw new IOException("Line " + number + " has fewer than three fields");
+            }
+            try {
+                float accuracy = fields.length > 3 ? Float.parseFloat(fields[3].trim()) : 0f;
+                trace.add(new LocationFix(Double.parseDouble(fields[1].trim()),
+                        Double.parseDouble(fields[2].trim()), 0, accuracy,
+                        Long.parseLong(fields[0].trim())));
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + number + " is not a trace point: " + line);
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Replays {@code trace}, which must be in time order, against {@code engine}.
+     */
+    public Report replay(List<LocationFix> trace, SamplingEngine engine) {
+        Report report = new Report();
+        SamplingRequest request = engine.getRequest();
+        LocationFix last = null;
+        long previousTime = 0;
+        int batchSize = 0;
+        long batchStart = 0;
+        for (LocationFix point : trace) {
+            long time = point.getTime();
+            if (report.mPoints > 0) {
+                long elapsed = time - previousTime;
+                report.mDurationMillis += elapsed;
+                report.mMillisByPriority[request.getPriority().ordinal()] += elapsed;
+            }
+            previousTime = time;
+            report.mPoints++;
+
+            if (batchSize > 0 && time - batchStart >= mFlushPolicy.getMaxDelayMillis()) {
+                report.mUploads++;
+                batchSize = 0;
+            }
+            if (last == null || (time - last.getTime() >= request.getIntervalMillis()
+                    && distance(last, point) >= request.getSmallestDisplacementMeters())) {
+                last = point;
+                report.mFixes++;
+                if (engine.onFix(point)) {
+                    request = engine.getRequest();
+                    report.mRequestChanges++;
+                }
+                if (batchSize == 0) {
+                    batchStart = time;
+                }
+                if (++batchSize >= mFlushPolicy.getMaxBatchSize()) {
+                    report.mUploads++;
+                    batchSize = 0;
+                }
+            }
+            double error = distance(last, point);
+            report.mErrorSum += error;
+            report.mMaxError = Math.max(report.mMaxError, error);
+        }
+        if (batchSize > 0) {
+            report.mUploads++;
+        }
+        return report;
+    }
+
+    private static double distance(LocationFix a, LocationFix b) {
+        return SpatialGridIndex.distanceMeters(a.getLatitude(), a.getLongitude(),
+                b.getLatitude(), b.getLongitude());
+    }
+}
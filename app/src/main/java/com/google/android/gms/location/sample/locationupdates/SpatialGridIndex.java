@@ -0,0 +1,434 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.Arrays;
+
+/**
+ * Immutable grid index over a set of latitude/longitude points, for bounding-box and radius
+ * queries.
+ *
+ * Cells are a fixed {@link #CELL_METERS} on the ground wherever they are: rows are bands of
+ * latitude, and each row is cut into as many columns as fit its circumference. Only occupied
+ * cells are stored, so points far from the rest, such as a row at (0, 0), cost one more cell
+ * instead of stretching every cell. Points are sorted by row and then column into flat primitive
+ * arrays (compressed sparse row layout), so a query finds each row's run of cells by binary
+ * search and walks one contiguous run of memory per row, allocating nothing. Query results are
+ * the row numbers the points had in the arrays the index was built from. Points with a
+ * {@code NaN} coordinate are left out.
+ *
+ * Distances are great-circle distances on a sphere of radius {@link #EARTH_RADIUS_METERS}.
+ */
+public final class SpatialGridIndex {
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    /**
+     * Side of a cell. Exposure and nearby-bump queries look a few dozen metres around a fix.
+     */
+    static final double CELL_METERS = 50;
+
+    /**
+     * Points are sorted on their cell and row number packed into one long: 19 bits of cell row,
+     * 20 of column and 24 of point row.
+     */
+    static final int MAX_POINTS = 1 << 24;
+
+    private static final double CELL_DEGREES = Math.toDegrees(CELL_METERS / EARTH_RADIUS_METERS);
+    private static final int MAX_CELL_ROW = (int) (180 / CELL_DEGREES);
+    private static final double BOUNDS_SLACK_DEGREES = 1e-9;
+    private static final int POINT_BITS = 24;
+    private static final int COL_BITS = 20;
+    private static final int RADIX_BITS = 13;
+    private static final int BAND_SHIFT = 6;
+    private static final int BAND_CACHE_SIZE = 256;
+
+    /**
+     * Receives the points found by a query.
+     */
+    public interface Visitor {
+        /**
+         * @param row the point's row in the arrays the index was built from.
+         * @return false to stop the query.
+         */
+        boolean visit(int row, double latitude, double longitude);
+    }
+
+    private final int mSize;
+    // Occupied cell rows in ascending order; the cells of mRows[k] are mRowStart[k] until
+    // mRowStart[k + 1], and its columns are mColsPerDegree[k] to a degree of longitude.
+    private final int[] mRows;
+    private final int[] mRowStart;
+    private final double[] mColsPerDegree;
+    // Columns of the occupied cells, ascending within a row; the points of cell c occupy
+    // positions mCellStart[c] until mCellStart[c + 1] of the arrays below.
+    private final int[] mCellCols;
+    private final int[] mCellStart;
+    private final int[] mIds;
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private final double[] mCosLatitudes;
+
+    private SpatialGridIndex(int size, int[] rows, int[] rowStart, double[] colsPerDegree,
+                             int[] cellCols, int[] cellStart, int[] ids, double[] latitudes,
+                             double[] longitudes, double[] cosLatitudes) {
+        mSize = size;
+        mRows = rows;
+        mRowStart = rowStart;
+        mColsPerDegree = colsPerDegree;
+        mCellCols = cellCols;
+        mCellStart = cellStart;
+        mIds = ids;
+        mLatitudes = latitudes;
+        mLongitudes = longitudes;
+        mCosLatitudes = cosLatitudes;
+    }
+
+    /**
+     * Indexes the first {@code count} entries of the two arrays. The arrays are not retained.
+     *
+     * @throws IllegalArgumentException if {@code count} exceeds {@link #MAX_POINTS}.
+     */
+    public static SpatialGridIndex build(double[] latitudes, double[] longitudes, int count) {
+        if (count > MAX_POINTS) {
+            throw new IllegalArgumentException("Too many points: " + count);
+        }
+        long[] keys = new long[count];
+        int size = 0;
+        // Points cluster in a few bands, so each band's cosine is worked out about once.
+        int[] cachedBands = new int[BAND_CACHE_SIZE];
+        double[] cachedColsPerDegree = new double[BAND_CACHE_SIZE];
+        Arrays.fill(cachedBands, -1);
+        for (int i = 0; i < count; i++) {
+            double lat = latitudes[i];
+            double lng = longitudes[i];
+            if (Double.isNaN(lat) || Double.isNaN(lng)) {
+                continue;
+            }
+            int row = cellRow(lat);
+            int band = row >> BAND_SHIFT;
+            int slot = band & (BAND_CACHE_SIZE - 1);
+            if (cachedBands[slot] != band) {
+                cachedBands[slot] = band;
+                cachedColsPerDegree[slot] = colsPerDegree(band);
+            }
+            int col = cellCol(lng, cachedColsPerDegree[slot]);
+            keys[size++] = ((long) row << (COL_BITS + POINT_BITS)) | ((long) col << POINT_BITS) | i;
+        }
+        keys = sortByCell(keys, size);
+
+        int[] ids = new int[size];
+        double[] sortedLat = new double[size];
+        double[] sortedLng = new double[size];
+        double[] sortedCos = new double[size];
+        int rowCount = 0;
+        int cellCount = 0;
+        long previousCell = -1;
+        int previousRow = -1;
+        for (int at = 0; at < size; at++) {
+            long cell = keys[at] >>> POINT_BITS;
+            if (cell != previousCell) {
+                cellCount++;
+                int row = (int) (cell >>> COL_BITS);
+                if (row != previousRow) {
+                    rowCount++;
+                    previousRow = row;
+                }
+                previousCell = cell;
+            }
+        }
+        int[] rows = new int[rowCount];
+        int[] rowStart = new int[rowCount + 1];
+        double[] colsPerDegree = new double[rowCount];
+        int[] cellCols = new int[cellCount];
+        int[] cellStart = new int[cellCount + 1];
+        int r = -1;
+        int c = -1;
+        previousCell = -1;
+        for (int at = 0; at < size; at++) {
+            long key = keys[at];
+            long cell = key >>> POINT_BITS;
+            if (cell != previousCell) {
+                int row = (int) (cell >>> COL_BITS);
+                if (r < 0 || rows[r] != row) {
+                    r++;
+                    rows[r] = row;
+                    rowStart[r] = c + 1;
+                    colsPerDegree[r] = r > 0 && rows[r - 1] >> BAND_SHIFT == row >> BAND_SHIFT
+                            ? colsPerDegree[r - 1] : colsPerDegree(row >> BAND_SHIFT);
+                }
+                c++;
+                cellCols[c] = (int) (cell & ((1 << COL_BITS) - 1));
+                cellStart[c] = at;
+                previousCell = cell;
+            }
+            int i = (int) (key & (MAX_POINTS - 1));
+            ids[at] = i;
+            sortedLat[at] = latitudes[i];
+            sortedLng[at] = longitudes[i];
+            sortedCos[at] = Math.cos(Math.toRadians(latitudes[i]));
+        }
+        rowStart[rowCount] = cellCount;
+        cellStart[cellCount] = size;
+        return new SpatialGridIndex(size, rows, rowStart, colsPerDegree, cellCols, cellStart, ids,
+                sortedLat, sortedLng, sortedCos);
+    }
+
+    /**
+     * Sorts the first {@code size} keys on their cell bits with a least-significant-digit radix
+     * sort, which is stable, so points in a cell stay in row order. Columns are sorted first and
+     * then rows, each in digits of at most {@link #RADIX_BITS} bits, skipping the high bits no two
+     * keys differ in: points in one city need about two passes. Small inputs are sorted in place
+     * instead, since the point row in the low bits keeps ties in order anyway. Returns the array
+     * holding the result, either {@code keys} or a new one.
+     */
+    private static long[] sortByCell(long[] keys, int size) {
+        if (size < 1 << RADIX_BITS) {
+            Arrays.sort(keys, 0, size);
+            return keys;
+        }
+        long varying = 0;
+        for (int i = 1; i < size; i++) {
+            varying |= keys[i] ^ keys[0];
+        }
+        long[] buffer = new long[size];
+        for (int low = POINT_BITS; low < 63; low += COL_BITS) {
+            int fieldBits = low == POINT_BITS ? COL_BITS : 63 - low;
+            long field = (varying >>> low) & ((1L << fieldBits) - 1);
+            int end = low + 64 - Long.numberOfLeadingZeros(field);
+            for (int shift = low; shift < end; shift += RADIX_BITS) {
+                int mask = (1 << Math.min(RADIX_BITS, end - shift)) - 1;
+                int[] counts = new int[mask + 2];
+                for (int i = 0; i < size; i++) {
+                    counts[(int) ((keys[i] >>> shift) & mask) + 1]++;
+                }
+                for (int d = 0; d <= mask; d++) {
+                    counts[d + 1] += counts[d];
+                }
+                for (int i = 0; i < size; i++) {
+                    buffer[counts[(int) ((keys[i] >>> shift) & mask)]++] = keys[i];
+                }
+                long[] sorted = buffer;
+                buffer = keys;
+                keys = sorted;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Number of indexed points.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Number of occupied cells.
+     */
+    int getCellCount() {
+        return mCellCols.length;
+    }
+
+    /**
+     * Reports every point with {@code minLat <= latitude <= maxLat} and
+     * {@code minLng <= longitude <= maxLng}. A box with {@code minLng > maxLng} is taken to cross
+     * the antimeridian.
+     *
+     * @return the number of points reported.
+     */
+    public int queryBox(double minLat, double minLng, double maxLat, double maxLng,
+                        Visitor visitor) {
+        if (minLng > maxLng) {
+            maxLng += 360;
+        }
+        return scan(minLat, maxLat, minLng, maxLng, 0, 0, Double.NaN, visitor, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reports every point within {@code radiusMeters} of the given centre.
+     *
+     * @return the number of points reported.
+     */
+    public int queryRadius(double latitude, double longitude, double radiusMeters,
+                           Visitor visitor) {
+        return radius(latitude, longitude, radiusMeters, visitor, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Number of points within {@code radiusMeters} of the given centre.
+     */
+    public int countWithinRadius(double latitude, double longitude, double radiusMeters) {
+        return radius(latitude, longitude, radiusMeters, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * True if any point lies within {@code radiusMeters} of the given centre. Stops at the first
+     * one found.
+     */
+    public boolean anyWithinRadius(double latitude, double longitude, double radiusMeters) {
+        return radius(latitude, longitude, radiusMeters, null, 1) > 0;
+    }
+
+    /**
+     * Distance in metres to the nearest point, or positive infinity if none lies within
+     * {@code maxMeters} of the given centre.
+     */
+    public double nearestDistanceMeters(final double latitude, final double longitude,
+                                        double maxMeters) {
+        final double[] nearest = {Double.POSITIVE_INFINITY};
+        radius(latitude, longitude, maxMeters, new Visitor() {
+            @Override
+            public boolean visit(int row, double lat, double lng) {
+                nearest[0] = Math.min(nearest[0], distanceMeters(latitude, longitude, lat, lng));
+                return true;
+            }
+        }, Integer.MAX_VALUE);
+        return nearest[0];
+    }
+
+    /**
+     * Approximate heap footprint of the index in bytes.
+     */
+    public long getMemoryBytes() {
+        return 64 + 4L * (mRows.length + mRowStart.length + mCellCols.length
+                + mCellStart.length + mIds.length) + 8L * (mColsPerDegree.length
+                + mLatitudes.length + mLongitudes.length + mCosLatitudes.length) + 10 * 16;
+    }
+
+    /**
+     * Great-circle distance in metres between two points.
+     */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double sinLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+        double sinLng = Math.sin(Math.toRadians(lng2 - lng1) / 2);
+        double h = sinLat * sinLat + Math.cos(Math.toRadians(lat1))
+                * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    private int radius(double latitude, double longitude, double radiusMeters, Visitor visitor,
+                       int limit) {
+        if (radiusMeters < 0) {
+            return 0;
+        }
+        double angle = Math.min(radiusMeters / EARTH_RADIUS_METERS, Math.PI);
+        // Candidates are compared on the haversine term, so they need no asin or sqrt.
+        double sinHalf = Math.sin(angle / 2);
+        double maxH = sinHalf * sinHalf;
+
+        // The bounds are padded slightly so rounding cannot drop a point on the circle.
+        double dLat = Math.toDegrees(angle) + BOUNDS_SLACK_DEGREES;
+        double minLat = latitude - dLat;
+        double maxLat = latitude + dLat;
+        double sinRatio = Math.sin(angle) / Math.cos(Math.toRadians(latitude));
+        double minLng = -180;
+        double maxLng = 180;
+        if (minLat > -90 && maxLat < 90 && sinRatio < 1) {
+            // Widest longitude offset reached by the circle; near a pole it spans everything.
+            double dLng = Math.toDegrees(Math.asin(sinRatio)) + BOUNDS_SLACK_DEGREES;
+            minLng = longitude - dLng;
+            maxLng = longitude + dLng;
+        }
+        return scan(minLat, maxLat, minLng, maxLng, latitude, longitude, maxH, visitor, limit);
+    }
+
+    /**
+     * Visits the points in the cells covering the given range. With a {@code NaN} {@code maxH}
+     * the range itself is the filter; otherwise points must have a haversine term of at most
+     * {@code maxH} from the centre. A longitude range reaching past +/-180 is scanned as two
+     * pieces.
+     */
+    private int scan(double minLat, double maxLat, double minLng, double maxLng,
+                     double centreLat, double centreLng, double maxH, Visitor visitor,
+                     int limit) {
+        if (mSize == 0 || minLat > maxLat) {
+            return 0;
+        }
+        boolean circle = !Double.isNaN(maxH);
+        double cosCentre = Math.cos(Math.toRadians(centreLat));
+        int rowTo = cellRow(maxLat);
+        int firstRow = lowerBound(mRows, 0, mRows.length, cellRow(minLat));
+        int found = 0;
+        for (int piece = 0; piece < 2; piece++) {
+            double fromLng;
+            double toLng;
+            if (piece == 0) {
+                fromLng = Math.max(minLng, -180);
+                toLng = Math.min(maxLng, 180);
+            } else if (maxLng > 180) {
+                fromLng = -180;
+                toLng = maxLng - 360;
+            } else if (minLng < -180) {
+                fromLng = minLng + 360;
+                toLng = 180;
+            } else {
+                break;
+            }
+            for (int k = firstRow; k < mRows.length && mRows[k] <= rowTo; k++) {
+                // Cells of a row are adjacent, so a run of columns is one contiguous range.
+                int colFrom = cellCol(fromLng, mColsPerDegree[k]);
+                int colTo = cellCol(toLng, mColsPerDegree[k]);
+                int cellFrom = lowerBound(mCellCols, mRowStart[k], mRowStart[k + 1], colFrom);
+                int cellTo = lowerBound(mCellCols, cellFrom, mRowStart[k + 1], colTo + 1);
+                int from = mCellStart[cellFrom];
+                int to = mCellStart[cellTo];
+                for (int i = from; i < to; i++) {
+                    double lat = mLatitudes[i];
+                    double lng = mLongitudes[i];
+                    // The range check also keeps the two pieces from reporting a point twice
+                    // when they share a cell.
+                    boolean hit = lat >= minLat && lat <= maxLat && lng >= fromLng
+                            && lng <= toLng;
+                    if (hit && circle) {
+                        double sinLat = Math.sin(Math.toRadians(lat - centreLat) / 2);
+                        double sinLng = Math.sin(Math.toRadians(lng - centreLng) / 2);
+                        hit = sinLat * sinLat + cosCentre * mCosLatitudes[i] * sinLng * sinLng
+                                <= maxH;
+                    }
+                    if (hit) {
+                        found++;
+                        if (found >= limit
+                                || visitor != null && !visitor.visit(mIds[i], lat, lng)) {
+                            return found;
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * First position in {@code values[from, to)}, which is ascending, holding at least
+     * {@code key}; {@code to} if there is none.
+     */
+    private static int lowerBound(int[] values, int from, int to, int key) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (values[mid] < key) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    private static int cellRow(double lat) {
+        int row = (int) ((lat + 90) / CELL_DEGREES);
+        return row < 0 ? 0 : row > MAX_CELL_ROW ? MAX_CELL_ROW : row;
+    }
+
+    /**
+     * Columns per degree of longitude in the rows of {@code band}, so their cells are as wide as
+     * they are tall at the band's middle latitude. A band is 64 rows, about 3 km, over which the
+     * width changes by well under a percent away from the poles.
+     */
+    private static double colsPerDegree(int band) {
+        double middle = -90 + ((band << BAND_SHIFT) + (1 << BAND_SHIFT) / 2.0) * CELL_DEGREES;
+        return Math.max(Math.cos(Math.toRadians(middle)), 1e-6) / CELL_DEGREES;
+    }
+
+    private static int cellCol(double lng, double colsPerDegree) {
+        int col = (int) ((lng + 180) * colsPerDegree);
+        return col < 0 ? 0 : col;
+    }
+}
@@ -5,31 +5,119 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
 
+import java.util.concurrent.Callable;
+
 public class Splash extends Activity {
+    private static final Logger LOG = Logger.get(MainActivity.TAG);
 
     /**
      * Duration of wait
      **/
     private final int SPLASH_DISPLAY_LENGTH = 1000;
 
+    private TaskScope mTasks;
+    private StartupTrace.Span mSplashSpan;
+
     /**
      * Called when the activity is first created.
      */
     @Override
     public void onCreate(Bundle savedInstanceState) {
+        mSplashSpan = StartupTrace.getDefault().begin("splash");
+        LogcatSink.install();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.splashscreen);
+        mTasks = new TaskScope(TaskExecutors.getDefault());
+
+        if (BuildConfig.FAST_START) {
+            // Only the uid is needed before the first frame of MainActivity; the infected data
+            // and the digest load alongside it and are ready, or nearly, when it asks for them.
+            prefetch();
+            resolveIdentity();
+            return;
+        }
 
         /* New Handler to start the MainActivity
          * and close this Splash-Screen after some seconds.*/
         new Handler().postDelayed(new Runnable() {
             @Override
             public void run() {
-                /* Create an Intent that will start the MainActivity. */
-                Intent mainIntent = new Intent(Splash.this, MainActivity.class);
-                Splash.this.startActivity(mainIntent);
-                Splash.this.finish();
+                startMain();
             }
         }, SPLASH_DISPLAY_LENGTH);
     }
-}
\ No newline at end of file
+
+    @Override
+    protected void onDestroy() {
+        mTasks.cancel();
+        super.onDestroy();
+    }
+
+    /**
+     * Resolves the device uid off the main thread and leaves as soon as it is known. Resolution
+     * is cached per process, so MainActivity reads it without I/O.
+     */
+    private void resolveIdentity() {
+        final StartupTrace.Span span = StartupTrace.getDefault().begin("identity");
+        mTasks.io(new Callable<DeviceIdentity>() {
+            @Override
+            public DeviceIdentity call() {
+                return UidProvider.getIdentity(getApplicationContext());
+            }
+        }, new TaskScope.Callback<DeviceIdentity>() {
+            @Override
+            public void onSuccess(DeviceIdentity identity) {
+                span.end();
+                startMain();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                // MainActivity resolves it again and reports the failure there.
+                LOG.e("Cannot resolve the device uid", e);
+                span.end();
+                startMain();
+            }
+        });
+    }
+
+    /**
+     * Starts the infected table and its spatial index, and the infected uid digest, loading in
+     * parallel. They run on the shared io executor rather than this activity's scope because
+     * they are meant to outlive the splash.
+     */
+    private static void prefetch() {
+        TaskExecutors.getDefault().io().execute(new Runnable() {
+            @Override
+            public void run() {
+                StartupTrace.Span span = StartupTrace.getDefault().begin("prefetch_infected_table");
+                try {
+                    InfectedTableRepository.getDefault().get().getSpatialIndex();
+                } catch (Exception e) {
+                    LOG.w("Cannot prefetch the infected table", e);
+                } finally {
+                    span.end();
+                }
+            }
+        });
+        TaskExecutors.getDefault().io().execute(new Runnable() {
+            @Override
+            public void run() {
+                StartupTrace.Span span = StartupTrace.getDefault().begin("prefetch_digest");
+                try {
+                    InfectionStatusChecker.getDefault().prefetch();
+                } finally {
+                    span.end();
+                }
+            }
+        });
+    }
+
+    private void startMain() {
+        mSplashSpan.end();
+        /* Create an Intent that will start the MainActivity. */
+        Intent mainIntent = new Intent(Splash.this, MainActivity.class);
+        Splash.this.startActivity(mainIntent);
+        Splash.this.finish();
+    }
+}
@@ -0,0 +1,246 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Named spans of work during app start, for finding what the first frame waits on.
+ *
+ * Times are measured from the trace's origin, which for {@link #getDefault()} is when the class
+ * is first used, i.e. early in {@code Splash.onCreate}. Spans may begin and end on any thread;
+ * each remembers the thread it began on. The trace holds at most {@link #MAX_SPANS} spans so a
+ * stray span in a loop cannot grow it without bound.
+ *
+ * {@link #toJson(Map)} exports the trace in the Chrome trace event format, which
+ * chrome://tracing and Perfetto open, with the given metadata such as the app version, so the
+ * start of two releases can be compared side by side.
+ */
+public final class StartupTrace {
+    public static final String FILE_NAME = "startup-trace.json";
+    public static final int MAX_SPANS = 256;
+
+    private static final StartupTrace sDefault = new StartupTrace();
+
+    private final long mOriginNanos;
+    private final List<Span> mSpans = new ArrayList<Span>();
+    private int mDropped;
+
+    /**
+     * One named piece of work. Ending it again has no effect.
+     */
+    public final class Span {
+        private final String mName;
+        private final String mThread;
+        private final long mThreadId;
+        private final long mStartNanos;
+        private volatile long mEndNanos = -1;
+
+        Span(String name, long startNanos, long endNanos) {
+            Thread thread = Thread.currentThread();
+            mName = name;
+            mThread = thread.getName();
+            mThreadId = thread.getId();
+            mStartNanos = startNanos;
+            mEndNanos = endNanos;
+        }
+
+        public void end() {
+            synchronized (StartupTrace.this) {
+                if (mEndNanos < 0) {
+                    mEndNanos = System.nanoTime();
+                    StartupTrace.this.notifyAll();
+                }
+            }
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public String getThread() {
+            return mThread;
+        }
+
+        public boolean isEnded() {
+            return mEndNanos >= 0;
+        }
+
+        /**
+         * Start of the span, in microseconds since the trace's origin.
+         */
+        public long getStartMicros() {
+            return (mStartNanos - mOriginNanos) / 1000;
+        }
+
+        /**
+         * Length of the span in microseconds, or -1 if it has not ended.
+         */
+        public long getDurationMicros() {
+            long end = mEndNanos;
+            return end < 0 ? -1 : (end - mStartNanos) / 1000;
+        }
+    }
+
+    public StartupTrace() {
+        mOriginNanos = System.nanoTime();
+    }
+
+    /**
+     * The trace of this process's start.
+     */
+    public static StartupTrace getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Starts a span; call {@link Span#end()} when the work is done.
+     */
+    public Span begin(String name) {
+        return add(new Span(name, System.nanoTime(), -1));
+    }
+
+    /**
+     * Records a moment, such as the first frame, as a span of no length.
+     */
+    public Span mark(String name) {
+        long now = System.nanoTime();
+        return add(new Span(name, now, now));
+    }
+
+    private synchronized Span add(Span span) {
+        if (mSpans.size() < MAX_SPANS) {
+            mSpans.add(span);
+        } else {
+            mDropped++;
+        }
+        return span;
+    }
+
+    public synchronized List<Span> getSpans() {
+        return Collections.unmodifiableList(new ArrayList<Span>(mSpans));
+    }
+
+    /**
+     * Number of spans not recorded because the trace was full.
+     */
+    public synchronized int getDroppedCount() {
+        return mDropped;
+    }
+
+    /**
+     * Waits until every recorded span has ended, so an export has no unfinished ones. Not for
+     * the main thread.
+     *
+     * @return false if some were still open when {@code timeoutMillis} ran out.
+     */
+    public synchronized boolean awaitEnded(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1000000;
+        while (true) {
+            boolean open = false;
+            for (Span span : mSpans) {
+                if (!span.isEnded()) {
+                    open = true;
+                    break;
+                }
+            }
+            if (!open) {
+                return true;
+            }
+            long remaining = (deadline - System.nanoTime()) / 1000000;
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+    }
+
+    /**
+     * The first span called {@code name}, or null if there is none.
+     */
+    public synchronized Span find(String name) {
+        for (Span span : mSpans) {
+            if (span.mName.equals(name)) {
+                return span;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * One line per span: when it started and how long it took, in milliseconds.
+     */
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Span span : mSpans) {
+            long duration = span.getDurationMicros();
+            sb.append(String.format(Locale.US, "%8.1f ms  %-28s %s%n",
+                    span.getStartMicros() / 1000.0, span.mName, duration < 0 ? "unfinished"
+                            : String.format(Locale.US, "%.1f ms", duration / 1000.0)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The trace in the Chrome trace event format: a complete event per ended span, a begin event
+     * per unfinished one, and the name of each thread. {@code metadata} goes into
+     * {@code otherData}.
+     */
+    public synchronized String toJson(Map<String, String> metadata) {
+        StringBuilder sb = new StringBuilder("{\"traceEvents\":[");
+        Map<Long, String> threads = new LinkedHashMap<Long, String>();
+        boolean first = true;
+        for (Span span : mSpans) {
+            threads.put(span.mThreadId, span.mThread);
+            long duration = span.getDurationMicros();
+            sb.append(first ? "\n" : ",\n");
+            first = false;
+            sb.append("{\"name\":");
+            appendString(sb, span.mName);
+            sb.append(",\"ph\":\"").append(duration < 0 ? 'B' : 'X')
+                    .append("\",\"ts\":").append(span.getStartMicros());
+            if (duration >= 0) {
+                sb.append(",\"dur\":").append(duration);
+            }
+            sb.append(",\"pid\":1,\"tid\":").append(span.mThreadId).append('}');
+        }
+        for (Map.Entry<Long, String> thread : threads.entrySet()) {
+            sb.append(first ? "\n" : ",\n");
+            first = false;
+            sb.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":")
+                    .append(thread.getKey()).append(",\"args\":{\"name\":");
+            appendString(sb, thread.getValue());
+            sb.append("}}");
+        }
+        sb.append("\n],\"displayTimeUnit\":\"ms\",\"otherData\":{");
+        first = true;
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            appendString(sb, entry.getKey());
+            sb.append(':');
+            appendString(sb, entry.getValue());
+        }
+        return sb.append("}}\n").toString();
+    }
+
+    private static void appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
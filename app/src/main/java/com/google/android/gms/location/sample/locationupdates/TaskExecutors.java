@@ -0,0 +1,94 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The process-wide executors that keep blocking work off the main thread.
+ *
+ * {@link #io()} is for network and disk work: a few threads, since such tasks mostly wait, and
+ * a bounded queue so a stalled network cannot pile up work without limit. {@link #compute()}
+ * has one thread per spare core for CPU-bound work such as parsing and clustering.
+ * {@link #mainThread()} runs results on the UI thread. Both pools reject work once their queue
+ * is full rather than running it on the caller, which may be the main thread. Use them through
+ * a {@link TaskScope} so pending work is cancelled with its Activity or Service.
+ */
+public final class TaskExecutors {
+    static final int IO_THREADS = 4;
+    static final int IO_QUEUE_CAPACITY = 64;
+    static final int COMPUTE_QUEUE_CAPACITY = 128;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static TaskExecutors sDefault;
+
+    private final ExecutorService mIo;
+    private final ExecutorService mCompute;
+    private final Executor mMainThread;
+
+    public TaskExecutors(ExecutorService io, ExecutorService compute, Executor mainThread) {
+        mIo = io;
+        mCompute = compute;
+        mMainThread = mainThread;
+    }
+
+    /**
+     * The executors shared by the whole process, posting results to the Android main looper.
+     */
+    public static synchronized TaskExecutors getDefault() {
+        if (sDefault == null) {
+            int computeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            sDefault = new TaskExecutors(
+                    newPool("io", IO_THREADS, IO_QUEUE_CAPACITY),
+                    newPool("compute", computeThreads, COMPUTE_QUEUE_CAPACITY),
+                    new MainThreadExecutor());
+        }
+        return sDefault;
+    }
+
+    /**
+     * A pool of up to {@code threads} background threads that time out when idle, with a queue
+     * of {@code queueCapacity} tasks.
+     */
+    public static ExecutorService newPool(String name, int threads, int queueCapacity) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new NamedThreadFactory(name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    public ExecutorService io() {
+        return mIo;
+    }
+
+    public ExecutorService compute() {
+        return mCompute;
+    }
+
+    public Executor mainThread() {
+        return mMainThread;
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, mName + "-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            // Stay behind the UI thread when competing for a core.
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
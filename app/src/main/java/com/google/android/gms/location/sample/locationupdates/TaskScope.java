@@ -0,0 +1,136 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Background work owned by one Activity or Service.
+ *
+ * Work runs on the {@link TaskExecutors} pools and its {@link Callback} is delivered on the main
+ * thread. {@link #cancel()}, called from {@code onDestroy()}, interrupts whatever is still running
+ * and guarantees that no callback of this scope runs afterwards, so callbacks may touch views
+ * and fields without checking whether their owner is still alive.
+ */
+public final class TaskScope {
+
+    /**
+     * Receives the outcome of a task on the main thread. Exactly one method is called, unless the
+     * task or the scope is cancelled first.
+     */
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onFailure(Exception error);
+    }
+
+    private final TaskExecutors mExecutors;
+    private final Set<Future<?>> mPending =
+            Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+    private volatile boolean mCancelled;
+
+    public TaskScope(TaskExecutors executors) {
+        mExecutors = executors;
+    }
+
+    /**
+     * Runs network or disk work.
+     */
+    public <T> Future<T> io(Callable<T> work, Callback<T> callback) {
+        return submit(mExecutors.io(), work, callback);
+    }
+
+    /**
+     * Runs CPU-bound work.
+     */
+    public <T> Future<T> compute(Callable<T> work, Callback<T> callback) {
+        return submit(mExecutors.compute(), work, callback);
+    }
+
+    /**
+     * Cancels all pending work and drops any result not yet delivered. The scope accepts no new
+     * work afterwards. Must be called on the main thread.
+     */
+    public void cancel() {
+        mCancelled = true;
+        for (Future<?> future : mPending) {
+            future.cancel(true);
+        }
+        mPending.clear();
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Number of tasks submitted and not yet finished.
+     */
+    public int getPendingCount() {
+        return mPending.size();
+    }
+
+    private <T> Future<T> submit(Executor executor, Callable<T> work,
+                                 final Callback<T> callback) {
+        FutureTask<T> task = new FutureTask<T>(work) {
+            @Override
+            protected void done() {
+                mPending.remove(this);
+                if (!isCancelled()) {
+                    deliver(this, callback);
+                }
+            }
+        };
+        if (mCancelled) {
+            task.cancel(false);
+            return task;
+        }
+        mPending.add(task);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            mPending.remove(task);
+            post(callback, null, e);
+        }
+        return task;
+    }
+
+    private <T> void deliver(Future<T> task, Callback<T> callback) {
+        try {
+            post(callback, task.get(), null);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            post(callback, null, cause instanceof Exception ? (Exception) cause : e);
+        } catch (CancellationException e) {
+            // Cancelled between done() and get(); nothing to deliver.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> void post(final Callback<T> callback, final T result, final Exception error) {
+        mExecutors.mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mCancelled) {
+                    return;
+                }
+                if (error == null) {
+                    callback.onSuccess(result);
+                } else {
+                    callback.onFailure(error);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,125 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays a recorded trace, such as one read with {@link SamplingTraceReplay#readTrace}, through
+ * a {@link TrajectorySimplifier} to see how much it compresses and what it costs.
+ *
+ * The track the server would see is rebuilt by interpolating between the kept fixes in time,
+ * and compared with every fix of the trace by great-circle distance, independently of the flat
+ * projection the simplifier uses.
+ */
+public final class TrajectoryReplay {
+
+    /**
+     * Outcome of one replay.
+     */
+    public static final class Report {
+        int mPoints;
+        int mKept;
+        long mNanos;
+        double mErrorSum;
+        double mMaxError;
+
+        /**
+         * Number of trace points replayed.
+         */
+        public int getPointCount() {
+            return mPoints;
+        }
+
+        public int getKeptCount() {
+            return mKept;
+        }
+
+        /**
+         * Trace points per kept fix.
+         */
+        public double getCompressionRatio() {
+            return mKept == 0 ? 0 : (double) mPoints / mKept;
+        }
+
+        /**
+         * Largest distance between a trace point and the rebuilt track at its time.
+         */
+        public double getMaxErrorMeters() {
+            return mMaxError;
+        }
+
+        public double getMeanErrorMeters() {
+            return mPoints == 0 ? 0 : mErrorSum / mPoints;
+        }
+
+        /**
+         * Time spent in the simplifier per trace point, including the final flush.
+         */
+        public double getNanosPerPoint() {
+            return mPoints == 0 ? 0 : (double) mNanos / mPoints;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d of %d points kept (%.1fx), error mean %.1f m max %.1f m, %.0f ns/point",
+                    mKept, mPoints, getCompressionRatio(), getMeanErrorMeters(), mMaxError,
+                    getNanosPerPoint());
+        }
+    }
+
+    private TrajectoryReplay() {
+    }
+
+    /**
+     * Replays {@code trace}, which must be in time order, through {@code simplifier}.
+     */
+    public static Report replay(List<LocationFix> trace, TrajectorySimplifier simplifier) {
+        Report report = new Report();
+        List<LocationFix> kept = new ArrayList<LocationFix>();
+        long start = System.nanoTime();
+        for (int i = 0; i < trace.size(); i++) {
+            LocationFix fix = simplifier.offer(trace.get(i));
+            if (fix != null) {
+                kept.add(fix);
+            }
+        }
+        LocationFix last = simplifier.flush();
+        if (last != null) {
+            kept.add(last);
+        }
+        report.mNanos = System.nanoTime() - start;
+        report.mPoints = trace.size();
+        report.mKept = kept.size();
+
+        int segment = 0;
+        for (LocationFix point : trace) {
+            while (segment + 2 < kept.size() && kept.get(segment + 1).getTime() < point.getTime()) {
+                segment++;
+            }
+            double error = distanceToTrack(point, kept, segment);
+            report.mErrorSum += error;
+            report.mMaxError = Math.max(report.mMaxError, error);
+        }
+        return report;
+    }
+
+    private static double distanceToTrack(LocationFix point, List<LocationFix> kept, int segment) {
+        LocationFix from = kept.get(segment);
+        if (kept.size() == 1) {
+            return distance(point.getLatitude(), point.getLongitude(), from);
+        }
+        LocationFix to = kept.get(segment + 1);
+        long span = to.getTime() - from.getTime();
+        double share = span <= 0 ? 1 : (double) (point.getTime() - from.getTime()) / span;
+        share = Math.max(0, Math.min(1, share));
+        return distance(from.getLatitude() + share * (to.getLatitude() - from.getLatitude()),
+                from.getLongitude() + share * (to.getLongitude() - from.getLongitude()), point);
+    }
+
+    private static double distance(double latitude, double longitude, LocationFix fix) {
+        return SpatialGridIndex.distanceMeters(latitude, longitude, fix.getLatitude(),
+                fix.getLongitude());
+    }
+}
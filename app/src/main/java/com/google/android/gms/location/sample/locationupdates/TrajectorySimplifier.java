@@ -0,0 +1,162 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+/**
+ * Drops fixes that the server can reconstruct from their neighbours.
+ *
+ * An opening-window simplifier: the last kept fix is the anchor, and the fixes after it are held
+ * while a straight, constant-speed segment from the anchor to the newest fix passes within the
+ * tolerance of each of them at its own time. When a new fix breaks that, the fix before it is
+ * kept and becomes the anchor. Reconstructing the track by interpolating between kept fixes in
+ * time is therefore never further than the tolerance from any fix that was dropped. A device
+ * moving in a straight line or sitting still keeps few fixes; a turn keeps the corner.
+ *
+ * Memory is bounded: at most {@code windowSize} fixes are held, and the newest is kept anyway
+ * once the window is full or the next fix would make it span more than {@code maxHoldMillis}.
+ * Positions are compared on a local flat projection around the anchor, which is accurate to
+ * well under a metre over the distances a window covers.
+ *
+ * Not thread safe; feed it from one thread.
+ */
+public final class TrajectorySimplifier {
+    /**
+     * Well inside the accuracy of a GPS fix, and of the distances exposure is judged by.
+     */
+    public static final double DEFAULT_TOLERANCE_METERS = 10;
+    public static final int DEFAULT_WINDOW_SIZE = 128;
+    public static final long DEFAULT_MAX_HOLD_MILLIS = 5 * 60 * 1000;
+
+    private static final double METERS_PER_DEGREE = 111195;
+
+    private final double mTolerance;
+    private final long mMaxHoldMillis;
+
+    // The held fixes after the anchor, relative to it: north and east in metres, time in ms.
+    private final double[] mNorth;
+    private final double[] mEast;
+    private final long[] mElapsed;
+    private int mHeld;
+
+    private LocationFix mAnchor;
+    private double mMetersPerDegreeLng;
+    private LocationFix mNewest;
+
+    private long mReceived;
+    private long mKept;
+
+    public TrajectorySimplifier() {
+        this(DEFAULT_TOLERANCE_METERS, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_HOLD_MILLIS);
+    }
+
+    public TrajectorySimplifier(double toleranceMeters, int windowSize, long maxHoldMillis) {
+        if (!(toleranceMeters >= 0) || windowSize < 1 || maxHoldMillis <= 0) {
+            throw new IllegalArgumentException("Invalid tolerance " + toleranceMeters
+                    + ", window " + windowSize + " or hold " + maxHoldMillis);
+        }
+        mTolerance = toleranceMeters;
+        mMaxHoldMillis = maxHoldMillis;
+        mNorth = new double[windowSize];
+        mEast = new double[windowSize];
+        mElapsed = new long[windowSize];
+    }
+
+    /**
+     * Takes the next fix, which must be newer than the previous one, and returns the fix to
+     * keep, or null if none is kept yet. The returned fix is always an earlier one than
+     * {@code fix}, except for the very first.
+     */
+    public LocationFix offer(LocationFix fix) {
+        mReceived++;
+        if (mAnchor == null) {
+            setAnchor(fix);
+            return keep(fix);
+        }
+        long elapsed = fix.getTime() - mAnchor.getTime();
+        double north = (fix.getLatitude() - mAnchor.getLatitude()) * METERS_PER_DEGREE;
+        double east = (fix.getLongitude() - mAnchor.getLongitude()) * mMetersPerDegreeLng;
+
+        if (mHeld > 0 && (mHeld == mNorth.length || elapsed > mMaxHoldMillis
+                || !segmentCoversHeld(north, east, elapsed))) {
+            LocationFix kept = mNewest;
+            setAnchor(kept);
+            // The new fix is the only one after the new anchor.
+            elapsed = fix.getTime() - kept.getTime();
+            north = (fix.getLatitude() - kept.getLatitude()) * METERS_PER_DEGREE;
+            east = (fix.getLongitude() - kept.getLongitude()) * mMetersPerDegreeLng;
+            hold(fix, north, east, elapsed);
+            return keep(kept);
+        }
+        hold(fix, north, east, elapsed);
+        return null;
+    }
+
+    /**
+     * Keeps the newest fix if it is still held, ending the current segment, and returns it.
+     * Call before uploading what has been kept, so the track reaches the device's position.
+     */
+    public LocationFix flush() {
+        if (mHeld == 0) {
+            return null;
+        }
+        LocationFix kept = mNewest;
+        setAnchor(kept);
+        return keep(kept);
+    }
+
+    /**
+     * Whether the segment from the anchor to the point at {@code north}, {@code east} and
+     * {@code elapsed} passes within the tolerance of every held fix at its time.
+     */
+    private boolean segmentCoversHeld(double north, double east, long elapsed) {
+        double toleranceSquared = mTolerance * mTolerance;
+        for (int i = 0; i < mHeld; i++) {
+            double share = elapsed <= 0 ? 1 : (double) mElapsed[i] / elapsed;
+            double dNorth = mNorth[i] - share * north;
+            double dEast = mEast[i] - share * east;
+            if (dNorth * dNorth + dEast * dEast > toleranceSquared) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void hold(LocationFix fix, double north, double east, long elapsed) {
+        mNorth[mHeld] = north;
+        mEast[mHeld] = east;
+        mElapsed[mHeld] = elapsed;
+        mHeld++;
+        mNewest = fix;
+    }
+
+    private void setAnchor(LocationFix anchor) {
+        mAnchor = anchor;
+        mMetersPerDegreeLng = METERS_PER_DEGREE * Math.cos(Math.toRadians(anchor.getLatitude()));
+        mHeld = 0;
+        mNewest = anchor;
+    }
+
+    private LocationFix keep(LocationFix fix) {
+        mKept++;
+        return fix;
+    }
+
+    /**
+     * Number of fixes offered.
+     */
+    public long getReceivedCount() {
+        return mReceived;
+    }
+
+    /**
+     * Number of fixes kept, including those returned by {@link #flush()}.
+     */
+    public long getKeptCount() {
+        return mKept;
+    }
+
+    /**
+     * Number of fixes held, not yet kept or dropped.
+     */
+    public int getHeldCount() {
+        return mHeld;
+    }
+}
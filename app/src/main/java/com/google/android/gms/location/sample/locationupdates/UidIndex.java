@@ -0,0 +1,318 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Set of device uids stored as 128-bit values in an open-addressing hash table.
+ *
+ * {@link UidProvider} hands out uids in the canonical 36-character UUID form; those are parsed
+ * straight into two longs, so adding and looking them up allocates nothing. Any other string is
+ * first mapped to a name-based UUID with {@link UUID#nameUUIDFromBytes(byte[])}, which costs an
+ * MD5 but keeps a single code path for the table itself.
+ *
+ * Slots are laid out as pairs of longs in one array and probed linearly; removal shifts the rest
+ * of the probe run back, so no tombstones build up as the server table changes. The all-zero
+ * UUID marks empty slots and is tracked with a separate flag. Not thread-safe.
+ */
+public final class UidIndex {
+    private static final float MAX_LOAD = 0.75f;
+    private static final int MIN_CAPACITY = 16;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] HEX_VALUES = new byte['f' + 1];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private long[] mSlots;
+    private int mMask;
+    private int mSize;
+    private int mResizeAt;
+    private boolean mHasZero;
+
+    // Result of the last parse(); saves allocating a pair for every string lookup.
+    private long mParsedHigh;
+    private long mParsedLow;
+
+    public UidIndex() {
+        this(0);
+    }
+
+    public UidIndex(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * MAX_LOAD <= expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private UidIndex(UidIndex other) {
+        mSlots = other.mSlots.clone();
+        mMask = other.mMask;
+        mSize = other.mSize;
+        mResizeAt = other.mResizeAt;
+        mHasZero = other.mHasZero;
+    }
+
+    /**
+     * Returns an independent copy that can be changed without affecting this index.
+     */
+    public UidIndex copy() {
+        return new UidIndex(this);
+    }
+
+    public int size() {
+        return mSize + (mHasZero ? 1 : 0);
+    }
+
+    public boolean contains(CharSequence uid) {
+        parse(uid);
+        return contains(mParsedHigh, mParsedLow);
+    }
+
+    public boolean contains(long high, long low) {
+        if (high == 0 && low == 0) {
+            return mHasZero;
+        }
+        long[] slots = mSlots;
+        int slot = slotFor(high, low);
+        while (true) {
+            long h = slots[slot << 1];
+            long l = slots[(slot << 1) + 1];
+            if (h == high && l == low) {
+                return true;
+            }
+            if (h == 0 && l == 0) {
+                return false;
+            }
+            slot = (slot + 1) & mMask;
+        }
+    }
+
+    /**
+     * @return true if {@code uid} was not already present.
+     */
+    public boolean add(CharSequence uid) {
+        parse(uid);
+        return add(mParsedHigh, mParsedLow);
+    }
+
+    public boolean add(long high, long low) {
+        if (high == 0 && low == 0) {
+            boolean added = !mHasZero;
+            mHasZero = true;
+            return added;
+        }
+        long[] slots = mSlots;
+        int slot = slotFor(high, low);
+        while (true) {
+            long h = slots[slot << 1];
+            long l = slots[(slot << 1) + 1];
+            if (h == high && l == low) {
+                return false;
+            }
+            if (h == 0 && l == 0) {
+                break;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        slots[slot << 1] = high;
+        slots[(slot << 1) + 1] = low;
+        if (++mSize >= mResizeAt) {
+            rehash((mMask + 1) * 2);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if {@code uid} was present.
+     */
+    public boolean remove(CharSequence uid) {
+        parse(uid);
+        return remove(mParsedHigh, mParsedLow);
+    }
+
+    public boolean remove(long high, long low) {
+        if (high == 0 && low == 0) {
+            boolean removed = mHasZero;
+            mHasZero = false;
+            return removed;
+        }
+        long[] slots = mSlots;
+        int slot = slotFor(high, low);
+        while (true) {
+            long h = slots[slot << 1];
+            long l = slots[(slot << 1) + 1];
+            if (h == 0 && l == 0) {
+                return false;
+            }
+            if (h == high && l == low) {
+                break;
+            }
+            slot = (slot + 1) & mMask;
+        }
+
+        // Shift later members of the probe run back so lookups never stop early.
+        int gap = slot;
+        int next = (gap + 1) & mMask;
+        while (true) {
+            long h = slots[next << 1];
+            long l = slots[(next << 1) + 1];
+            if (h == 0 && l == 0) {
+                break;
+            }
+            int home = slotFor(h, l);
+            // Move the entry if its home slot is not in the cyclic range (gap, next].
+            if (((next - home) & mMask) >= ((next - gap) & mMask)) {
+                slots[gap << 1] = h;
+                slots[(gap << 1) + 1] = l;
+                gap = next;
+            }
+            next = (next + 1) & mMask;
+        }
+        slots[gap << 1] = 0;
+        slots[(gap << 1) + 1] = 0;
+        mSize--;
+        return true;
+    }
+
+    /**
+     * Approximate heap footprint of the table in bytes.
+     */
+    public long getMemoryBytes() {
+        return 16L + 8L * mSlots.length + 32;
+    }
+
+    /**
+     * True if {@code uid} has the canonical form
+     * {@code xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx} with hex digits of either case.
+     */
+    public static boolean isUuid(CharSequence uid) {
+        if (uid == null || uid.length() != 36) {
+            return false;
+        }
+        int bad = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = uid.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                bad |= (c ^ '-') << 4;
+            } else {
+                bad |= hexValue(c);
+            }
+        }
+        return bad >= 0 && bad <= 0xf;
+    }
+
+    /**
+     * High 64 bits of the 128-bit value the index stores for {@code uid}.
+     */
+    public static long mostSignificantBits(CharSequence uid) {
+        if (isUuid(uid)) {
+            return hexBits(uid, 0, 18);
+        }
+        return hashedUuid(uid).getMostSignificantBits();
+    }
+
+    /**
+     * Low 64 bits of the 128-bit value the index stores for {@code uid}.
+     */
+    public static long leastSignificantBits(CharSequence uid) {
+        if (isUuid(uid)) {
+            return hexBits(uid, 19, 36);
+        }
+        return hashedUuid(uid).getLeastSignificantBits();
+    }
+
+    /**
+     * Reads {@code uid} into {@link #mParsedHigh} and {@link #mParsedLow} in a single pass,
+     * falling back to hashing when it turns out not to be a canonical UUID.
+     */
+    private void parse(CharSequence uid) {
+        if (uid.length() == 36) {
+            long high = 0;
+            long low = 0;
+            // Any stray separator or non-hex digit pushes bad outside 0..15.
+            int bad = (uid.charAt(8) ^ '-' | uid.charAt(13) ^ '-' | uid.charAt(18) ^ '-'
+                    | uid.charAt(23) ^ '-') << 4;
+            for (int i = 0; i < 18; i++) {
+                if (i != 8 && i != 13) {
+                    int v = hexValue(uid.charAt(i));
+                    bad |= v;
+                    high = (high << 4) | v;
+                }
+            }
+            for (int i = 19; i < 36; i++) {
+                if (i != 23) {
+                    int v = hexValue(uid.charAt(i));
+                    bad |= v;
+                    low = (low << 4) | v;
+                }
+            }
+            if (bad >= 0 && bad <= 0xf) {
+                mParsedHigh = high;
+                mParsedLow = low;
+                return;
+            }
+        }
+        UUID hashed = hashedUuid(uid);
+        mParsedHigh = hashed.getMostSignificantBits();
+        mParsedLow = hashed.getLeastSignificantBits();
+    }
+
+    private static long hexBits(CharSequence s, int from, int to) {
+        long bits = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c != '-') {
+                bits = (bits << 4) | hexValue(c);
+            }
+        }
+        return bits;
+    }
+
+    private static int hexValue(char c) {
+        return c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+    }
+
+    private static UUID hashedUuid(CharSequence uid) {
+        return UUID.nameUUIDFromBytes(uid.toString().getBytes(UTF_8));
+    }
+
+    private int slotFor(long high, long low) {
+        // MurmurHash3 finaliser; name-based and random UUIDs are already well mixed, but this
+        // keeps clustering down for anything sequential.
+        long h = high * 31 + low;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mMask;
+    }
+
+    private void allocate(int capacity) {
+        mSlots = new long[capacity * 2];
+        mMask = capacity - 1;
+        mResizeAt = (int) (capacity * MAX_LOAD);
+    }
+
+    private void rehash(int newCapacity) {
+        long[] old = mSlots;
+        allocate(newCapacity);
+        mSize = 0;
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] != 0 || old[i + 1] != 0) {
+                add(old[i], old[i + 1]);
+            }
+        }
+    }
+}
@@ -6,36 +6,61 @@ import android.provider.Settings;
 import android.text.TextUtils;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.UUID;
 
+/**
+ * Works out the device's uid: the name-based UUID of its serial number or, failing that, of its
+ * Android id, or else a random id kept in the app's files. The uid is resolved once per process
+ * and served lock-free afterwards, so the activity and the service share one resolution.
+ */
 public class UidProvider {
+    private static final String INSTALLATION_FILE_NAME = "INSTALLATION";
+    private static final DeviceIdentity.Holder sIdentity = new DeviceIdentity.Holder();
 
     public static String getUniqueId(Context context) {
-        String deviceId = null;
+        return getIdentity(context).toString();
+    }
+
+    /**
+     * The device's identity. The first call may read a small file from app storage; every
+     * later call is a volatile read.
+     */
+    public static DeviceIdentity getIdentity(Context context) {
+        DeviceIdentity identity = sIdentity.peek();
+        if (identity != null) {
+            return identity;
+        }
+        final Context appContext = context.getApplicationContext() != null
+                ? context.getApplicationContext() : context;
+        try {
+            return sIdentity.get(new DeviceIdentity.Resolver() {
+                @Override
+                public DeviceIdentity resolve() throws IOException {
+                    return resolveIdentity(appContext);
+                }
+            });
+        } catch (IOException epicFail) {
+            throw new RuntimeException(epicFail);
+        }
+    }
 
-        deviceId = DeviceSerialIdProvider.getDeviceSerialId();
+    private static DeviceIdentity resolveIdentity(Context context) throws IOException {
+        String deviceId = DeviceSerialIdProvider.getDeviceSerialId();
         if (deviceId != null)
-            return generateUuidStringFromId(deviceId);
+            return DeviceIdentity.fromHardwareId(deviceId);
 
         deviceId = AndroidSecureIdProvider.getAndroidSecureId(context);
         if (deviceId != null)
-            return generateUuidStringFromId(deviceId);
+            return DeviceIdentity.fromHardwareId(deviceId);
 
-        deviceId = SoftInstallationIdProvider.getSoftInstallationId(context);
-        return deviceId;
-    }
-
-    private static String generateUuidStringFromId(String deviceId) {
-        return UUID.nameUUIDFromBytes(deviceId.getBytes()).toString();
+        return DeviceIdentity.fromInstallationFile(
+                new File(context.getFilesDir(), INSTALLATION_FILE_NAME));
     }
 
     private static class DeviceSerialIdProvider {
         private static final String[] IGNORED_SERIAL_PATTERNS = {"1234567", "abcdef", "dead00beef"};
 
-        public synchronized static String getDeviceSerialId() {
+        public static String getDeviceSerialId() {
             try {
                 if (isValidDeviceSerialId(Build.SERIAL)) {
                     return Build.SERIAL;
@@ -67,7 +92,7 @@ public class UidProvider {
     private static class AndroidSecureIdProvider {
         private static final String ANDROID_EMULATOR_ID = "9774d56d682e549c";
 
-        public synchronized static String getAndroidSecureId(Context context) {
+        public static String getAndroidSecureId(Context context) {
             String androidSecureId = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID);
             if (isValidAndroidSecureId(androidSecureId)) {
                 return androidSecureId;
@@ -85,47 +110,4 @@ public class UidProvider {
             return TextUtils.isEmpty(id) || TextUtils.isEmpty(id.replace('0', ' ').replace('-', ' ').trim());
         }
     }
-
-    private static class SoftInstallationIdProvider {
-        private static final String INSTALLATION_FILE_NAME = "INSTALLATION";
-        private static String sID = null;
-
-        public synchronized static String getSoftInstallationId(Context context) {
-            if (sID == null) {
-                File installation = new File(context.getFilesDir(), INSTALLATION_FILE_NAME);
-                try {
-                    if (!installation.exists()) {
-                        writeInstallationFile(installation);
-                    }
-                    sID = readInstallationFile(installation);
-                } catch (Exception epicFail) {
-                    throw new RuntimeException(epicFail);
-                }
-            }
-            return sID;
-        }
-
-        private static String readInstallationFile(File installation) throws IOException {
-            RandomAccessFile f = new RandomAccessFile(installation, "r");
-            try {
-                byte[] bytes = new byte[(int) f.length()];
-                f.readFully(bytes);
-                f.close();
-                return new String(bytes);
-            } finally {
-                f.close();
-            }
-        }
-
-        private static void writeInstallationFile(File installation) throws IOException {
-            FileOutputStream out = null;
-            try {
-                out = new FileOutputStream(installation);
-                String id = UUID.randomUUID().toString();
-                out.write(id.getBytes());
-            } finally {
-                out.close();
-            }
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,207 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Posts request bodies to one webservice endpoint over a persistent connection.
+ *
+ * The platform's HttpURLConnection keeps an idle connection for reuse only once its response has
+ * been read to the end and closed, and {@link HttpURLConnection#disconnect()} closes it instead.
+ * So every response here, error responses included, is drained and closed, and only a connection
+ * that failed mid-exchange is disconnected. Consecutive uploads then share one TCP connection for
+ * as long as the server keeps it alive, instead of paying a handshake each.
+ *
+ * At most {@code maxInFlight} requests run at once; further callers wait for a slot. Every
+ * request that gets a response has its latency, from opening the connection to the end of the
+ * response, recorded in {@link #getLatency()}, and every failure is counted by its
+ * {@link Failure cause}.
+ */
+public class UploadClient {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 2;
+
+    /**
+     * Why an upload failed.
+     */
+    public enum Failure {
+        /** No slot freed up in time; the request was never started. */
+        NO_SLOT,
+        /** The host could not be resolved or reached. */
+        CONNECT,
+        /** Connecting or reading the response timed out. */
+        TIMEOUT,
+        /** The server answered 4xx. */
+        HTTP_CLIENT_ERROR,
+        /** The server answered 5xx, or with another non-2xx status. */
+        HTTP_SERVER_ERROR,
+        /** Any other I/O error mid-exchange. */
+        IO
+    }
+
+    /**
+     * The server answered with a status other than 2xx.
+     */
+    public static class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int mStatusCode;
+
+        public HttpStatusException(int statusCode) {
+            super("Upload rejected with HTTP " + statusCode);
+            mStatusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return mStatusCode;
+        }
+    }
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+    private static final long SLOT_TIMEOUT_MILLIS = CONNECT_TIMEOUT_MILLIS + READ_TIMEOUT_MILLIS;
+    private static final int DRAIN_BUFFER_BYTES = 512;
+
+    private final URL mUrl;
+    private final Semaphore mSlots;
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mFailureCount = new AtomicLong();
+    private final AtomicLongArray mFailures = new AtomicLongArray(Failure.values().length);
+
+    public UploadClient(URL url) {
+        this(url, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public UploadClient(URL url, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        mUrl = url;
+        mSlots = new Semaphore(maxInFlight, true);
+    }
+
+    /**
+     * Posts the first {@code length} bytes of {@code body} and reads the whole response.
+     *
+     * @throws HttpStatusException if the response is not 2xx.
+     * @throws IOException         if the request fails or no slot frees up in time.
+     */
+    public void post(byte[] body, int length, String contentType) throws IOException {
+        try {
+            if (!mSlots.tryAcquire(SLOT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                mFailures.incrementAndGet(Failure.NO_SLOT.ordinal());
+                throw new IOException("No upload slot free after " + SLOT_TIMEOUT_MILLIS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for an upload slot");
+        }
+        mRequestCount.incrementAndGet();
+        long start = System.nanoTime();
+        HttpURLConnection conn = null;
+        boolean drained = false;
+        Failure rejection = null;
+        try {
+            conn = (HttpURLConnection) mUrl.openConnection();
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(length);
+            conn.setRequestProperty("Content-Type", contentType);
+
+            OutputStream out = conn.getOutputStream();
+            try {
+                out.write(body, 0, length);
+            } finally {
+                out.close();
+            }
+
+            int code = conn.getResponseCode();
+            drain(code >= 400 ? conn.getErrorStream() : conn.getInputStream());
+            drained = true;
+            mLatency.recordNanos(System.nanoTime() - start);
+            if (code < 200 || code >= 300) {
+                rejection = code >= 400 && code < 500
+                        ? Failure.HTTP_CLIENT_ERROR : Failure.HTTP_SERVER_ERROR;
+                throw new HttpStatusException(code);
+            }
+        } catch (IOException e) {
+            mFailureCount.incrementAndGet();
+            mFailures.incrementAndGet((rejection != null ? rejection : causeOf(e)).ordinal());
+            throw e;
+        } finally {
+            if (!drained && conn != null) {
+                // The connection is in an unknown state; do not let it be reused.
+                conn.disconnect();
+            }
+            mSlots.release();
+        }
+    }
+
+    /**
+     * Latencies of requests that got a response, successful or not.
+     */
+    public LatencyHistogram getLatency() {
+        return mLatency;
+    }
+
+    /**
+     * Number of requests started.
+     */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Number of requests that failed or were rejected.
+     */
+    public long getFailureCount() {
+        return mFailureCount.get();
+    }
+
+    /**
+     * Number of uploads that failed for {@code cause}. Apart from {@link Failure#NO_SLOT} these
+     * add up to {@link #getFailureCount()}.
+     */
+    public long getFailureCount(Failure cause) {
+        return mFailures.get(cause.ordinal());
+    }
+
+    private static Failure causeOf(IOException e) {
+        if (e instanceof SocketTimeoutException) {
+            return Failure.TIMEOUT;
+        }
+        if (e instanceof UnknownHostException || e instanceof ConnectException
+                || e instanceof NoRouteToHostException) {
+            return Failure.CONNECT;
+        }
+        return Failure.IO;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[DRAIN_BUFFER_BYTES];
+            while (in.read(buffer) != -1) {
+                // Only the status code matters.
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
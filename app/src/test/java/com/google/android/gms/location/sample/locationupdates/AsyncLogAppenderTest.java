@@ -0,0 +1,137 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncLogAppenderTest {
+    /**
+     * Collects lines in the order the drain hands them over.
+     */
+    private static final class Recorder implements Logger.Sink {
+        final List<String> mLines = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void write(int level, String tag, String message, Throwable error) {
+            mLines.add(message);
+        }
+    }
+
+    /**
+     * Runs nothing until asked, so tests can fill the ring before it drains.
+     */
+    private static final class ManualExecutor implements Executor {
+        final List<Runnable> mTasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable task) {
+            mTasks.add(task);
+        }
+
+        void runAll() {
+            while (!mTasks.isEmpty()) {
+                mTasks.remove(0).run();
+            }
+        }
+    }
+
+    @Test
+    public void linesArriveInOrder() {
+        Recorder target = new Recorder();
+        ManualExecutor executor = new ManualExecutor();
+        AsyncLogAppender appender = new AsyncLogAppender(target, executor, 256);
+        for (int i = 0; i < 200; i++) {
+            appender.write(Logger.INFO, "Test", "line " + i, null);
+        }
+        assertEquals(1, executor.mTasks.size());
+        assertEquals(200, appender.getPendingCount());
+        executor.runAll();
+
+        assertEquals(200, target.mLines.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals("line " + i, target.mLines.get(i));
+        }
+        assertEquals(200, appender.getWrittenCount());
+        assertEquals(0, appender.getPendingCount());
+    }
+
+    @Test
+    public void fullRingDropsNewLinesAndSaysSo() {
+        Recorder target = new Recorder();
+        ManualExecutor executor = new ManualExecutor();
+        AsyncLogAppender appender = new AsyncLogAppender(target, executor, 6);
+        for (int i = 0; i < 10; i++) {
+            appender.write(Logger.INFO, "Test", "line " + i, null);
+        }
+        executor.runAll();
+        appender.write(Logger.INFO, "Test", "after", null);
+        executor.runAll();
+
+        // The capacity is rounded up to 8.
+        assertEquals(2, appender.getDroppedCount());
+        assertEquals("line 0", target.mLines.get(0));
+        assertEquals("line 7", target.mLines.get(7));
+        assertTrue(target.mLines.get(8).startsWith("2 log lines dropped"));
+        assertEquals("after", target.mLines.get(9));
+        assertEquals(10, target.mLines.size());
+    }
+
+    @Test
+    public void concurrentWritersLoseNothingThatFits() throws Exception {
+        final Recorder target = new Recorder();
+        ExecutorService drain = Executors.newSingleThreadExecutor();
+        final AsyncLogAppender appender = new AsyncLogAppender(target, drain, 1 << 16);
+        final int writers = 4;
+        final int perWriter = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < writers; t++) {
+            final int writer = t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perWriter; i++) {
+                        appender.write(Logger.DEBUG, "Test", writer + ":" + i, null);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (appender.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        drain.shutdown();
+        drain.awaitTermination(1, TimeUnit.SECONDS);
+
+        assertEquals(0, appender.getDroppedCount());
+        assertEquals(writers * perWriter, target.mLines.size());
+        int[] next = new int[writers];
+        for (String line : target.mLines) {
+            int colon = line.indexOf(':');
+            int writer = Integer.parseInt(line.substring(0, colon));
+            // Each writer's lines keep their order.
+            assertEquals(next[writer]++, Integer.parseInt(line.substring(colon + 1)));
+        }
+    }
+}
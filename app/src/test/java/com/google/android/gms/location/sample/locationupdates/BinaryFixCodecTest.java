@@ -0,0 +1,119 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryFixCodecTest {
+    private static final String UID = "0f8fad5b-d9cb-469f-a165-70867728950e";
+    private static final long T0 = 1477800000000L;
+
+    private static List<LocationFix> walk(int fixes) {
+        List<LocationFix> batch = new ArrayList<LocationFix>();
+        for (int i = 0; i < fixes; i++) {
+            batch.add(new LocationFix(34.9249 + i * 1.2e-5, -82.4401 - i * 0.7e-5,
+                    290.5 + i % 7, 8.0f + i % 5, T0 + i * 1000L));
+        }
+        return batch;
+    }
+
+    private static BinaryFixCodec.Batch roundTrip(BinaryFixCodec codec, List<LocationFix> batch)
+            throws IOException {
+        int length = codec.encode(batch);
+        return BinaryFixCodec.decode(codec.getBuffer(), 0, length);
+    }
+
+    @Test
+    public void roundTripsAtTransmittedPrecision() throws IOException {
+        List<LocationFix> batch = Arrays.asList(
+                new LocationFix(34.92491234, -82.44012345, 290.6, 7.2f, T0 + 999),
+                new LocationFix(-33.8688197, 151.2092955, -3.4, 0f, T0 - 86400000L),
+                new LocationFix(89.9999999, -179.9999999, 8848, 1500.5f, T0 + 1000));
+        BinaryFixCodec.Batch decoded = roundTrip(new BinaryFixCodec(UID), batch);
+
+        assertEquals(UID, decoded.getUid());
+        assertEquals(3, decoded.getFixes().size());
+        for (int i = 0; i < batch.size(); i++) {
+            LocationFix sent = batch.get(i);
+            LocationFix got = decoded.getFixes().get(i);
+            assertEquals(sent.getLatitude(), got.getLatitude(), 0.5e-7);
+            assertEquals(sent.getLongitude(), got.getLongitude(), 0.5e-7);
+            assertEquals(Math.round(sent.getAltitude()), got.getAltitude(), 0);
+            assertEquals(Math.ceil(sent.getAccuracy()), got.getAccuracy(), 0);
+            assertEquals(sent.getTime() / 1000 * 1000, got.getTime());
+        }
+    }
+
+    @Test
+    public void uuidTakesSixteenBytesAndOtherUidsAreSentVerbatim() throws IOException {
+        List<LocationFix> none = Collections.emptyList();
+        assertEquals(4 + 16 + 1, new BinaryFixCodec(UID).encode(none));
+
+        String installation = "legacy installation id";
+        BinaryFixCodec codec = new BinaryFixCodec(installation);
+        assertEquals(4 + 1 + installation.length() + 1, codec.encode(none));
+        assertEquals(installation, roundTrip(codec, walk(3)).getUid());
+        // Upper case is not the canonical form, so it must not come back lower-cased.
+        String upper = UID.toUpperCase();
+        assertEquals(upper, roundTrip(new BinaryFixCodec(upper), walk(1)).getUid());
+    }
+
+    @Test
+    public void walkingFixesCostAFewBytesEach() {
+        BinaryFixCodec codec = new BinaryFixCodec(UID);
+        int fixes = 1000;
+        int length = codec.encode(walk(fixes));
+
+        double perFix = (length - 4 - 16 - 2) / (double) fixes;
+        assertTrue("bytes/fix " + perFix, perFix < 7.5);
+        // The buffer is reused, and grows only when a batch needs it.
+        byte[] buffer = codec.getBuffer();
+        codec.encode(walk(10));
+        assertSame(buffer, codec.getBuffer());
+    }
+
+    @Test
+    public void rejectsForeignTruncatedAndNewerBodies() throws IOException {
+        BinaryFixCodec codec = new BinaryFixCodec(UID);
+        int length = codec.encode(walk(5));
+        byte[] body = Arrays.copyOf(codec.getBuffer(), length);
+
+        assertRejected("userid=x".getBytes("UTF-8"), 8);
+        assertRejected(body, length - 1);
+        byte[] newer = body.clone();
+        newer[2] = (byte) (BinaryFixCodec.VERSION + 1);
+        assertRejected(newer, length);
+        byte[] trailing = Arrays.copyOf(body, length + 1);
+        assertRejected(trailing, length + 1);
+    }
+
+    @Test
+    public void zigzagVarintsKeepSmallDeltasShort() {
+        byte[] buf = new byte[10];
+        assertEquals(1, BinaryFixCodec.writeVarint(buf, 0, BinaryFixCodec.zigzag(-64)));
+        assertEquals(2, BinaryFixCodec.writeVarint(buf, 0, BinaryFixCodec.zigzag(64)));
+        assertEquals(10,
+                BinaryFixCodec.writeVarint(buf, 0, BinaryFixCodec.zigzag(Long.MIN_VALUE)));
+        for (long value : new long[] {0, 1, -1, 12345, -98765432101L, Long.MAX_VALUE}) {
+            assertEquals(value, BinaryFixCodec.unzigzag(BinaryFixCodec.zigzag(value)));
+        }
+    }
+
+    private static void assertRejected(byte[] body, int length) {
+        try {
+            BinaryFixCodec.decode(body, 0, length);
+            fail("Decoded a bad body of " + length + " bytes");
+        } catch (IOException expected) {
+            // Rejected as it should be.
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeviceIdentityTest {
+    @Rule
+    public TemporaryFolder mTemp = new TemporaryFolder();
+
+    @Test
+    public void hardwareIdsMapToTheirNameBasedUuid() {
+        DeviceIdentity identity = DeviceIdentity.fromHardwareId("R58M12ABCDE");
+        UUID expected = UUID.nameUUIDFromBytes("R58M12ABCDE".getBytes());
+
+        assertEquals(expected.toString(), identity.toString());
+        assertEquals(expected.getMostSignificantBits(), identity.getMostSignificantBits());
+        assertEquals(expected.getLeastSignificantBits(), identity.getLeastSignificantBits());
+    }
+
+    @Test
+    public void uidsKeepTheValueTheIndexLooksThemUpBy() {
+        for (String uid : new String[] {"0f8fad5b-d9cb-469f-a165-70867728950e", "b2"}) {
+            DeviceIdentity identity = DeviceIdentity.of(uid);
+            UidIndex index = new UidIndex();
+            index.add(uid);
+
+            assertEquals(uid, identity.toString());
+            assertTrue(index.contains(identity.getMostSignificantBits(),
+                    identity.getLeastSignificantBits()));
+        }
+    }
+
+    @Test
+    public void installationIdIsCreatedOnceAndKept() throws IOException {
+        File file = new File(mTemp.getRoot(), "INSTALLATION");
+        DeviceIdentity first = DeviceIdentity.fromInstallationFile(file);
+        DeviceIdentity second = DeviceIdentity.fromInstallationFile(file);
+
+        assertTrue(UidIndex.isUuid(first.toString()));
+        assertEquals(first.toString(), second.toString());
+        assertNotEquals(first.toString(), DeviceIdentity.fromInstallationFile(
+                new File(mTemp.getRoot(), "OTHER")).toString());
+    }
+
+    @Test
+    public void installationFileIsTakenAsWritten() throws IOException {
+        File file = mTemp.newFile("INSTALLATION");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("legacy-id".getBytes("UTF-8"));
+        out.close();
+
+        assertEquals("legacy-id", DeviceIdentity.fromInstallationFile(file).toString());
+    }
+
+    @Test
+    public void holderResolvesOnceForConcurrentReaders() throws Exception {
+        final DeviceIdentity.Holder holder = new DeviceIdentity.Holder();
+        final AtomicInteger resolutions = new AtomicInteger();
+        final DeviceIdentity.Resolver resolver = new DeviceIdentity.Resolver() {
+            @Override
+            public DeviceIdentity resolve() {
+                resolutions.incrementAndGet();
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return DeviceIdentity.fromHardwareId("serial");
+            }
+        };
+        assertNull(holder.peek());
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<DeviceIdentity> seen = new ArrayList<DeviceIdentity>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        DeviceIdentity identity = holder.get(resolver);
+                        synchronized (seen) {
+                            seen.add(identity);
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, resolutions.get());
+        assertEquals(8, seen.size());
+        for (DeviceIdentity identity : seen) {
+            assertSame(holder.peek(), identity);
+        }
+    }
+
+    @Test
+    public void failedResolutionIsRetried() throws IOException {
+        DeviceIdentity.Holder holder = new DeviceIdentity.Holder();
+        try {
+            holder.get(new DeviceIdentity.Resolver() {
+                @Override
+                public DeviceIdentity resolve() throws IOException {
+                    throw new IOException("Storage not ready");
+                }
+            });
+            fail("Resolved without an identity");
+        } catch (IOException expected) {
+            assertNull(holder.peek());
+        }
+
+        final DeviceIdentity identity = DeviceIdentity.of("b2");
+        assertSame(identity, holder.get(new DeviceIdentity.Resolver() {
+            @Override
+            public DeviceIdentity resolve() {
+                return identity;
+            }
+        }));
+        assertSame(identity, holder.peek());
+    }
+}
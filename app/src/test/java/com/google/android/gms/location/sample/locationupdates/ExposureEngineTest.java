@@ -0,0 +1,269 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExposureEngineTest {
+    private static final double METERS_PER_DEGREE = 111195;
+    private static final double LAT = 34.92;
+    private static final double LNG = -82.44;
+    private static final long T0 = 1462233600000L;
+
+    private final List<ExposureEngine.Exposure> mExposures =
+            new ArrayList<ExposureEngine.Exposure>();
+    private final ExposureEngine.Listener mListener = new ExposureEngine.Listener() {
+        @Override
+        public void onExposure(ExposureEngine.Exposure exposure) {
+            mExposures.add(exposure);
+        }
+    };
+
+    private static double latOf(double north) {
+        return LAT + north / METERS_PER_DEGREE;
+    }
+
+    private static double lngOf(double east) {
+        return LNG + east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(LAT)));
+    }
+
+    private static LocationFix at(double north, double east, long seconds) {
+        return new LocationFix(latOf(north), lngOf(east), 0, 5f, T0 + seconds * 1000);
+    }
+
+    /**
+     * One bump at the origin, and one 500 m north of it.
+     */
+    private static SpatialGridIndex twoBumps() {
+        return SpatialGridIndex.build(new double[] {latOf(0), latOf(500)},
+                new double[] {lngOf(0), lngOf(0)}, 2);
+    }
+
+    /**
+     * Stays {@code meters} east of the origin at 1 Hz from {@code from} until {@code to}
+     * seconds.
+     */
+    private static void dwell(ExposureEngine engine, double meters, long from, long to) {
+        for (long s = from; s < to; s++) {
+            engine.onFix(at(0, meters, s));
+        }
+    }
+
+    @Test
+    public void dwellingNextToABumpIsFlaggedOnce() {
+        ExposureEngine engine = new ExposureEngine(mListener);
+        engine.setInfectedIndex(twoBumps());
+        dwell(engine, 8, 0, 20 * 60);
+
+        assertEquals(1, mExposures.size());
+        ExposureEngine.Exposure exposure = mExposures.get(0);
+        assertEquals(0, exposure.getRow());
+        assertEquals(T0, exposure.getFirstContactTime());
+        assertEquals(T0 + ExposureEngine.DEFAULT_MIN_CONTACT_MILLIS, exposure.getTime());
+        assertEquals(ExposureEngine.DEFAULT_MIN_CONTACT_MILLIS, exposure.getContactMillis());
+        assertEquals(8, exposure.getMinDistanceMeters(), 0.01);
+        assertEquals(1, engine.getActiveEncounterCount());
+    }
+
+    @Test
+    public void walkingPastIsNotAnExposure() {
+        ExposureEngine engine = new ExposureEngine(mListener);
+        engine.setInfectedIndex(twoBumps());
+        for (int s = 0; s < 600; s++) {
+            engine.onFix(at(0, -400 + s * 1.4, s));
+        }
+
+        assertEquals(0, mExposures.size());
+        assertTrue(engine.getContactCount() > 0);
+    }
+
+    @Test
+    public void contactAddsUpWithinTheWindowOnly() {
+        ExposureEngine engine = new ExposureEngine(mListener);
+        engine.setInfectedIndex(twoBumps());
+        // Three minutes near, an hour away, three minutes near: never five within half an hour.
+        dwell(engine, 5, 0, 180);
+        dwell(engine, 300, 180, 3780);
+        dwell(engine, 5, 3780, 3960);
+        assertEquals(0, mExposures.size());
+        assertEquals(1, engine.getActiveEncounterCount());
+
+        // Ten minutes away and back again: the two visits now share a window.
+        dwell(engine, 300, 3960, 4560);
+        dwell(engine, 5, 4560, 4740);
+        assertEquals(1, mExposures.size());
+        assertEquals(T0 + 3780 * 1000, mExposures.get(0).getFirstContactTime());
+    }
+
+    @Test
+    public void aBumpIsFlaggedAgainAfterAWholeWindowWithoutContact() {
+        ExposureEngine engine = new ExposureEngine(mListener);
+        engine.setInfectedIndex(twoBumps());
+        dwell(engine, 5, 0, 600);
+        dwell(engine, 300, 600, 600 + 31 * 60);
+        assertEquals(0, engine.getActiveEncounterCount());
+        dwell(engine, 5, 600 + 31 * 60, 1200 + 31 * 60);
+
+        assertEquals(2, mExposures.size());
+    }
+
+    @Test
+    public void sparseFixesEarnCappedCredit() {
+        ExposureEngine engine = new ExposureEngine(mListener);
+        engine.setInfectedIndex(twoBumps());
+        engine.onFix(at(0, 5, 0));
+        engine.onFix(at(0, 5, 20 * 60));
+
+        assertEquals(0, mExposures.size());
+        engine.onFix(at(0, 5, 21 * 60));
+        engine.onFix(at(0, 5, 24 * 60));
+        assertEquals(1, mExposures.size());
+        assertEquals(5 * 60 * 1000, mExposures.get(0).getContactMillis());
+    }
+
+    @Test
+    public void staleFixesAreIgnored() {
+        ExposureEngine engine = new ExposureEngine(mListener);
+        engine.setInfectedIndex(twoBumps());
+        engine.onFix(at(0, 5, 10));
+        engine.onFix(at(0, 5, 10));
+        engine.onFix(at(0, 5, 5));
+
+        assertEquals(2, engine.getStaleCount());
+        assertEquals(1, engine.getContactCount());
+    }
+
+    @Test
+    public void aRefreshedIndexKeepsEncountersInProgress() {
+        ExposureEngine engine = new ExposureEngine(mListener);
+        engine.setInfectedIndex(twoBumps());
+        dwell(engine, 5, 0, 240);
+        // A refreshed table lists the same bump under another row, after a new one.
+        engine.setInfectedIndex(SpatialGridIndex.build(new double[] {latOf(900), latOf(0)},
+                new double[] {lngOf(0), lngOf(0)}, 2));
+        dwell(engine, 5, 240, 480);
+        assertEquals(1, mExposures.size());
+        assertEquals(1, mExposures.get(0).getRow());
+        assertEquals(T0, mExposures.get(0).getFirstContactTime());
+        assertEquals(300 * 1000, mExposures.get(0).getContactMillis());
+
+        engine.setInfectedIndex(null);
+        dwell(engine, 5, 480, 2400);
+        assertEquals(1, mExposures.size());
+        assertEquals(0, engine.getActiveEncounterCount());
+    }
+
+    @Test
+    public void matchesABruteForceScanOnARandomWalk() {
+        Random random = new Random(19);
+        int bumps = 2000;
+        double[] lats = new double[bumps];
+        double[] lngs = new double[bumps];
+        for (int i = 0; i < bumps; i++) {
+            lats[i] = latOf(random.nextDouble() * 2000 - 1000);
+            lngs[i] = lngOf(random.nextDouble() * 2000 - 1000);
+        }
+        double radius = 40;
+        long window = 10 * 60 * 1000;
+        long minContact = 90 * 1000;
+        ExposureEngine engine = new ExposureEngine(radius, window, minContact, mListener);
+        engine.setInfectedIndex(SpatialGridIndex.build(lats, lngs, bumps));
+        List<String> expected = new ArrayList<String>();
+        BruteForce reference = new BruteForce(lats, lngs, radius, window, minContact, expected);
+
+        double north = 0;
+        double east = 0;
+        long seconds = 0;
+        for (int i = 0; i < 20000; i++) {
+            // Dawdles most of the time, with the odd pause in fixes.
+            north = Math.max(-1000, Math.min(1000, north + random.nextGaussian() * 2));
+            east = Math.max(-1000, Math.min(1000, east + random.nextGaussian() * 2));
+            seconds += random.nextInt(50) == 0 ? 30 + random.nextInt(300) : 1;
+            LocationFix fix = at(north, east, seconds);
+            engine.onFix(fix);
+            reference.onFix(fix);
+        }
+
+        // Within one fix the index reports bumps in its own order, so compare sorted.
+        List<String> flagged = new ArrayList<String>();
+        for (ExposureEngine.Exposure exposure : mExposures) {
+            flagged.add(exposure.getTime() + ":" + exposure.getRow());
+        }
+        Collections.sort(expected);
+        Collections.sort(flagged);
+        assertTrue(expected.size() > 10);
+        assertEquals(expected, flagged);
+        assertEquals(reference.mActive.size(), engine.getActiveEncounterCount());
+    }
+
+    /**
+     * The same rules, checked against every bump for every fix.
+     */
+    private static final class BruteForce {
+        final double[] mLats;
+        final double[] mLngs;
+        final double mRadius;
+        final long mWindow;
+        final long mMinContact;
+        final List<String> mFlagged;
+        final Map<Integer, ArrayDeque<long[]>> mActive = new HashMap<Integer, ArrayDeque<long[]>>();
+        final Map<Integer, Boolean> mDone = new HashMap<Integer, Boolean>();
+
+        BruteForce(double[] lats, double[] lngs, double radius, long window, long minContact,
+                   List<String> flagged) {
+            mLats = lats;
+            mLngs = lngs;
+            mRadius = radius;
+            mWindow = window;
+            mMinContact = minContact;
+            mFlagged = flagged;
+        }
+
+        void onFix(LocationFix fix) {
+            long time = fix.getTime();
+            for (Integer row : new ArrayList<Integer>(mActive.keySet())) {
+                ArrayDeque<long[]> contacts = mActive.get(row);
+                while (!contacts.isEmpty() && contacts.peekFirst()[0] < time - mWindow) {
+                    contacts.pollFirst();
+                }
+                if (contacts.isEmpty()) {
+                    mActive.remove(row);
+                    mDone.remove(row);
+                }
+            }
+            for (int row = 0; row < mLats.length; row++) {
+                if (SpatialGridIndex.distanceMeters(fix.getLatitude(), fix.getLongitude(),
+                        mLats[row], mLngs[row]) > mRadius) {
+                    continue;
+                }
+                ArrayDeque<long[]> contacts = mActive.get(row);
+                long credit = 0;
+                if (contacts == null) {
+                    contacts = new ArrayDeque<long[]>();
+                    mActive.put(row, contacts);
+                } else {
+                    credit = Math.min(time - contacts.peekLast()[0],
+                            ExposureEngine.MAX_CREDIT_MILLIS);
+                }
+                contacts.addLast(new long[] {time, credit});
+                long total = 0;
+                for (long[] contact : contacts) {
+                    total += contact[1];
+                }
+                if (total >= mMinContact && !mDone.containsKey(row)) {
+                    mDone.put(row, true);
+                    mFlagged.add(time + ":" + row);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Most cases use a queue as the subscriber's executor, so the test decides when drains run.
+ */
+public class FanOutChannelTest {
+    private final BlockingQueue<Runnable> mQueue = new LinkedBlockingQueue<Runnable>();
+    private final Executor mQueued = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mQueue.add(command);
+        }
+    };
+
+    private void runQueued() {
+        Runnable task;
+        while ((task = mQueue.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    public void everySubscriberGetsEveryItemInOrder() {
+        FanOutChannel<Integer> channel = new FanOutChannel<Integer>();
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        channel.subscribe(first, mQueued, 16, FanOutChannel.Overflow.DROP_NEWEST);
+        channel.subscribe(second, mQueued, 16, FanOutChannel.Overflow.DROP_OLDEST);
+        for (int i = 0; i < 10; i++) {
+            channel.publish(i);
+        }
+
+        assertEquals(2, mQueue.size());
+        runQueued();
+        assertEquals(10, first.mItems.size());
+        assertEquals(first.mItems, second.mItems);
+        assertEquals(Integer.valueOf(9), first.mItems.get(9));
+    }
+
+    @Test
+    public void fullSubscriptionDropsPerItsOverflow() {
+        FanOutChannel<Integer> channel = new FanOutChannel<Integer>();
+        Recorder newest = new Recorder();
+        Recorder oldest = new Recorder();
+        FanOutChannel.Subscription<Integer> keepsPrefix =
+                channel.subscribe(newest, mQueued, 3, FanOutChannel.Overflow.DROP_NEWEST);
+        FanOutChannel.Subscription<Integer> keepsRecent =
+                channel.subscribe(oldest, mQueued, 3, FanOutChannel.Overflow.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) {
+            channel.publish(i);
+        }
+        assertEquals(3, keepsPrefix.getPendingCount());
+        runQueued();
+
+        assertEquals("[0, 1, 2]", newest.mItems.toString());
+        assertEquals("[2, 3, 4]", oldest.mItems.toString());
+        assertEquals(2, keepsPrefix.getDroppedCount());
+        assertEquals(2, keepsRecent.getDroppedCount());
+        assertEquals(3, keepsRecent.getDeliveredCount());
+    }
+
+    @Test
+    public void cancelledSubscriptionReceivesNothingMore() {
+        FanOutChannel<Integer> channel = new FanOutChannel<Integer>();
+        Recorder recorder = new Recorder();
+        FanOutChannel.Subscription<Integer> subscription =
+                channel.subscribe(recorder, mQueued, 4, FanOutChannel.Overflow.DROP_NEWEST);
+        channel.publish(1);
+        subscription.cancel();
+        channel.publish(2);
+        runQueued();
+
+        assertTrue(recorder.mItems.isEmpty());
+        assertEquals(0, channel.getSubscriberCount());
+    }
+
+    @Test
+    public void longBacklogIsDrainedInBatches() {
+        FanOutChannel<Integer> channel = new FanOutChannel<Integer>();
+        Recorder recorder = new Recorder();
+        channel.subscribe(recorder, mQueued, 1000, FanOutChannel.Overflow.DROP_NEWEST);
+        for (int i = 0; i < 200; i++) {
+            channel.publish(i);
+        }
+        mQueue.poll().run();
+
+        assertEquals(FanOutChannel.DRAIN_BATCH, recorder.mItems.size());
+        assertEquals(1, mQueue.size());
+        runQueued();
+        assertEquals(200, recorder.mItems.size());
+    }
+
+    @Test
+    public void concurrentDrainLosesNothingAndKeepsOrder() throws Exception {
+        final int items = 200000;
+        ExecutorService pool = TaskExecutors.newPool("fan-out", 2, 1024);
+        FanOutChannel<Integer> channel = new FanOutChannel<Integer>();
+        final CountDownLatch done = new CountDownLatch(2);
+        final long[] lossless = new long[2];
+        final int[] outOfOrder = new int[2];
+        FanOutChannel.Subscription<Integer> slow = channel.subscribe(
+                new FanOutChannel.Subscriber<Integer>() {
+                    private int mLast = -1;
+
+                    @Override
+                    public void onItem(Integer item) {
+                        if (item <= mLast) {
+                            outOfOrder[0]++;
+                        }
+                        mLast = item;
+                        if (item == items - 1) {
+                            done.countDown();
+                        }
+                    }
+                }, pool, 64, FanOutChannel.Overflow.DROP_OLDEST);
+        channel.subscribe(new FanOutChannel.Subscriber<Integer>() {
+            private int mExpected;
+
+            @Override
+            public void onItem(Integer item) {
+                if (item != mExpected) {
+                    outOfOrder[1]++;
+                }
+                mExpected = item + 1;
+                lossless[1]++;
+                if (item == items - 1) {
+                    done.countDown();
+                }
+            }
+        }, pool, items, FanOutChannel.Overflow.DROP_NEWEST);
+
+        for (int i = 0; i < items; i++) {
+            channel.publish(i);
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        assertEquals(0, outOfOrder[0]);
+        assertEquals(0, outOfOrder[1]);
+        assertEquals(items, lossless[1]);
+        assertEquals(items, slow.getDeliveredCount() + slow.getDroppedCount());
+    }
+
+    private static final class Recorder implements FanOutChannel.Subscriber<Integer> {
+        final List<Integer> mItems = new ArrayList<Integer>();
+
+        @Override
+        public void onItem(Integer item) {
+            mItems.add(item);
+        }
+    }
+}
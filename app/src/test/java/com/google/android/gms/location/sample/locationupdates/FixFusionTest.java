@@ -0,0 +1,153 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FixFusionTest {
+    private static final double METERS_PER_DEGREE = 111195;
+    private static final long T0 = 1462233600000L;
+    private static final String GPS = "gps";
+    private static final String NETWORK = "network";
+
+    private static LocationFix at(double north, double east, float accuracy, long millis) {
+        double lat = 34.92 + north / METERS_PER_DEGREE;
+        double lng = -82.44 + east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)));
+        return new LocationFix(lat, lng, 0, accuracy, T0 + millis);
+    }
+
+    private static double meters(LocationFix a, LocationFix b) {
+        return SpatialGridIndex.distanceMeters(a.getLatitude(), a.getLongitude(),
+                b.getLatitude(), b.getLongitude());
+    }
+
+    @Test
+    public void providerStreamPassesThroughButNotItsRepeats() {
+        FixFusion fusion = new FixFusion(false);
+        LocationFix first = at(0, 0, 5f, 0);
+
+        assertSame(first, fusion.accept(GPS, first));
+        assertNull(fusion.accept(GPS, first));
+        // Same provider, worse accuracy a second later: still the provider's own track.
+        assertNotNull(fusion.accept(GPS, at(1, 0, 20f, 1000)));
+        assertEquals(1, fusion.getRepeatedCount());
+        assertEquals(2, fusion.getAcceptedCount());
+    }
+
+    @Test
+    public void otherProviderWithinWindowIsMergedUnlessMoreAccurate() {
+        FixFusion fusion = new FixFusion(false);
+        fusion.accept(NETWORK, at(0, 0, 40f, 0));
+
+        assertNull(fusion.accept(NETWORK + "2", at(0, 0, 40f, 500)));
+        assertNotNull(fusion.accept(GPS, at(0, 0, 6f, 900)));
+        assertNull(fusion.accept(NETWORK, at(0, 0, 3f, 800)));
+        assertEquals(1, fusion.getMergedCount());
+        assertEquals(1, fusion.getStaleCount());
+    }
+
+    @Test
+    public void coarseFixIsDominatedUntilTheAccurateOneAges() {
+        FixFusion fusion = new FixFusion(false);
+        fusion.accept(GPS, at(0, 0, 5f, 0));
+
+        // 5 m + 3 m/s * 10 s = 35 m is still better than 40 m.
+        assertNull(fusion.accept(NETWORK, at(0, 0, 40f, 10000)));
+        assertNotNull(fusion.accept(NETWORK, at(0, 0, 40f, 12000)));
+        assertEquals(1, fusion.getDominatedCount());
+    }
+
+    @Test
+    public void smoothingNarrowsNoiseAndRestartsOnAJump() {
+        FixFusion fusion = new FixFusion(true);
+        Random random = new Random(3);
+        LocationFix truth = at(0, 0, 0f, 0);
+        LocationFix out = null;
+        double rawError = 0;
+        double smoothedError = 0;
+        for (int i = 0; i < 300; i++) {
+            // A reported accuracy is a 68% radius, so each axis has a smaller deviation.
+            LocationFix raw = at(random.nextGaussian() * 5, random.nextGaussian() * 5, 8f,
+                    i * 1000L);
+            out = fusion.accept(GPS, raw);
+            rawError += meters(truth, raw);
+            smoothedError += meters(truth, out);
+        }
+        assertTrue(smoothedError * 2 < rawError);
+        assertTrue(out.getAccuracy() < 8f);
+
+        long resets = fusion.getResetCount();
+        out = fusion.accept(GPS, at(0, 2000, 8f, 300000));
+        assertEquals(resets + 1, fusion.getResetCount());
+        assertEquals(0, meters(out, at(0, 2000, 8f, 0)), 1e-6);
+        assertEquals(8f, out.getAccuracy(), 1e-6);
+    }
+
+    /**
+     * An hour of a walk with GPS and network both registered, as MyService does: GPS at 1 Hz,
+     * network every 20 s with the occasional repeated cached fix, and ten minutes indoors with
+     * no GPS. The legacy service uploaded every fix of both providers.
+     */
+    @Test
+    public void replayedWalkUploadsNoRedundantNetworkFixes() {
+        Random random = new Random(5);
+        List<String> sources = new ArrayList<String>();
+        List<LocationFix> fixes = new ArrayList<LocationFix>();
+        List<LocationFix> truths = new ArrayList<LocationFix>();
+        LocationFix cachedNetwork = null;
+        for (int s = 0; s < 3600; s++) {
+            boolean indoors = s >= 1800 && s < 2400;
+            double east = indoors ? 1800 * 1.3 : (s < 1800 ? s : s - 600) * 1.3;
+            LocationFix truth = at(0, east, 0f, s * 1000L);
+            if (!indoors) {
+                sources.add(GPS);
+                fixes.add(at(random.nextGaussian() * 4, east + random.nextGaussian() * 4,
+                        4f + random.nextFloat() * 3, s * 1000L + random.nextInt(200)));
+                truths.add(truth);
+            }
+            if (s % 20 == 7) {
+                cachedNetwork = at(random.nextGaussian() * 30, east + random.nextGaussian() * 30,
+                        30f + random.nextFloat() * 30, s * 1000L + 300);
+                sources.add(NETWORK);
+                fixes.add(cachedNetwork);
+                truths.add(truth);
+            } else if (s % 20 == 12) {
+                sources.add(NETWORK);
+                fixes.add(cachedNetwork);
+                truths.add(truth);
+            }
+        }
+
+        FixFusion fusion = new FixFusion(true);
+        double legacyError = 0;
+        double fusedError = 0;
+        int uploaded = 0;
+        int indoorUploads = 0;
+        for (int i = 0; i < fixes.size(); i++) {
+            legacyError += meters(truths.get(i), fixes.get(i));
+            LocationFix out = fusion.accept(sources.get(i), fixes.get(i));
+            if (out != null) {
+                uploaded++;
+                fusedError += meters(truths.get(i), out);
+                long second = (out.getTime() - T0) / 1000;
+                if (second >= 1800 && second < 2400) {
+                    indoorUploads++;
+                }
+            }
+        }
+
+        // Every repeated network fix and the network fixes during GPS coverage are gone.
+        assertTrue(fixes.size() - uploaded >= 2 * 3000 / 20);
+        assertEquals(fusion.getAcceptedCount(), uploaded);
+        assertTrue(indoorUploads >= 600 / 20 - 1);
+        assertTrue(fusedError / uploaded < legacyError / fixes.size());
+    }
+}
@@ -0,0 +1,126 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class InfectedTableDeltaTest {
+
+    private static InfectedTableDelta read(String body) throws IOException {
+        return InfectedTableDelta.read(new ByteArrayInputStream(body.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void readsHeaderAndChanges() throws IOException {
+        InfectedTableDelta delta = read("delta\t7\t10\n+\ta1\t-82.5\t34.9\n\n-\tb2\n");
+        assertEquals(7, delta.getFromSequence());
+        assertEquals(10, delta.getToSequence());
+        assertEquals(1, delta.getAddedCount());
+        assertEquals(1, delta.getRemovedCount());
+        assertEquals(34.9, delta.getAddedLatitude(0), 0.0);
+        assertEquals(-82.5, delta.getAddedLongitude(0), 0.0);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMissingHeader() throws IOException {
+        read("+\ta1\t-82.5\t34.9\n");
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMalformedLine() throws IOException {
+        read("delta\t1\t2\n+\ta1\tnowhere\n");
+    }
+
+    @Test
+    public void applyAddsAndRemovesSingleRowsWithoutTouchingBase() throws IOException {
+        InfectedTable base = new InfectedTable.Builder()
+                .add("a1", 1, 1).add("b2", 2, 2).add("c3", 3, 3).build();
+        InfectedTable next = base.apply(read("delta\t1\t5\n-\ta1\t1\t1\n+\tb2\t20\t20\n"
+                + "+\td4\t4\t4\n+\te5\t5\t5\n-\te5\t5\t5\n"));
+
+        assertEquals(3, base.size());
+        assertTrue(base.containsUid("a1"));
+        assertFalse(base.containsUid("d4"));
+
+        assertEquals(4, next.size());
+        assertFalse(next.containsUid("a1"));
+        assertFalse(next.containsUid("e5"));
+        assertTrue(next.containsUid("c3"));
+        assertEquals(2, next.getLatitude(0), 0.0);
+        assertEquals(3, next.getLatitude(1), 0.0);
+        assertEquals(20, next.getLatitude(2), 0.0);
+        assertTrue(next.containsUid("d4"));
+    }
+
+    @Test
+    public void removalCancelsOnlyTheLatestMatchingAddition() throws IOException {
+        InfectedTableDelta delta = read("delta\t1\t2\n+\ta1\t1\t1\n+\ta1\t2\t2\n"
+                + "+\ta1\t1\t1\n-\ta1\t1\t1\n-\ta1\t1\t1\n-\ta1\t1\t1\n-\tb2\n");
+        assertEquals(1, delta.getAddedCount());
+        assertEquals(2, delta.getAddedLatitude(0), 0.0);
+        assertEquals(2, delta.getRemovedCount());
+        assertTrue(Double.isNaN(delta.getRemovedLatitude(1)));
+    }
+
+    @Test
+    public void applyWithSeveralRowsPerUidMatchesTheFullTable() throws IOException {
+        // One row per bump: a1 and b2 were each seen in several places, a1 twice at (1, 1).
+        String[] before = {"a1\t1\t1", "a1\t2\t2", "b2\t3\t3", "a1\t1\t1", "b2\t4\t4",
+                "c3\t5\t5", "d4"};
+        String[] after = {"a1\t2\t2", "b2\t3\t3", "a1\t1\t1", "c3\t5\t5", "a1\t6\t6",
+                "b2\t7\t7", "d4"};
+        InfectedTable next = table(before).apply(read("delta\t1\t2\n"
+                + "-\ta1\t1\t1\n"
+                + "+\ta1\t6\t6\n"
+                + "-\tb2\t4\t4\n"
+                + "-\tc3\t9\t9\n"
+                + "+\tb2\t7\t7\n"
+                + "+\tc3\t8\t8\n"
+                + "-\tc3\t8\t8\n"
+                + "-\td4\n"
+                + "+\td4\n"));
+        InfectedTable full = table(after);
+
+        assertEquals(full.size(), next.size());
+        for (int row = 0; row < full.size(); row++) {
+            assertEquals(full.getUidHigh(row), next.getUidHigh(row));
+            assertEquals(full.getUidLow(row), next.getUidLow(row));
+            assertEquals(full.getLatitude(row), next.getLatitude(row), 0.0);
+            assertEquals(full.getLongitude(row), next.getLongitude(row), 0.0);
+        }
+        for (String uid : new String[] {"a1", "b2", "c3", "d4"}) {
+            assertEquals(uid, full.containsUid(uid), next.containsUid(uid));
+        }
+
+        InfectedTable gone = next.apply(read("delta\t2\t3\n-\tb2\t3\t3\n-\tb2\t7\t7\n"));
+        assertFalse(gone.containsUid("b2"));
+        assertTrue(gone.containsUid("a1"));
+    }
+
+    // Rows are "uid<TAB>lng<TAB>lat", or a bare uid for a row without coordinates.
+    private static InfectedTable table(String[] rows) {
+        InfectedTable.Builder builder = new InfectedTable.Builder();
+        for (String row : rows) {
+            String[] fields = row.split("\t");
+            if (fields.length == 1) {
+                builder.add(fields[0], Double.NaN, Double.NaN);
+            } else {
+                builder.add(fields[0], Double.parseDouble(fields[2]),
+                        Double.parseDouble(fields[1]));
+            }
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void emptyDeltaKeepsTheSameTable() throws IOException {
+        InfectedTable base = new InfectedTable.Builder().add("a1", 1, 1).build();
+        assertSame(base, base.apply(read("delta\t3\t3\n")));
+    }
+}
@@ -0,0 +1,107 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InfectedTableParserTest {
+
+    private static final String PAGE = "<html>\n<body>\n"
+            + "<table><tr><td>a1</td><td>-82.4401</td><td>34.9249</td></tr>"
+            + "<TR class=\"odd\"><TD>b2</TD><TD>-82.5</TD><TD>35</TD><td>1477800000</td></TR>"
+            + "<tr><td>no-coords</td></tr>"
+            + "<tr><td>bad</td><td>n/a</td><td>1e1</td></tr></table>\n"
+            + "</body>\n</html>\n";
+
+    @Test
+    public void reportsEveryRowInOrder() throws IOException {
+        List<String> rows = parseAll(new ByteArrayInputStream(PAGE.getBytes("UTF-8")));
+
+        assertEquals(4, rows.size());
+        assertEquals("a1 -82.4401 34.9249 3", rows.get(0));
+        assertEquals("b2 -82.5 35.0 4", rows.get(1));
+        assertEquals("no-coords NaN NaN 1", rows.get(2));
+        assertEquals("bad NaN 10.0 3", rows.get(3));
+    }
+
+    @Test
+    public void tagsSplitAcrossReadsAreHandled() throws IOException {
+        InputStream oneByteAtATime = new FilterInputStream(
+                new ByteArrayInputStream(PAGE.getBytes("UTF-8"))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+        assertEquals(parseAll(new ByteArrayInputStream(PAGE.getBytes("UTF-8"))),
+                parseAll(oneByteAtATime));
+    }
+
+    @Test
+    public void handlerCanStopEarly() throws IOException {
+        final List<String> seen = new ArrayList<String>();
+        int rows = new InfectedTableParser().parse(new ByteArrayInputStream(PAGE.getBytes("UTF-8")),
+                new InfectedTableParser.RowHandler() {
+                    @Override
+                    public boolean onRow(InfectedTableParser.Row row) {
+                        seen.add(row.getUid());
+                        return !row.uidEquals("b2");
+                    }
+                });
+        assertEquals(2, rows);
+        assertEquals(2, seen.size());
+    }
+
+    @Test
+    public void uidComparisonDoesNotMatchPrefixes() throws IOException {
+        final boolean[] matched = new boolean[2];
+        new InfectedTableParser().parse(new ByteArrayInputStream(PAGE.getBytes("UTF-8")),
+                new InfectedTableParser.RowHandler() {
+                    @Override
+                    public boolean onRow(InfectedTableParser.Row row) {
+                        matched[0] |= row.uidEquals("a");
+                        matched[1] |= row.uidEquals("a1");
+                        return true;
+                    }
+                });
+        assertFalse(matched[0]);
+        assertTrue(matched[1]);
+    }
+
+    @Test
+    public void numbersMatchDoubleParseDouble() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            String text = Double.toString((random.nextDouble() - 0.5) * 360);
+            if (i % 3 == 0) {
+                text = String.format(java.util.Locale.US, "%.6f", random.nextDouble() * 90);
+            }
+            char[] chars = text.toCharArray();
+            assertEquals(text, Double.parseDouble(text),
+                    InfectedTableParser.parseNumber(chars, chars.length), 0.0);
+        }
+    }
+
+    private static List<String> parseAll(InputStream in) throws IOException {
+        final List<String> rows = new ArrayList<String>();
+        new InfectedTableParser().parse(in, new InfectedTableParser.RowHandler() {
+            @Override
+            public boolean onRow(InfectedTableParser.Row row) {
+                rows.add(row.getUid() + " " + row.getLongitude() + " " + row.getLatitude() + " "
+                        + row.getCellCount());
+                return true;
+            }
+        });
+        return rows;
+    }
+}
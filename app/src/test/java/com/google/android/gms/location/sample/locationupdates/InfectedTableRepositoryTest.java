@@ -0,0 +1,397 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the repository against a local stand-in for displayinfectedtable.php that supports
+ * ETag revalidation, plus a stand-in delta endpoint backed by a change log.
+ */
+public class InfectedTableRepositoryTest {
+    private HttpServer mServer;
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final AtomicInteger mFullResponses = new AtomicInteger();
+    private volatile String mPage = page("a1", "b2");
+    private volatile CountDownLatch mStall;
+
+    // Delta stand-in: current rows, one per bump, plus one change-log line per sequence number.
+    private final List<String> mRows = new ArrayList<String>();
+    private final List<String> mChangeLog = new ArrayList<String>();
+    private int mHistoryStart;
+    private int mDeltaFromSkew;
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/displayinfectedtable.php", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequests.incrementAndGet();
+                CountDownLatch stall = mStall;
+                if (stall != null) {
+                    try {
+                        stall.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                String page = mPage;
+                String etag = "\"" + Integer.toHexString(page.hashCode()) + "\"";
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                mFullResponses.incrementAndGet();
+                byte[] body = page.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.createContext("/table.php", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StringBuilder sb = new StringBuilder("<html><body>\n<table>");
+                int sequence;
+                synchronized (mRows) {
+                    for (String row : mRows) {
+                        String[] fields = row.split("\t");
+                        sb.append("<tr><td>").append(fields[0]).append("</td><td>")
+                                .append(fields[1]).append("</td><td>")
+                                .append(fields[2]).append("</td></tr>");
+                    }
+                    sequence = mChangeLog.size();
+                }
+                sb.append("</table>\n</body></html>\n");
+                exchange.getResponseHeaders().set(InfectedTableRepository.SEQUENCE_HEADER,
+                        Integer.toString(sequence));
+                respond(exchange, 200, sb.toString());
+            }
+        });
+        mServer.createContext("/delta.php", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int since = Integer.parseInt(
+                        exchange.getRequestURI().getQuery().replace("since=", ""));
+                StringBuilder sb = new StringBuilder();
+                synchronized (mRows) {
+                    if (since < mHistoryStart || since > mChangeLog.size()) {
+                        respond(exchange, 410, "");
+                        return;
+                    }
+                    sb.append("delta\t").append(since + mDeltaFromSkew).append('\t')
+                            .append(mChangeLog.size()).append('\n');
+                    for (String change : mChangeLog.subList(since, mChangeLog.size())) {
+                        sb.append(change).append('\n');
+                    }
+                }
+                respond(exchange, 200, sb.toString());
+            }
+        });
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void concurrentConsumersShareOneFetchPerTtlWindow() throws Exception {
+        final InfectedTableRepository repository = new InfectedTableRepository(tableUrl(), 60000);
+        int consumers = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger infected = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(consumers);
+        for (int i = 0; i < consumers; i++) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 50; j++) {
+                            if (repository.get().containsUid("b2")) {
+                                infected.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(consumers * 50, infected.get());
+        assertEquals(1, mRequests.get());
+        assertEquals(1, repository.getNetworkFetchCount());
+    }
+
+    @Test
+    public void expiredSnapshotIsRevalidatedWithETag() throws Exception {
+        InfectedTableRepository repository = new InfectedTableRepository(tableUrl(), 60000);
+        InfectedTable first = repository.get();
+
+        repository.invalidate();
+        assertSame(first, repository.get());
+        assertEquals(2, mRequests.get());
+        assertEquals(1, mFullResponses.get());
+
+        mPage = page("a1", "b2", "c3");
+        repository.invalidate();
+        InfectedTable changed = repository.get();
+        assertNotSame(first, changed);
+        assertEquals(3, changed.size());
+        assertEquals(2, mFullResponses.get());
+        // Every request is timed; only the two downloaded bodies are parsed.
+        assertEquals(3, repository.getFetchLatency().getCount());
+        assertEquals(2, repository.getParseLatency().getCount());
+    }
+
+    @Test
+    public void peekDoesNotWaitForARefreshInFlight() throws Exception {
+        final InfectedTableRepository repository = new InfectedTableRepository(tableUrl(), 60000);
+        InfectedTable first = repository.get();
+        mStall = new CountDownLatch(1);
+        repository.invalidate();
+        Thread refresher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    repository.get();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        refresher.start();
+        while (mRequests.get() < 2) {
+            Thread.sleep(1);
+        }
+
+        assertSame(first, repository.peek());
+        assertEquals(2, repository.getNetworkFetchCount());
+        mStall.countDown();
+        refresher.join(10000);
+        assertFalse(refresher.isAlive());
+    }
+
+    @Test
+    public void ttlExpiryTriggersOneRefresh() throws Exception {
+        InfectedTableRepository repository = new InfectedTableRepository(tableUrl(), 100);
+        repository.get();
+        repository.get();
+        Thread.sleep(150);
+        repository.get();
+        repository.get();
+        assertEquals(2, mRequests.get());
+    }
+
+    @Test
+    public void staleSnapshotSurvivesFailedRefresh() throws Exception {
+        InfectedTableRepository repository = new InfectedTableRepository(tableUrl(), 60000);
+        InfectedTable first = repository.get();
+        mServer.stop(0);
+        repository.invalidate();
+        assertSame(first, repository.get());
+        assertFalse(first.containsUid("zz"));
+    }
+
+    @Test
+    public void deltaSyncAppliesChangesWithFarFewerBytes() throws Exception {
+        List<String> uids = new ArrayList<String>();
+        for (int i = 0; i < 500; i++) {
+            uids.add(UUID.randomUUID().toString());
+            putRow(uids.get(i), i);
+        }
+        InfectedTableRepository repository = deltaRepository();
+        assertEquals(500, repository.get().size());
+        long fullBytes = repository.getLastFullSyncBytes();
+
+        String added = UUID.randomUUID().toString();
+        putRow(added, 1000);
+        removeRow(uids.get(0), 0);
+        putRow(uids.get(1), 2000);
+        repository.invalidate();
+        InfectedTable table = repository.get();
+
+        assertEquals(1, repository.getFullSyncCount());
+        assertEquals(1, repository.getDeltaSyncCount());
+        assertEquals(501, table.size());
+        assertTrue(table.containsUid(added));
+        assertFalse(table.containsUid(uids.get(0)));
+        assertTrue(table.containsUid(uids.get(1)));
+        assertEquals(-82 - 2000 / 1000.0, table.getLongitude(table.size() - 1), 0.0);
+        assertTrue(repository.getLastSyncBytes() * 20 < fullBytes);
+        assertEquals(fullBytes + repository.getLastSyncBytes(), repository.getBytesReceived());
+
+        repository.invalidate();
+        assertSame(table, repository.get());
+        assertEquals(2, repository.getDeltaSyncCount());
+    }
+
+    @Test
+    public void deltaSyncWithSeveralBumpsPerUidMatchesFullFetch() throws Exception {
+        List<String> uids = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            uids.add(UUID.randomUUID().toString());
+        }
+        for (int i = 0; i < 100; i++) {
+            putRow(uids.get(i % uids.size()), i % 30);
+        }
+        InfectedTableRepository repository = deltaRepository();
+        repository.get();
+
+        // New bumps for known uids, bumps aged out, and one uid losing all of its rows.
+        for (int i = 100; i < 130; i++) {
+            putRow(uids.get(i % 7), i % 30);
+        }
+        removeRow(uids.get(0), 0);
+        removeRow(uids.get(3), 3);
+        removeRow(uids.get(3), 3);
+        removeRow(uids.get(3), 333);
+        for (int i = 10; i < 100; i += 20) {
+            removeRow(uids.get(10), i % 30);
+        }
+        repository.invalidate();
+        InfectedTable table = repository.get();
+        assertEquals(1, repository.getDeltaSyncCount());
+
+        InfectedTable full = deltaRepository().get();
+        assertEquals(full.size(), table.size());
+        for (int row = 0; row < full.size(); row++) {
+            assertEquals(full.getUidHigh(row), table.getUidHigh(row));
+            assertEquals(full.getUidLow(row), table.getUidLow(row));
+            assertEquals(full.getLatitude(row), table.getLatitude(row), 0.0);
+            assertEquals(full.getLongitude(row), table.getLongitude(row), 0.0);
+        }
+        for (String uid : uids) {
+            assertEquals(full.containsUid(uid), table.containsUid(uid));
+        }
+        assertFalse(table.containsUid(uids.get(10)));
+        assertTrue(table.containsUid(uids.get(3)));
+    }
+
+    @Test
+    public void expiredHistoryFallsBackToFullResync() throws Exception {
+        putRow("a1", 1);
+        InfectedTableRepository repository = deltaRepository();
+        repository.get();
+
+        putRow("b2", 2);
+        synchronized (mRows) {
+            mHistoryStart = mChangeLog.size();
+        }
+        repository.invalidate();
+        assertTrue(repository.get().containsUid("b2"));
+        assertEquals(2, repository.getFullSyncCount());
+        assertEquals(0, repository.getDeltaSyncCount());
+
+        // Back on the delta path once resynced.
+        putRow("c3", 3);
+        repository.invalidate();
+        assertTrue(repository.get().containsUid("c3"));
+        assertEquals(1, repository.getDeltaSyncCount());
+    }
+
+    @Test
+    public void deltaStartingElsewhereIsTreatedAsGap() throws Exception {
+        putRow("a1", 1);
+        InfectedTableRepository repository = deltaRepository();
+        repository.get();
+
+        putRow("b2", 2);
+        synchronized (mRows) {
+            mDeltaFromSkew = 1;
+        }
+        repository.invalidate();
+        InfectedTable table = repository.get();
+        assertTrue(table.containsUid("a1"));
+        assertTrue(table.containsUid("b2"));
+        assertEquals(2, repository.getFullSyncCount());
+        assertEquals(0, repository.getDeltaSyncCount());
+    }
+
+    private InfectedTableRepository deltaRepository() throws IOException {
+        String base = "http://127.0.0.1:" + mServer.getAddress().getPort();
+        return new InfectedTableRepository(new URL(base + "/table.php"),
+                new URL(base + "/delta.php"), 60000);
+    }
+
+    private static String row(String uid, int i) {
+        return uid + "\t" + (-82 - i / 1000.0) + "\t" + (34 + i / 1000.0);
+    }
+
+    private void putRow(String uid, int i) {
+        String row = row(uid, i);
+        synchronized (mRows) {
+            mRows.add(row);
+            mChangeLog.add("+\t" + row);
+        }
+    }
+
+    /**
+     * Removes the first bump of {@code uid} made with {@code i}, if there is one, like the
+     * server ageing it out.
+     */
+    private void removeRow(String uid, int i) {
+        String row = row(uid, i);
+        synchronized (mRows) {
+            if (mRows.remove(row)) {
+                mChangeLog.add("-\t" + row);
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private URL tableUrl() throws IOException {
+        return new URL("http://127.0.0.1:" + mServer.getAddress().getPort()
+                + "/displayinfectedtable.php");
+    }
+
+    private static String page(String... uids) {
+        StringBuilder sb = new StringBuilder("<html><body>\n<table>");
+        for (int i = 0; i < uids.length; i++) {
+            sb.append("<tr><td>").append(uids[i]).append("</td><td>-82.4").append(i)
+                    .append("</td><td>34.9").append(i).append("</td></tr>");
+        }
+        return sb.append("</table>\n</body></html>\n").toString();
+    }
+}
@@ -0,0 +1,157 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InfectedUidFilterTest {
+
+    private static String[] uids(int count, long seed) {
+        Random random = new Random(seed);
+        String[] uids = new String[count];
+        for (int i = 0; i < count; i++) {
+            uids[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+        }
+        return uids;
+    }
+
+    @Test
+    public void everyAddedUidIsFoundAndFewOthersAre() {
+        for (double rate : new double[] {0.01, 0.001}) {
+            String[] infected = uids(20000, 1);
+            InfectedUidFilter.Builder builder =
+                    new InfectedUidFilter.Builder(infected.length, rate);
+            for (String uid : infected) {
+                builder.add(uid);
+            }
+            InfectedUidFilter filter = builder.build();
+            for (String uid : infected) {
+                assertTrue(filter.mightContain(uid));
+            }
+
+            String[] others = uids(200000, 2);
+            int falsePositives = 0;
+            for (String uid : others) {
+                if (filter.mightContain(uid)) {
+                    falsePositives++;
+                }
+            }
+            double measured = falsePositives / (double) others.length;
+            assertTrue(rate + ": measured " + measured, measured < rate * 1.3);
+            assertEquals(rate, filter.getExpectedFalsePositiveRate(), rate * 0.2);
+        }
+    }
+
+    @Test
+    public void sizeFollowsTheFalsePositiveRate() {
+        InfectedUidFilter percent = new InfectedUidFilter.Builder(1000000, 0.01).build();
+        InfectedUidFilter permille = new InfectedUidFilter.Builder(1000000, 0.001).build();
+
+        // About 1.2 and 1.8 bytes per uid, against 16 for the uid alone.
+        assertEquals(1.2, percent.getSerializedBytes() / 1e6, 0.05);
+        assertEquals(1.8, permille.getSerializedBytes() / 1e6, 0.05);
+        assertEquals(7, percent.getProbeCount());
+        assertEquals(10, permille.getProbeCount());
+    }
+
+    @Test
+    public void uidsMatchRegardlessOfCase() {
+        InfectedUidFilter filter = new InfectedUidFilter.Builder(10)
+                .add("0F8FAD5B-D9CB-469F-A165-70867728950E").add("not-a-uuid").build();
+
+        assertTrue(filter.mightContain("0f8fad5b-d9cb-469f-a165-70867728950e"));
+        assertTrue(filter.mightContain("not-a-uuid"));
+        assertEquals(2, filter.size());
+    }
+
+    @Test
+    public void roundTripsThroughItsSerializedForm() throws IOException {
+        String[] infected = uids(5000, 3);
+        InfectedUidFilter.Builder builder = new InfectedUidFilter.Builder(infected.length);
+        for (String uid : infected) {
+            builder.add(uid);
+        }
+        InfectedUidFilter filter = builder.build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter.writeTo(out);
+        assertEquals(filter.getSerializedBytes(), out.size());
+
+        InfectedUidFilter read =
+                InfectedUidFilter.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(filter.size(), read.size());
+        assertEquals(filter.getBitCount(), read.getBitCount());
+        for (String uid : infected) {
+            assertTrue(read.mightContain(uid));
+        }
+        for (String uid : uids(5000, 4)) {
+            assertEquals(filter.mightContain(uid), read.mightContain(uid));
+        }
+    }
+
+    @Test
+    public void rejectsOtherAndTruncatedBodies() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new InfectedUidFilter.Builder(100).add("a1").build().writeTo(out);
+        byte[] body = out.toByteArray();
+
+        byte[] truncated = new byte[body.length - 1];
+        System.arraycopy(body, 0, truncated, 0, truncated.length);
+        byte[] newer = body.clone();
+        newer[2] = (byte) (InfectedUidFilter.VERSION + 1);
+        for (byte[] bad : new byte[][] {truncated, newer, "<html></html>".getBytes("UTF-8")}) {
+            try {
+                InfectedUidFilter.read(new ByteArrayInputStream(bad));
+                fail("Read a bad filter");
+            } catch (IOException expected) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void oversizedHeadersAreRejectedBeforeAllocating() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new InfectedUidFilter.Builder(100).add("a1").build().writeTo(out);
+        byte[] body = out.toByteArray();
+        assertTrue(InfectedUidFilter.read(new ByteArrayInputStream(body), body.length)
+                .mightContain("a1"));
+
+        // A header claiming Integer.MAX_VALUE bits would otherwise allocate 256 MiB.
+        byte[] huge = body.clone();
+        huge[4] = 0x7f;
+        huge[5] = huge[6] = huge[7] = (byte) 0xff;
+        // A header claiming more bits than the response carries, within the maximum.
+        byte[] longer = body.clone();
+        longer[6] = 0x10;
+        for (byte[] bad : new byte[][] {huge, longer}) {
+            try {
+                InfectedUidFilter.read(new ByteArrayInputStream(bad), bad.length);
+                fail("Read a filter larger than its body");
+            } catch (IOException expected) {
+                // Expected.
+            }
+        }
+        try {
+            InfectedUidFilter.read(new ByteArrayInputStream(huge));
+            fail("Read a filter larger than the maximum");
+        } catch (IOException expected) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void anEmptyFilterContainsNothing() {
+        InfectedUidFilter filter = new InfectedUidFilter.Builder(0).build();
+        assertFalse(filter.mightContain("a1"));
+        assertEquals(0, filter.size());
+    }
+}
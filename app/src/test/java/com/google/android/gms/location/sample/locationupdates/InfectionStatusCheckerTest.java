@@ -0,0 +1,189 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the checker against local stand-ins for the digest, row and full table endpoints.
+ */
+public class InfectionStatusCheckerTest {
+    private static final String INFECTED = "0f8fad5b-d9cb-469f-a165-70867728950e";
+    private static final String HEALTHY = "7c9e6679-7425-40de-944b-e07fc1f90ae7";
+
+    private HttpServer mServer;
+    private final List<String> mInfected = new CopyOnWriteArrayList<String>();
+    private final AtomicInteger mDigestResponses = new AtomicInteger();
+    private final AtomicInteger mTableRequests = new AtomicInteger();
+    private volatile boolean mDigestAvailable = true;
+    // Makes the digest claim every uid, as if every check were a false positive.
+    private volatile boolean mSaturated;
+
+    @Before
+    public void startServer() throws IOException {
+        mInfected.add(INFECTED);
+        mInfected.add("a1");
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/infecteddigest.php", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (!mDigestAvailable) {
+                    respond(exchange, 404, new byte[0]);
+                    return;
+                }
+                InfectedUidFilter.Builder builder = new InfectedUidFilter.Builder(
+                        mSaturated ? 1 : mInfected.size(), mSaturated ? 0.5 : 0.001);
+                for (String uid : mInfected) {
+                    builder.add(uid);
+                }
+                if (mSaturated) {
+                    for (int i = 0; i < 1000; i++) {
+                        builder.add("filler-" + i);
+                    }
+                }
+                String etag = "\"" + mInfected.hashCode() + (mSaturated ? "s" : "") + "\"";
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    respond(exchange, 304, null);
+                    return;
+                }
+                mDigestResponses.incrementAndGet();
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                builder.build().writeTo(body);
+                exchange.getResponseHeaders().set("ETag", etag);
+                respond(exchange, 200, body.toByteArray());
+            }
+        });
+        mServer.createContext("/infectedrow.php", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String uid = URLDecoder.decode(exchange.getRequestURI().getRawQuery()
+                        .replace("uid=", ""), "UTF-8").toLowerCase(Locale.US);
+                if (!mInfected.contains(uid)) {
+                    respond(exchange, 404, new byte[0]);
+                    return;
+                }
+                respond(exchange, 200, page(uid).getBytes("UTF-8"));
+            }
+        });
+        mServer.createContext("/displayinfectedtable.php", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mTableRequests.incrementAndGet();
+                String page = page(mInfected.toArray(new String[0]));
+                respond(exchange, 200, page.getBytes("UTF-8"));
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    private InfectionStatusChecker checker(long ttlMillis) throws IOException {
+        String base = "http://127.0.0.1:" + mServer.getAddress().getPort();
+        InfectedTableRepository table = new InfectedTableRepository(
+                new URL(base + "/displayinfectedtable.php"), 60000);
+        return new InfectionStatusChecker(new URL(base + "/infecteddigest.php"),
+                new URL(base + "/infectedrow.php"), table, ttlMillis);
+    }
+
+    @Test
+    public void healthyUidCostsOnlyTheDigest() throws IOException {
+        InfectionStatusChecker checker = checker(60000);
+
+        assertFalse(checker.isInfected(HEALTHY));
+        assertFalse(checker.isInfected(HEALTHY));
+        assertEquals(1, checker.getDigestFetchCount());
+        assertEquals(0, checker.getRowFetchCount());
+        assertEquals(0, mTableRequests.get());
+    }
+
+    @Test
+    public void possibleHitIsConfirmedWithTheRow() throws IOException {
+        InfectionStatusChecker checker = checker(60000);
+
+        assertTrue(checker.isInfected(INFECTED));
+        assertTrue(checker.isInfected(INFECTED.toUpperCase(Locale.US)));
+        assertEquals(2, checker.getRowFetchCount());
+        assertEquals(0, checker.getFalsePositiveCount());
+        assertEquals(0, mTableRequests.get());
+    }
+
+    @Test
+    public void falsePositiveIsCaughtByTheRowEndpoint() throws IOException {
+        mSaturated = true;
+        InfectionStatusChecker checker = checker(60000);
+
+        for (int i = 0; i < 20; i++) {
+            assertFalse(checker.isInfected("healthy-" + i));
+        }
+        assertEquals(20, checker.getRowFetchCount());
+        assertEquals(20, checker.getFalsePositiveCount());
+    }
+
+    @Test
+    public void expiredDigestIsRevalidated() throws IOException {
+        InfectionStatusChecker checker = checker(0);
+
+        assertFalse(checker.isInfected(HEALTHY));
+        assertFalse(checker.isInfected(HEALTHY));
+        assertEquals(2, checker.getDigestFetchCount());
+        assertEquals(1, mDigestResponses.get());
+
+        mInfected.add(HEALTHY);
+        assertTrue(checker.isInfected(HEALTHY));
+        assertEquals(2, mDigestResponses.get());
+    }
+
+    @Test
+    public void fallsBackToTheTableWithoutADigest() throws IOException {
+        mDigestAvailable = false;
+        InfectionStatusChecker checker = checker(60000);
+
+        assertTrue(checker.isInfected(INFECTED));
+        assertFalse(checker.isInfected(HEALTHY));
+        assertEquals(2, checker.getFallbackCount());
+        assertEquals(1, mTableRequests.get());
+    }
+
+    private static String page(String... uids) {
+        StringBuilder sb = new StringBuilder("<html><body>\n<table>");
+        for (String uid : uids) {
+            sb.append("<tr><td>").append(uid).append("</td><td>-82.44</td><td>34.92</td></tr>");
+        }
+        return sb.append("</table>\n</body></html>\n").toString();
+    }
+
+    private static void respond(HttpExchange exchange, int code, byte[] body)
+            throws IOException {
+        boolean empty = body == null || body.length == 0;
+        exchange.sendResponseHeaders(code, empty ? -1 : body.length);
+        if (!empty) {
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+        exchange.close();
+    }
+}
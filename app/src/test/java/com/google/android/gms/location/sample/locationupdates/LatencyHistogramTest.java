@@ -0,0 +1,58 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueOnceAndInOrder() {
+        long previousBound = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            long bound = LatencyHistogram.upperBoundOf(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(previousBound + 1));
+            assertEquals(bucket, LatencyHistogram.bucketOf(bound));
+            assertTrue(bound - previousBound <= Math.max(1, (previousBound + 1) / 8));
+            previousBound = bound;
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesAreWithinABucketOfTheTruth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(4);
+        long[] samples = new long[100000];
+        for (int i = 0; i < samples.length; i++) {
+            // Mostly quick round trips, with a long tail.
+            samples[i] = (long) (20000 * Math.exp(random.nextGaussian()));
+            histogram.record(samples[i]);
+        }
+        Arrays.sort(samples);
+
+        for (double percent : new double[] {50, 90, 99, 99.9}) {
+            long truth = samples[(int) Math.ceil(samples.length * percent / 100) - 1];
+            long reported = histogram.getPercentileMicros(percent);
+            assertTrue(percent + "%: " + reported + " vs " + truth,
+                    reported >= truth && reported <= truth * 1.125 + 1);
+        }
+        assertEquals(samples[samples.length - 1], histogram.getMaxMicros());
+        assertEquals(samples[samples.length - 1], histogram.getPercentileMicros(100));
+        assertEquals(samples.length, histogram.getCount());
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMicros(99));
+        assertEquals(0, histogram.getMeanMicros(), 0);
+        histogram.recordNanos(-5);
+        assertEquals(0, histogram.getPercentileMicros(50));
+        assertEquals(1, histogram.getCount());
+    }
+}
@@ -0,0 +1,149 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocationHistoryStoreTest {
+    private static final long DAY = LocationHistoryStore.DAY_MILLIS;
+    // Midnight UTC, 2016-05-03.
+    private static final long T0 = 16924 * DAY;
+
+    @Rule
+    public TemporaryFolder mTemp = new TemporaryFolder();
+
+    private static LocationFix fix(long time) {
+        return new LocationFix(40.0 + (time % 1000) * 1e-5, -91.5, 250, 8f, time);
+    }
+
+    @Test
+    public void rangeQueryIsHalfOpenAndSpansDays() throws IOException {
+        LocationHistoryStore store = new LocationHistoryStore(mTemp.newFolder());
+        for (long t = T0 + DAY - 5000; t < T0 + DAY + 5000; t += 1000) {
+            assertTrue(store.append(fix(t)));
+        }
+
+        List<LocationFix> fixes = store.getBetween(T0 + DAY - 2000, T0 + DAY + 2000);
+        assertEquals(4, fixes.size());
+        assertEquals(T0 + DAY - 2000, fixes.get(0).getTime());
+        assertEquals(T0 + DAY + 1000, fixes.get(3).getTime());
+        assertEquals(2, store.getDayCount());
+        assertEquals(0, store.getBetween(T0 + DAY + 5000, T0 + 2 * DAY).size());
+        store.close();
+    }
+
+    @Test
+    public void fixesRoundTripToStoredPrecision() throws IOException {
+        LocationHistoryStore store = new LocationHistoryStore(mTemp.newFolder());
+        store.append(40.12345678, -91.87654321, 251.5, 6.5f, T0 + 123);
+
+        LocationFix fix = store.getLatest(1).get(0);
+        assertEquals(40.1234568, fix.getLatitude(), 1e-9);
+        assertEquals(-91.8765432, fix.getLongitude(), 1e-9);
+        assertEquals(251.5, fix.getAltitude(), 0);
+        assertEquals(6.5f, fix.getAccuracy(), 0);
+        assertEquals(T0 + 123, fix.getTime());
+        store.close();
+    }
+
+    @Test
+    public void survivesReopenAndKeepsAppending() throws IOException {
+        File dir = mTemp.newFolder();
+        LocationHistoryStore store = new LocationHistoryStore(dir);
+        for (int i = 0; i < 10; i++) {
+            store.append(fix(T0 + i * 1000));
+        }
+        store.close();
+
+        store = new LocationHistoryStore(dir);
+        assertEquals(10, store.getFixCount());
+        assertFalse(store.append(fix(T0 + 5000)));
+        assertTrue(store.append(fix(T0 + 10000)));
+        List<LocationFix> latest = store.getLatest(3);
+        assertEquals(T0 + 8000, latest.get(0).getTime());
+        assertEquals(T0 + 10000, latest.get(2).getTime());
+        assertEquals(1, store.getDroppedCount());
+        store.close();
+    }
+
+    @Test
+    public void growsPastDayCapacityAndCompactsFinishedDays() throws IOException {
+        File dir = mTemp.newFolder();
+        LocationHistoryStore store = new LocationHistoryStore(dir, 30, 4);
+        for (int i = 0; i < 11; i++) {
+            store.append(fix(T0 + i));
+        }
+        store.append(fix(T0 + DAY));
+
+        assertEquals(11, store.getBetween(T0, T0 + DAY).size());
+        File finished = new File(dir, String.format(Locale.US, "%08d.day", T0 / DAY));
+        assertEquals(LocationHistoryStore.HEADER_BYTES + 11 * LocationHistoryStore.BYTES_PER_FIX,
+                finished.length());
+        store.close();
+
+        store = new LocationHistoryStore(dir, 30, 4);
+        assertEquals(12, store.getFixCount());
+        assertEquals(T0 + 10, store.getBetween(T0, T0 + DAY).get(10).getTime());
+        store.close();
+    }
+
+    @Test
+    public void dropsDaysOutsideRetention() throws IOException {
+        LocationHistoryStore store = new LocationHistoryStore(mTemp.newFolder(), 3);
+        for (int day = 0; day < 5; day++) {
+            store.append(fix(T0 + day * DAY));
+        }
+
+        assertEquals(3, store.getDayCount());
+        assertEquals(T0 + 2 * DAY, store.getLatest(10).get(0).getTime());
+        assertEquals(2, store.applyRetention(T0 + 6 * DAY));
+        assertEquals(1, store.getFixCount());
+        assertEquals(1, store.deleteBefore(T0 + 5 * DAY));
+        assertEquals(0, store.getDayCount());
+        store.close();
+    }
+
+    @Test
+    public void thirtyDaysAtOneHertz() throws IOException {
+        File dir = mTemp.newFolder();
+        LocationHistoryStore store = new LocationHistoryStore(dir);
+        int fixes = 30 * 24 * 60 * 60;
+        for (int i = 0; i < fixes; i++) {
+            store.append(40.0 + i * 1e-7, -91.5, 250, 8f, T0 + i * 1000L);
+        }
+        store.flush();
+        // The last day is exactly full, so its preallocated file holds no slack either.
+        double bytesPerFix = store.getSizeOnDisk() / (double) fixes;
+
+        LocationHistoryStore.Visitor skip = new LocationHistoryStore.Visitor() {
+            @Override
+            public boolean visit(double latitude, double longitude, double altitude,
+                                 float accuracy, long time) {
+                return true;
+            }
+        };
+        Random random = new Random(7);
+        int queries = 2000;
+        long visited = 0;
+        for (int q = 0; q < queries; q++) {
+            long from = T0 + (long) (random.nextDouble() * 29 * DAY);
+            visited += store.query(from, from + 60 * 60 * 1000, skip);
+        }
+
+        assertEquals(fixes, store.getFixCount());
+        assertEquals(30, store.getDayCount());
+        assertEquals(queries * 3600L, visited);
+        assertTrue(bytesPerFix < LocationHistoryStore.BYTES_PER_FIX + 0.01);
+        store.close();
+    }
+}
@@ -0,0 +1,163 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocationOutboxTest {
+    @Rule
+    public TemporaryFolder mTemp = new TemporaryFolder();
+
+    @Test
+    public void truncatedTailRecordIsDroppedOnRecovery() throws IOException {
+        File dir = mTemp.newFolder();
+        LocationOutbox outbox = new LocationOutbox(dir);
+        for (int i = 0; i < 10; i++) {
+            outbox.append(fix(i));
+        }
+        outbox.close();
+
+        // Simulate a crash in the middle of writing the last record.
+        File segment = dir.listFiles(new java.io.FilenameFilter() {
+            @Override
+            public boolean accept(File d, String name) {
+                return name.endsWith(".log");
+            }
+        })[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        raf.setLength(raf.length() - 5);
+        raf.close();
+
+        outbox = new LocationOutbox(dir);
+        assertEquals(9, outbox.getPendingCount());
+        outbox.append(fix(10));
+        List<LocationFix> replayed = outbox.read(100).getFixes();
+        assertEquals(10, replayed.size());
+        for (int i = 0; i < 9; i++) {
+            assertEquals(fix(i).getTime(), replayed.get(i).getTime());
+        }
+        assertEquals(fix(10).getTime(), replayed.get(9).getTime());
+        outbox.close();
+    }
+
+    @Test
+    public void corruptRecordEndsTheLog() throws IOException {
+        File dir = mTemp.newFolder();
+        LocationOutbox outbox = new LocationOutbox(dir);
+        for (int i = 0; i < 4; i++) {
+            outbox.append(fix(i));
+        }
+        outbox.close();
+
+        File segment = dir.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        long recordBytes = LocationOutbox.RECORD_HEADER_BYTES + LocationOutbox.FIX_PAYLOAD_BYTES;
+        raf.seek(2 * recordBytes + LocationOutbox.RECORD_HEADER_BYTES + 3);
+        raf.write(0x5a);
+        raf.close();
+
+        outbox = new LocationOutbox(dir);
+        assertEquals(2, outbox.getPendingCount());
+        outbox.close();
+    }
+
+    @Test
+    public void committedSegmentsAreCompactedAcrossRestarts() throws IOException {
+        File dir = mTemp.newFolder();
+        long recordBytes = LocationOutbox.RECORD_HEADER_BYTES + LocationOutbox.FIX_PAYLOAD_BYTES;
+        LocationOutbox outbox = new LocationOutbox(dir, 10 * recordBytes, 64, 5000);
+        for (int i = 0; i < 35; i++) {
+            outbox.append(fix(i));
+        }
+        outbox.commit(outbox.read(25));
+        outbox.close();
+
+        outbox = new LocationOutbox(dir, 10 * recordBytes, 64, 5000);
+        assertEquals(10, outbox.getPendingCount());
+        // Segments 0 and 1 are gone; segment 2 is only partly acknowledged.
+        assertEquals(15 * recordBytes, outbox.getSizeOnDisk());
+        LocationOutbox.Batch rest = outbox.read(100);
+        assertEquals(fix(25).getTime(), rest.getFixes().get(0).getTime());
+        outbox.commit(rest);
+        assertEquals(0, outbox.getPendingCount());
+        assertEquals(0, outbox.getSizeOnDisk());
+        outbox.close();
+    }
+
+    @Test
+    public void drainRetriesWithBackoffAndKeepsFailedBatch() throws Exception {
+        File dir = mTemp.newFolder();
+        LocationOutbox outbox = new LocationOutbox(dir);
+        for (int i = 0; i < 5; i++) {
+            outbox.append(fix(i));
+        }
+        FlakySender sender = new FlakySender(3);
+
+        OutboxDrainer giveUp = new OutboxDrainer(outbox, sender, 10, 2, 1, 4);
+        assertEquals(false, giveUp.drain());
+        assertEquals(5, outbox.getPendingCount());
+
+        OutboxDrainer retry = new OutboxDrainer(outbox, sender, 10, 3, 1, 4);
+        assertTrue(retry.drain());
+        assertEquals(0, outbox.getPendingCount());
+        assertEquals(4, sender.mAttempts);
+        assertEquals(5, sender.mDelivered.size());
+        outbox.close();
+    }
+
+    @Test
+    public void drainsLargeBacklogInOrder() throws Exception {
+        int backlog = 100000;
+        File dir = mTemp.newFolder();
+        LocationOutbox outbox = new LocationOutbox(dir);
+        for (int i = 0; i < backlog; i++) {
+            outbox.append(fix(i));
+        }
+        outbox.close();
+
+        outbox = new LocationOutbox(dir);
+        assertEquals(backlog, outbox.getPendingCount());
+        FlakySender sender = new FlakySender(0);
+        assertTrue(new OutboxDrainer(outbox, sender, 500, 1, 0, 0).drain());
+
+        assertEquals(backlog, sender.mDelivered.size());
+        for (int i = 0; i < backlog; i++) {
+            assertEquals(fix(i).getTime(), sender.mDelivered.get(i).getTime());
+        }
+        assertEquals(0, outbox.getSizeOnDisk());
+        outbox.close();
+    }
+
+    private static LocationFix fix(int i) {
+        return new LocationFix(34.9249 + i * 1e-6, -82.4401, 290.0, 5.0f, 1477800000000L + i);
+    }
+
+    private static class FlakySender implements LocationBatchSender {
+        private int mFailuresLeft;
+        int mAttempts;
+        final List<LocationFix> mDelivered = new ArrayList<LocationFix>();
+
+        FlakySender(int failures) {
+            mFailuresLeft = failures;
+        }
+
+        @Override
+        public void send(List<LocationFix> batch) throws IOException {
+            mAttempts++;
+            if (mFailuresLeft > 0) {
+                mFailuresLeft--;
+                throw new IOException("backend unavailable");
+            }
+            mDelivered.addAll(batch);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LocationPipelineTest {
+    private static final long T0 = 1462233600000L;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static LocationFix fix(long time, float accuracy) {
+        return new LocationFix(40.0, -91.5, 250, accuracy, time);
+    }
+
+    @Test
+    public void sameMomentFromTwoProvidersIsPublishedOnce() {
+        LocationPipeline pipeline = new LocationPipeline();
+        Recorder uploads = new Recorder();
+        Recorder history = new Recorder();
+        pipeline.subscribe(uploads, DIRECT, 16, FanOutChannel.Overflow.DROP_NEWEST, false);
+        pipeline.subscribe(history, DIRECT, 16, FanOutChannel.Overflow.DROP_NEWEST, false);
+
+        assertTrue(pipeline.onProviderFix("gps", fix(T0, 5f)));
+        assertFalse(pipeline.onProviderFix("network", fix(T0 + 300, 40f)));
+        assertFalse(pipeline.onProviderFix("gps", fix(T0, 5f)));
+        assertTrue(pipeline.onProviderFix("network", fix(T0 + 30000, 40f)));
+
+        assertEquals(2, uploads.mFixes.size());
+        assertEquals(uploads.mFixes, history.mFixes);
+        assertEquals(4, pipeline.getReceivedCount());
+        assertEquals(2, pipeline.getPublishedCount());
+    }
+
+    @Test
+    public void moreAccurateFixWithinWindowReplacesLatest() {
+        LocationPipeline pipeline = new LocationPipeline();
+        Recorder recorder = new Recorder();
+        pipeline.subscribe(recorder, DIRECT, 16, FanOutChannel.Overflow.DROP_NEWEST, false);
+
+        pipeline.onProviderFix("network", fix(T0, 40f));
+        LocationFix gps = fix(T0 + 500, 6f);
+        assertTrue(pipeline.onProviderFix("gps", gps));
+        assertFalse(pipeline.onProviderFix("network",
+                fix(T0 - FixFusion.MERGE_WINDOW_MILLIS - 1, 1f)));
+
+        assertSame(gps, pipeline.getLatest());
+        assertEquals(2, recorder.mFixes.size());
+    }
+
+    @Test
+    public void lateSubscriberCanReplayTheLatestFix() {
+        LocationPipeline pipeline = new LocationPipeline();
+        LocationFix first = fix(T0, 5f);
+        pipeline.onProviderFix("gps", first);
+        Recorder replayed = new Recorder();
+        Recorder fresh = new Recorder();
+        pipeline.subscribe(replayed, DIRECT, 1, FanOutChannel.Overflow.DROP_OLDEST, true);
+        pipeline.subscribe(fresh, DIRECT, 1, FanOutChannel.Overflow.DROP_OLDEST, false);
+        pipeline.onProviderFix("gps", fix(T0 + 5000, 5f));
+
+        assertEquals(2, replayed.mFixes.size());
+        assertSame(first, replayed.mFixes.get(0));
+        assertEquals(1, fresh.mFixes.size());
+        assertEquals(2, pipeline.getSubscriberCount());
+    }
+
+    private static final class Recorder implements FanOutChannel.Subscriber<LocationFix> {
+        final List<LocationFix> mFixes = new ArrayList<LocationFix>();
+
+        @Override
+        public void onItem(LocationFix fix) {
+            mFixes.add(fix);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class LocationRingBufferTest {
+
+    private static void appendAt(LocationRingBuffer buffer, long time) {
+        buffer.append(time, -time, time * 2, time / 10f, time);
+    }
+
+    @Test
+    public void keepsFixesInOrderBeforeWrapping() {
+        LocationRingBuffer buffer = new LocationRingBuffer(4);
+        appendAt(buffer, 1);
+        appendAt(buffer, 2);
+
+        assertEquals(2, buffer.size());
+        assertEquals(1, buffer.getTime(0));
+        assertEquals(2, buffer.getTime(1));
+        assertEquals(-2.0, buffer.getLongitude(1), 0);
+        assertEquals(4.0, buffer.getAltitude(1), 0);
+        assertEquals(0.2f, buffer.getAccuracy(1), 0);
+    }
+
+    @Test
+    public void overwritesOldestWhenFull() {
+        LocationRingBuffer buffer = new LocationRingBuffer(3);
+        for (long t = 1; t <= 7; t++) {
+            appendAt(buffer, t);
+        }
+
+        assertEquals(3, buffer.size());
+        assertEquals(7, buffer.getAppendedCount());
+        assertEquals(5, buffer.getTime(0));
+        assertEquals(6, buffer.getTime(1));
+        assertEquals(7, buffer.getTime(2));
+        assertEquals(new LocationFix(7, -7, 14, 0.7f, 7), buffer.getFix(2));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsIndexPastSize() {
+        LocationRingBuffer buffer = new LocationRingBuffer(3);
+        appendAt(buffer, 1);
+        buffer.getTime(1);
+    }
+
+    @Test
+    public void snapshotCopiesBothRunsAndReusesStorage() {
+        LocationRingBuffer buffer = new LocationRingBuffer(4);
+        for (long t = 1; t <= 6; t++) {
+            appendAt(buffer, t);
+        }
+
+        LocationRingBuffer.Snapshot snapshot = buffer.snapshot(null);
+        assertEquals(4, snapshot.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 3, snapshot.getTime(i));
+            assertEquals(i + 3, snapshot.getLatitude(i), 0);
+        }
+
+        appendAt(buffer, 7);
+        buffer.clear();
+        appendAt(buffer, 8);
+        assertSame(snapshot, buffer.snapshot(snapshot));
+        assertEquals(1, snapshot.size());
+        assertEquals(8, snapshot.getFix(0).getTime());
+    }
+
+    @Test
+    public void snapshotsFromAnotherThreadAreNeverTorn() throws Exception {
+        final LocationRingBuffer buffer = new LocationRingBuffer(16);
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                LocationRingBuffer.Snapshot snapshot = null;
+                for (int round = 0; round < 20000 && failure.get() == null; round++) {
+                    snapshot = buffer.snapshot(snapshot);
+                    for (int i = 0; i < snapshot.size(); i++) {
+                        long time = snapshot.getTime(i);
+                        if (snapshot.getLatitude(i) != time || snapshot.getLongitude(i) != -time
+                                || (i > 0 && snapshot.getTime(i - 1) != time - 1)) {
+                            failure.set("torn fix at " + i + " in round " + round);
+                            return;
+                        }
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (long t = 1; reader.isAlive(); t++) {
+            appendAt(buffer, t);
+        }
+        reader.join();
+
+        assertNull(failure.get());
+    }
+}
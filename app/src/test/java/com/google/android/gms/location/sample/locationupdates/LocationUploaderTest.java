@@ -0,0 +1,263 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the uploader against a local stand-in for webservice_batch.php and measures how many
+ * requests and bytes each fix costs.
+ */
+public class LocationUploaderTest {
+    private static final String UID = "0f8fad5b-d9cb-469f-a165-70867728950e";
+
+    @Rule
+    public TemporaryFolder mTemp = new TemporaryFolder();
+
+    private HttpServer mServer;
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final AtomicInteger mRows = new AtomicInteger();
+    private final AtomicLong mBodyBytes = new AtomicLong();
+    private volatile CountDownLatch mRowsLatch = new CountDownLatch(0);
+    private final AtomicInteger mRejectNext = new AtomicInteger();
+
+    /**
+     * What each request carried, checked on the test thread by {@link #assertRequestsValid()}.
+     */
+    private final List<String> mContentTypes =
+            Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> mUids = Collections.synchronizedList(new ArrayList<String>());
+    private final List<Exception> mDecodeErrors =
+            Collections.synchronizedList(new ArrayList<Exception>());
+
+    @Before
+    public void startServer() throws IOException {
+        startServer(0);
+    }
+
+    private void startServer(int port) throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        mServer.createContext("/webservice_batch.php", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = readAll(exchange.getRequestBody());
+                mRequests.incrementAndGet();
+                mBodyBytes.addAndGet(body.length);
+                mContentTypes.add(exchange.getRequestHeaders().getFirst("Content-Type"));
+                if (mRejectNext.getAndDecrement() > 0) {
+                    exchange.sendResponseHeaders(400, -1);
+                    exchange.close();
+                    return;
+                }
+
+                BinaryFixCodec.Batch batch;
+                try {
+                    batch = BinaryFixCodec.decode(body, 0, body.length);
+                } catch (RuntimeException e) {
+                    mDecodeErrors.add(e);
+                    exchange.sendResponseHeaders(400, -1);
+                    exchange.close();
+                    return;
+                }
+                mUids.add(batch.getUid());
+                for (int i = 0; i < batch.getFixes().size(); i++) {
+                    mRows.incrementAndGet();
+                    mRowsLatch.countDown();
+                }
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    private void assertRequestsValid() {
+        assertEquals(Collections.<Exception>emptyList(), mDecodeErrors);
+        for (String contentType : mContentTypes) {
+            assertEquals(BinaryFixCodec.CONTENT_TYPE, contentType);
+        }
+        for (String uid : mUids) {
+            assertEquals(UID, uid);
+        }
+    }
+
+    @Test
+    public void sizeBoundedBatchesCarryManyFixesPerRequest() throws Exception {
+        int fixes = 1000;
+        mRowsLatch = new CountDownLatch(fixes);
+        HttpLocationBatchSender sender = new HttpLocationBatchSender(batchUrl(), UID);
+        LocationUploader uploader =
+                new LocationUploader(mTemp.newFolder(), sender, new FlushPolicy(100, 60000));
+
+        long uncompressed = 0;
+        for (int i = 0; i < fixes; i++) {
+            LocationFix fix = fix(i);
+            uploader.submit(fix);
+            uncompressed += legacyFormBody(fix).length();
+        }
+        assertTrue(mRowsLatch.await(10, TimeUnit.SECONDS));
+        uploader.shutdown();
+        assertTrue(uploader.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertRequestsValid();
+        assertEquals(fixes, mRows.get());
+        assertEquals(10, mRequests.get());
+        assertEquals(mBodyBytes.get(), sender.getBytesSent());
+        assertTrue(mBodyBytes.get() < uncompressed / 10);
+    }
+
+    @Test
+    public void timeBoundedFlushSendsPartialBatch() throws Exception {
+        mRowsLatch = new CountDownLatch(3);
+        LocationUploader uploader = new LocationUploader(mTemp.newFolder(),
+                new HttpLocationBatchSender(batchUrl(), UID), new FlushPolicy(1000, 50));
+
+        uploader.submit(fix(0));
+        uploader.submit(fix(1));
+        uploader.submit(fix(2));
+
+        assertTrue(mRowsLatch.await(5, TimeUnit.SECONDS));
+        uploader.shutdown();
+        assertTrue(uploader.awaitTermination(5, TimeUnit.SECONDS));
+        assertRequestsValid();
+        assertEquals(1, mRequests.get());
+        assertEquals(3, mRows.get());
+    }
+
+    @Test
+    public void undeliveredFixesAreReplayedAfterReconnect() throws Exception {
+        File outbox = mTemp.newFolder();
+        URL url = batchUrl();
+        int port = mServer.getAddress().getPort();
+        mServer.stop(0);
+
+        LocationUploader offline = new LocationUploader(outbox,
+                new HttpLocationBatchSender(url, UID), new FlushPolicy(2, 60000), 2, 10);
+        offline.submit(fix(0));
+        offline.submit(fix(1));
+        offline.submit(fix(2));
+        offline.shutdown();
+        assertTrue(offline.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, offline.getDroppedFixCount());
+        assertEquals(3, offline.getPendingFixCount());
+
+        // A new process finds the outbox and replays it once the backend is reachable.
+        mRowsLatch = new CountDownLatch(3);
+        startServer(port);
+        LocationUploader online = new LocationUploader(outbox,
+                new HttpLocationBatchSender(url, UID), new FlushPolicy(2, 60000), 2, 10);
+        assertTrue(mRowsLatch.await(5, TimeUnit.SECONDS));
+        online.shutdown();
+        assertTrue(online.awaitTermination(5, TimeUnit.SECONDS));
+        assertRequestsValid();
+        assertEquals(0, online.getPendingFixCount());
+        assertEquals(2, mRequests.get());
+    }
+
+    @Test
+    public void rejectedBatchIsDroppedAndTheFixesBehindItArrive() throws Exception {
+        mRejectNext.set(1);
+        mRowsLatch = new CountDownLatch(2);
+        LocationUploader uploader = new LocationUploader(mTemp.newFolder(),
+                new HttpLocationBatchSender(batchUrl(), UID), new FlushPolicy(2, 60000), 4, 10);
+
+        for (int i = 0; i < 4; i++) {
+            uploader.submit(fix(i));
+        }
+        assertTrue(mRowsLatch.await(5, TimeUnit.SECONDS));
+        uploader.shutdown();
+        assertTrue(uploader.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertRequestsValid();
+        // The rejected batch is not retried.
+        assertEquals(2, mRequests.get());
+        assertEquals(2, mRows.get());
+        assertEquals(2, uploader.getRejectedFixCount());
+        assertEquals(0, uploader.getPendingFixCount());
+    }
+
+    @Test
+    public void shutdownReturnsAtOnceAndTheNextUploaderTakesOver() throws Exception {
+        File outbox = mTemp.newFolder();
+        mRowsLatch = new CountDownLatch(4);
+        LocationUploader first = new LocationUploader(outbox,
+                new HttpLocationBatchSender(batchUrl(), UID), new FlushPolicy(1000, 60000));
+        first.submit(fix(0));
+        first.submit(fix(1));
+        first.shutdown();
+
+        // Opens the same directory while the first may still be sending.
+        LocationUploader second = new LocationUploader(outbox,
+                new HttpLocationBatchSender(batchUrl(), UID), new FlushPolicy(2, 60000));
+        second.submit(fix(2));
+        second.submit(fix(3));
+
+        assertTrue(mRowsLatch.await(5, TimeUnit.SECONDS));
+        second.shutdown();
+        assertTrue(first.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(second.awaitTermination(5, TimeUnit.SECONDS));
+        assertRequestsValid();
+        assertEquals(4, mRows.get());
+        assertEquals(0, second.getPendingFixCount());
+    }
+
+    private URL batchUrl() throws IOException {
+        return new URL("http://127.0.0.1:" + mServer.getAddress().getPort()
+                + "/webservice_batch.php");
+    }
+
+    private static LocationFix fix(int i) {
+        return new LocationFix(34.9249 + i * 1e-5, -82.4401 - i * 1e-5, 290.5 + i % 7, 8.0f + i % 5,
+                1477800000000L + i * 1000L);
+    }
+
+    /**
+     * The body {@code MyService.notifyDatabase} used to post for a single fix.
+     */
+    private static String legacyFormBody(LocationFix fix) {
+        return "userid=" + UID
+                + "&latitude=" + Double.toString(fix.getLatitude())
+                + "&longitude=" + Double.toString(fix.getLongitude())
+                + "&time=" + Long.toString(fix.getTime() / 1000L)
+                + "&accuracy=" + Double.toString(fix.getAccuracy())
+                + "&altitude=" + Double.toString(fix.getAltitude());
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
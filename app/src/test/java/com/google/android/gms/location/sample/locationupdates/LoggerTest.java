@@ -0,0 +1,129 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LoggerTest {
+    private static final Logger LOG = Logger.get("LoggerTest");
+
+    private final List<String> mLines = new ArrayList<String>();
+    private final List<Throwable> mErrors = new ArrayList<Throwable>();
+    private int mLevel;
+    private Logger.Sink mSink;
+
+    @Before
+    public void setUp() {
+        mLevel = Logger.getLevel();
+        mSink = Logger.getSink();
+        Logger.setSink(new Logger.Sink() {
+            @Override
+            public void write(int level, String tag, String message, Throwable error) {
+                mLines.add(Logger.levelName(level) + "/" + tag + ": " + message);
+                mErrors.add(error);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        Logger.setLevel(mLevel);
+        Logger.setSink(mSink);
+    }
+
+    @Test
+    public void linesBelowTheLevelAreDropped() {
+        Logger.setLevel(Logger.INFO);
+        LOG.d("row %s", "a1");
+        LOG.i("%d rows", 3);
+        LOG.w("slow");
+        LOG.e("failed");
+
+        assertFalse(LOG.isLoggable(Logger.DEBUG));
+        assertTrue(LOG.isLoggable(Logger.WARN));
+        assertEquals(3, mLines.size());
+        assertEquals("I/LoggerTest: 3 rows", mLines.get(0));
+        assertEquals("W/LoggerTest: slow", mLines.get(1));
+        assertEquals("E/LoggerTest: failed", mLines.get(2));
+    }
+
+    @Test
+    public void disabledLinesAreNeverFormatted() {
+        Logger.setLevel(Logger.INFO);
+        final int[] formatted = new int[1];
+        Object argument = new Object() {
+            @Override
+            public String toString() {
+                formatted[0]++;
+                return "row";
+            }
+        };
+        LOG.d("%s", argument);
+        LOG.d("%s %s %s", argument, argument, argument);
+        assertEquals(0, formatted[0]);
+
+        Logger.setLevel(Logger.DEBUG);
+        LOG.d("%s", argument);
+        assertEquals(1, formatted[0]);
+        assertEquals("D/LoggerTest: row", mLines.get(0));
+    }
+
+    @Test
+    public void messagesWithoutArgumentsAreTakenLiterally() {
+        Logger.setLevel(Logger.DEBUG);
+        LOG.d("100% of rows");
+        Exception error = new Exception("boom");
+        LOG.w("Cannot record 50% of fixes", error);
+
+        assertEquals("D/LoggerTest: 100% of rows", mLines.get(0));
+        assertEquals("W/LoggerTest: Cannot record 50% of fixes", mLines.get(1));
+        assertSame(error, mErrors.get(1));
+    }
+
+    @Test
+    public void formatsLikeStringFormat() {
+        String[] formats = {"%s rows", "%d of %d", "%s: 100%% (%d)", "%.1f m", "%5d|%-4s|",
+                "%x", "no arguments", "%s %s %s"};
+        Object[] args = {"a1", 42, 3000000000L};
+        for (String format : formats) {
+            String expected;
+            try {
+                expected = String.format(Locale.US, format, args[0], args[1], args[2]);
+            } catch (IllegalFormatException e) {
+                expected = null;
+            }
+            try {
+                assertEquals(format, expected, Logger.format(format, 3, args[0], args[1], args[2]));
+            } catch (IllegalFormatException e) {
+                assertNull(format, expected);
+            }
+        }
+        assertEquals("1.5 m", Logger.format("%.1f m", 1, 1.5, null, null));
+        assertEquals("-7 rows", Logger.format("%d rows", 1, -7, null, null));
+        assertEquals("null", Logger.format("%s", 1, null, null, null));
+    }
+
+    @Test
+    public void streamSinkPrintsTheStackTrace() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new Logger.StreamSink(new PrintStream(bytes, true))
+                .write(Logger.ERROR, "Tag", "failed", new IllegalStateException("boom"));
+        String text = bytes.toString();
+
+        assertTrue(text.startsWith("E/Tag: failed"));
+        assertTrue(text.contains("java.lang.IllegalStateException: boom"));
+    }
+}
@@ -0,0 +1,40 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MainThreadMonitorTest {
+
+    @Test
+    public void countsOnlyMessagesLongerThanAFrameAsBlocking() {
+        MainThreadMonitor monitor = new MainThreadMonitor();
+        long ms = 1000000L;
+        monitor.dispatchStarted(0);
+        monitor.dispatchFinished(2 * ms);
+        monitor.dispatchStarted(10 * ms);
+        monitor.dispatchFinished(310 * ms);
+        monitor.dispatchStarted(400 * ms);
+        monitor.dispatchFinished(420 * ms);
+
+        assertEquals(3, monitor.getMessageCount());
+        assertEquals(2, monitor.getSlowMessageCount());
+        assertEquals(320, monitor.getBlockedMillis());
+        assertEquals(300, monitor.getLongestMillis());
+    }
+
+    @Test
+    public void readsTheLooperLogLines() throws InterruptedException {
+        MainThreadMonitor monitor = new MainThreadMonitor();
+        monitor.println(">>>>> Dispatching to Handler (android.view.Choreographer) null: 0");
+        Thread.sleep(20);
+        monitor.println("<<<<< Finished to Handler (android.view.Choreographer) null");
+        monitor.println("<<<<< Finished to Handler (android.view.Choreographer) null");
+
+        assertEquals(1, monitor.getMessageCount());
+        assertEquals(1, monitor.getSlowMessageCount());
+
+        monitor.reset();
+        assertEquals(0, monitor.getMessageCount());
+    }
+}
@@ -0,0 +1,97 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MarkerClustererTest {
+
+    private static SpatialGridIndex furmanBumps(int n) {
+        Random random = new Random(9);
+        double[] lat = new double[n];
+        double[] lng = new double[n];
+        for (int i = 0; i < n; i++) {
+            lat[i] = 34.92 + random.nextGaussian() * 0.01;
+            lng[i] = -82.44 + random.nextGaussian() * 0.01;
+        }
+        return SpatialGridIndex.build(lat, lng, n);
+    }
+
+    @Test
+    public void clustersCoverEveryBumpInView() {
+        SpatialGridIndex index = furmanBumps(10000);
+        MarkerClusterer clusterer = new MarkerClusterer();
+        List<MarkerCluster> clusters = clusterer.cluster(index, 34.9, -82.46, 34.94, -82.42, 14);
+
+        int total = 0;
+        for (MarkerCluster cluster : clusters) {
+            total += cluster.getCount();
+            assertTrue(cluster.getLatitude() >= 34.9 && cluster.getLatitude() <= 34.94);
+        }
+        assertEquals(index.queryBox(34.9, -82.46, 34.94, -82.42,
+                new SpatialGridIndex.Visitor() {
+                    @Override
+                    public boolean visit(int row, double latitude, double longitude) {
+                        return true;
+                    }
+                }), total);
+        // A 0.04 degree square is a few hundred pixels at zoom 14, so a few dozen cells at most.
+        assertTrue(clusters.size() < 100);
+    }
+
+    @Test
+    public void zoomingInSplitsClusters() {
+        SpatialGridIndex index = furmanBumps(2000);
+        MarkerClusterer clusterer = new MarkerClusterer();
+        int wide = clusterer.cluster(index, 34, -83, 36, -82, 8).size();
+        int close = clusterer.cluster(index, 34, -83, 36, -82, 16).size();
+        assertTrue(wide < 5);
+        assertTrue(close > 100);
+    }
+
+    @Test
+    public void keysAreStableWhileThePanOverlaps() {
+        SpatialGridIndex index = furmanBumps(5000);
+        MarkerClusterer clusterer = new MarkerClusterer();
+        List<MarkerCluster> before = clusterer.cluster(index, 34.9, -82.46, 34.94, -82.42, 15);
+        List<MarkerCluster> after = clusterer.cluster(index, 34.9, -82.45, 34.94, -82.41, 15);
+        int shared = 0;
+        for (MarkerCluster a : before) {
+            for (MarkerCluster b : after) {
+                if (a.getKey() == b.getKey()) {
+                    shared++;
+                }
+            }
+        }
+        assertTrue(shared > before.size() / 2);
+    }
+
+    @Test
+    public void denseAndHashedTalliesAgree() {
+        SpatialGridIndex index = furmanBumps(20000);
+        for (int zoom = 10; zoom <= 18; zoom += 2) {
+            List<MarkerCluster> dense = new MarkerClusterer().cluster(index, 34.9, -82.46,
+                    34.94, -82.42, zoom);
+            List<MarkerCluster> hashed = new MarkerClusterer(
+                    MarkerClusterer.DEFAULT_CELL_PIXELS, 0).cluster(index, 34.9, -82.46, 34.94,
+                    -82.42, zoom);
+            assertEquals(new HashSet<MarkerCluster>(hashed), new HashSet<MarkerCluster>(dense));
+            assertEquals(hashed.size(), dense.size());
+        }
+    }
+
+    @Test
+    public void loneBumpIsASingleMarkerWithItsRow() {
+        SpatialGridIndex index = SpatialGridIndex.build(new double[] {10, 50},
+                new double[] {10, 50}, 2);
+        List<MarkerCluster> clusters = new MarkerClusterer().cluster(index, 0, 0, 20, 20, 10);
+        assertEquals(1, clusters.size());
+        assertEquals(1, clusters.get(0).getCount());
+        assertEquals(0, clusters.get(0).getRow());
+    }
+}
@@ -0,0 +1,91 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class MarkerLayerTest {
+
+    /** Records map calls; a marker is a one-element array holding its current item. */
+    private static final class RecordingRenderer
+            implements MarkerLayer.Renderer<MarkerCluster, MarkerCluster[]> {
+        final List<String> mCalls = new ArrayList<String>();
+        int mOnMap;
+
+        @Override
+        public long keyOf(MarkerCluster item) {
+            return item.getKey();
+        }
+
+        @Override
+        public MarkerCluster[] add(MarkerCluster item) {
+            mCalls.add("add " + item.getKey());
+            mOnMap++;
+            return new MarkerCluster[] {item};
+        }
+
+        @Override
+        public void update(MarkerCluster[] marker, MarkerCluster item) {
+            mCalls.add("update " + item.getKey());
+            marker[0] = item;
+        }
+
+        @Override
+        public void remove(MarkerCluster[] marker) {
+            mCalls.add("remove " + marker[0].getKey());
+            mOnMap--;
+        }
+    }
+
+    private static MarkerCluster cluster(long key, int count) {
+        return new MarkerCluster(key, count, key, key, -1);
+    }
+
+    @Test
+    public void onlyChangesReachTheMap() {
+        RecordingRenderer renderer = new RecordingRenderer();
+        MarkerLayer<MarkerCluster, MarkerCluster[]> layer =
+                new MarkerLayer<MarkerCluster, MarkerCluster[]>(renderer);
+
+        layer.render(Arrays.asList(cluster(1, 2), cluster(2, 3)));
+        assertEquals(Arrays.asList("add 1", "add 2"), renderer.mCalls);
+
+        renderer.mCalls.clear();
+        layer.render(Arrays.asList(cluster(1, 2), cluster(2, 3)));
+        assertEquals(0, renderer.mCalls.size());
+
+        layer.render(Arrays.asList(cluster(2, 4), cluster(3, 1)));
+        assertEquals(Arrays.asList("update 2", "add 3", "remove 1"), renderer.mCalls);
+        assertEquals(2, layer.size());
+        assertEquals(2, renderer.mOnMap);
+        assertEquals(4, layer.getMarker(2)[0].getCount());
+        assertEquals(3, layer.getAddCount());
+        assertEquals(1, layer.getUpdateCount());
+        assertEquals(1, layer.getRemoveCount());
+
+        layer.clear();
+        assertEquals(0, renderer.mOnMap);
+        assertEquals(0, layer.size());
+    }
+
+    @Test
+    public void repeatedRendersKeepMarkerCountBounded() {
+        RecordingRenderer renderer = new RecordingRenderer();
+        MarkerLayer<MarkerCluster, MarkerCluster[]> layer =
+                new MarkerLayer<MarkerCluster, MarkerCluster[]>(renderer);
+        List<MarkerCluster> window = new ArrayList<MarkerCluster>();
+        for (int fix = 0; fix < 1000; fix++) {
+            window.add(cluster(fix, 1));
+            if (window.size() > 5) {
+                window.remove(0);
+            }
+            layer.render(window);
+        }
+        assertEquals(5, renderer.mOnMap);
+        assertEquals(1000, layer.getAddCount());
+    }
+}
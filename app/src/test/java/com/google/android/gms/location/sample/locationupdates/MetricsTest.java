@@ -0,0 +1,164 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MetricsTest {
+    @Rule
+    public TemporaryFolder mTemp = new TemporaryFolder();
+
+    @Test
+    public void instrumentsAreCreatedOncePerName() {
+        Metrics metrics = new Metrics();
+        Metrics.Counter counter = metrics.counter("fix.received.gps");
+        counter.increment();
+        metrics.counter("fix.received.gps").add(2);
+
+        assertSame(counter, metrics.counter("fix.received.gps"));
+        assertSame(metrics.histogram("upload.latency"), metrics.histogram("upload.latency"));
+        assertEquals(3, metrics.snapshot().get("fix.received.gps", -1));
+        try {
+            metrics.histogram("fix.received.gps");
+            fail("A counter was handed out as a histogram");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("fix.received.gps"));
+        }
+    }
+
+    @Test
+    public void gaugesAreReadWhenTheSnapshotIsTaken() {
+        Metrics metrics = new Metrics();
+        final AtomicLong depth = new AtomicLong(4);
+        metrics.register("queue.upload.depth", new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return depth.get();
+            }
+        });
+        Metrics.Snapshot before = metrics.snapshot();
+        depth.set(9);
+
+        assertEquals(4, before.get("queue.upload.depth", -1));
+        assertEquals(9, metrics.snapshot().get("queue.upload.depth", -1));
+
+        metrics.unregister("queue.upload.depth");
+        assertEquals(-1, metrics.snapshot().get("queue.upload.depth", -1));
+    }
+
+    @Test
+    public void histogramsAreReportedAsPercentiles() {
+        Metrics metrics = new Metrics();
+        LatencyHistogram latency = new LatencyHistogram();
+        for (int micros = 1; micros <= 100; micros++) {
+            latency.record(micros * 1000);
+        }
+        metrics.register("upload.latency", latency);
+        Metrics.Snapshot snapshot = metrics.snapshot();
+
+        assertEquals(100, snapshot.get("upload.latency.count", -1));
+        assertEquals(50500, snapshot.get("upload.latency.mean", -1));
+        assertEquals(100000, snapshot.get("upload.latency.max", -1));
+        assertEquals(latency.getPercentileMicros(50), snapshot.get("upload.latency.p50", -1));
+        assertEquals(latency.getPercentileMicros(99), snapshot.get("upload.latency.p99", -1));
+        assertTrue(snapshot.toString().contains("upload.latency.count 100\n"));
+    }
+
+    @Test
+    public void concurrentIncrementsAreNotLost() throws InterruptedException {
+        final Metrics metrics = new Metrics();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100000; i++) {
+                        metrics.counter("fix.received.network").increment();
+                        metrics.histogram("table.parse").record(i & 1023);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Metrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(400000, snapshot.get("fix.received.network", -1));
+        assertEquals(400000, snapshot.get("table.parse.count", -1));
+        assertEquals(1023, snapshot.get("table.parse.max", -1));
+    }
+
+    @Test
+    public void dumperReplacesTheFileWithEachSnapshot() throws Exception {
+        Metrics metrics = new Metrics();
+        Metrics.Counter fixes = metrics.counter("fix.received.gps");
+        File file = new File(mTemp.getRoot(), "metrics.txt");
+        MetricsDumper dumper = new MetricsDumper(metrics, file);
+
+        fixes.increment();
+        dumper.dump();
+        assertTrue(read(file).contains("fix.received.gps 1\n"));
+
+        dumper.start(60000);
+        fixes.add(4);
+        dumper.stop();
+        assertTrue(dumper.awaitTermination(5, TimeUnit.SECONDS));
+        String text = read(file);
+        assertTrue(text.startsWith("# time "));
+        assertTrue(text.contains("fix.received.gps 5\n"));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void lastSnapshotHasGaugesUnregisteredRightAfterStop() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.register("queue.history.depth", new Metrics.Gauge() {
+            @Override
+            public long get() {
+                return 3;
+            }
+        });
+        File file = new File(mTemp.getRoot(), "metrics.txt");
+        MetricsDumper dumper = new MetricsDumper(metrics, file);
+
+        dumper.start(60000);
+        dumper.stop();
+        metrics.unregister("queue.history.depth");
+        assertTrue(dumper.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(read(file).contains("queue.history.depth 3\n"));
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[(int) file.length()];
+            int length = 0;
+            int n;
+            while (length < buffer.length
+                    && (n = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += n;
+            }
+            return new String(buffer, 0, length, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
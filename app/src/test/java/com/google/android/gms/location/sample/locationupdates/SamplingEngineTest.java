@@ -0,0 +1,79 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SamplingEngineTest {
+    private static final double LAT = 34.92;
+    private static final double LNG = -82.44;
+    private static final double METERS_PER_DEGREE = 111195;
+    private static final long T0 = 1462233600000L;
+
+    private static LocationFix fixAt(double northMeters, long seconds) {
+        return new LocationFix(LAT + northMeters / METERS_PER_DEGREE, LNG, 0, 5f,
+                T0 + seconds * 1000);
+    }
+
+    @Test
+    public void startsOnFootAndSettlesWhenStill() {
+        SamplingEngine engine = new SamplingEngine(new AdaptiveSamplingPolicy());
+        assertEquals(AdaptiveSamplingPolicy.ON_FOOT, engine.getRequest());
+
+        assertFalse(engine.onFix(fixAt(0, 0)));
+        assertFalse(engine.onFix(fixAt(10, 60)));
+        assertEquals(60000, engine.getMotion().getStationaryMillis());
+        assertTrue(engine.onFix(fixAt(-10, 200)));
+        assertEquals(AdaptiveSamplingPolicy.SETTLED, engine.getRequest());
+
+        // Walking off resets the anchor.
+        assertTrue(engine.onFix(fixAt(100, 260)));
+        assertEquals(0, engine.getMotion().getStationaryMillis());
+        assertEquals(AdaptiveSamplingPolicy.ON_FOOT, engine.getRequest());
+    }
+
+    @Test
+    public void vehicleSpeedSamplesLess() {
+        SamplingEngine engine = new SamplingEngine(new AdaptiveSamplingPolicy());
+        engine.onFix(fixAt(0, 0));
+        assertTrue(engine.onFix(fixAt(300, 20)));
+        assertEquals(15f, engine.getMotion().getSpeedMetersPerSecond(), 0.1f);
+        assertEquals(AdaptiveSamplingPolicy.VEHICLE, engine.getRequest());
+
+        // Smoothing keeps one slow sample from flipping the request back.
+        assertFalse(engine.onFix(fixAt(310, 30)));
+        assertEquals(AdaptiveSamplingPolicy.VEHICLE, engine.getRequest());
+    }
+
+    @Test
+    public void proximityToInfectedTakesPrecedence() {
+        SamplingEngine engine = new SamplingEngine(new AdaptiveSamplingPolicy());
+        engine.setInfectedIndex(SpatialGridIndex.build(
+                new double[] {LAT + 1000 / METERS_PER_DEGREE}, new double[] {LNG}, 1));
+        engine.onFix(fixAt(0, 0));
+        assertEquals(Double.POSITIVE_INFINITY, engine.getMotion().getNearestInfectedMeters(), 0);
+
+        assertTrue(engine.onFix(fixAt(850, 600)));
+        assertEquals(150, engine.getMotion().getNearestInfectedMeters(), 1);
+        assertEquals(AdaptiveSamplingPolicy.NEAR_INFECTED, engine.getRequest());
+    }
+
+    @Test
+    public void ignoresStaleFixes() {
+        SamplingEngine engine = new SamplingEngine(new AdaptiveSamplingPolicy());
+        engine.onFix(fixAt(0, 10));
+        assertFalse(engine.onFix(fixAt(5000, 10)));
+        assertFalse(engine.onFix(fixAt(5000, 5)));
+        assertTrue(Float.isNaN(engine.getMotion().getSpeedMetersPerSecond()));
+    }
+
+    @Test
+    public void fixedPolicyNeverChanges() {
+        SamplingEngine engine = new SamplingEngine(FixedSamplingPolicy.LEGACY_SERVICE);
+        engine.onFix(fixAt(0, 0));
+        assertFalse(engine.onFix(fixAt(1000, 10)));
+        assertEquals(1000, engine.getRequest().getIntervalMillis());
+    }
+}
@@ -0,0 +1,111 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SamplingTraceReplayTest {
+    private static final double METERS_PER_DEGREE = 111195;
+    private static final long T0 = 1462233600000L;
+
+    /** Builds a 1 Hz trace leg by leg, with a few metres of GPS noise. */
+    private static final class TraceBuilder {
+        final List<LocationFix> mPoints = new ArrayList<LocationFix>();
+        final Random mRandom = new Random(11);
+        double mNorth;
+        double mEast;
+        long mSeconds;
+
+        TraceBuilder move(int seconds, double northPerSecond, double eastPerSecond) {
+            for (int i = 0; i < seconds; i++) {
+                mNorth += northPerSecond;
+                mEast += eastPerSecond;
+                mPoints.add(point(mNorth + mRandom.nextGaussian() * 4,
+                        mEast + mRandom.nextGaussian() * 4, mSeconds++));
+            }
+            return this;
+        }
+
+        LocationFix here() {
+            return point(mNorth, mEast, mSeconds);
+        }
+
+        static LocationFix point(double north, double east, long seconds) {
+            double lat = 34.92 + north / METERS_PER_DEGREE;
+            double lng = -82.44 + east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)));
+            return new LocationFix(lat, lng, 0, 5f, T0 + seconds * 1000);
+        }
+    }
+
+    @Test
+    public void adaptivePolicyTakesFarFewerFixesOverADay() {
+        TraceBuilder day = new TraceBuilder()
+                .move(6 * 3600, 0, 0)          // at home
+                .move(15 * 60, 1.4, 0)         // walk to the car
+                .move(20 * 60, 0, 15)          // drive to work
+                .move(4 * 3600, 0, 0)          // at the office
+                .move(10 * 60, 0, 1.3);        // walk to lunch...
+        LocationFix bump = day.here();
+        day.move(10 * 60, 0, 1.3)              // ...past an infected bump
+                .move(2 * 3600, 0, 0);
+        SpatialGridIndex infected = SpatialGridIndex.build(
+                new double[] {bump.getLatitude()}, new double[] {bump.getLongitude()}, 1);
+
+        SamplingTraceReplay replay = new SamplingTraceReplay(FlushPolicy.DEFAULT);
+        SamplingEngine legacy = new SamplingEngine(FixedSamplingPolicy.LEGACY_SERVICE);
+        SamplingTraceReplay.Report before = replay.replay(day.mPoints, legacy);
+        SamplingEngine adaptive = new SamplingEngine(new AdaptiveSamplingPolicy());
+        adaptive.setInfectedIndex(infected);
+        SamplingTraceReplay.Report after = replay.replay(day.mPoints, adaptive);
+
+        assertEquals(day.mPoints.size(), after.getPointCount());
+        assertTrue(after.getFixCount() * 10 < before.getFixCount());
+        assertTrue(after.getUploadCount() * 2 < before.getUploadCount());
+        assertTrue(after.getMillisAt(SamplingRequest.Priority.BALANCED_POWER)
+                > after.getMillisAt(SamplingRequest.Priority.HIGH_ACCURACY));
+        assertTrue(after.getMeanErrorMeters() < 50);
+    }
+
+    @Test
+    public void samplesEveryFewSecondsNearAnInfectedBump() {
+        TraceBuilder walk = new TraceBuilder().move(600, 0, 1.3);
+        LocationFix bump = walk.here();
+        walk.move(600, 0, 1.3);
+        SamplingEngine engine = new SamplingEngine(new AdaptiveSamplingPolicy());
+        engine.setInfectedIndex(SpatialGridIndex.build(
+                new double[] {bump.getLatitude()}, new double[] {bump.getLongitude()}, 1));
+        SamplingEngine unaware = new SamplingEngine(new AdaptiveSamplingPolicy());
+
+        SamplingTraceReplay replay = new SamplingTraceReplay(FlushPolicy.DEFAULT);
+        int near = replay.replay(walk.mPoints, engine).getFixCount();
+        int far = replay.replay(walk.mPoints, unaware).getFixCount();
+        // About 300 s are spent within range: 5 s sampling there instead of 10 s.
+        assertTrue(near >= far + 25);
+    }
+
+    @Test
+    public void readsCsvTraces() throws IOException {
+        String csv = "# time,lat,lng,accuracy\n"
+                + "1462233600000,34.92,-82.44,6.5\n"
+                + "\n"
+                + "1462233601000, 34.9201, -82.4401\n";
+        List<LocationFix> trace = SamplingTraceReplay.readTrace(
+                new ByteArrayInputStream(csv.getBytes("UTF-8")));
+        assertEquals(2, trace.size());
+        assertEquals(6.5f, trace.get(0).getAccuracy(), 0);
+        assertEquals(34.9201, trace.get(1).getLatitude(), 0);
+        assertEquals(1462233601000L, trace.get(1).getTime());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMalformedLines() throws IOException {
+        SamplingTraceReplay.readTrace(new ByteArrayInputStream("1,2\n".getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,169 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpatialGridIndexTest {
+
+    @Test
+    public void radiusQueriesMatchBruteForce() {
+        Random random = new Random(3);
+        int n = 20000;
+        double[] lat = new double[n];
+        double[] lng = new double[n];
+        for (int i = 0; i < n; i++) {
+            // Mostly around Furman, with a few far away and a few without coordinates.
+            lat[i] = i % 100 == 0 ? random.nextDouble() * 180 - 90 : 34.92 + random.nextGaussian() * 0.02;
+            lng[i] = i % 100 == 0 ? random.nextDouble() * 360 - 180 : -82.44 + random.nextGaussian() * 0.02;
+            if (i % 500 == 1) {
+                lat[i] = Double.NaN;
+            }
+        }
+        SpatialGridIndex index = SpatialGridIndex.build(lat, lng, n);
+        assertEquals(n - n / 500, index.size());
+
+        for (int q = 0; q < 200; q++) {
+            double centreLat = 34.92 + random.nextGaussian() * 0.02;
+            double centreLng = -82.44 + random.nextGaussian() * 0.02;
+            double radius = 10 + random.nextDouble() * (q % 10 == 0 ? 500000 : 500);
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                if (!Double.isNaN(lat[i]) && SpatialGridIndex.distanceMeters(
+                        centreLat, centreLng, lat[i], lng[i]) <= radius) {
+                    expected.add(i);
+                }
+            }
+            assertEquals(expected, radius(index, centreLat, centreLng, radius));
+            assertEquals(expected.size(), index.countWithinRadius(centreLat, centreLng, radius));
+            assertEquals(!expected.isEmpty(), index.anyWithinRadius(centreLat, centreLng, radius));
+        }
+    }
+
+    @Test
+    public void boxQueriesMatchBruteForce() {
+        Random random = new Random(5);
+        int n = 5000;
+        double[] lat = new double[n];
+        double[] lng = new double[n];
+        for (int i = 0; i < n; i++) {
+            lat[i] = random.nextDouble() * 180 - 90;
+            lng[i] = random.nextDouble() * 360 - 180;
+        }
+        SpatialGridIndex index = SpatialGridIndex.build(lat, lng, n);
+        for (int q = 0; q < 100; q++) {
+            double minLat = random.nextDouble() * 180 - 90;
+            double maxLat = Math.min(90, minLat + random.nextDouble() * 30);
+            double minLng = random.nextDouble() * 360 - 180;
+            double maxLng = minLng + random.nextDouble() * 60;
+            if (maxLng > 180) {
+                maxLng -= 360;
+            }
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                boolean inLng = minLng <= maxLng ? lng[i] >= minLng && lng[i] <= maxLng
+                        : lng[i] >= minLng || lng[i] <= maxLng;
+                if (lat[i] >= minLat && lat[i] <= maxLat && inLng) {
+                    expected.add(i);
+                }
+            }
+            final List<Integer> found = new ArrayList<Integer>();
+            int count = index.queryBox(minLat, minLng, maxLat, maxLng, collector(found));
+            Collections.sort(found);
+            assertEquals(expected, found);
+            assertEquals(expected.size(), count);
+        }
+    }
+
+    @Test
+    public void outlierDoesNotStretchTheCells() {
+        Random random = new Random(9);
+        int n = 10000;
+        double[] lat = new double[n + 1];
+        double[] lng = new double[n + 1];
+        for (int i = 0; i < n; i++) {
+            lat[i] = 34.92 + random.nextGaussian() * 0.01;
+            lng[i] = -82.44 + random.nextGaussian() * 0.01;
+        }
+        SpatialGridIndex city = SpatialGridIndex.build(lat, lng, n);
+        // A single row at (0, 0), as a default-valued coordinate would give.
+        SpatialGridIndex skewed = SpatialGridIndex.build(lat, lng, n + 1);
+
+        assertEquals(city.getCellCount() + 1, skewed.getCellCount());
+        for (int q = 0; q < 100; q++) {
+            double centreLat = 34.92 + random.nextGaussian() * 0.01;
+            double centreLng = -82.44 + random.nextGaussian() * 0.01;
+            assertEquals(radius(city, centreLat, centreLng, 25),
+                    radius(skewed, centreLat, centreLng, 25));
+        }
+        assertEquals(Collections.singletonList(n), radius(skewed, 0, 0, 25));
+    }
+
+    @Test
+    public void radiusCrossesTheAntimeridian() {
+        double[] lat = {0, 0, 0};
+        double[] lng = {179.9995, -179.9995, 90};
+        SpatialGridIndex index = SpatialGridIndex.build(lat, lng, 3);
+        assertEquals(2, index.countWithinRadius(0, 180, 100));
+        assertTrue(index.anyWithinRadius(0, -180, 100));
+        assertFalse(index.anyWithinRadius(0, 0, 100000));
+    }
+
+    @Test
+    public void nearestDistanceIsBoundedBySearchRadius() {
+        double[] lat = {0, 0.001, 0.01};
+        double[] lng = {0, 0, 0};
+        SpatialGridIndex index = SpatialGridIndex.build(lat, lng, 3);
+        assertEquals(SpatialGridIndex.distanceMeters(0.0005, 0, 0.001, 0),
+                index.nearestDistanceMeters(0.0005, 0, 1000), 1e-9);
+        assertEquals(Double.POSITIVE_INFINITY, index.nearestDistanceMeters(0.05, 0, 1000), 0);
+    }
+
+    @Test
+    public void visitorCanStopEarly() {
+        double[] lat = {1, 1, 1, 1};
+        double[] lng = {1, 1, 1, 1};
+        SpatialGridIndex index = SpatialGridIndex.build(lat, lng, 4);
+        final int[] visits = new int[1];
+        index.queryRadius(1, 1, 10, new SpatialGridIndex.Visitor() {
+            @Override
+            public boolean visit(int row, double latitude, double longitude) {
+                return ++visits[0] < 2;
+            }
+        });
+        assertEquals(2, visits[0]);
+    }
+
+    @Test
+    public void emptyIndexFindsNothing() {
+        SpatialGridIndex index = SpatialGridIndex.build(new double[] {Double.NaN},
+                new double[] {1}, 1);
+        assertEquals(0, index.size());
+        assertEquals(0, index.countWithinRadius(0, 0, 1e7));
+    }
+
+    private static List<Integer> radius(SpatialGridIndex index, double lat, double lng,
+                                        double meters) {
+        List<Integer> found = new ArrayList<Integer>();
+        index.queryRadius(lat, lng, meters, collector(found));
+        Collections.sort(found);
+        return found;
+    }
+
+    private static SpatialGridIndex.Visitor collector(final List<Integer> rows) {
+        return new SpatialGridIndex.Visitor() {
+            @Override
+            public boolean visit(int row, double latitude, double longitude) {
+                rows.add(row);
+                return true;
+            }
+        };
+    }
+}
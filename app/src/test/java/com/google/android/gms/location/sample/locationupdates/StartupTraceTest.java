@@ -0,0 +1,127 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StartupTraceTest {
+    @Test
+    public void spansRecordWhenAndHowLong() throws InterruptedException {
+        StartupTrace trace = new StartupTrace();
+        StartupTrace.Span outer = trace.begin("outer");
+        Thread.sleep(5);
+        StartupTrace.Span inner = trace.begin("inner");
+        Thread.sleep(5);
+        inner.end();
+        outer.end();
+        long innerMicros = inner.getDurationMicros();
+        inner.end();
+
+        assertTrue(innerMicros >= 5000);
+        assertEquals(innerMicros, inner.getDurationMicros());
+        assertTrue(outer.getDurationMicros() >= 10000);
+        assertTrue(inner.getStartMicros() >= outer.getStartMicros() + 5000);
+        assertTrue(inner.getStartMicros() + inner.getDurationMicros()
+                <= outer.getStartMicros() + outer.getDurationMicros());
+        assertSame(inner, trace.find("inner"));
+        assertNull(trace.find("missing"));
+    }
+
+    @Test
+    public void marksHaveNoLengthAndOpenSpansNone() {
+        StartupTrace trace = new StartupTrace();
+        StartupTrace.Span open = trace.begin("open");
+        StartupTrace.Span mark = trace.mark("first_frame");
+
+        assertTrue(mark.isEnded());
+        assertEquals(0, mark.getDurationMicros());
+        assertFalse(open.isEnded());
+        assertEquals(-1, open.getDurationMicros());
+        assertTrue(trace.summary().contains("unfinished"));
+    }
+
+    @Test
+    public void spansKeepTheThreadTheyBeganOn() throws InterruptedException {
+        final StartupTrace trace = new StartupTrace();
+        trace.mark("main");
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                trace.begin("work").end();
+            }
+        }, "prefetch-1");
+        worker.start();
+        worker.join();
+
+        List<StartupTrace.Span> spans = trace.getSpans();
+        assertEquals(2, spans.size());
+        assertEquals(Thread.currentThread().getName(), spans.get(0).getThread());
+        assertEquals("prefetch-1", spans.get(1).getThread());
+        assertTrue(trace.toJson(new LinkedHashMap<String, String>())
+                .contains("\"args\":{\"name\":\"prefetch-1\"}"));
+    }
+
+    @Test
+    public void exportsChromeTraceEvents() {
+        StartupTrace trace = new StartupTrace();
+        trace.begin("splash").end();
+        trace.begin("open");
+        Map<String, String> metadata = new LinkedHashMap<String, String>();
+        metadata.put("versionName", "1.0 \"beta\"");
+        metadata.put("versionCode", "7");
+        String json = trace.toJson(metadata);
+
+        assertTrue(json.startsWith("{\"traceEvents\":["));
+        assertTrue(json.contains("{\"name\":\"splash\",\"ph\":\"X\",\"ts\":"));
+        assertTrue(json.contains(",\"dur\":"));
+        assertTrue(json.contains("{\"name\":\"open\",\"ph\":\"B\",\"ts\":"));
+        assertTrue(json.contains("\"ph\":\"M\""));
+        assertTrue(json.contains(
+                "\"otherData\":{\"versionName\":\"1.0 \\\"beta\\\"\",\"versionCode\":\"7\"}"));
+        assertEquals(json.length() - json.replace("{", "").length(),
+                json.length() - json.replace("}", "").length());
+    }
+
+    @Test
+    public void awaitEndedWaitsForSpansOpenOnOtherThreads() throws InterruptedException {
+        StartupTrace trace = new StartupTrace();
+        trace.mark("first_frame");
+        final StartupTrace.Span prefetch = trace.begin("prefetch");
+        assertFalse(trace.awaitEnded(10));
+
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                prefetch.end();
+            }
+        });
+        worker.start();
+        assertTrue(trace.awaitEnded(5000));
+        assertFalse(trace.toJson(new LinkedHashMap<String, String>()).contains("\"ph\":\"B\""));
+        worker.join();
+    }
+
+    @Test
+    public void traceIsBounded() {
+        StartupTrace trace = new StartupTrace();
+        for (int i = 0; i < StartupTrace.MAX_SPANS + 10; i++) {
+            trace.begin("span" + i).end();
+        }
+
+        assertEquals(StartupTrace.MAX_SPANS, trace.getSpans().size());
+        assertEquals(10, trace.getDroppedCount());
+    }
+}
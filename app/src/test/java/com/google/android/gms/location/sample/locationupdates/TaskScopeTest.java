@@ -0,0 +1,166 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs scopes on real pools with a queue standing in for the main looper, so the test decides
+ * when "main thread" callbacks run.
+ */
+public class TaskScopeTest {
+    private final BlockingQueue<Runnable> mMainQueue = new LinkedBlockingQueue<Runnable>();
+    private ExecutorService mIo;
+    private ExecutorService mCompute;
+    private TaskExecutors mExecutors;
+
+    @Before
+    public void setUp() {
+        mIo = TaskExecutors.newPool("io", 2, 2);
+        mCompute = TaskExecutors.newPool("compute", 1, 4);
+        mExecutors = new TaskExecutors(mIo, mCompute, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mMainQueue.add(command);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mIo.shutdownNow();
+        mCompute.shutdownNow();
+    }
+
+    @Test
+    public void resultsAndFailuresArriveOnTheMainExecutor() throws Exception {
+        TaskScope scope = new TaskScope(mExecutors);
+        Recorder<String> ok = new Recorder<String>();
+        Recorder<String> failed = new Recorder<String>();
+        scope.io(new Callable<String>() {
+            @Override
+            public String call() {
+                return Thread.currentThread().getName();
+            }
+        }, ok);
+        scope.compute(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                throw new IOException("offline");
+            }
+        }, failed);
+
+        runMainQueue(2);
+        assertTrue(ok.mResult.get().startsWith("io-"));
+        assertEquals("offline", failed.mError.get().getMessage());
+        assertEquals(0, scope.getPendingCount());
+    }
+
+    @Test
+    public void cancelInterruptsWorkAndDropsCallbacks() throws Exception {
+        TaskScope scope = new TaskScope(mExecutors);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Recorder<String> blocked = new Recorder<String>();
+        Recorder<String> finished = new Recorder<String>();
+        scope.io(new Callable<String>() {
+            @Override
+            public String call() {
+                return "done";
+            }
+        }, finished);
+        scope.io(new Callable<String>() {
+            @Override
+            public String call() {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "too late";
+            }
+        }, blocked);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // The first task's callback is queued but has not run on the "main thread" yet.
+        Runnable pending = mMainQueue.poll(5, TimeUnit.SECONDS);
+        scope.cancel();
+        pending.run();
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertNull(finished.mResult.get());
+        assertNull(blocked.mResult.get());
+        assertTrue(scope.isCancelled());
+
+        Recorder<String> afterCancel = new Recorder<String>();
+        assertTrue(scope.io(new Callable<String>() {
+            @Override
+            public String call() {
+                return "never";
+            }
+        }, afterCancel).isCancelled());
+    }
+
+    @Test
+    public void fullQueueIsReportedAsFailureInsteadOfBlockingTheCaller() throws Exception {
+        TaskScope scope = new TaskScope(mExecutors);
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<String> parked = new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                release.await();
+                return "parked";
+            }
+        };
+        // Two threads plus two queue slots; the fifth task is rejected.
+        for (int i = 0; i < 4; i++) {
+            scope.io(parked, new Recorder<String>());
+        }
+        Recorder<String> rejected = new Recorder<String>();
+        scope.io(parked, rejected);
+        mMainQueue.take().run();
+        assertTrue(rejected.mError.get() instanceof java.util.concurrent.RejectedExecutionException);
+        release.countDown();
+        runMainQueue(4);
+        assertEquals(0, scope.getPendingCount());
+    }
+
+    private void runMainQueue(int callbacks) throws InterruptedException {
+        for (int i = 0; i < callbacks; i++) {
+            Runnable runnable = mMainQueue.poll(5, TimeUnit.SECONDS);
+            assertTrue("callback " + i + " did not arrive", runnable != null);
+            runnable.run();
+        }
+    }
+
+    private static final class Recorder<T> implements TaskScope.Callback<T> {
+        final AtomicReference<T> mResult = new AtomicReference<T>();
+        final AtomicReference<Exception> mError = new AtomicReference<Exception>();
+
+        @Override
+        public void onSuccess(T result) {
+            assertSame(null, mResult.getAndSet(result));
+        }
+
+        @Override
+        public void onFailure(Exception error) {
+            mError.set(error);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrajectoryReplayTest {
+    private static final double METERS_PER_DEGREE = 111195;
+    private static final long T0 = 1462233600000L;
+
+    /**
+     * Writes a commute as a recorded trace would be: a 1 Hz CSV with a few metres of GPS noise.
+     */
+    private static String commuteCsv() {
+        Random random = new Random(13);
+        StringBuilder csv = new StringBuilder("# time,latitude,longitude,accuracy\n");
+        double north = 0;
+        double east = 0;
+        int[][] legs = {
+                // seconds, north m/s * 10, east m/s * 10
+                {1800, 0, 0},      // at home
+                {300, 14, 0},      // walk to the car
+                {600, 0, 150},     // drive
+                {120, 80, 80},     // drive, turning
+                {600, 0, 150},     // drive
+                {180, 0, -13},     // walk in
+                {3600, 0, 0}};     // at work
+        long seconds = 0;
+        for (int[] leg : legs) {
+            for (int i = 0; i < leg[0]; i++) {
+                north += leg[1] / 10.0;
+                east += leg[2] / 10.0;
+                double lat = 34.92 + (north + random.nextGaussian() * 3) / METERS_PER_DEGREE;
+                double lng = -82.44 + (east + random.nextGaussian() * 3)
+                        / (METERS_PER_DEGREE * Math.cos(Math.toRadians(34.92)));
+                csv.append(String.format(Locale.US, "%d,%.7f,%.7f,5%n",
+                        T0 + seconds++ * 1000, lat, lng));
+            }
+        }
+        return csv.toString();
+    }
+
+    @Test
+    public void reportsCompressionErrorAndCost() throws IOException {
+        List<LocationFix> trace = SamplingTraceReplay.readTrace(
+                new ByteArrayInputStream(commuteCsv().getBytes("UTF-8")));
+        TrajectoryReplay.Report report =
+                TrajectoryReplay.replay(trace, new TrajectorySimplifier());
+        TrajectoryReplay.Report tight =
+                TrajectoryReplay.replay(trace, new TrajectorySimplifier(5, 128, 300000));
+
+        assertEquals(trace.size(), report.getPointCount());
+        assertTrue(report.getCompressionRatio() > 5);
+        assertTrue(report.getMaxErrorMeters() <= TrajectorySimplifier.DEFAULT_TOLERANCE_METERS
+                + 0.1);
+        assertTrue(tight.getKeptCount() > report.getKeptCount());
+        assertTrue(tight.getMaxErrorMeters() <= 5.1);
+    }
+
+    @Test
+    public void singleFixTraceIsKeptWhole() {
+        List<LocationFix> one = Collections.singletonList(
+                new LocationFix(34.92, -82.44, 0, 5f, T0));
+        TrajectoryReplay.Report report = TrajectoryReplay.replay(one, new TrajectorySimplifier());
+
+        assertEquals(1, report.getKeptCount());
+        assertEquals(0, report.getMaxErrorMeters(), 0);
+    }
+}
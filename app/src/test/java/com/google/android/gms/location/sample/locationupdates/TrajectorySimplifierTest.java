@@ -0,0 +1,125 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TrajectorySimplifierTest {
+    private static final double METERS_PER_DEGREE = 111195;
+    private static final long T0 = 1462233600000L;
+
+    private static LocationFix at(double north, double east, long seconds) {
+        double lat = 34.92 + north / METERS_PER_DEGREE;
+        double lng = -82.44 + east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)));
+        return new LocationFix(lat, lng, 0, 5f, T0 + seconds * 1000);
+    }
+
+    private static List<LocationFix> offerAll(TrajectorySimplifier simplifier,
+                                              List<LocationFix> fixes) {
+        List<LocationFix> kept = new ArrayList<LocationFix>();
+        for (LocationFix fix : fixes) {
+            LocationFix out = simplifier.offer(fix);
+            if (out != null) {
+                kept.add(out);
+            }
+        }
+        LocationFix last = simplifier.flush();
+        if (last != null) {
+            kept.add(last);
+        }
+        return kept;
+    }
+
+    @Test
+    public void straightLineKeepsOnlyItsEnds() {
+        List<LocationFix> line = new ArrayList<LocationFix>();
+        for (int s = 0; s < 100; s++) {
+            line.add(at(0, s * 1.4, s));
+        }
+        List<LocationFix> kept = offerAll(new TrajectorySimplifier(), line);
+
+        assertEquals(2, kept.size());
+        assertSame(line.get(0), kept.get(0));
+        assertSame(line.get(99), kept.get(1));
+    }
+
+    @Test
+    public void cornerIsKept() {
+        List<LocationFix> turn = new ArrayList<LocationFix>();
+        for (int s = 0; s <= 60; s++) {
+            turn.add(at(0, s * 1.4, s));
+        }
+        for (int s = 1; s <= 60; s++) {
+            turn.add(at(s * 1.4, 60 * 1.4, 60 + s));
+        }
+        List<LocationFix> kept = offerAll(new TrajectorySimplifier(), turn);
+
+        assertEquals(3, kept.size());
+        // The fix before the one that breaks the segment, a few metres past the corner.
+        long cornerSecond = (kept.get(1).getTime() - T0) / 1000;
+        assertTrue(cornerSecond >= 60 && cornerSecond < 70);
+    }
+
+    @Test
+    public void slowChangeOfSpeedBreaksTheSegmentInTime() {
+        // Same straight path, but stopping halfway: a constant-speed segment would put the
+        // device far from where it waited.
+        List<LocationFix> fixes = new ArrayList<LocationFix>();
+        for (int s = 0; s < 60; s++) {
+            fixes.add(at(0, s * 1.4, s));
+        }
+        for (int s = 60; s < 300; s++) {
+            fixes.add(at(0, 60 * 1.4, s));
+        }
+        assertTrue(offerAll(new TrajectorySimplifier(), fixes).size() >= 3);
+    }
+
+    @Test
+    public void windowAndHoldTimeBoundWhatIsHeld() {
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(10, 8, 60000);
+        int kept = 0;
+        for (int s = 0; s < 100; s++) {
+            if (simplifier.offer(at(0, 0, s)) != null) {
+                kept++;
+            }
+            assertTrue(simplifier.getHeldCount() <= 8);
+        }
+        assertEquals(1 + 99 / 8, kept);
+
+        simplifier = new TrajectorySimplifier(10, 1000, 60000);
+        simplifier.offer(at(0, 0, 0));
+        assertNull(simplifier.offer(at(0, 0, 30)));
+        assertNull(simplifier.offer(at(0, 0, 60)));
+        assertEquals(T0 + 60000, simplifier.offer(at(0, 0, 61)).getTime());
+    }
+
+    @Test
+    public void rebuiltTrackStaysWithinTolerance() {
+        Random random = new Random(9);
+        List<LocationFix> walk = new ArrayList<LocationFix>();
+        double north = 0;
+        double east = 0;
+        double heading = 0;
+        for (int s = 0; s < 5000; s++) {
+            heading += random.nextGaussian() * 0.2;
+            double speed = s % 600 < 400 ? 1.4 : 0;
+            north += Math.cos(heading) * speed;
+            east += Math.sin(heading) * speed;
+            walk.add(at(north + random.nextGaussian() * 2, east + random.nextGaussian() * 2, s));
+        }
+        TrajectorySimplifier simplifier = new TrajectorySimplifier();
+        TrajectoryReplay.Report report = TrajectoryReplay.replay(walk, simplifier);
+
+        assertTrue(report.getMaxErrorMeters() <= TrajectorySimplifier.DEFAULT_TOLERANCE_METERS
+                + 0.1);
+        assertTrue(report.getCompressionRatio() > 3);
+        assertEquals(report.getKeptCount(), simplifier.getKeptCount());
+    }
+}
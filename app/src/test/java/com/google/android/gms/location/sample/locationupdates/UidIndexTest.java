@@ -0,0 +1,88 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UidIndexTest {
+
+    @Test
+    public void parsesCanonicalUuids() {
+        UUID uuid = UUID.randomUUID();
+        String text = uuid.toString();
+        assertTrue(UidIndex.isUuid(text));
+        assertEquals(uuid.getMostSignificantBits(), UidIndex.mostSignificantBits(text));
+        assertEquals(uuid.getLeastSignificantBits(), UidIndex.leastSignificantBits(text));
+        assertEquals(uuid.getLeastSignificantBits(),
+                UidIndex.leastSignificantBits(text.toUpperCase()));
+        assertFalse(UidIndex.isUuid(text.replace('-', '_')));
+        assertFalse(UidIndex.isUuid(text.substring(1)));
+        assertFalse(UidIndex.isUuid(text.replace('-', ',')));
+        assertFalse(UidIndex.isUuid(text.substring(0, 35) + "g"));
+    }
+
+    @Test
+    public void stringAndBitLookupsAgree() {
+        UUID uuid = UUID.randomUUID();
+        String text = uuid.toString();
+        UidIndex index = new UidIndex();
+        index.add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        assertTrue(index.contains(text));
+        assertTrue(index.contains(text.toUpperCase()));
+        assertFalse(index.contains(text.replace('-', ',')));
+
+        index.add("legacy-device-id");
+        assertTrue(index.contains(UidIndex.mostSignificantBits("legacy-device-id"),
+                UidIndex.leastSignificantBits("legacy-device-id")));
+    }
+
+    @Test
+    public void matchesHashSetUnderRandomAddsAndRemoves() {
+        Random random = new Random(7);
+        List<String> universe = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            universe.add(new UUID(random.nextLong(), random.nextLong()).toString());
+        }
+        universe.add("legacy-device-id");
+        universe.add(new UUID(0, 0).toString());
+
+        UidIndex index = new UidIndex();
+        Set<String> reference = new HashSet<String>();
+        for (int step = 0; step < 200000; step++) {
+            String uid = universe.get(random.nextInt(universe.size()));
+            if (random.nextInt(3) == 0) {
+                assertEquals(reference.remove(uid), index.remove(uid));
+            } else {
+                assertEquals(reference.add(uid), index.add(uid));
+            }
+            if (step % 1000 == 0) {
+                assertEquals(reference.size(), index.size());
+            }
+        }
+        for (String uid : universe) {
+            assertEquals(uid, reference.contains(uid), index.contains(uid));
+        }
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        UidIndex index = new UidIndex();
+        index.add("a");
+        UidIndex copy = index.copy();
+        copy.add("b");
+        copy.remove("a");
+        assertTrue(index.contains("a"));
+        assertFalse(index.contains("b"));
+        assertFalse(copy.contains("a"));
+        assertTrue(copy.contains("b"));
+    }
+}
@@ -0,0 +1,269 @@
+package com.google.android.gms.location.sample.locationupdates;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the client against a minimal HTTP/1.1 stand-in for the webservice that keeps connections
+ * alive and counts how many it accepts.
+ */
+public class UploadClientTest {
+    private static final byte[] BODY = "ZF fix batch".getBytes();
+
+    private StandIn mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StandIn();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    @Test
+    public void thousandUploadsShareOneConnection() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            legacyPost(mServer.url());
+        }
+        int legacy = mServer.mAccepted.get();
+
+        mServer.mAccepted.set(0);
+        UploadClient client = new UploadClient(mServer.url());
+        for (int i = 0; i < 1000; i++) {
+            client.post(BODY, BODY.length, BinaryFixCodec.CONTENT_TYPE);
+        }
+        int kept = mServer.mAccepted.get();
+
+        assertEquals(2000, mServer.mRequests.get());
+        assertTrue(kept <= 2);
+        assertEquals(1000, legacy);
+        assertEquals(1000, client.getLatency().getCount());
+        assertEquals(0, client.getFailureCount());
+    }
+
+    @Test
+    public void rejectedUploadFailsButKeepsTheConnection() throws Exception {
+        UploadClient client = new UploadClient(mServer.url());
+        mServer.mStatus = 503;
+        try {
+            client.post(BODY, BODY.length, BinaryFixCodec.CONTENT_TYPE);
+            fail("A 503 was accepted");
+        } catch (UploadClient.HttpStatusException expected) {
+            assertEquals(503, expected.getStatusCode());
+            assertTrue(expected.getMessage().contains("503"));
+        }
+        mServer.mStatus = 200;
+        client.post(BODY, BODY.length, BinaryFixCodec.CONTENT_TYPE);
+
+        assertEquals(1, mServer.mAccepted.get());
+        assertEquals(1, client.getFailureCount());
+        assertEquals(1, client.getFailureCount(UploadClient.Failure.HTTP_SERVER_ERROR));
+        assertEquals(2, client.getLatency().getCount());
+    }
+
+    @Test
+    public void unreachableServerCountsAsConnectFailure() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+        UploadClient client = new UploadClient(new URL("http://127.0.0.1:" + port + "/batch"));
+        try {
+            client.post(BODY, BODY.length, BinaryFixCodec.CONTENT_TYPE);
+            fail("Posted to a closed port");
+        } catch (IOException expected) {
+            assertEquals(1, client.getFailureCount(UploadClient.Failure.CONNECT));
+            assertEquals(1, client.getFailureCount());
+            assertEquals(0, client.getLatency().getCount());
+        }
+    }
+
+    @Test
+    public void boundsRequestsInFlight() throws Exception {
+        final UploadClient client = new UploadClient(mServer.url(), 2);
+        mServer.mDelayMillis = 30;
+        final AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 6; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 5; i++) {
+                        try {
+                            client.post(BODY, BODY.length, BinaryFixCodec.CONTENT_TYPE);
+                        } catch (IOException e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, failures.get());
+        assertEquals(30, mServer.mRequests.get());
+        assertEquals(2, mServer.mMaxConcurrent.get());
+        assertTrue(mServer.mAccepted.get() <= 2);
+    }
+
+    /**
+     * The way MyService.notifyDatabase used to post: a fresh connection, disconnected after.
+     */
+    private static void legacyPost(URL url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        try {
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            OutputStream out = conn.getOutputStream();
+            out.write(BODY);
+            out.close();
+            conn.getResponseCode();
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static final class StandIn implements Runnable {
+        final ServerSocket mSocket;
+        final AtomicInteger mAccepted = new AtomicInteger();
+        final AtomicInteger mRequests = new AtomicInteger();
+        final AtomicInteger mConcurrent = new AtomicInteger();
+        final AtomicInteger mMaxConcurrent = new AtomicInteger();
+        volatile int mStatus = 200;
+        volatile long mDelayMillis;
+
+        StandIn() throws IOException {
+            mSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            Thread acceptor = new Thread(this, "stand-in");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        URL url() throws IOException {
+            return new URL("http://127.0.0.1:" + mSocket.getLocalPort() + "/webservice_batch.php");
+        }
+
+        void close() throws IOException {
+            mSocket.close();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final Socket connection;
+                try {
+                    connection = mSocket.accept();
+                } catch (IOException e) {
+                    return;
+                }
+                mAccepted.incrementAndGet();
+                Thread handler = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(connection);
+                    }
+                });
+                handler.setDaemon(true);
+                handler.start();
+            }
+        }
+
+        private void serve(Socket connection) {
+            try {
+                InputStream in = connection.getInputStream();
+                OutputStream out = connection.getOutputStream();
+                while (readRequest(in)) {
+                    int now = mConcurrent.incrementAndGet();
+                    int max;
+                    while (now > (max = mMaxConcurrent.get())
+                            && !mMaxConcurrent.compareAndSet(max, now)) {
+                        // Retry until the maximum is at least this high.
+                    }
+                    if (mDelayMillis > 0) {
+                        Thread.sleep(mDelayMillis);
+                    }
+                    mRequests.incrementAndGet();
+                    mConcurrent.decrementAndGet();
+                    byte[] response = ("HTTP/1.1 " + mStatus + " Status\r\n"
+                            + "Content-Length: 2\r\nConnection: keep-alive\r\n\r\nOK")
+                            .getBytes("US-ASCII");
+                    out.write(response);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // The client went away.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    connection.close();
+                } catch (IOException e) {
+                    // Nothing to do.
+                }
+            }
+        }
+
+        /**
+         * Reads one request, headers and body, and returns false at the end of the connection.
+         */
+        private static boolean readRequest(InputStream in) throws IOException {
+            int contentLength = 0;
+            String line;
+            boolean first = true;
+            while ((line = readLine(in)) != null) {
+                if (line.isEmpty()) {
+                    if (first) {
+                        continue;
+                    }
+                    for (int i = 0; i < contentLength; i++) {
+                        if (in.read() == -1) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                first = false;
+                if (line.toLowerCase(Locale.US).startsWith("content-length:")) {
+                    contentLength = Integer.parseInt(line.substring(15).trim());
+                }
+            }
+            return false;
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    return line.toString("US-ASCII").trim();
+                }
+                line.write(b);
+            }
+            return null;
+        }
+    }
+}
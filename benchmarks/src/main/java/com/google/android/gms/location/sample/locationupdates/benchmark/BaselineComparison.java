@@ -0,0 +1,181 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares a JMH run, in JMH's CSV result format, against the checked-in baseline and exits with
+ * status 1 if any benchmark regressed.
+ *
+ * A benchmark is matched by its name and parameters. It has regressed when its score is worse
+ * than the baseline's by more than the threshold, 25% unless given, and by more than the two
+ * runs' error bounds together, so a noisy benchmark is not flagged on noise alone. Throughput
+ * scores are worse when lower; times are worse when higher. Benchmarks only in one of the files
+ * are listed but do not fail the comparison. Lines starting with {@code #} are comments.
+ *
+ * Usage: {@code BaselineComparison <baseline.csv> <results.csv> [threshold]}
+ */
+public class BaselineComparison {
+    private static final double DEFAULT_THRESHOLD = 0.25;
+
+    /**
+     * One row of a result file.
+     */
+    static final class Score {
+        final String mMode;
+        final double mValue;
+        final double mError;
+        final String mUnit;
+
+        Score(String mode, double value, double error, String unit) {
+            mMode = mode;
+            mValue = value;
+            mError = error;
+            mUnit = unit;
+        }
+
+        boolean higherIsBetter() {
+            return mMode.equals("thrpt");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println(
+                    "Usage: BaselineComparison <baseline.csv> <results.csv> [threshold]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        int regressions = compare(read(args[0]), read(args[1]), threshold);
+        if (regressions > 0) {
+            System.out.println(String.format(Locale.US,
+                    "%d benchmark%s regressed by more than %.0f%%", regressions,
+                    regressions == 1 ? "" : "s", threshold * 100));
+            System.exit(1);
+        }
+        System.out.println("No regressions against the baseline");
+    }
+
+    /**
+     * Prints one line per benchmark and returns how many regressed.
+     */
+    static int compare(Map<String, Score> baseline, Map<String, Score> current,
+                       double threshold) {
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score now = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null || !before.mUnit.equals(now.mUnit)) {
+                System.out.println(String.format(Locale.US, "  new        %s %.3f %s",
+                        entry.getKey(), now.mValue, now.mUnit));
+                continue;
+            }
+            // Positive when the benchmark got worse.
+            double change = before.higherIsBetter()
+                    ? (before.mValue - now.mValue) / before.mValue
+                    : (now.mValue - before.mValue) / before.mValue;
+            double noise = finite(before.mError) + finite(now.mError);
+            boolean regressed = change > threshold
+                    && Math.abs(now.mValue - before.mValue) > noise;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.println(String.format(Locale.US, "%s %+7.1f%%  %s %.3f -> %.3f %s",
+                    regressed ? "REGRESSED" : "  ok     ", 0.0 - change * 100, entry.getKey(),
+                    before.mValue, now.mValue, now.mUnit));
+        }
+        for (String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                System.out.println("  not run    " + name);
+            }
+        }
+        return regressions;
+    }
+
+    private static double finite(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? 0 : value;
+    }
+
+    /**
+     * Reads a JMH CSV result file into scores keyed by benchmark name and parameters, e.g.
+     * {@code UidIndexBenchmark.uidIndexHit size=1000000}.
+     */
+    static Map<String, Score> read(String path) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<String, Score>();
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        try {
+            List<String> header = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                List<String> fields = split(line);
+                if (header == null) {
+                    header = fields;
+                    continue;
+                }
+                StringBuilder key = new StringBuilder(shortName(fields.get(0)));
+                for (int i = 7; i < header.size() && i < fields.size(); i++) {
+                    if (!fields.get(i).isEmpty()) {
+                        key.append(' ').append(header.get(i).replace("Param: ", ""))
+                                .append('=').append(fields.get(i));
+                    }
+                }
+                scores.put(key.toString(), new Score(fields.get(1), parse(fields.get(4)),
+                        parse(fields.get(5)), fields.get(6)));
+            }
+        } finally {
+            in.close();
+        }
+        return scores;
+    }
+
+    private static String shortName(String benchmark) {
+        String prefix = BaselineComparison.class.getPackage().getName() + ".";
+        return benchmark.startsWith(prefix) ? benchmark.substring(prefix.length()) : benchmark;
+    }
+
+    private static double parse(String number) {
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Splits a CSV line, removing the quotes around fields.
+     */
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,105 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import com.google.android.gms.location.sample.locationupdates.DeviceIdentity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolving the device uid: what every UidProvider.getUniqueId call used to cost on the serial
+ * number path, a cold resolution through {@link DeviceIdentity.Holder} from a serial number and
+ * from the installation file, and a warm read of a resolved holder.
+ * {@link #firstResolutionInProcess()} times the very first resolution in a fresh JVM, class
+ * loading and MD5 set-up included, as at app start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DeviceIdentityBenchmark {
+    private static final String SERIAL = "R58M12ABCDE";
+
+    private File mInstallationFile;
+    private final DeviceIdentity.Holder mWarm = new DeviceIdentity.Holder();
+
+    private final DeviceIdentity.Resolver mFromSerial = new DeviceIdentity.Resolver() {
+        @Override
+        public DeviceIdentity resolve() {
+            return DeviceIdentity.fromHardwareId(SERIAL);
+        }
+    };
+
+    private final DeviceIdentity.Resolver mFromFile = new DeviceIdentity.Resolver() {
+        @Override
+        public DeviceIdentity resolve() throws IOException {
+            return DeviceIdentity.fromInstallationFile(mInstallationFile);
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mInstallationFile = File.createTempFile("INSTALLATION", null);
+        mInstallationFile.delete();
+        DeviceIdentity.fromInstallationFile(mInstallationFile);
+        mWarm.get(mFromSerial);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mInstallationFile.delete();
+    }
+
+    /**
+     * The old per-call work: a synchronized provider and a fresh MD5 and string every time.
+     */
+    private static synchronized String legacyGetUniqueId() {
+        return UUID.nameUUIDFromBytes(SERIAL.getBytes()).toString();
+    }
+
+    @Benchmark
+    public String legacyPerCall() {
+        return legacyGetUniqueId();
+    }
+
+    @Benchmark
+    public DeviceIdentity coldFromSerial() throws IOException {
+        return new DeviceIdentity.Holder().get(mFromSerial);
+    }
+
+    @Benchmark
+    public DeviceIdentity coldFromInstallationFile() throws IOException {
+        return new DeviceIdentity.Holder().get(mFromFile);
+    }
+
+    @Benchmark
+    public String warm() throws IOException {
+        return mWarm.get(mFromSerial).toString();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public DeviceIdentity firstResolutionInProcess() throws IOException {
+        return new DeviceIdentity.Holder().get(mFromSerial);
+    }
+}
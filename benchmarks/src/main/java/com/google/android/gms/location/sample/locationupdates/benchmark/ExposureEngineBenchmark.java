@@ -0,0 +1,100 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import com.google.android.gms.location.sample.locationupdates.ExposureEngine;
+import com.google.android.gms.location.sample.locationupdates.LocationFix;
+import com.google.android.gms.location.sample.locationupdates.SpatialGridIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A day of fixes at 1 Hz, {@link #DAY} of them, checked by {@link ExposureEngine} against a
+ * million infected bumps from {@link InfectedTableDatasets}, reported per fix. The day walks
+ * between the clusters of the dataset, where bumps are densest, and dwells for a quarter of an
+ * hour at a time. The teardown prints the exposures flagged and the contacts found per fix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ExposureEngineBenchmark {
+    private static final int BUMPS = 1000000;
+    private static final int DAY = 24 * 60 * 60;
+    private static final long START = 1477800000000L;
+    private static final int DWELL_SECONDS = 15 * 60;
+
+    private SpatialGridIndex mIndex;
+    private LocationFix[] mDay;
+    private ExposureEngine mLast;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        double[][] coordinates = InfectedTableDatasets.coordinates(BUMPS);
+        mIndex = SpatialGridIndex.build(coordinates[0], coordinates[1], BUMPS);
+
+        Random random = new Random(19);
+        mDay = new LocationFix[DAY];
+        double lat = coordinates[0][0];
+        double lng = coordinates[1][0];
+        double targetLat = lat;
+        double targetLng = lng;
+        int dwell = 0;
+        for (int s = 0; s < DAY; s++) {
+            double dLat = targetLat - lat;
+            double dLng = targetLng - lng;
+            double degrees = Math.hypot(dLat, dLng);
+            if (dwell > 0) {
+                dwell--;
+            } else if (degrees < 2e-5) {
+                // Arrived: stay a while, then head for another bump.
+                dwell = DWELL_SECONDS;
+                int row = random.nextInt(BUMPS);
+                targetLat = coordinates[0][row];
+                targetLng = coordinates[1][row];
+            } else {
+                // About 1.4 m/s on foot.
+                double step = Math.min(degrees, 1.3e-5);
+                lat += dLat / degrees * step;
+                lng += dLng / degrees * step;
+            }
+            mDay[s] = new LocationFix(lat + random.nextGaussian() * 3e-5,
+                    lng + random.nextGaussian() * 3e-5, 290, 5f, START + s * 1000L);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.println(String.format(Locale.US,
+                "%nExposureEngine: %d exposures in a day, %.1f contacts per fix",
+                mLast.getExposureCount(), mLast.getContactCount() / (double) DAY));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DAY)
+    public long dayOfFixes() {
+        ExposureEngine engine = new ExposureEngine(null);
+        engine.setInfectedIndex(mIndex);
+        for (LocationFix fix : mDay) {
+            engine.onFix(fix);
+        }
+        mLast = engine;
+        return engine.getExposureCount();
+    }
+}
@@ -0,0 +1,69 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import com.google.android.gms.location.sample.locationupdates.FixFusion;
+import com.google.android.gms.location.sample.locationupdates.LocationFix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixes per second through {@link FixFusion}, with and without smoothing, for the stream
+ * MyService's two listeners produce: GPS every second and network every five, each network fix
+ * 300 ms after a GPS one. The fix objects are built in the benchmark, as the provider callback
+ * builds them, so their allocation is part of the cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FixFusionBenchmark {
+    private static final int PATTERN = 1024;
+
+    @Param({"false", "true"})
+    public boolean smooth;
+
+    private final double[] mNorth = new double[PATTERN];
+    private final double[] mEast = new double[PATTERN];
+    private final float[] mAccuracy = new float[PATTERN];
+    private FixFusion mFusion;
+    private long mTime;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        for (int i = 0; i < PATTERN; i++) {
+            boolean network = i % 6 == 5;
+            double noise = network ? 30 : 4;
+            mNorth[i] = random.nextGaussian() * noise;
+            mEast[i] = i * 1.3 + random.nextGaussian() * noise;
+            mAccuracy[i] = network ? 40f : 5f;
+        }
+        mFusion = new FixFusion(smooth);
+    }
+
+    @Benchmark
+    public LocationFix accept() {
+        int i = mNext;
+        mNext = (i + 1) % PATTERN;
+        boolean network = i % 6 == 5;
+        mTime += network ? 300 : 700;
+        LocationFix fix = new LocationFix(34.92 + mNorth[i] * 9e-6, -82.44 + mEast[i] * 1.1e-5,
+                0, mAccuracy[i], mTime);
+        return mFusion.accept(network ? "network" : "gps", fix);
+    }
+}
@@ -0,0 +1,66 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates stand-in pages for displayinfectedtable.php.
+ *
+ * Rows are spread over a handful of clusters around Greenville, SC, with coordinates printed to
+ * seven decimal places the way the PHP page prints them, and the whole table on one line. The
+ * output is deterministic for a given row count.
+ */
+public final class InfectedTableDatasets {
+    private static final double[][] CLUSTERS = {
+            {34.9249, -82.4401}, {34.8526, -82.3940}, {34.8395, -82.3532},
+            {34.9496, -82.2268}, {34.7621, -82.2535}, {35.0010, -82.5003}
+    };
+
+    private InfectedTableDatasets() {
+    }
+
+    /**
+     * @return the uid used by row {@code index} of a generated table.
+     */
+    public static String uid(int index) {
+        Random random = new Random(index * 0x9E3779B97F4A7C15L);
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    /**
+     * @return {@code {latitudes, longitudes}} of the rows of {@code page(rows)}.
+     */
+    public static double[][] coordinates(int rows) {
+        Random random = new Random(rows);
+        double[] latitudes = new double[rows];
+        double[] longitudes = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            double[] center = CLUSTERS[random.nextInt(CLUSTERS.length)];
+            latitudes[i] = center[0] + random.nextGaussian() * 0.02;
+            longitudes[i] = center[1] + random.nextGaussian() * 0.02;
+        }
+        return new double[][] {latitudes, longitudes};
+    }
+
+    public static byte[] page(int rows) {
+        double[][] coordinates = coordinates(rows);
+        StringBuilder sb = new StringBuilder(rows * 88 + 256);
+        sb.append("<html>\n<head><title>Infected</title></head>\n<body>\n<table>");
+        for (int i = 0; i < rows; i++) {
+            double lat = coordinates[0][i];
+            double lng = coordinates[1][i];
+            sb.append("<tr><td>").append(uid(i))
+                    .append("</td><td>").append(String.format(Locale.US, "%.7f", lng))
+                    .append("</td><td>").append(String.format(Locale.US, "%.7f", lat))
+                    .append("</td></tr>");
+        }
+        sb.append("</table>\n</body>\n</html>\n");
+        try {
+            return sb.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import com.google.android.gms.location.sample.locationupdates.InfectedTableParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the regex/split parsing of the infected table with {@link InfectedTableParser}, both
+ * for the uid lookup done by checkIfInfected and the coordinate pass done by displayBumpsOnMap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class InfectedTableParserBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private byte[] mPage;
+    private String mAbsentUid;
+    private final InfectedTableParser mParser = new InfectedTableParser();
+
+    @Setup
+    public void setUp() {
+        mPage = InfectedTableDatasets.page(rows);
+        // Not in the table, so both implementations have to look at every row.
+        mAbsentUid = InfectedTableDatasets.uid(-1);
+    }
+
+    @Benchmark
+    public int legacyUidLookup() throws IOException {
+        return LegacyInfectedTable.countUid(new ByteArrayInputStream(mPage), mAbsentUid);
+    }
+
+    @Benchmark
+    public int streamingUidLookup() throws IOException {
+        final int[] matches = new int[1];
+        mParser.parse(new ByteArrayInputStream(mPage), new InfectedTableParser.RowHandler() {
+            @Override
+            public boolean onRow(InfectedTableParser.Row row) {
+                if (row.uidEquals(mAbsentUid)) {
+                    matches[0]++;
+                }
+                return true;
+            }
+        });
+        return matches[0];
+    }
+
+    @Benchmark
+    public double legacyCoordinates() throws IOException {
+        return LegacyInfectedTable.sumCoordinates(new ByteArrayInputStream(mPage));
+    }
+
+    @Benchmark
+    public double streamingCoordinates() throws IOException {
+        final double[] sum = new double[1];
+        mParser.parse(new ByteArrayInputStream(mPage), new InfectedTableParser.RowHandler() {
+            @Override
+            public boolean onRow(InfectedTableParser.Row row) {
+                if (row.hasCoordinates()) {
+                    sum[0] += row.getLatitude() + row.getLongitude();
+                }
+                return true;
+            }
+        });
+        return sum[0];
+    }
+}
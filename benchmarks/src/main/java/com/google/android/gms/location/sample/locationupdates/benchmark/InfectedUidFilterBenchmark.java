@@ -0,0 +1,130 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import com.google.android.gms.location.sample.locationupdates.InfectedUidFilter;
+import com.google.android.gms.location.sample.locationupdates.UidIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link InfectedUidFilter} over {@code size} random uids at a false-positive rate of
+ * {@code rate}: building it, and looking up uids that are in it and uids that are not, next to
+ * the same lookups in the {@link UidIndex} the full table keeps. Lookups cycle through
+ * {@link #QUERIES} pre-parsed uids. The teardown prints the serialized size per uid against the
+ * full table and the measured false-positive rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class InfectedUidFilterBenchmark {
+    private static final int QUERIES = 4096;
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    @Param({"0.01", "0.001"})
+    public double rate;
+
+    private long[] mHigh;
+    private long[] mLow;
+    private InfectedUidFilter mFilter;
+    private UidIndex mIndex;
+    private long[] mMissHigh;
+    private long[] mMissLow;
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(20);
+        mHigh = new long[size];
+        mLow = new long[size];
+        mIndex = new UidIndex(size);
+        for (int i = 0; i < size; i++) {
+            mHigh[i] = random.nextLong();
+            mLow[i] = random.nextLong();
+            mIndex.add(mHigh[i], mLow[i]);
+        }
+        mFilter = build();
+        mMissHigh = new long[QUERIES];
+        mMissLow = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            mMissHigh[i] = random.nextLong();
+            mMissLow[i] = random.nextLong();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        Random random = new Random(21);
+        int trials = 1000000;
+        int falsePositives = 0;
+        for (int i = 0; i < trials; i++) {
+            if (mFilter.mightContain(random.nextLong(), random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        // The page prints about 88 bytes per row; see InfectedTableDatasets.
+        System.out.println(String.format(Locale.US,
+                "%nInfectedUidFilter: %d bytes, %.2f bytes per uid (table page ~88, UidIndex"
+                        + " %.1f), %d probes, false positives %.4f%%",
+                mFilter.getSerializedBytes(), mFilter.getSerializedBytes() / (double) size,
+                mIndex.getMemoryBytes() / (double) size, mFilter.getProbeCount(),
+                100.0 * falsePositives / trials));
+    }
+
+    private InfectedUidFilter build() {
+        InfectedUidFilter.Builder builder = new InfectedUidFilter.Builder(size, rate);
+        for (int i = 0; i < size; i++) {
+            builder.add(mHigh[i], mLow[i]);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public InfectedUidFilter buildFilter() {
+        return build();
+    }
+
+    @Benchmark
+    public boolean filterHit() {
+        int i = (mNext = (mNext + 1) & (QUERIES - 1)) % size;
+        return mFilter.mightContain(mHigh[i], mLow[i]);
+    }
+
+    @Benchmark
+    public boolean filterMiss() {
+        int i = mNext = (mNext + 1) & (QUERIES - 1);
+        return mFilter.mightContain(mMissHigh[i], mMissLow[i]);
+    }
+
+    @Benchmark
+    public boolean uidIndexHit() {
+        int i = (mNext = (mNext + 1) & (QUERIES - 1)) % size;
+        return mIndex.contains(mHigh[i], mLow[i]);
+    }
+
+    @Benchmark
+    public boolean uidIndexMiss() {
+        int i = mNext = (mNext + 1) & (QUERIES - 1);
+        return mIndex.contains(mMissHigh[i], mMissLow[i]);
+    }
+}
@@ -0,0 +1,64 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * The parsing that MainActivity.checkIfInfected and displayBumpsOnMap did before the streaming
+ * parser, kept verbatim (minus logging and map calls) as the baseline for comparisons.
+ */
+public final class LegacyInfectedTable {
+
+    private LegacyInfectedTable() {
+    }
+
+    /**
+     * @return the number of rows whose first cell equals {@code uid}.
+     */
+    public static int countUid(InputStream stream, String uid) throws IOException {
+        int matches = 0;
+        for (String s : splitRows(stream)) {
+            String[] split = s.split("/");
+            if (split[0].equals(uid)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return the sum of all latitudes and longitudes, so the parsed values are consumed.
+     */
+    public static double sumCoordinates(InputStream stream) throws IOException {
+        double sum = 0;
+        for (String s : splitRows(stream)) {
+            String[] split = s.split("/");
+            if (split.length >= 3) {
+                double lat = Double.parseDouble(split[2]);
+                double lng = Double.parseDouble(split[1]);
+                sum += lat + lng;
+            }
+        }
+        return sum;
+    }
+
+    private static String[] splitRows(InputStream stream) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(stream));
+        String str;
+        String dataLine = "";
+        while ((str = in.readLine()) != null) {
+            if (str.contains("<table>")) {
+                dataLine = str;
+            }
+        }
+        in.close();
+        dataLine = dataLine.replaceAll("<td>", "");
+        dataLine = dataLine.replaceAll("</tr>", "");
+        dataLine = dataLine.replaceAll("<table>", "");
+        dataLine = dataLine.replaceAll("</table>", "");
+        dataLine = dataLine.replaceAll("</td>", "/");
+        return dataLine.split("<tr>");
+    }
+}
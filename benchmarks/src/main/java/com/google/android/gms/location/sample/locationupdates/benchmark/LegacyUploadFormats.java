@@ -0,0 +1,67 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import com.google.android.gms.location.sample.locationupdates.LocationFix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The upload bodies the app sent before the binary format, kept as the baseline for comparisons:
+ * the single-fix form MyService.notifyDatabase posted, and the gzip-compressed batch of
+ * form-encoded rows HttpLocationBatchSender sent after it.
+ */
+public final class LegacyUploadFormats {
+
+    private LegacyUploadFormats() {
+    }
+
+    /**
+     * The body notifyDatabase posted for one fix.
+     */
+    public static byte[] formBody(String uid, LocationFix fix) throws IOException {
+        String data = URLEncoder.encode("userid", "UTF-8") + "=" + URLEncoder.encode(uid, "UTF-8");
+        data += "&" + URLEncoder.encode("latitude", "UTF-8") + "="
+                + URLEncoder.encode(Double.toString(fix.getLatitude()), "UTF-8");
+        data += "&" + URLEncoder.encode("longitude", "UTF-8") + "="
+                + URLEncoder.encode(Double.toString(fix.getLongitude()), "UTF-8");
+        data += "&" + URLEncoder.encode("time", "UTF-8") + "="
+                + URLEncoder.encode(Long.toString(fix.getTime() / 1000L), "UTF-8");
+        data += "&" + URLEncoder.encode("accuracy", "UTF-8") + "="
+                + URLEncoder.encode(Double.toString(fix.getAccuracy()), "UTF-8");
+        data += "&" + URLEncoder.encode("altitude", "UTF-8") + "="
+                + URLEncoder.encode(Double.toString(fix.getAltitude()), "UTF-8");
+        return data.getBytes("UTF-8");
+    }
+
+    /**
+     * The body HttpLocationBatchSender posted for a batch: one form row per fix, gzipped.
+     */
+    public static byte[] gzipRows(String uid, List<LocationFix> batch) throws IOException {
+        String encodedUid = URLEncoder.encode(uid, "UTF-8");
+        StringBuilder sb = new StringBuilder(batch.size() * 128);
+        for (int i = 0; i < batch.size(); i++) {
+            LocationFix fix = batch.get(i);
+            if (i > 0) {
+                sb.append('\n');
+            }
+            sb.append("userid=").append(encodedUid)
+                    .append("&latitude=").append(Double.toString(fix.getLatitude()))
+                    .append("&longitude=").append(Double.toString(fix.getLongitude()))
+                    .append("&time=").append(Long.toString(fix.getTime() / 1000L))
+                    .append("&accuracy=").append(Double.toString(fix.getAccuracy()))
+                    .append("&altitude=").append(Double.toString(fix.getAltitude()));
+        }
+        byte[] raw = sb.toString().getBytes("UTF-8");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(raw.length / 4 + 64);
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        try {
+            gzip.write(raw);
+        } finally {
+            gzip.close();
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,178 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import com.google.android.gms.location.sample.locationupdates.LocationRingBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording and reading back a location history of {@code capacity} fixes: the
+ * {@code LinkedList<Location>} queue LocationHistoryManager used to keep, and
+ * {@link LocationRingBuffer}. The teardown prints the retained bytes per entry of each.
+ *
+ * android.location.Location does not load on a desktop JVM, so the legacy queue holds
+ * {@link FakeLocation}, which has the same fields as the platform class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LocationHistoryBenchmark {
+
+    @Param({"5", "4096"})
+    public int capacity;
+
+    private Queue<FakeLocation> mLinkedList;
+    private LocationRingBuffer mRingBuffer;
+    private LocationRingBuffer.Snapshot mSnapshot;
+    private long mTime;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mLinkedList = new LinkedList<FakeLocation>();
+        mRingBuffer = new LocationRingBuffer(capacity);
+        for (int i = 0; i < capacity; i++) {
+            linkedListAppend();
+            ringBufferAppend();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void reportMemory() {
+        int histories = Math.max(1, 2000000 / capacity);
+        long linkedList = retainedBytes(histories, false) / ((long) histories * capacity);
+        long ringBuffer = retainedBytes(histories, true) / ((long) histories * capacity);
+        System.out.println(String.format(Locale.US,
+                "%nbytes per entry: LinkedList<Location> %d, LocationRingBuffer %d",
+                linkedList, ringBuffer));
+    }
+
+    @Benchmark
+    public int linkedListAppend() {
+        // The old LocationHistoryManager.add: drop the head once full, then enqueue.
+        if (mLinkedList.size() == capacity) {
+            mLinkedList.poll();
+        }
+        mLinkedList.add(new FakeLocation(mTime++));
+        return mLinkedList.size();
+    }
+
+    @Benchmark
+    public int ringBufferAppend() {
+        long time = mTime++;
+        mRingBuffer.append(time * 1e-7, time * 1e-7, 100, 5f, time);
+        return mRingBuffer.size();
+    }
+
+    @Benchmark
+    public double linkedListIterate() {
+        double sum = 0;
+        for (FakeLocation location : mLinkedList) {
+            sum += location.mLatitude + location.mLongitude;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double ringBufferIterate() {
+        double sum = 0;
+        int size = mRingBuffer.size();
+        for (int i = 0; i < size; i++) {
+            sum += mRingBuffer.getLatitude(i) + mRingBuffer.getLongitude(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double ringBufferSnapshot() {
+        mSnapshot = mRingBuffer.snapshot(mSnapshot);
+        return mSnapshot.getLatitude(mSnapshot.size() - 1);
+    }
+
+    private long retainedBytes(int histories, boolean ringBuffer) {
+        Object[] keep = new Object[histories];
+        long before = usedHeap();
+        for (int h = 0; h < histories; h++) {
+            if (ringBuffer) {
+                LocationRingBuffer buffer = new LocationRingBuffer(capacity);
+                for (int i = 0; i < capacity; i++) {
+                    buffer.append(i, i, i, i, i);
+                }
+                keep[h] = buffer;
+            } else {
+                Queue<FakeLocation> queue = new LinkedList<FakeLocation>();
+                for (int i = 0; i < capacity; i++) {
+                    queue.add(new FakeLocation(i));
+                }
+                keep[h] = queue;
+            }
+        }
+        long bytes = usedHeap() - before;
+        if (keep[histories - 1] == null) {
+            throw new AssertionError();
+        }
+        return bytes;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The instance fields of android.location.Location (API 23), minus the extras bundle,
+     * which is usually null.
+     */
+    static final class FakeLocation {
+        String mProvider = "fused";
+        long mTime;
+        long mElapsedRealtimeNanos;
+        double mLatitude;
+        double mLongitude;
+        boolean mHasAltitude = true;
+        double mAltitude = 100;
+        boolean mHasSpeed;
+        float mSpeed;
+        boolean mHasBearing;
+        float mBearing;
+        boolean mHasAccuracy = true;
+        float mAccuracy = 5f;
+        Object mExtras;
+        boolean mIsFromMockProvider;
+        double mLat1;
+        double mLon1;
+        double mLat2;
+        double mLon2;
+        float mDistance;
+        float mInitialBearing;
+        float[] mResults = new float[2];
+
+        FakeLocation(long time) {
+            mTime = time;
+            mElapsedRealtimeNanos = time * 1000000L;
+            mLatitude = time * 1e-7;
+            mLongitude = time * 1e-7;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import com.google.android.gms.location.sample.locationupdates.AsyncLogAppender;
+import com.google.android.gms.location.sample.locationupdates.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging while checking a 100k-row infected table, as checkIfInfected used to:
+ * <ul>
+ * <li>{@link #legacyPerRow()} builds a line per row and writes it synchronously, as
+ * {@code Log.d("not infected", uid + "%%%%" + mUid)} did. Each line goes to /dev/null with its
+ * own write call, standing in for logcat's write to the log daemon.</li>
+ * <li>{@link #gatedPerRow()} makes the same per-row debug call through {@link Logger} with debug
+ * off, as in a release build.</li>
+ * <li>{@link #asyncPerRow()} keeps every per-row line but hands it to an
+ * {@link AsyncLogAppender} in front of the same writer. Only the checking thread's time is
+ * measured; lines that do not fit the ring are dropped and counted.</li>
+ * <li>{@link #summaryLine()} logs one line per check, which is what the app does now.</li>
+ * </ul>
+ * Times are per check of the whole table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoggingBenchmark {
+    private static final int ROWS = 100000;
+    private static final Logger LOG = Logger.get("MainActivity");
+
+    /**
+     * Writes each line with one write call, like android.util.Log.
+     */
+    static final class SyscallSink implements Logger.Sink {
+        private final OutputStream mOut;
+
+        SyscallSink() {
+            OutputStream out;
+            try {
+                out = new FileOutputStream(new File("/dev/null"));
+            } catch (FileNotFoundException e) {
+                out = new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                    }
+                };
+            }
+            mOut = out;
+        }
+
+        @Override
+        public synchronized void write(int level, String tag, String message, Throwable error) {
+            try {
+                mOut.write((Logger.levelName(level) + "/" + tag + ": " + message + "\n")
+                        .getBytes("UTF-8"));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void close() throws IOException {
+            mOut.close();
+        }
+    }
+
+    private String[] mUids;
+    private String mOwnUid;
+    private SyscallSink mSyscallSink;
+    private ExecutorService mDrain;
+    private AsyncLogAppender mAppender;
+    private int mSavedLevel;
+    private Logger.Sink mSavedSink;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(24);
+        mUids = new String[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            mUids[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+        }
+        mOwnUid = new UUID(random.nextLong(), random.nextLong()).toString();
+        mSyscallSink = new SyscallSink();
+        mDrain = Executors.newSingleThreadExecutor();
+        mAppender = new AsyncLogAppender(mSyscallSink, mDrain, AsyncLogAppender.DEFAULT_CAPACITY);
+        mSavedLevel = Logger.getLevel();
+        mSavedSink = Logger.getSink();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Logger.setLevel(mSavedLevel);
+        Logger.setSink(mSavedSink);
+        mDrain.shutdown();
+        mDrain.awaitTermination(10, TimeUnit.SECONDS);
+        System.out.println(String.format(Locale.US,
+                "%nAsyncLogAppender: %d lines written, %d dropped",
+                mAppender.getWrittenCount(), mAppender.getDroppedCount()));
+        mSyscallSink.close();
+    }
+
+    /**
+     * Stands in for the uid comparison the check makes per row.
+     */
+    private boolean isOwn(String uid) {
+        return uid.equals(mOwnUid);
+    }
+
+    @Benchmark
+    public int legacyPerRow() {
+        int infected = 0;
+        for (String uid : mUids) {
+            if (isOwn(uid)) {
+                infected++;
+                mSyscallSink.write(Logger.ERROR, "infected", uid + "%%%%" + mOwnUid, null);
+            } else {
+                mSyscallSink.write(Logger.DEBUG, "not infected", uid + "%%%%" + mOwnUid, null);
+            }
+        }
+        return infected;
+    }
+
+    @Benchmark
+    public int gatedPerRow() {
+        Logger.setLevel(Logger.INFO);
+        Logger.setSink(mSyscallSink);
+        int infected = 0;
+        for (String uid : mUids) {
+            if (isOwn(uid)) {
+                infected++;
+            }
+            LOG.d("Row %s checked against %s", uid, mOwnUid);
+        }
+        return infected;
+    }
+
+    @Benchmark
+    public int asyncPerRow() {
+        Logger.setLevel(Logger.DEBUG);
+        Logger.setSink(mAppender);
+        int infected = 0;
+        for (String uid : mUids) {
+            if (isOwn(uid)) {
+                infected++;
+            }
+            LOG.d("Row %s checked against %s", uid, mOwnUid);
+        }
+        return infected;
+    }
+
+    @Benchmark
+    public int summaryLine() {
+        Logger.setLevel(Logger.DEBUG);
+        Logger.setSink(mAppender);
+        int infected = 0;
+        for (String uid : mUids) {
+            if (isOwn(uid)) {
+                infected++;
+            }
+        }
+        LOG.d("Checked %d rows, %d infected", mUids.length, infected);
+        return infected;
+    }
+}
@@ -0,0 +1,104 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import com.google.android.gms.location.sample.locationupdates.MarkerCluster;
+import com.google.android.gms.location.sample.locationupdates.MarkerClusterer;
+import com.google.android.gms.location.sample.locationupdates.MarkerLayer;
+import com.google.android.gms.location.sample.locationupdates.SpatialGridIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one camera change on the infected layer over {@code size} bumps: clustering the
+ * viewport at a city-wide and a street-level zoom, and clustering plus diffing a small pan
+ * against the markers already placed. The renderer does no map work, so the diff numbers are
+ * the layer's own overhead. The teardown prints how many markers the city view places, where the
+ * old code added one per bump.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MarkerClustererBenchmark {
+    // Roughly a phone screen over Greenville at zoom 11, and over one cluster at zoom 16.
+    private static final double[] CITY = {34.70, -82.60, 35.05, -82.15};
+    private static final double[] STREET = {34.920, -82.445, 34.930, -82.435};
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private SpatialGridIndex mIndex;
+    private MarkerClusterer mClusterer;
+    private MarkerLayer<MarkerCluster, Object> mLayer;
+    private int mPan;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        double[][] coordinates = InfectedTableDatasets.coordinates(size);
+        mIndex = SpatialGridIndex.build(coordinates[0], coordinates[1], size);
+        mClusterer = new MarkerClusterer();
+        mLayer = new MarkerLayer<MarkerCluster, Object>(
+                new MarkerLayer.Renderer<MarkerCluster, Object>() {
+                    @Override
+                    public long keyOf(MarkerCluster item) {
+                        return item.getKey();
+                    }
+
+                    @Override
+                    public Object add(MarkerCluster item) {
+                        return item;
+                    }
+
+                    @Override
+                    public void update(Object marker, MarkerCluster item) {
+                    }
+
+                    @Override
+                    public void remove(Object marker) {
+                    }
+                });
+    }
+
+    @Benchmark
+    public List<MarkerCluster> clusterCity() {
+        return mClusterer.cluster(mIndex, CITY[0], CITY[1], CITY[2], CITY[3], 11);
+    }
+
+    @Benchmark
+    public List<MarkerCluster> clusterStreet() {
+        return mClusterer.cluster(mIndex, STREET[0], STREET[1], STREET[2], STREET[3], 16);
+    }
+
+    @Benchmark
+    public int panStreet() {
+        // Alternate between two overlapping viewports a quarter of a screen apart.
+        double shift = (mPan++ & 1) * 0.0025;
+        mLayer.render(mClusterer.cluster(mIndex, STREET[0], STREET[1] + shift, STREET[2],
+                STREET[3] + shift, 16));
+        return mLayer.size();
+    }
+
+    @TearDown(Level.Trial)
+    public void reportMarkers() {
+        mLayer.render(mClusterer.cluster(mIndex, CITY[0], CITY[1], CITY[2], CITY[3], 11));
+        System.out.println(String.format(Locale.US, "%nCity view: %d markers for %d bumps",
+                mLayer.size(), size));
+    }
+}
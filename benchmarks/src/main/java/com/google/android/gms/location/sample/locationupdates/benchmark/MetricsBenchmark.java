@@ -0,0 +1,93 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import com.google.android.gms.location.sample.locationupdates.LatencyHistogram;
+import com.google.android.gms.location.sample.locationupdates.Metrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What one record costs on the hot path: incrementing a {@link Metrics.Counter}, recording into
+ * a {@link LatencyHistogram}, and looking a counter up by name first, on one thread and with
+ * four threads recording into the same instruments. {@link #snapshot()} is the cost of a
+ * periodic dump over a registry the size MyService registers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MetricsBenchmark {
+    private final Metrics mMetrics = new Metrics();
+    private final Metrics.Counter mCounter = mMetrics.counter("fix.received.gps");
+    private final LatencyHistogram mHistogram = mMetrics.histogram("upload.latency");
+
+    public MetricsBenchmark() {
+        for (int i = 0; i < 20; i++) {
+            mMetrics.counter("counter." + i).increment();
+        }
+        for (int i = 0; i < 3; i++) {
+            LatencyHistogram histogram = mMetrics.histogram("histogram." + i);
+            for (int micros = 0; micros < 100000; micros += 7) {
+                histogram.record(micros);
+            }
+        }
+    }
+
+    /**
+     * A latency per thread that varies so records spread over the buckets.
+     */
+    @State(Scope.Thread)
+    public static class Latency {
+        long mMicros;
+
+        long next() {
+            mMicros = (mMicros * 6364136223846793005L + 1442695040888963407L);
+            return (mMicros >>> 40) & 0xfffff;
+        }
+    }
+
+    @Benchmark
+    public void counterIncrement() {
+        mCounter.increment();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void counterIncrementContended() {
+        mCounter.increment();
+    }
+
+    @Benchmark
+    public void histogramRecord(Latency latency) {
+        mHistogram.record(latency.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void histogramRecordContended(Latency latency) {
+        mHistogram.record(latency.next());
+    }
+
+    @Benchmark
+    public void counterByName() {
+        mMetrics.counter("fix.received.gps").increment();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Metrics.Snapshot snapshot() {
+        return mMetrics.snapshot();
+    }
+}
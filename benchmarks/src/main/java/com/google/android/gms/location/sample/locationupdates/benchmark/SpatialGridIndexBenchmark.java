@@ -0,0 +1,133 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import com.google.android.gms.location.sample.locationupdates.SpatialGridIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proximity queries over {@code size} infected bumps from {@link InfectedTableDatasets}: a
+ * linear distance scan versus {@link SpatialGridIndex} for radius and bounding-box queries, and
+ * the cost of building the index. Query centres cycle through a fixed set of points near the
+ * data. {@link #gridRadiusWithOutlier()} adds one row at (0, 0) to the same data, which must not
+ * slow queries in the city down. The teardown prints the index footprint per point.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SpatialGridIndexBenchmark {
+    private static final int QUERY_POINTS = 1024;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    @Param({"50", "1000"})
+    public double radiusMeters;
+
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+    private SpatialGridIndex mIndex;
+    private SpatialGridIndex mIndexWithOutlier;
+    private double[] mQueryLat;
+    private double[] mQueryLng;
+    private int mNext;
+
+    private final SpatialGridIndex.Visitor mVisitor = new SpatialGridIndex.Visitor() {
+        @Override
+        public boolean visit(int row, double latitude, double longitude) {
+            return true;
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        double[][] coordinates = InfectedTableDatasets.coordinates(size);
+        mLatitudes = coordinates[0];
+        mLongitudes = coordinates[1];
+        mIndex = SpatialGridIndex.build(mLatitudes, mLongitudes, size);
+        double[] latitudes = new double[size + 1];
+        double[] longitudes = new double[size + 1];
+        System.arraycopy(mLatitudes, 0, latitudes, 0, size);
+        System.arraycopy(mLongitudes, 0, longitudes, 0, size);
+        mIndexWithOutlier = SpatialGridIndex.build(latitudes, longitudes, size + 1);
+        Random random = new Random(11);
+        mQueryLat = new double[QUERY_POINTS];
+        mQueryLng = new double[QUERY_POINTS];
+        for (int i = 0; i < QUERY_POINTS; i++) {
+            int row = random.nextInt(size);
+            mQueryLat[i] = mLatitudes[row] + random.nextGaussian() * 0.005;
+            mQueryLng[i] = mLongitudes[row] + random.nextGaussian() * 0.005;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void reportMemory() {
+        System.out.println(String.format(Locale.US, "%nSpatialGridIndex: %.1f bytes per point",
+                mIndex.getMemoryBytes() / (double) size));
+    }
+
+    @Benchmark
+    public int linearScanRadius() {
+        int q = mNext++ & (QUERY_POINTS - 1);
+        int found = 0;
+        for (int i = 0; i < size; i++) {
+            if (SpatialGridIndex.distanceMeters(mQueryLat[q], mQueryLng[q], mLatitudes[i],
+                    mLongitudes[i]) <= radiusMeters) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int gridRadius() {
+        int q = mNext++ & (QUERY_POINTS - 1);
+        return mIndex.queryRadius(mQueryLat[q], mQueryLng[q], radiusMeters, mVisitor);
+    }
+
+    @Benchmark
+    public int gridRadiusWithOutlier() {
+        int q = mNext++ & (QUERY_POINTS - 1);
+        return mIndexWithOutlier.queryRadius(mQueryLat[q], mQueryLng[q], radiusMeters, mVisitor);
+    }
+
+    @Benchmark
+    public boolean gridAnyWithinRadius() {
+        int q = mNext++ & (QUERY_POINTS - 1);
+        return mIndex.anyWithinRadius(mQueryLat[q], mQueryLng[q], radiusMeters);
+    }
+
+    @Benchmark
+    public int gridBox() {
+        int q = mNext++ & (QUERY_POINTS - 1);
+        // A box about 2 * radiusMeters on a side.
+        double dLat = radiusMeters / 111195.0;
+        double dLng = dLat / Math.cos(Math.toRadians(mQueryLat[q]));
+        return mIndex.queryBox(mQueryLat[q] - dLat, mQueryLng[q] - dLng, mQueryLat[q] + dLat,
+                mQueryLng[q] + dLng, mVisitor);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SpatialGridIndex build() {
+        return SpatialGridIndex.build(mLatitudes, mLongitudes, size);
+    }
+}
@@ -0,0 +1,105 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import com.google.android.gms.location.sample.locationupdates.UidIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Infection status lookups against a table of {@code size} uids: the linear string scan
+ * checkIfInfected used to do, a {@code HashSet<String>}, and {@link UidIndex}. The teardown
+ * prints the index footprint per million uids.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class UidIndexBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private String[] mUids;
+    private Set<String> mHashSet;
+    private UidIndex mIndex;
+    private String mPresentUid;
+    private String mAbsentUid;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mUids = new String[size];
+        mHashSet = new HashSet<String>(size * 2);
+        mIndex = new UidIndex(size);
+        for (int i = 0; i < size; i++) {
+            mUids[i] = InfectedTableDatasets.uid(i);
+            mHashSet.add(mUids[i]);
+            mIndex.add(mUids[i]);
+        }
+        // A fresh String, as mUid is, rather than the instance held by the table.
+        mPresentUid = new String(InfectedTableDatasets.uid(size / 2));
+        mAbsentUid = InfectedTableDatasets.uid(-1);
+    }
+
+    @TearDown(Level.Trial)
+    public void reportMemory() {
+        System.out.println(String.format(Locale.US, "%nUidIndex: %.1f MB per million uids",
+                mIndex.getMemoryBytes() / (double) size));
+    }
+
+    @Benchmark
+    public boolean linearScanMiss() {
+        for (String uid : mUids) {
+            if (uid.equals(mAbsentUid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean hashSetHit() {
+        return mHashSet.contains(mPresentUid);
+    }
+
+    @Benchmark
+    public boolean hashSetMiss() {
+        return mHashSet.contains(mAbsentUid);
+    }
+
+    @Benchmark
+    public boolean uidIndexHit() {
+        return mIndex.contains(mPresentUid);
+    }
+
+    @Benchmark
+    public boolean uidIndexMiss() {
+        return mIndex.contains(mAbsentUid);
+    }
+
+    @Benchmark
+    public UidIndex buildUidIndex() {
+        UidIndex index = new UidIndex(size);
+        for (String uid : mUids) {
+            index.add(uid);
+        }
+        return index;
+    }
+}
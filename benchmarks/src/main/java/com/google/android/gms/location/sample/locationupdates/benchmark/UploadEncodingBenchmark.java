@@ -0,0 +1,134 @@
+package com.google.android.gms.location.sample.locationupdates.benchmark;
+
+import com.google.android.gms.location.sample.locationupdates.BinaryFixCodec;
+import com.google.android.gms.location.sample.locationupdates.LocationFix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a batch of {@link #BATCH} walking fixes for upload, reported per fix: the single-fix
+ * form body notifyDatabase posted, the gzipped form rows of the first batch format, and
+ * {@link BinaryFixCodec}. The teardown prints the body bytes per fix of each.
+ *
+ * Run with {@code -prof gc} to see the garbage each format makes per fix in
+ * {@code gc.alloc.rate.norm}. {@link #main(String[])} runs the binary encoder that way and fails
+ * unless it allocates nothing in steady state; {@code gradle :benchmarks:checkUploadAllocation}
+ * runs it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UploadEncodingBenchmark {
+    private static final int BATCH = 100;
+    private static final String UID = "0f8fad5b-d9cb-469f-a165-70867728950e";
+
+    private final List<LocationFix> mBatch = new ArrayList<LocationFix>();
+    private BinaryFixCodec mCodec;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(2);
+        double lat = 34.9249;
+        double lng = -82.4401;
+        for (int i = 0; i < BATCH; i++) {
+            lat += random.nextGaussian() * 1.2e-5;
+            lng += random.nextGaussian() * 1.2e-5;
+            mBatch.add(new LocationFix(lat, lng, 290 + random.nextGaussian(),
+                    4 + random.nextFloat() * 8, 1477800000000L + i * 1000L));
+        }
+        mCodec = new BinaryFixCodec(UID);
+    }
+
+    @TearDown
+    public void reportSizes() throws IOException {
+        long form = 0;
+        for (LocationFix fix : mBatch) {
+            form += LegacyUploadFormats.formBody(UID, fix).length;
+        }
+        System.out.println(String.format(Locale.US,
+                "%nbytes per fix: form %.1f, gzip rows %.1f, binary %.1f",
+                form / (double) BATCH,
+                LegacyUploadFormats.gzipRows(UID, mBatch).length / (double) BATCH,
+                mCodec.encode(mBatch) / (double) BATCH));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int formPerFix() throws IOException {
+        int bytes = 0;
+        for (int i = 0; i < BATCH; i++) {
+            bytes += LegacyUploadFormats.formBody(UID, mBatch.get(i)).length;
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int gzipRows() throws IOException {
+        return LegacyUploadFormats.gzipRows(UID, mBatch).length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int binary() {
+        return mCodec.encode(mBatch);
+    }
+
+    /**
+     * Fails if encoding a batch with {@link BinaryFixCodec} allocates in steady state. JMH's own
+     * bookkeeping shows up as a few thousandths of a byte per fix, while even one small object
+     * per batch of {@link #BATCH} would cost more than a tenth.
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(UploadEncodingBenchmark.class.getName() + ".binary$")
+                .addProfiler(GCProfiler.class)
+                .build();
+        for (RunResult result : new Runner(options).run()) {
+            // getSecondaryResults() is declared with the raw Result type, so its values are
+            // read through Result<?> rather than iterating raw entries.
+            for (String name : result.getSecondaryResults().keySet()) {
+                if (name.endsWith("gc.alloc.rate.norm")) {
+                    Result<?> secondary = result.getSecondaryResults().get(name);
+                    double bytesPerFix = secondary.getScore();
+                    System.out.println(String.format(Locale.US,
+                            "binary encoding allocates %.3f bytes per fix", bytesPerFix));
+                    if (bytesPerFix >= 0.1) {
+                        throw new AssertionError("Binary encoding allocates " + bytesPerFix
+                                + " bytes per fix");
+                    }
+                    return;
+                }
+            }
+        }
+        throw new AssertionError("No allocation rate reported");
+    }
+}